@@ -0,0 +1,415 @@
+package expense;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Optional in-process column store for dashboard and report queries over the shared ledger
+ * ({@link Ledger#shared()}). Its transactions are loaded
+ * once into primitive arrays (epoch millis, amount in cents, dictionary-encoded type and notes,
+ * dense month index) and aggregated with plain loops over those arrays; large scans are split
+ * across the common fork-join pool.
+ *
+ * Enable with {@code -Dexpense.analytics.enabled=true}. The snapshot is reloaded automatically
+ * when the ledger changes.
+ */
+public final class AnalyticsEngine {
+    private static final boolean ENABLED = Boolean.getBoolean("expense.analytics.enabled");
+    // Below this many rows a single-threaded scan beats the fork-join overhead
+    private static final int PARALLEL_THRESHOLD = Integer.getInteger("expense.analytics.parallelThreshold", 1 << 16);
+
+    private static final String LOAD_SQL = "SELECT type, amount_cents, notes, timestamp, id FROM transactions WHERE user_id = ?";
+    // Any insert, edit, delete or archiving in the ledger changes at least one of these
+    private static final String VERSION_SQL = """
+                                              SELECT (SELECT SUM(version) FROM month_versions WHERE user_id = ?1),
+                                                     (SELECT SUM(count) FROM monthly_totals WHERE user_id = ?1),
+                                                     (SELECT SUM(total_cents) FROM monthly_totals WHERE user_id = ?1),
+                                                     (SELECT COUNT(*) FROM archive_segments WHERE user_id = ?1);
+                                              """;
+
+    private static volatile AnalyticsEngine snapshot;
+
+    private final String version;
+    private final int size;
+    private final long[] ids;
+    private final long[] epochMillis;
+    private final long[] cents;
+    private final byte[] typeCodes;
+    private final int[] noteCodes;
+    private final int[] monthIndex;
+    private final String[] typeDictionary;
+    private final String[] noteDictionary;
+    private final int firstMonth;
+    private final int monthCount;
+    // Row indexes per type, sorted by amount, for O(1) percentiles and top-N
+    private final int[][] rowsByAmount;
+
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    /** Returns the current snapshot, reloading it first if the database has changed since it was built. */
+    public static AnalyticsEngine get() throws SQLException {
+        String current = currentVersion();
+        AnalyticsEngine engine = snapshot;
+        if (engine == null || !engine.version.equals(current)) {
+            synchronized (AnalyticsEngine.class) {
+                engine = snapshot;
+                if (engine == null || !engine.version.equals(current)) {
+                    engine = load(current);
+                    snapshot = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /** Cheap fingerprint of the ledger, read from its month versions and rollup; changes when rows or amounts change. */
+    static String currentVersion() throws SQLException {
+        Ledger ledger = Ledger.shared();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(VERSION_SQL);
+            pstmt.setLong(1, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1) + ":" + rs.getString(2) + ":" + rs.getString(3) + ":" + rs.getString(4);
+            }
+        }
+    }
+
+    private static AnalyticsEngine load(String version) throws SQLException {
+        Builder builder = new Builder();
+        Ledger ledger = Ledger.shared();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(LOAD_SQL);
+            pstmt.setLong(1, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    builder.add(rs.getLong(5), rs.getString(1), rs.getLong(2), rs.getString(3), rs.getString(4));
+                }
+            }
+            TransactionArchive.Scan archived = TransactionArchive.scan(conn, ledger, ReportFilter.ALL, true);
+            for (ArchiveSegment.Row row = archived.next(); row != null; row = archived.next()) {
+                builder.add(row.id(), row.type(), row.amountCents(), row.notes(), row.timestamp());
+            }
+        }
+        return builder.build(version);
+    }
+
+    private AnalyticsEngine(String version, Builder b) {
+        this.version = version;
+        this.size = b.size;
+        this.ids = Arrays.copyOf(b.ids, size);
+        this.epochMillis = Arrays.copyOf(b.epochMillis, size);
+        this.cents = Arrays.copyOf(b.cents, size);
+        this.typeCodes = Arrays.copyOf(b.typeCodes, size);
+        this.noteCodes = Arrays.copyOf(b.noteCodes, size);
+        this.typeDictionary = b.types.keySet().toArray(new String[0]);
+        this.noteDictionary = b.notes.keySet().toArray(new String[0]);
+
+        int minMonth = Integer.MAX_VALUE;
+        int maxMonth = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minMonth = Math.min(minMonth, b.monthKeys[i]);
+            maxMonth = Math.max(maxMonth, b.monthKeys[i]);
+        }
+        this.firstMonth = size == 0 ? 0 : minMonth;
+        this.monthCount = size == 0 ? 0 : maxMonth - minMonth + 1;
+        this.monthIndex = new int[size];
+        for (int i = 0; i < size; i++) {
+            monthIndex[i] = b.monthKeys[i] - firstMonth;
+        }
+
+        this.rowsByAmount = new int[typeDictionary.length][];
+        for (int t = 0; t < typeDictionary.length; t++) {
+            rowsByAmount[t] = rowsSortedByAmount(t);
+        }
+    }
+
+    private int[] rowsSortedByAmount(int type) {
+        int count = 0;
+        boolean packable = true;
+        for (int i = 0; i < size; i++) {
+            if (typeCodes[i] == type) {
+                count++;
+                packable &= cents[i] >= 0 && cents[i] <= Integer.MAX_VALUE;
+            }
+        }
+        int[] rows = new int[count];
+        if (packable) {
+            // Sort (amount << 32 | row) keys as primitives instead of boxing row indexes
+            long[] keys = new long[count];
+            int k = 0;
+            for (int i = 0; i < size; i++) {
+                if (typeCodes[i] == type) {
+                    keys[k++] = (cents[i] << 32) | i;
+                }
+            }
+            Arrays.sort(keys);
+            for (int j = 0; j < count; j++) {
+                rows[j] = (int) keys[j];
+            }
+        } else {
+            Integer[] boxed = new Integer[count];
+            int k = 0;
+            for (int i = 0; i < size; i++) {
+                if (typeCodes[i] == type) {
+                    boxed[k++] = i;
+                }
+            }
+            Arrays.sort(boxed, Comparator.comparingLong(i -> cents[i]));
+            for (int j = 0; j < count; j++) {
+                rows[j] = boxed[j];
+            }
+        }
+        return rows;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public record MonthTotal(int yearMonth, String type, long cents, long count) {
+        public double total() {
+            return Money.toDouble(cents);
+        }
+    }
+
+    public record NoteTotal(String notes, long cents, long count) {
+        public double total() {
+            return Money.toDouble(cents);
+        }
+    }
+
+    /** Per-month, per-type totals for the rows matching {@code filter}, ordered by month then type. */
+    public List<MonthTotal> monthlyTotals(ReportFilter filter) {
+        long from = filter.from() == null ? Long.MIN_VALUE : filter.from().toEpochDay() * 86_400_000L;
+        long to = filter.to() == null ? Long.MAX_VALUE : (filter.to().toEpochDay() + 1) * 86_400_000L;
+        int type = filter.type() == null ? -1 : typeCode(filter.type());
+        if (filter.type() != null && type < 0) {
+            return List.of();
+        }
+
+        int types = typeDictionary.length;
+        long[][] sums = ForkJoinPool.commonPool().invoke(new MonthScan(0, size, from, to, type));
+        List<MonthTotal> result = new ArrayList<>();
+        String[] sortedTypes = typeDictionary.clone();
+        Arrays.sort(sortedTypes);
+        for (int m = 0; m < monthCount; m++) {
+            for (String typeName : sortedTypes) {
+                int t = typeCode(typeName);
+                int slot = m * types + t;
+                if (sums[1][slot] > 0) {
+                    result.add(new MonthTotal(monthKeyToYearMonth(firstMonth + m), typeName, sums[0][slot], sums[1][slot]));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Amount (in cents) at percentile {@code p} (0-100) for one type, or -1 if there are no rows. */
+    public long percentileCents(String type, double p) {
+        int t = typeCode(type);
+        if (t < 0 || rowsByAmount[t].length == 0) {
+            return -1;
+        }
+        int[] rows = rowsByAmount[t];
+        int rank = (int) Math.ceil(p / 100.0 * rows.length) - 1;
+        return cents[rows[Math.max(0, Math.min(rows.length - 1, rank))]];
+    }
+
+    /** Ids of the {@code n} largest transactions of one type, largest first. */
+    public long[] topTransactionIds(String type, int n) {
+        int t = typeCode(type);
+        if (t < 0) {
+            return new long[0];
+        }
+        int[] rows = rowsByAmount[t];
+        int count = Math.min(n, rows.length);
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = ids[rows[rows.length - 1 - i]];
+        }
+        return result;
+    }
+
+    /**
+     * The {@code n} notes (payees/descriptions) with the highest total for one type. The schema has
+     * no category column, so the dictionary-encoded notes serve as the category dimension.
+     */
+    public List<NoteTotal> topNotes(String type, int n) {
+        int t = typeCode(type);
+        if (t < 0) {
+            return List.of();
+        }
+        long[] totals = new long[noteDictionary.length];
+        long[] counts = new long[noteDictionary.length];
+        for (int i = 0; i < size; i++) {
+            if (typeCodes[i] == t) {
+                totals[noteCodes[i]] += cents[i];
+                counts[noteCodes[i]]++;
+            }
+        }
+        // Bounded min-heap of note codes keeps top-N selection at O(notes * log n)
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Comparator.comparingLong(code -> totals[code]));
+        for (int code = 0; code < totals.length; code++) {
+            if (counts[code] == 0) {
+                continue;
+            }
+            if (heap.size() < n) {
+                heap.add(code);
+            } else if (totals[code] > totals[heap.peek()]) {
+                heap.poll();
+                heap.add(code);
+            }
+        }
+        List<NoteTotal> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int code = heap.poll();
+            result.add(new NoteTotal(noteDictionary[code], totals[code], counts[code]));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    private int typeCode(String type) {
+        for (int t = 0; t < typeDictionary.length; t++) {
+            if (typeDictionary[t].equals(type)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static int monthKeyToYearMonth(int monthKey) {
+        return (monthKey / 12) * 100 + monthKey % 12 + 1;
+    }
+
+    /** Sums cents and counts into a dense [month * types + type] grid over a row range. */
+    private final class MonthScan extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+        private final long from;
+        private final long to;
+        private final int type;
+
+        MonthScan(int start, int end, long from, long to, int type) {
+            this.start = start;
+            this.end = end;
+            this.from = from;
+            this.to = to;
+            this.type = type;
+        }
+
+        @Override
+        protected long[][] compute() {
+            if (end - start > PARALLEL_THRESHOLD) {
+                int mid = (start + end) >>> 1;
+                MonthScan left = new MonthScan(start, mid, from, to, type);
+                left.fork();
+                long[][] right = new MonthScan(mid, end, from, to, type).compute();
+                long[][] merged = left.join();
+                for (int i = 0; i < merged[0].length; i++) {
+                    merged[0][i] += right[0][i];
+                    merged[1][i] += right[1][i];
+                }
+                return merged;
+            }
+
+            int types = typeDictionary.length;
+            long[] sums = new long[monthCount * types];
+            long[] counts = new long[monthCount * types];
+            long[] millis = epochMillis;
+            byte[] codes = typeCodes;
+            for (int i = start; i < end; i++) {
+                long ts = millis[i];
+                if (ts >= from && ts < to && (type < 0 || codes[i] == type)) {
+                    int slot = monthIndex[i] * types + codes[i];
+                    sums[slot] += cents[i];
+                    counts[slot]++;
+                }
+            }
+            return new long[][]{sums, counts};
+        }
+    }
+
+    /** Growable column buffers used while streaming rows out of SQLite. */
+    private static final class Builder {
+        private int size;
+        private long[] ids = new long[1024];
+        private long[] epochMillis = new long[1024];
+        private long[] cents = new long[1024];
+        private byte[] typeCodes = new byte[1024];
+        private int[] noteCodes = new int[1024];
+        private int[] monthKeys = new int[1024];
+        private final Map<String, Integer> types = new LinkedHashMap<>();
+        private final Map<String, Integer> notes = new LinkedHashMap<>();
+
+        void add(long id, String type, long amountCents, String note, String timestamp) {
+            long day = TransactionStore.epochDay(timestamp);
+            if (day == Long.MIN_VALUE) {
+                return; // not a parseable date; cannot be placed in a month
+            }
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                epochMillis = Arrays.copyOf(epochMillis, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                typeCodes = Arrays.copyOf(typeCodes, capacity);
+                noteCodes = Arrays.copyOf(noteCodes, capacity);
+                monthKeys = Arrays.copyOf(monthKeys, capacity);
+            }
+            ids[size] = id;
+            epochMillis[size] = day * 86_400_000L + secondsOfDay(timestamp) * 1000L;
+            cents[size] = amountCents;
+            typeCodes[size] = (byte) (int) types.computeIfAbsent(type, k -> types.size());
+            noteCodes[size] = notes.computeIfAbsent(note == null ? "" : note, k -> notes.size());
+            int yearMonth = TransactionStore.yearMonth(timestamp);
+            monthKeys[size] = (yearMonth / 100) * 12 + (yearMonth % 100) - 1;
+            size++;
+        }
+
+        private static int secondsOfDay(String timestamp) {
+            if (timestamp.length() < 19) {
+                return 0;
+            }
+            int h = (timestamp.charAt(11) - '0') * 10 + (timestamp.charAt(12) - '0');
+            int m = (timestamp.charAt(14) - '0') * 10 + (timestamp.charAt(15) - '0');
+            int s = (timestamp.charAt(17) - '0') * 10 + (timestamp.charAt(18) - '0');
+            return h * 3600 + m * 60 + s;
+        }
+
+        AnalyticsEngine build(String version) {
+            if (types.size() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct transaction types: " + types.size());
+            }
+            return new AnalyticsEngine(version, this);
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Schema.migrate();
+        long start = System.nanoTime();
+        AnalyticsEngine engine = get();
+        System.out.printf("Loaded %,d transactions in %.1f ms%n", engine.size(), (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        List<MonthTotal> totals = engine.monthlyTotals(ReportFilter.ALL);
+        System.out.printf("Monthly totals: %d groups in %.2f ms%n", totals.size(), (System.nanoTime() - start) / 1e6);
+
+        for (String type : List.of("Income", "Expense")) {
+            System.out.printf("%s p50=%s p90=%s p99=%s%n", type,
+                    Money.format(engine.percentileCents(type, 50)),
+                    Money.format(engine.percentileCents(type, 90)),
+                    Money.format(engine.percentileCents(type, 99)));
+        }
+        System.out.println("Top expense notes:");
+        for (NoteTotal note : engine.topNotes("Expense", 5)) {
+            System.out.printf("  %-40s %12s (%d)%n", note.notes(), Money.format(note.cents()), note.count());
+        }
+    }
+}
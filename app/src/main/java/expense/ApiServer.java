@@ -0,0 +1,621 @@
+package expense;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP/JSON API over the same stores the console tools use, on the JDK's built-in server.
+ * Requests run on virtual threads where the JVM has them. At most {@code maxConcurrent} run at
+ * once; the rest are answered 503 straight away instead of queueing.
+ *
+ * <pre>
+ * POST   /api/login               {"username", "password"} -> {"token", "userId"}
+ * GET    /api/transactions        ?type=&amp;from=&amp;to=&amp;min=&amp;max=&amp;q=&amp;limit= (limit=0 streams everything)
+ * POST   /api/transactions        {"type", "amount", "notes", "timestamp", "category"}
+ * GET    /api/transactions/{id}
+ * PUT    /api/transactions/{id}   {"amount", "notes"}
+ * DELETE /api/transactions/{id}
+ * GET    /api/budget?month=2025-01&amp;category=
+ * PUT    /api/budget              {"month", "category", "amount"}
+ * GET    /api/report              ?format=text|pdf|csv|html&amp;from=&amp;to=&amp;type=
+ * GET    /api/stats
+ * GET    /metrics                 Prometheus text format, see {@link QueryMetrics}
+ * </pre>
+ * Everything but login, stats and metrics needs {@code Authorization: Bearer <token>} and acts on the
+ * caller's {@link Ledger}. Amounts are sent as decimal text or numbers and returned both ways.
+ *
+ * Configured with {@code expense.api.*} system properties; see {@link Config#fromSystemProperties()}.
+ */
+public final class ApiServer {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // Rows fetched per keyset page while streaming a listing
+    private static final int STREAM_PAGE_ROWS = 500;
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    // Expired sessions are dropped by the first login after this long since the last sweep
+    private static final long SESSION_SWEEP_MILLIS = 60_000;
+
+    static {
+        // The server writes headers and body separately; with Nagle on, every small response
+        // waits out the client's delayed ACK (~40 ms). Read once, when the server classes load.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    public record Config(String host, int port, int maxConcurrent, long sessionMillis) {
+        public static Config fromSystemProperties() {
+            return new Config(
+                    System.getProperty("expense.api.host", "127.0.0.1"),
+                    Integer.getInteger("expense.api.port", 8080),
+                    Integer.getInteger("expense.api.maxConcurrent", 64),
+                    Long.getLong("expense.api.sessionMinutes", 60) * 60_000);
+        }
+    }
+
+    private record Session(long userId, long expiresAt) {
+    }
+
+    /** Ends a request with an HTTP error status and a JSON message. */
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Endpoint {
+        void handle(HttpExchange exchange) throws IOException, SQLException;
+    }
+
+    private final Config config;
+    private final AuthService auth;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ApiServer(Config config, AuthService auth) throws IOException {
+        this.config = config;
+        this.auth = auth;
+        this.permits = new Semaphore(config.maxConcurrent());
+        this.executor = VirtualThreads.newExecutor("http");
+        this.server = HttpServer.create(new InetSocketAddress(config.host(), config.port()), 0);
+        server.setExecutor(executor);
+        server.createContext("/api/login", capped(this::login));
+        server.createContext("/api/transactions", capped(this::transactions));
+        server.createContext("/api/budget", capped(this::budget));
+        server.createContext("/api/report", capped(this::report));
+        server.createContext("/api/stats", capped(this::stats));
+        server.createContext("/metrics", capped(this::metrics));
+    }
+
+    public static void main(String[] args) throws IOException {
+        try {
+            Schema.migrate();
+        } catch (SQLException e) {
+            System.err.println("Error upgrading database schema: " + e.getMessage());
+            return;
+        }
+        UserAuthentication.createUsersTable();
+        Config config = Config.fromSystemProperties();
+        if (args.length > 0) {
+            config = new Config(config.host(), Integer.parseInt(args[0]), config.maxConcurrent(), config.sessionMillis());
+        }
+        ApiServer server = new ApiServer(config, AuthService.get());
+        server.start();
+        System.out.println("Listening on http://" + config.host() + ":" + server.port() + "/api/ ("
+                + config.maxConcurrent() + " concurrent requests"
+                + (VirtualThreads.available() ? ", virtual threads)" : ")"));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** The bound port; differs from the configured one when that was 0. */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private HttpHandler capped(Endpoint endpoint) {
+        return exchange -> {
+            if (!permits.tryAcquire()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Too many requests in flight");
+                exchange.close();
+                return;
+            }
+            try {
+                endpoint.handle(exchange);
+            } catch (ApiException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (SQLException e) {
+                System.err.println("Error handling " + exchange.getRequestMethod() + " "
+                        + exchange.getRequestURI().getPath() + ": " + e.getMessage());
+                sendError(exchange, 500, "Database error");
+            } catch (IOException e) {
+                // Client went away mid-response; nothing left to tell it
+            } catch (RuntimeException e) {
+                System.err.println("Error handling " + exchange.getRequestMethod() + " "
+                        + exchange.getRequestURI().getPath() + ": " + e);
+                sendError(exchange, 500, "Internal error");
+            } finally {
+                handled.increment();
+                permits.release();
+                exchange.close();
+            }
+        };
+    }
+
+    // ---- endpoints ----
+
+    private void login(HttpExchange exchange) throws IOException, SQLException {
+        requireMethod(exchange, "POST");
+        Map<String, String> body = readJson(exchange);
+        String username = required(body, "username");
+        String password = required(body, "password");
+        String address = exchange.getRemoteAddress().getAddress().getHostAddress();
+        switch (auth.login(username, password, address).join()) {
+            case SUCCESS -> {
+                long userId = auth.userId(username);
+                String token = newToken();
+                long now = System.currentTimeMillis();
+                sweepSessions(now);
+                sessions.put(token, new Session(userId, now + config.sessionMillis()));
+                sendJson(exchange, 200, "{\"token\":" + Json.quote(token) + ",\"userId\":" + userId
+                        + ",\"expiresInSeconds\":" + config.sessionMillis() / 1000 + "}");
+            }
+            case INVALID -> throw new ApiException(401, "Invalid username or password");
+            case THROTTLED -> {
+                exchange.getResponseHeaders().set("Retry-After", "5");
+                throw new ApiException(429, "Too many login attempts");
+            }
+            case BUSY -> {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                throw new ApiException(503, "Too many logins in progress");
+            }
+            default -> throw new ApiException(500, "Login failed");
+        }
+    }
+
+    /**
+     * Drops expired sessions, at most once per SESSION_SWEEP_MILLIS. Tokens that are never used
+     * again would otherwise stay in the map; only one login at a time does the sweep.
+     */
+    private void sweepSessions(long now) {
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + SESSION_SWEEP_MILLIS)) {
+            sessions.values().removeIf(session -> session.expiresAt() < now);
+        }
+    }
+
+    private void transactions(HttpExchange exchange) throws IOException, SQLException {
+        Ledger ledger = authenticate(exchange);
+        String rest = exchange.getRequestURI().getPath().substring("/api/transactions".length());
+        if (rest.isEmpty() || rest.equals("/")) {
+            switch (exchange.getRequestMethod()) {
+                case "GET" -> listTransactions(exchange, ledger);
+                case "POST" -> createTransaction(exchange, ledger);
+                default -> throw methodNotAllowed(exchange, "GET, POST");
+            }
+            return;
+        }
+        long id;
+        try {
+            id = Long.parseLong(rest.substring(1));
+        } catch (NumberFormatException e) {
+            throw new ApiException(404, "No such resource");
+        }
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> {
+                TransactionPager.Row row = TransactionPager.find(ledger, id);
+                if (row == null) {
+                    throw new ApiException(404, "No transaction " + id);
+                }
+                StringBuilder json = new StringBuilder(128);
+                appendRow(json, row);
+                sendJson(exchange, 200, json.toString());
+            }
+            case "PUT" -> {
+                Map<String, String> body = readJson(exchange);
+                long amountCents = amount(required(body, "amount"));
+                if (!TransactionStore.update(ledger, id, amountCents, body.get("notes"))) {
+                    throw missing(ledger, id);
+                }
+                StringBuilder json = new StringBuilder(128);
+                appendRow(json, TransactionPager.find(ledger, id));
+                sendJson(exchange, 200, json.toString());
+            }
+            case "DELETE" -> {
+                if (!TransactionStore.delete(ledger, id)) {
+                    throw missing(ledger, id);
+                }
+                exchange.sendResponseHeaders(204, -1);
+            }
+            default -> throw methodNotAllowed(exchange, "GET, PUT, DELETE");
+        }
+    }
+
+    /**
+     * Streams the listing newest first, one keyset page at a time, so a response of any size
+     * holds at most one page in memory. The first page is read before the headers are sent so
+     * that errors still get a proper status.
+     */
+    private void listTransactions(HttpExchange exchange, Ledger ledger) throws IOException, SQLException {
+        Map<String, String> query = query(exchange);
+        TransactionPager.Filter filter = new TransactionPager.Filter(
+                type(query.get("type")),
+                query.containsKey("min") ? amount(query.get("min")) : null,
+                query.containsKey("max") ? amount(query.get("max")) : null,
+                date(query.get("from")),
+                date(query.get("to")),
+                query.get("q"));
+        long limit = query.containsKey("limit") ? Long.parseLong(query.get("limit")) : DEFAULT_LIMIT;
+        if (limit < 0) {
+            throw new ApiException(400, "limit must be 0 (everything) or more");
+        }
+        long remaining = limit == 0 ? Long.MAX_VALUE : limit;
+
+        TransactionPager.Page page = TransactionPager.firstPage(ledger, filter, pageSize(remaining));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                STREAM_BUFFER_SIZE)) {
+            StringBuilder json = new StringBuilder(256);
+            json.append("{\"transactions\":[");
+            boolean first = true;
+            while (true) {
+                for (TransactionPager.Row row : page.rows()) {
+                    if (!first) {
+                        json.append(',');
+                    }
+                    first = false;
+                    appendRow(json, row);
+                    out.append(json);
+                    json.setLength(0);
+                }
+                remaining -= page.rows().size();
+                if (!page.hasOlder() || remaining <= 0) {
+                    break;
+                }
+                page = TransactionPager.olderPage(ledger, filter, page.oldest(), pageSize(remaining));
+            }
+            out.append("]}");
+        }
+    }
+
+    private static int pageSize(long remaining) {
+        return (int) Math.min(remaining, STREAM_PAGE_ROWS);
+    }
+
+    private void createTransaction(HttpExchange exchange, Ledger ledger) throws IOException, SQLException {
+        Map<String, String> body = readJson(exchange);
+        String type = type(required(body, "type"));
+        long amountCents = amount(required(body, "amount"));
+        String timestamp = body.get("timestamp");
+        if (timestamp == null) {
+            timestamp = TransactionStore.now();
+        } else if (TransactionStore.yearMonth(timestamp) < 0) {
+            throw new ApiException(400, "timestamp must look like yyyy-MM-dd[ HH:mm:ss]");
+        }
+        String category = body.get("category");
+        if (category != null && category.isBlank()) {
+            category = null;
+        }
+        long id = TransactionStore.insert(ledger, type, amountCents, body.get("notes"), timestamp, category);
+        exchange.getResponseHeaders().set("Location", "/api/transactions/" + id);
+        StringBuilder json = new StringBuilder(128);
+        appendRow(json, new TransactionPager.Row(id, type, amountCents, body.get("notes"), timestamp,
+                category == null ? null : category.trim()));
+        sendJson(exchange, 201, json.toString());
+    }
+
+    private void budget(HttpExchange exchange) throws IOException, SQLException {
+        Ledger ledger = authenticate(exchange);
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> {
+                Map<String, String> query = query(exchange);
+                String month = query.get("month");
+                if (month == null) {
+                    throw new ApiException(400, "month is required");
+                }
+                int yearMonth = yearMonth(month);
+                String category = query.getOrDefault("category", "").trim();
+                Long budgetCents = BudgetingTool.budgetCents(ledger, yearMonth, category);
+                long expenseCents = BudgetingTool.expenseCents(ledger, yearMonth, category);
+                StringBuilder json = new StringBuilder(128);
+                json.append("{\"month\":");
+                Json.string(json, Schema.formatYearMonth(yearMonth));
+                json.append(",\"category\":");
+                Json.string(json, category);
+                json.append(",\"expenseCents\":").append(expenseCents);
+                if (budgetCents == null) {
+                    json.append(",\"budgetCents\":null,\"remainingCents\":null,\"exceeded\":false}");
+                } else {
+                    json.append(",\"budgetCents\":").append(budgetCents)
+                            .append(",\"remainingCents\":").append(budgetCents - expenseCents)
+                            .append(",\"exceeded\":").append(expenseCents > budgetCents).append('}');
+                }
+                sendJson(exchange, 200, json.toString());
+            }
+            case "PUT" -> {
+                Map<String, String> body = readJson(exchange);
+                int yearMonth = yearMonth(required(body, "month"));
+                String category = body.getOrDefault("category", "");
+                category = category == null ? "" : category.trim();
+                long amountCents = amount(required(body, "amount"));
+                BudgetingTool.setBudget(ledger, yearMonth, category, amountCents);
+                sendJson(exchange, 200, "{\"month\":" + Json.quote(Schema.formatYearMonth(yearMonth)) + ",\"category\":"
+                        + Json.quote(category) + ",\"budgetCents\":" + amountCents + "}");
+            }
+            default -> throw methodNotAllowed(exchange, "GET, PUT");
+        }
+    }
+
+    private void report(HttpExchange exchange) throws IOException, SQLException {
+        requireMethod(exchange, "GET");
+        Ledger ledger = authenticate(exchange);
+        Map<String, String> query = query(exchange);
+        ReportFilter filter = new ReportFilter(date(query.get("from")), date(query.get("to")), type(query.get("type")));
+        ReportPipeline.Format format;
+        try {
+            format = ReportPipeline.Format.parse(query.getOrDefault("format", "text"));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "format must be text, pdf, csv or html");
+        }
+        String contentType = switch (format) {
+            case TEXT -> "text/plain; charset=utf-8";
+            case PDF -> "application/pdf";
+            case CSV -> "text/csv; charset=utf-8";
+            case HTML -> "text/html; charset=utf-8";
+        };
+        if (format == ReportPipeline.Format.PDF || format == ReportPipeline.Format.CSV) {
+            exchange.getResponseHeaders().set("Content-Disposition",
+                    "attachment; filename=\"BudgetReport." + format.extension() + "\"");
+        }
+
+        if (!ReportCache.ENABLED) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), STREAM_BUFFER_SIZE)) {
+                ReportPipeline.render(ledger, filter, Map.of(format, out));
+            }
+            return;
+        }
+        ReportCache.Report report;
+        try {
+            report = ReportCache.get(ledger, filter, EnumSet.of(format));
+        } catch (IOException e) {
+            // Not the client going away: nothing has been sent yet
+            throw new UncheckedIOException(e);
+        }
+        // The file is held open, so eviction cannot remove it before it is sent
+        try (report) {
+            if (format == ReportPipeline.Format.TEXT && !report.result().hasData()) {
+                throw new ApiException(404, "No data available to generate a report");
+            }
+            FileChannel file = report.files().get(format);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("X-Report-Cache", report.cached() ? "hit" : "miss");
+            exchange.sendResponseHeaders(200, file.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                Channels.newInputStream(file).transferTo(out);
+            }
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        AuthService.Metrics metrics = auth.metrics();
+        sendJson(exchange, 200, String.format(
+                "{\"handled\":%d,\"rejected\":%d,\"inFlight\":%d,\"maxConcurrent\":%d,\"sessions\":%d,"
+                        + "\"logins\":{\"success\":%d,\"invalid\":%d,\"throttled\":%d,\"busy\":%d}}",
+                handled.sum(), rejected.sum(), config.maxConcurrent() - permits.availablePermits(),
+                config.maxConcurrent(), sessions.size(),
+                metrics.success(), metrics.invalid(), metrics.throttled(), metrics.busy()));
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        byte[] bytes = QueryMetrics.prometheusText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // ---- helpers ----
+
+    private Ledger authenticate(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            throw new ApiException(401, "Log in at /api/login and send Authorization: Bearer <token>");
+        }
+        String token = header.substring("Bearer ".length()).trim();
+        Session session = sessions.get(token);
+        if (session == null || session.expiresAt() < System.currentTimeMillis()) {
+            if (session != null) {
+                sessions.remove(token);
+            }
+            throw new ApiException(401, "Session expired or unknown; log in again");
+        }
+        return Ledger.forUser(session.userId());
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static void appendRow(StringBuilder json, TransactionPager.Row row) throws IOException {
+        json.append("{\"id\":").append(row.id()).append(",\"type\":");
+        Json.string(json, row.type());
+        json.append(",\"amountCents\":").append(row.amountCents()).append(",\"amount\":");
+        Money.appendTo(json, row.amountCents());
+        json.append(",\"notes\":");
+        Json.string(json, row.notes());
+        json.append(",\"timestamp\":");
+        Json.string(json, row.timestamp());
+        json.append(",\"category\":");
+        Json.string(json, row.category());
+        json.append('}');
+    }
+
+    private static Map<String, String> readJson(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (body.length > MAX_BODY_BYTES) {
+            throw new ApiException(413, "Request body is larger than " + MAX_BODY_BYTES + " bytes");
+        }
+        return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            if (!value.isEmpty()) {
+                params.put(name, value);
+            }
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null || value.isBlank()) {
+            throw new ApiException(400, name + " is required");
+        }
+        return value;
+    }
+
+    private static long amount(String text) {
+        long cents = Money.parse(text.trim());
+        if (cents == Money.INVALID || cents < 0) {
+            throw new ApiException(400, "Invalid amount: " + text);
+        }
+        return cents;
+    }
+
+    private static String type(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.equalsIgnoreCase("Income")) {
+            return "Income";
+        }
+        if (text.equalsIgnoreCase("Expense")) {
+            return "Expense";
+        }
+        throw new ApiException(400, "type must be Income or Expense");
+    }
+
+    private static LocalDate date(String text) {
+        try {
+            return text == null ? null : LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new ApiException(400, "Dates must be YYYY-MM-DD: " + text);
+        }
+    }
+
+    private static int yearMonth(String month) {
+        try {
+            return Schema.yearMonth(month);
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            throw new ApiException(400, "Unrecognised month: " + month + " (use a month name or YYYY-MM)");
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw methodNotAllowed(exchange, method);
+        }
+    }
+
+    // Archived transactions exist but are read-only
+    private static ApiException missing(Ledger ledger, long id) throws SQLException {
+        return TransactionArchive.isArchived(ledger, id)
+                ? new ApiException(409, "Transaction " + id + " is archived and cannot be changed")
+                : new ApiException(404, "No transaction " + id);
+    }
+
+    private static ApiException methodNotAllowed(HttpExchange exchange, String allowed) {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        return new ApiException(405, "Method not allowed; use " + allowed);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return; // a streamed response had already started; the connection is closed instead
+        }
+        try {
+            sendJson(exchange, status, "{\"error\":" + Json.quote(message) + "}");
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package expense;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One archived month of one ledger: an immutable file of compressed columns with a footer of
+ * per-(type, category) count, sum, min and max. Written once by {@link TransactionArchive} and
+ * only ever read through a read-only memory mapping; the footer alone answers monthly totals, so
+ * a summary never decompresses a row.
+ *
+ * Layout: an 8-byte header, the deflated columns (id, timestamp, type, amount, notes, category),
+ * the footer, then a trailer of the footer's length and CRC and an end marker. The footer holds
+ * each column's offset, lengths and CRC, so a reader can inflate only the columns it needs.
+ * Rows are in (timestamp, id) order; timestamps are front-coded against the previous row, ids
+ * and amounts are zigzag varints, and type and category are dictionary codes.
+ */
+final class ArchiveSegment {
+    static final String EXTENSION = ".seg";
+
+    private static final byte[] HEADER = {'E', 'X', 'S', 'E', 'G', 0, 0, 1};
+    private static final byte[] END = {'E', 'X', 'S', 'E', 'G', 'E', 'N', 'D'};
+    private static final int TRAILER_SIZE = 8 + END.length;
+    private static final int VERSION = 1;
+
+    private static final int ID = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int TYPE = 2;
+    private static final int AMOUNT = 3;
+    private static final int NOTES = 4;
+    private static final int CATEGORY = 5;
+    private static final int COLUMNS = 6;
+
+    /** An archived transaction; category is null when it has none. */
+    record Row(long id, String timestamp, String type, long amountCents, String notes, String category) {
+    }
+
+    /** Totals of the rows of one type and category (null for none). */
+    record Group(String type, String category, long count, long totalCents, long minCents, long maxCents) {
+    }
+
+    record Column(long offset, int length, int rawLength, long crc) {
+    }
+
+    /** What the footer says about the segment. */
+    record Footer(long userId, int yearMonth, int rows, long minId, long maxId, String firstTimestamp,
+                  String lastTimestamp, List<Group> groups, Column[] columns) {
+        long totalCents(String type, String category) {
+            long total = 0;
+            for (Group group : groups) {
+                if ((type == null || type.equals(group.type()))
+                        && (category == null || category.equals(group.category()))) {
+                    total += group.totalCents();
+                }
+            }
+            return total;
+        }
+
+        boolean hasType(String type) {
+            return type == null || groups.stream().anyMatch(g -> g.type().equals(type));
+        }
+
+        long minCents() {
+            return groups.stream().mapToLong(Group::minCents).min().orElse(0);
+        }
+
+        long maxCents() {
+            return groups.stream().mapToLong(Group::maxCents).max().orElse(0);
+        }
+    }
+
+    private ArchiveSegment() {
+    }
+
+    /**
+     * Writes the rows of one ledger month, in (timestamp, id) order, to {@code file}. The file is
+     * written beside it under a temporary name, forced to disk and renamed into place, so it is
+     * either complete or absent.
+     */
+    static Footer write(Path file, long userId, int yearMonth, List<Row> rows) throws IOException {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("An archive segment needs at least one row");
+        }
+        Buffer[] columns = new Buffer[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            columns[c] = new Buffer();
+        }
+        Map<String, Integer> types = new LinkedHashMap<>();
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        Map<List<String>, long[]> groups = new LinkedHashMap<>();
+        long previousId = 0;
+        byte[] previousTimestamp = new byte[0];
+        long minId = Long.MAX_VALUE;
+        long maxId = Long.MIN_VALUE;
+        for (Row row : rows) {
+            columns[ID].zigzag(row.id() - previousId);
+            previousId = row.id();
+            minId = Math.min(minId, row.id());
+            maxId = Math.max(maxId, row.id());
+
+            byte[] timestamp = row.timestamp().getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int limit = Math.min(timestamp.length, previousTimestamp.length);
+            while (shared < limit && timestamp[shared] == previousTimestamp[shared]) {
+                shared++;
+            }
+            columns[TIMESTAMP].varint(shared);
+            columns[TIMESTAMP].varint(timestamp.length - shared);
+            columns[TIMESTAMP].write(timestamp, shared, timestamp.length - shared);
+            previousTimestamp = timestamp;
+
+            columns[TYPE].varint(types.computeIfAbsent(row.type(), k -> types.size()));
+            columns[AMOUNT].zigzag(row.amountCents());
+            columns[NOTES].nullableString(row.notes());
+            columns[CATEGORY].varint(row.category() == null ? 0 : categories.computeIfAbsent(row.category(), k -> categories.size() + 1));
+
+            long[] group = groups.computeIfAbsent(Arrays.asList(row.type(), row.category()),
+                    k -> new long[]{0, 0, Long.MAX_VALUE, Long.MIN_VALUE});
+            group[0]++;
+            group[1] += row.amountCents();
+            group[2] = Math.min(group[2], row.amountCents());
+            group[3] = Math.max(group[3], row.amountCents());
+        }
+        columns[TYPE].prependDictionary(types.keySet());
+        columns[CATEGORY].prependDictionary(categories.keySet());
+
+        List<Group> groupList = new ArrayList<>(groups.size());
+        groups.forEach((key, g) -> groupList.add(new Group(key.get(0), key.get(1), g[0], g[1], g[2], g[3])));
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        Column[] written = new Column[COLUMNS];
+        Footer footer;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = writeFully(channel, ByteBuffer.wrap(HEADER));
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                for (int c = 0; c < COLUMNS; c++) {
+                    byte[] raw = columns[c].toByteArray();
+                    byte[] compressed = deflate(deflater, raw);
+                    CRC32 crc = new CRC32();
+                    crc.update(raw);
+                    written[c] = new Column(offset, compressed.length, raw.length, crc.getValue());
+                    offset += writeFully(channel, ByteBuffer.wrap(compressed));
+                }
+            } finally {
+                deflater.end();
+            }
+            footer = new Footer(userId, yearMonth, rows.size(), minId, maxId, rows.get(0).timestamp(),
+                    rows.get(rows.size() - 1).timestamp(), List.copyOf(groupList), written);
+            byte[] encoded = encodeFooter(footer);
+            CRC32 crc = new CRC32();
+            crc.update(encoded);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            trailer.putInt(encoded.length).putInt((int) crc.getValue()).put(END).flip();
+            writeFully(channel, ByteBuffer.wrap(encoded));
+            writeFully(channel, trailer);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return footer;
+    }
+
+    /** Reads only the footer, through a mapping of the file's tail. */
+    static Footer footer(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER.length + TRAILER_SIZE) {
+                throw new IOException(file + " is too short to be an archive segment");
+            }
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+            int length = trailer.getInt();
+            int crc = trailer.getInt();
+            byte[] end = new byte[END.length];
+            trailer.get(end);
+            if (!Arrays.equals(end, END) || length <= 0 || length > size - HEADER.length - TRAILER_SIZE) {
+                throw new IOException(file + " is not a complete archive segment");
+            }
+            byte[] encoded = new byte[length];
+            channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE - length, length).get(encoded);
+            CRC32 check = new CRC32();
+            check.update(encoded);
+            if ((int) check.getValue() != crc) {
+                throw new IOException("Footer checksum mismatch in " + file);
+            }
+            return decodeFooter(encoded);
+        }
+    }
+
+    /** Every row, in (timestamp, id) order. Without {@code notes} that column is not inflated and notes are null. */
+    static List<Row> read(Path file, Footer footer, boolean notes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Inflater inflater = new Inflater();
+            ByteBuffer[] columns = new ByteBuffer[COLUMNS];
+            try {
+                for (int c = 0; c < COLUMNS; c++) {
+                    if (c != NOTES || notes) {
+                        columns[c] = inflate(inflater, mapped, footer.columns()[c], file);
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+
+            String[] types = dictionary(columns[TYPE], 0);
+            String[] categories = dictionary(columns[CATEGORY], 1);
+            List<Row> rows = new ArrayList<>(footer.rows());
+            long id = 0;
+            byte[] timestamp = new byte[32];
+            int timestampLength = 0;
+            for (int i = 0; i < footer.rows(); i++) {
+                id += unzigzag(varint(columns[ID]));
+                int shared = (int) varint(columns[TIMESTAMP]);
+                int suffix = (int) varint(columns[TIMESTAMP]);
+                if (shared + suffix > timestamp.length) {
+                    timestamp = Arrays.copyOf(timestamp, (shared + suffix) * 2);
+                }
+                columns[TIMESTAMP].get(timestamp, shared, suffix);
+                timestampLength = shared + suffix;
+                String type = types[(int) varint(columns[TYPE])];
+                long amount = unzigzag(varint(columns[AMOUNT]));
+                String note = notes ? nullableString(columns[NOTES]) : null;
+                String category = categories[(int) varint(columns[CATEGORY])];
+                rows.add(new Row(id, new String(timestamp, 0, timestampLength, StandardCharsets.UTF_8), type, amount,
+                        note, category));
+            }
+            return rows;
+        }
+    }
+
+    /** Checks the footer and every column against their checksums and the footer's totals. */
+    static Footer verify(Path file) throws IOException {
+        Footer footer = footer(file);
+        List<Row> rows = read(file, footer, true);
+        long count = 0;
+        long total = 0;
+        for (Group group : footer.groups()) {
+            count += group.count();
+            total += group.totalCents();
+        }
+        long rowTotal = rows.stream().mapToLong(Row::amountCents).sum();
+        if (count != rows.size() || total != rowTotal) {
+            throw new IOException(file + ": footer totals " + count + " rows / " + total + " cents, columns hold "
+                    + rows.size() + " / " + rowTotal);
+        }
+        return footer;
+    }
+
+    private static ByteBuffer inflate(Inflater inflater, MappedByteBuffer mapped, Column column, Path file)
+            throws IOException {
+        inflater.reset();
+        inflater.setInput(mapped.slice((int) column.offset(), column.length()));
+        byte[] raw = new byte[column.rawLength()];
+        try {
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, raw.length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != raw.length) {
+                throw new IOException("Truncated column in " + file);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column in " + file, e);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if (crc.getValue() != column.crc()) {
+            throw new IOException("Column checksum mismatch in " + file);
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+
+    private static byte[] encodeFooter(Footer footer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeLong(footer.userId());
+        out.writeInt(footer.yearMonth());
+        out.writeInt(footer.rows());
+        out.writeLong(footer.minId());
+        out.writeLong(footer.maxId());
+        out.writeUTF(footer.firstTimestamp());
+        out.writeUTF(footer.lastTimestamp());
+        out.writeInt(footer.groups().size());
+        for (Group group : footer.groups()) {
+            out.writeUTF(group.type());
+            out.writeBoolean(group.category() != null);
+            out.writeUTF(group.category() == null ? "" : group.category());
+            out.writeLong(group.count());
+            out.writeLong(group.totalCents());
+            out.writeLong(group.minCents());
+            out.writeLong(group.maxCents());
+        }
+        out.writeInt(footer.columns().length);
+        for (Column column : footer.columns()) {
+            out.writeLong(column.offset());
+            out.writeInt(column.length());
+            out.writeInt(column.rawLength());
+            out.writeLong(column.crc());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Footer decodeFooter(byte[] encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported archive segment version " + version);
+        }
+        long userId = in.readLong();
+        int yearMonth = in.readInt();
+        int rows = in.readInt();
+        long minId = in.readLong();
+        long maxId = in.readLong();
+        String first = in.readUTF();
+        String last = in.readUTF();
+        int groupCount = in.readInt();
+        List<Group> groups = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            String type = in.readUTF();
+            boolean hasCategory = in.readBoolean();
+            String category = in.readUTF();
+            groups.add(new Group(type, hasCategory ? category : null, in.readLong(), in.readLong(), in.readLong(),
+                    in.readLong()));
+        }
+        int columnCount = in.readInt();
+        if (columnCount != COLUMNS) {
+            throw new IOException("Archive segment has " + columnCount + " columns, expected " + COLUMNS);
+        }
+        Column[] columns = new Column[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            columns[c] = new Column(in.readLong(), in.readInt(), in.readInt(), in.readLong());
+        }
+        return new Footer(userId, yearMonth, rows, minId, maxId, first, last, List.copyOf(groups), columns);
+    }
+
+    // Dictionary of a type or category column; code 0 is null when the first code is 1
+    private static String[] dictionary(ByteBuffer column, int firstCode) {
+        int size = (int) varint(column);
+        String[] dictionary = new String[size + firstCode];
+        for (int i = 0; i < size; i++) {
+            dictionary[i + firstCode] = nullableString(column);
+        }
+        return dictionary;
+    }
+
+    private static long varint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String nullableString(ByteBuffer in) {
+        int length = (int) varint(in);
+        if (length == 0) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + length - 1);
+        return value;
+    }
+
+    /** A growable column being encoded. */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(4096);
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+        // Length + 1, then UTF-8; a length of 0 is null
+        void nullableString(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+
+        void prependDictionary(Iterable<String> entries) {
+            byte[] codes = toByteArray();
+            reset();
+            int size = 0;
+            for (String ignored : entries) {
+                size++;
+            }
+            varint(size);
+            for (String entry : entries) {
+                nullableString(entry);
+            }
+            writeBytes(codes);
+        }
+    }
+}
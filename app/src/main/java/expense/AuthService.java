@@ -0,0 +1,326 @@
+package expense;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Login and registration against users.db with the expensive part kept under control:
+ * <ul>
+ *   <li>BCrypt runs on a fixed pool with a bounded queue; when the queue is full the attempt is
+ *       rejected as {@link Outcome#BUSY} instead of piling up on every core.</li>
+ *   <li>Attempts are throttled per username and per client address with token buckets, before
+ *       any hashing happens.</li>
+ *   <li>Unknown usernames are checked against a dummy hash, so they take as long as known ones.</li>
+ *   <li>Hashes with a cost other than the configured one are replaced on successful login.</li>
+ * </ul>
+ *
+ * Configured with {@code expense.auth.*} system properties; see {@link Config#fromSystemProperties()}.
+ */
+public final class AuthService {
+    private static final String SELECT_HASH_SQL = "SELECT password FROM users WHERE username = ?";
+    private static final String SELECT_ID_SQL = "SELECT id FROM users WHERE username = ?";
+    private static final String INSERT_USER_SQL = "INSERT INTO users(username, password) VALUES(?, ?)";
+    // Only replaces the hash we verified, so a concurrent password change is never overwritten
+    private static final String REHASH_SQL = "UPDATE users SET password = ? WHERE username = ? AND password = ?";
+
+    // Bound on each bucket map under username or address spraying. Full buckets, which throttle nothing,
+    // are swept at most once a second; while the map is still at the bound, new keys are throttled.
+    static final int MAX_BUCKETS = 100_000;
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static volatile AuthService instance;
+
+    public enum Outcome { SUCCESS, INVALID, THROTTLED, BUSY, ERROR }
+
+    public record Config(int threads, int queueLimit, int cost,
+                         double userBurst, double userPerSecond,
+                         double addressBurst, double addressPerSecond) {
+        public static Config fromSystemProperties() {
+            return new Config(
+                    Integer.getInteger("expense.auth.threads", Runtime.getRuntime().availableProcessors()),
+                    Integer.getInteger("expense.auth.queueLimit", 64),
+                    Integer.getInteger("expense.auth.bcryptCost", 10),
+                    doubleProperty("expense.auth.userBurst", 5),
+                    doubleProperty("expense.auth.userPerSecond", 0.2),
+                    doubleProperty("expense.auth.addressBurst", 20),
+                    doubleProperty("expense.auth.addressPerSecond", 2));
+        }
+
+        private static double doubleProperty(String name, double defaultValue) {
+            String value = System.getProperty(name);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+    }
+
+    /** Counters since start-up; latencies cover queueing plus hashing for attempts that ran. */
+    public record Metrics(long success, long invalid, long throttled, long busy, long errors,
+                          long rehashed, long completed, double avgLatencyMillis, double maxLatencyMillis,
+                          int queued) {
+    }
+
+    private final Config config;
+    private final Database database;
+    private final ThreadPoolExecutor executor;
+    private final String dummyHash;
+    private final Throttle userBuckets;
+    private final Throttle addressBuckets;
+
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    private final LongAdder rehashed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public AuthService(Config config, Database database) {
+        this.config = config;
+        this.database = database;
+        this.executor = new ThreadPoolExecutor(config.threads(), config.threads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.queueLimit()), VirtualThreads.daemonThreads("auth"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.dummyHash = BCrypt.hashpw("dummy-password-for-unknown-users", BCrypt.gensalt(config.cost()));
+        this.userBuckets = new Throttle(config.userBurst(), config.userPerSecond());
+        this.addressBuckets = new Throttle(config.addressBurst(), config.addressPerSecond());
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    /** The shared service for users.db, configured from system properties. */
+    public static AuthService get() {
+        AuthService service = instance;
+        if (service == null) {
+            synchronized (AuthService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new AuthService(Config.fromSystemProperties(), Database.users());
+                    instance = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * Verifies a login. Throttled attempts complete immediately without touching the database;
+     * the rest complete on the BCrypt pool.
+     */
+    public CompletableFuture<Outcome> login(String username, String password, String clientAddress) {
+        if (!addressBuckets.tryAcquire(clientAddress) || !userBuckets.tryAcquire(username)) {
+            return CompletableFuture.completedFuture(count(Outcome.THROTTLED));
+        }
+        return submit(() -> verify(username, password));
+    }
+
+    /** Hashes and stores a new user on the BCrypt pool; INVALID means the username is taken. */
+    public CompletableFuture<Outcome> register(String username, String password) {
+        return submit(() -> {
+            String hash = BCrypt.hashpw(password, BCrypt.gensalt(config.cost()));
+            try (Database.PooledConnection conn = database.acquire()) {
+                PreparedStatement pstmt = conn.prepare(INSERT_USER_SQL);
+                pstmt.setString(1, username);
+                pstmt.setString(2, hash);
+                pstmt.executeUpdate();
+                return Outcome.SUCCESS;
+            } catch (SQLException e) {
+                if (e.getMessage() != null && e.getMessage().contains("UNIQUE")) {
+                    return Outcome.INVALID;
+                }
+                throw e;
+            }
+        });
+    }
+
+    /** The users.db id of {@code username}, which keys its {@link Ledger}, or -1 if there is no such user. */
+    public long userId(String username) throws SQLException {
+        try (Database.PooledConnection conn = database.acquire()) {
+            PreparedStatement pstmt = conn.prepare(SELECT_ID_SQL);
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    public Metrics metrics() {
+        long done = completed.sum();
+        return new Metrics(outcomes[Outcome.SUCCESS.ordinal()].sum(), outcomes[Outcome.INVALID.ordinal()].sum(),
+                outcomes[Outcome.THROTTLED.ordinal()].sum(), outcomes[Outcome.BUSY.ordinal()].sum(),
+                outcomes[Outcome.ERROR.ordinal()].sum(), rehashed.sum(), done,
+                done == 0 ? 0 : latencyNanos.sum() / 1e6 / done, maxLatencyNanos.get() / 1e6,
+                executor.getQueue().size());
+    }
+
+    private Outcome verify(String username, String password) throws SQLException {
+        String hash;
+        try (Database.PooledConnection conn = database.acquire()) {
+            PreparedStatement pstmt = conn.prepare(SELECT_HASH_SQL);
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                hash = rs.next() ? rs.getString("password") : null;
+            }
+        }
+        // The connection is released before hashing so the pool is not held for the BCrypt time
+        if (hash == null) {
+            BCrypt.checkpw(password, dummyHash);
+            return Outcome.INVALID;
+        }
+        if (!BCrypt.checkpw(password, hash)) {
+            return Outcome.INVALID;
+        }
+        if (cost(hash) != config.cost()) {
+            try {
+                rehash(username, password, hash);
+            } catch (SQLException e) {
+                // The password was right; the old hash still works and is replaced on a later login
+                System.err.println("Error rehashing password of " + username + ": " + e.getMessage());
+            }
+        }
+        return Outcome.SUCCESS;
+    }
+
+    private void rehash(String username, String password, String oldHash) throws SQLException {
+        String newHash = BCrypt.hashpw(password, BCrypt.gensalt(config.cost()));
+        try (Database.PooledConnection conn = database.acquire()) {
+            PreparedStatement pstmt = conn.prepare(REHASH_SQL);
+            pstmt.setString(1, newHash);
+            pstmt.setString(2, username);
+            pstmt.setString(3, oldHash);
+            if (pstmt.executeUpdate() == 1) {
+                rehashed.increment();
+            }
+        }
+    }
+
+    /** The cost factor of a "$2a$NN$..." hash, or -1 if it is not in that form. */
+    static int cost(String hash) {
+        if (hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(3) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        return (hash.charAt(4) - '0') * 10 + (hash.charAt(5) - '0');
+    }
+
+    private interface AuthWork {
+        Outcome run() throws SQLException;
+    }
+
+    private CompletableFuture<Outcome> submit(AuthWork work) {
+        long queuedAt = System.nanoTime();
+        CompletableFuture<Outcome> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                Outcome outcome;
+                try {
+                    outcome = work.run();
+                } catch (SQLException | RuntimeException e) {
+                    System.err.println("Error during authentication: " + e.getMessage());
+                    outcome = Outcome.ERROR;
+                }
+                long latency = System.nanoTime() - queuedAt;
+                latencyNanos.add(latency);
+                completed.increment();
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                result.complete(count(outcome));
+            });
+        } catch (RejectedExecutionException e) {
+            result.complete(count(Outcome.BUSY));
+        }
+        return result;
+    }
+
+    private Outcome count(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+        return outcome;
+    }
+
+    /** Token buckets by key, at most about {@link #MAX_BUCKETS} of them. */
+    static final class Throttle {
+        private final double burst;
+        private final double perSecond;
+        private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+        Throttle(double burst, double perSecond) {
+            this.burst = burst;
+            this.perSecond = perSecond;
+        }
+
+        boolean tryAcquire(String key) {
+            if (key == null) {
+                key = "";
+            }
+            TokenBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= MAX_BUCKETS) {
+                    sweep();
+                    if (buckets.size() >= MAX_BUCKETS) {
+                        // Known keys keep their buckets; a new one waits until some refill
+                        return false;
+                    }
+                }
+                bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(burst, perSecond));
+            }
+            return bucket.tryAcquire();
+        }
+
+        int size() {
+            return buckets.size();
+        }
+
+        // Drops full buckets, at most once per SWEEP_NANOS however many attempts find the map full
+        private void sweep() {
+            long now = System.nanoTime();
+            long next = nextSweep.get();
+            if (now - next >= 0 && nextSweep.compareAndSet(next, now + SWEEP_NANOS)) {
+                buckets.values().removeIf(bucket -> bucket.isFull(now));
+            }
+        }
+    }
+
+    /** Classic token bucket: holds up to {@code capacity} tokens and refills continuously. */
+    static final class TokenBucket {
+        private final double capacity;
+        private final double perNano;
+        private double tokens;
+        private long updatedNanos;
+
+        TokenBucket(double capacity, double perSecond) {
+            this.capacity = capacity;
+            this.perNano = perSecond / 1e9;
+            this.tokens = capacity;
+            this.updatedNanos = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            refill(System.nanoTime());
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            if (now > updatedNanos) {
+                tokens = Math.min(capacity, tokens + (now - updatedNanos) * perNano);
+                updatedNanos = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package expense;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Budget alerts evaluated on write. For every ledger that has budgets, spend per budgeted month
+ * (and per budgeted category) is kept in memory and adjusted by each committed insert, edit and
+ * delete, so checking thresholds costs two map lookups per write rather than a query.
+ *
+ * A ledger's counters are loaded from the database the first time it is written after start-up,
+ * inside the write's own transaction. The write lock on the file means no other writer can land
+ * between the load and the delta, so the counters match the database exactly. Writes from other
+ * processes are not seen; {@link #reconcile(Ledger)} reloads a ledger.
+ *
+ * Thresholds are percentages of the budget from {@code -Dexpense.budget.alertPercents}
+ * (default {@code 80,100}). Each one fires once when spending crosses it upwards, and can fire
+ * again after spending falls back below it.
+ */
+public final class BudgetAlerts {
+    private static final String LOAD_BUDGETS_SQL = "SELECT year_month, category, amount_cents FROM budget WHERE user_id = ?";
+    private static final String MONTH_SPEND_SQL = """
+                                                  SELECT COALESCE(SUM(amount_cents), 0)
+                                                  FROM transactions
+                                                  WHERE user_id = ? AND year_month = ? AND type = 'Expense'
+                                                  """;
+    private static final String CATEGORY_SPEND_SQL = MONTH_SPEND_SQL + " AND category = ?";
+
+    private static final BudgetAlerts INSTANCE =
+            new BudgetAlerts(percents(System.getProperty("expense.budget.alertPercents", "80,100")));
+
+    /** A budget that crossed {@code percent}; category is empty for the whole month. */
+    public record Alert(long userId, int yearMonth, String category, int percent, long spentCents, long budgetCents) {
+        @Override
+        public String toString() {
+            return "Budget alert: " + Schema.formatYearMonth(yearMonth) + (category.isEmpty() ? "" : " " + category)
+                    + " spending of " + Money.format(spentCents) + " has reached " + percent + "% of the "
+                    + Money.format(budgetCents) + " budget";
+        }
+    }
+
+    public interface Listener {
+        void onAlert(Alert alert);
+    }
+
+    private final int[] thresholds;
+    private final Map<Long, LedgerBudgets> ledgers = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    BudgetAlerts(int[] thresholds) {
+        this.thresholds = thresholds.clone();
+        Arrays.sort(this.thresholds);
+    }
+
+    public static BudgetAlerts get() {
+        return INSTANCE;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Applies an expense delta inside the write's transaction and returns the alerts it triggers,
+     * or null. The caller passes them to {@link #fire(List)} once the transaction has committed,
+     * or calls {@link #invalidate(Ledger)} if it did not.
+     */
+    List<Alert> onExpense(Database.PooledConnection conn, Ledger ledger, int yearMonth, String category,
+                          long deltaCents) throws SQLException {
+        if (deltaCents == 0) {
+            return null;
+        }
+        return loaded(conn, ledger).add(yearMonth, category == null ? "" : category, deltaCents);
+    }
+
+    /** As {@link #onExpense}, for a budget that was set; its spend is read if it was not tracked. */
+    List<Alert> onBudget(Database.PooledConnection conn, Ledger ledger, int yearMonth, String category,
+                         long budgetCents) throws SQLException {
+        LedgerBudgets budgets = loaded(conn, ledger);
+        String key = category == null ? "" : category;
+        if (!budgets.tracks(yearMonth, key)) {
+            budgets.track(yearMonth, key, spend(conn, ledger, yearMonth, key));
+        }
+        return budgets.setBudget(yearMonth, key, budgetCents);
+    }
+
+    void fire(List<Alert> alerts) {
+        if (alerts == null) {
+            return;
+        }
+        for (Alert alert : alerts) {
+            for (Listener listener : listeners) {
+                listener.onAlert(alert);
+            }
+        }
+    }
+
+    /** Forgets a ledger's counters; they are reloaded on its next write. */
+    void invalidate(Ledger ledger) {
+        ledgers.remove(ledger.userId());
+    }
+
+    /** Reloads a ledger's counters from the database, e.g. at start-up or after another process wrote to it. */
+    public void reconcile(Ledger ledger) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            conn.inTransaction(() -> {
+                ledgers.put(ledger.userId(), load(conn, ledger));
+                return null;
+            });
+        }
+    }
+
+    /** Spend and budget in cents for a tracked budget, or null if the ledger has no such budget loaded. */
+    public long[] status(Ledger ledger, int yearMonth, String category) {
+        LedgerBudgets budgets = ledgers.get(ledger.userId());
+        return budgets == null ? null : budgets.status(yearMonth, category == null ? "" : category);
+    }
+
+    private LedgerBudgets loaded(Database.PooledConnection conn, Ledger ledger) throws SQLException {
+        LedgerBudgets budgets = ledgers.get(ledger.userId());
+        if (budgets == null) {
+            budgets = load(conn, ledger);
+            ledgers.put(ledger.userId(), budgets);
+        }
+        return budgets;
+    }
+
+    private LedgerBudgets load(Database.PooledConnection conn, Ledger ledger) throws SQLException {
+        LedgerBudgets budgets = new LedgerBudgets(ledger.userId());
+        List<Object[]> rows = new ArrayList<>();
+        PreparedStatement pstmt = conn.prepare(LOAD_BUDGETS_SQL);
+        pstmt.setLong(1, ledger.userId());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new Object[]{rs.getInt("year_month"), rs.getString("category"), rs.getLong("amount_cents")});
+            }
+        }
+        for (Object[] row : rows) {
+            int yearMonth = (Integer) row[0];
+            String category = (String) row[1];
+            budgets.track(yearMonth, category, spend(conn, ledger, yearMonth, category));
+            budgets.setBudget(yearMonth, category, (Long) row[2]);
+        }
+        return budgets;
+    }
+
+    private static long spend(Database.PooledConnection conn, Ledger ledger, int yearMonth, String category)
+            throws SQLException {
+        PreparedStatement pstmt = conn.prepare(category.isEmpty() ? MONTH_SPEND_SQL : CATEGORY_SPEND_SQL);
+        pstmt.setLong(1, ledger.userId());
+        pstmt.setInt(2, yearMonth);
+        if (!category.isEmpty()) {
+            pstmt.setString(3, category);
+        }
+        long archived = TransactionArchive.expenseCents(conn, ledger, yearMonth, category);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return archived + (rs.next() ? rs.getLong(1) : 0);
+        }
+    }
+
+    private static int[] percents(String text) {
+        return Arrays.stream(text.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt).filter(p -> p > 0).toArray();
+    }
+
+    private record Key(int yearMonth, String category) {
+    }
+
+    private static final class Counter {
+        long spentCents;
+        long budgetCents = -1;
+        int level; // thresholds reached so far
+    }
+
+    /** One ledger's budgeted months and categories. Guarded by its own monitor. */
+    private final class LedgerBudgets {
+        private final long userId;
+        private final Map<Key, Counter> counters = new HashMap<>();
+
+        LedgerBudgets(long userId) {
+            this.userId = userId;
+        }
+
+        synchronized boolean tracks(int yearMonth, String category) {
+            return counters.containsKey(new Key(yearMonth, category));
+        }
+
+        synchronized void track(int yearMonth, String category, long spentCents) {
+            counters.computeIfAbsent(new Key(yearMonth, category), k -> new Counter()).spentCents = spentCents;
+        }
+
+        /** Adds to the month's counter and, for a categorised expense, the category's. */
+        synchronized List<Alert> add(int yearMonth, String category, long deltaCents) {
+            List<Alert> alerts = adjust(new Key(yearMonth, ""), deltaCents, null);
+            if (!category.isEmpty()) {
+                alerts = adjust(new Key(yearMonth, category), deltaCents, alerts);
+            }
+            return alerts;
+        }
+
+        synchronized List<Alert> setBudget(int yearMonth, String category, long budgetCents) {
+            Key key = new Key(yearMonth, category);
+            Counter counter = counters.get(key);
+            counter.budgetCents = budgetCents;
+            return evaluate(key, counter, null);
+        }
+
+        synchronized long[] status(int yearMonth, String category) {
+            Counter counter = counters.get(new Key(yearMonth, category));
+            return counter == null || counter.budgetCents < 0 ? null : new long[]{counter.spentCents, counter.budgetCents};
+        }
+
+        private List<Alert> adjust(Key key, long deltaCents, List<Alert> alerts) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                return alerts; // no budget for this month or category
+            }
+            counter.spentCents += deltaCents;
+            return evaluate(key, counter, alerts);
+        }
+
+        private List<Alert> evaluate(Key key, Counter counter, List<Alert> alerts) {
+            int level = 0;
+            if (counter.budgetCents > 0) {
+                // spent * 100 >= budget * percent, in integers
+                while (level < thresholds.length
+                        && counter.spentCents * 100 >= counter.budgetCents * thresholds[level]) {
+                    level++;
+                }
+            }
+            for (int i = counter.level; i < level; i++) {
+                if (alerts == null) {
+                    alerts = new ArrayList<>(2);
+                }
+                alerts.add(new Alert(userId, key.yearMonth(), key.category(), thresholds[i],
+                        counter.spentCents, counter.budgetCents));
+            }
+            counter.level = level;
+            return alerts;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package expense;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Scanner;
+
+public class BudgetingTool {
+    // Summed from the (user_id, year_month, type, amount_cents) index rather than read from
+    // monthly_totals, which has no category
+    static final String EXPENSE_SQL = """
+                                      SELECT COALESCE(SUM(amount_cents), 0) AS totalExpense
+                                      FROM transactions
+                                      WHERE user_id = ? AND year_month = ? AND type = 'Expense'
+                                      """;
+    private static final String CATEGORY_EXPENSE_SQL = EXPENSE_SQL + " AND category = ?";
+    // category is '' for a budget covering the whole month
+    static final String BUDGET_SQL = "SELECT amount_cents FROM budget WHERE user_id = ? AND year_month = ? AND category = ?";
+    private static final String SET_BUDGET_SQL = """
+                                                 INSERT INTO budget(user_id, year_month, category, amount_cents)
+                                                 VALUES(?, ?, ?, ?)
+                                                 ON CONFLICT(user_id, year_month, category) DO UPDATE SET amount_cents = excluded.amount_cents
+                                                 """;
+
+    public static void main(String[] args) {
+        createTables();
+        Scanner scanner = new Scanner(System.in);
+
+        while (true) {
+            System.out.println("\nBudgeting Tool");
+            System.out.println("1. Set Monthly Budget");
+            System.out.println("2. View Budget Summary");
+            System.out.println("3. Exit");
+            System.out.print("Choose an option: ");
+            int choice = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+
+            switch (choice) {
+                case 1 -> setMonthlyBudget(scanner);
+                case 2 -> viewBudgetSummary(scanner);
+                case 3 -> {
+                    System.out.println("Exiting... Goodbye!");
+                    scanner.close();
+                    return;
+                }
+                default -> System.out.println("Invalid choice. Please try again.");
+            }
+        }
+    }
+
+    private static void createTables() {
+        try {
+            Schema.migrate();
+        } catch (SQLException e) {
+            System.err.println("Error creating tables: " + e.getMessage());
+        }
+    }
+
+    private static void setMonthlyBudget(Scanner scanner) {
+        System.out.print("Enter the month (e.g., January or 2025-01): ");
+        String month = scanner.nextLine();
+        int yearMonth = parseMonth(month);
+        if (yearMonth < 0) {
+            return;
+        }
+        System.out.print("Enter a category (leave blank for the whole month): ");
+        String category = scanner.nextLine().trim();
+        System.out.print("Enter your budget amount: ");
+        long amountCents = Money.parse(scanner.nextLine().trim());
+        if (amountCents == Money.INVALID) {
+            System.out.println("Invalid amount.");
+            return;
+        }
+
+        try {
+            setBudget(Ledger.shared(), yearMonth, category, amountCents);
+            System.out.println("Budget set successfully for " + describe(yearMonth, category) + "!");
+        } catch (SQLException e) {
+            System.err.println("Error setting budget: " + e.getMessage());
+        }
+    }
+
+    private static void viewBudgetSummary(Scanner scanner) {
+        System.out.print("Enter the month to view budget summary: ");
+        String month = scanner.nextLine();
+        int yearMonth = parseMonth(month);
+        if (yearMonth < 0) {
+            return;
+        }
+        System.out.print("Enter a category (leave blank for the whole month): ");
+        String category = scanner.nextLine().trim();
+        String name = describe(yearMonth, category);
+
+        try {
+            Ledger ledger = Ledger.shared();
+            Long budget = budgetCents(ledger, yearMonth, category);
+            if (budget == null) {
+                System.out.println("No budget set for " + name + ".");
+                return;
+            }
+            long budgetCents = budget;
+            long expenseCents = expenseCents(ledger, yearMonth, category);
+
+            // Display the summary
+            System.out.println("\nBudget Summary for " + name + ":");
+            System.out.println("Budget Amount: " + Money.format(budgetCents));
+            System.out.println("Total Expenses: " + Money.format(expenseCents));
+
+            if (expenseCents > budgetCents) {
+                System.out.println("Alert: You have exceeded your budget by " + Money.format(expenseCents - budgetCents) + "!");
+            } else {
+                System.out.println("You are within your budget. Remaining amount: " + Money.format(budgetCents - expenseCents));
+            }
+            printForecast(ledger, yearMonth, category, budgetCents);
+        } catch (SQLException e) {
+            System.err.println("Error retrieving budget summary: " + e.getMessage());
+        }
+    }
+
+    // Only the current month has a month-end still to come
+    private static void printForecast(Ledger ledger, int yearMonth, String category, long budgetCents)
+            throws SQLException {
+        LocalDate today = LocalDate.now();
+        if (!SpendingMonitor.enabled() || yearMonth != today.getYear() * 100 + today.getMonthValue()) {
+            return;
+        }
+        SpendingMonitor.Forecast forecast = SpendingMonitor.get().forecast(ledger, yearMonth, key(category),
+                today.getDayOfMonth());
+        if (forecast != null) {
+            System.out.println("Projected month-end expenses: " + Money.format(forecast.projectedCents())
+                    + (forecast.projectedCents() > budgetCents ? ", over budget" : ", within budget"));
+        }
+    }
+
+    private static int parseMonth(String month) {
+        try {
+            return Schema.yearMonth(month);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unrecognised month: " + month + " (use a month name or YYYY-MM).");
+            return -1;
+        }
+    }
+
+    private static String describe(int yearMonth, String category) {
+        return Schema.formatYearMonth(yearMonth) + (category == null || category.isBlank() ? "" : " " + category.trim());
+    }
+
+    private static String key(String category) {
+        return category == null ? "" : category.trim();
+    }
+
+    /** Sets the budget for a month, or for one category of it when {@code category} is not blank. */
+    public static void setBudget(Ledger ledger, int yearMonth, String category, long amountCents) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            List<BudgetAlerts.Alert> alerts;
+            try {
+                alerts = conn.inTransaction(() -> {
+                    PreparedStatement pstmt = conn.prepare(SET_BUDGET_SQL);
+                    pstmt.setLong(1, ledger.userId());
+                    pstmt.setInt(2, yearMonth);
+                    pstmt.setString(3, key(category));
+                    pstmt.setLong(4, amountCents);
+                    pstmt.executeUpdate();
+                    return BudgetAlerts.get().onBudget(conn, ledger, yearMonth, key(category), amountCents);
+                });
+            } catch (SQLException | RuntimeException e) {
+                BudgetAlerts.get().invalidate(ledger);
+                throw e;
+            }
+            BudgetAlerts.get().fire(alerts);
+            SpendingMonitor.get().onBudget(ledger, yearMonth, key(category), amountCents);
+        }
+    }
+
+    /** The budget in cents for a month (blank category) or one of its categories, or null if none is set. */
+    public static Long budgetCents(Ledger ledger, int yearMonth, String category) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(BUDGET_SQL);
+            pstmt.setLong(1, ledger.userId());
+            pstmt.setInt(2, yearMonth);
+            pstmt.setString(3, key(category));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("amount_cents") : null;
+            }
+        }
+    }
+
+    public static long expenseCents(Ledger ledger, int yearMonth) throws SQLException {
+        return expenseCents(ledger, yearMonth, null);
+    }
+
+    /** Expenses for a month, or only those in {@code category} when it is not blank. */
+    public static long expenseCents(Ledger ledger, int yearMonth, String category) throws SQLException {
+        boolean all = key(category).isEmpty();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(all ? EXPENSE_SQL : CATEGORY_EXPENSE_SQL);
+            pstmt.setLong(1, ledger.userId());
+            pstmt.setInt(2, yearMonth);
+            if (!all) {
+                pstmt.setString(3, key(category));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                long hot = rs.next() ? rs.getLong("totalExpense") : 0;
+                return hot + TransactionArchive.expenseCents(conn, ledger, yearMonth, key(category));
+            }
+        }
+    }
+}
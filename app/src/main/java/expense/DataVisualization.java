@@ -0,0 +1,335 @@
+package expense;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.category.DefaultCategoryDataset;
+
+import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.*;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+public class DataVisualization {
+
+    static final String CHART_SQL = """
+                                    SELECT year_month, type, total_cents
+                                    FROM monthly_totals
+                                    WHERE user_id = ?
+                                    ORDER BY year_month, type;
+                                    """;
+
+    // Run the query inside the EDT task as this tool used to, for before/after comparisons
+    private static final boolean LOAD_ON_EDT = Boolean.getBoolean("expense.chart.loadOnEdt");
+    private static final boolean MEASURE_EDT = Boolean.getBoolean("expense.chart.measureEdt");
+    private static final long REFRESH_MILLIS = Long.getLong("expense.chart.refreshMillis", 2000);
+
+    private static final ExecutorService LOADERS = VirtualThreads.newExecutor("chart-loader");
+
+    /** One bar: the total of one type in one month. */
+    record Cell(String month, String type, long cents) {
+    }
+
+    private record CellKey(String month, String type) {
+    }
+
+    public static void main(String[] args) {
+        try {
+            Schema.migrate();
+        } catch (SQLException e) {
+            System.err.println("Error upgrading database schema: " + e.getMessage());
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("timeseries")) {
+            SwingUtilities.invokeLater(TimeSeriesChart::show);
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            // Started from the EDT so toolkit start-up is not counted as a stall
+            EdtMonitor monitor = MEASURE_EDT ? EdtMonitor.start() : null;
+            DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+            JLabel status = new JLabel("Loading...");
+            JFrame frame = null;
+            // Headless runs (e.g. measuring EDT stalls on a server) load the data without a window
+            if (!GraphicsEnvironment.isHeadless()) {
+                frame = new JFrame("Income and Expense Visualization");
+                frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+                frame.setSize(800, 600);
+                frame.add(new ChartPanel(createChart(dataset)));
+                frame.add(status, BorderLayout.SOUTH);
+                frame.setVisible(true);
+            }
+
+            ChartLoader loader = new ChartLoader(frame, dataset, status, monitor);
+            if (frame != null) {
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosed(WindowEvent e) {
+                        loader.stop();
+                    }
+                });
+            }
+            if (LOAD_ON_EDT) {
+                loader.run();
+            } else {
+                LOADERS.execute(loader);
+            }
+        });
+    }
+
+    private static JFreeChart createChart(DefaultCategoryDataset dataset) {
+        return ChartFactory.createBarChart(
+                "Income and Expenses by Month",
+                "Month",             // X-axis label
+                "Amount (USD)",      // Y-axis label
+                dataset              // Dataset
+        );
+    }
+
+    /**
+     * Streams the shared ledger's chart cells to {@code sink} until it returns false. Reads the
+     * analytics engine when enabled, otherwise the monthly_totals rollup.
+     */
+    static void readCells(boolean useAnalytics, Predicate<Cell> sink) throws SQLException {
+        if (useAnalytics) {
+            for (AnalyticsEngine.MonthTotal total : AnalyticsEngine.get().monthlyTotals(ReportFilter.ALL)) {
+                if (!sink.test(new Cell(Schema.formatYearMonth(total.yearMonth()), total.type(), total.cents()))) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        Ledger ledger = Ledger.shared();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(CHART_SQL);
+            pstmt.setLong(1, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Cell cell = new Cell(Schema.formatYearMonth(rs.getInt("year_month")), rs.getString("type"),
+                            rs.getLong("total_cents"));
+                    if (!sink.test(cell)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void applyCells(DefaultCategoryDataset dataset, List<Cell> cells) {
+        // One change event (and one repaint) per batch instead of one per bar
+        dataset.setNotify(false);
+        for (Cell cell : cells) {
+            // The chart axis is the only place amounts become floating point
+            dataset.addValue(Money.toDouble(cell.cents()), cell.type(), cell.month());
+        }
+        dataset.setNotify(true);
+    }
+
+    /**
+     * Loads the chart data off the EDT. Cells are published as they are read, so bars appear while
+     * the query is still running. Once loaded, the ledger fingerprint is polled and only the cells
+     * whose totals changed are pushed to the dataset.
+     */
+    private static final class ChartLoader extends SwingWorker<Map<CellKey, Cell>, Cell> {
+        private final JFrame frame;
+        private final DefaultCategoryDataset dataset;
+        private final JLabel status;
+        private final EdtMonitor monitor;
+        private final long startNanos = System.nanoTime();
+        private ScheduledExecutorService refresher;
+        // Owned by the worker thread, then by the refresher thread
+        private String version;
+        private Map<CellKey, Cell> known;
+
+        ChartLoader(JFrame frame, DefaultCategoryDataset dataset, JLabel status, EdtMonitor monitor) {
+            this.frame = frame;
+            this.dataset = dataset;
+            this.status = status;
+            this.monitor = monitor;
+        }
+
+        @Override
+        protected Map<CellKey, Cell> doInBackground() throws SQLException {
+            // Fingerprint first: a write that lands during the load triggers a refresh afterwards
+            version = AnalyticsEngine.currentVersion();
+            Map<CellKey, Cell> cells = new LinkedHashMap<>();
+            readCells(AnalyticsEngine.enabled(), cell -> {
+                if (isCancelled()) {
+                    return false;
+                }
+                cells.put(new CellKey(cell.month(), cell.type()), cell);
+                publish(cell);
+                return true;
+            });
+            return cells;
+        }
+
+        @Override
+        protected void process(List<Cell> chunk) {
+            applyCells(dataset, chunk);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                known = get();
+            } catch (InterruptedException | ExecutionException e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                System.err.println("Error fetching data for chart: " + cause.getMessage());
+                status.setText("Error loading data: " + cause.getMessage());
+                return;
+            }
+            // The last process() batch may still be queued behind this call when run on the EDT
+            applyCells(dataset, new ArrayList<>(known.values()));
+
+            double elapsedMillis = (System.nanoTime() - startNanos) / 1e6;
+            if (monitor != null) {
+                int bars = known.size();
+                // Queued behind any probe that was waiting on this task, so the report includes it
+                SwingUtilities.invokeLater(() -> {
+                    monitor.stop();
+                    System.out.printf("Loaded %d bars in %.0f ms (%s). %s%n", bars, elapsedMillis,
+                            LOAD_ON_EDT ? "on the EDT" : "in the background", monitor.report());
+                });
+            }
+            if (known.isEmpty()) {
+                if (frame != null) {
+                    JOptionPane.showMessageDialog(null, "No data available for visualization.");
+                    frame.dispose();
+                }
+                return;
+            }
+            status.setText(String.format("%d bars loaded in %.0f ms", known.size(), elapsedMillis));
+
+            refresher = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonThreads("chart-refresh"));
+            refresher.scheduleWithFixedDelay(this::refresh, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /** Runs on the refresher thread. The rollup is already aggregated, so a refresh is one small read. */
+        private void refresh() {
+            try {
+                String current = AnalyticsEngine.currentVersion();
+                if (current.equals(version)) {
+                    return;
+                }
+                version = current;
+
+                Map<CellKey, Cell> latest = new HashMap<>();
+                readCells(false, cell -> {
+                    latest.put(new CellKey(cell.month(), cell.type()), cell);
+                    return true;
+                });
+                List<Cell> changed = new ArrayList<>();
+                for (Map.Entry<CellKey, Cell> entry : latest.entrySet()) {
+                    if (!entry.getValue().equals(known.get(entry.getKey()))) {
+                        changed.add(entry.getValue());
+                    }
+                }
+                List<CellKey> removed = new ArrayList<>();
+                for (CellKey key : known.keySet()) {
+                    if (!latest.containsKey(key)) {
+                        removed.add(key);
+                    }
+                }
+                known = latest;
+                if (changed.isEmpty() && removed.isEmpty()) {
+                    return;
+                }
+                // In month order, so months that did not exist before are appended on the right
+                changed.sort((a, b) -> a.month().compareTo(b.month()));
+                SwingUtilities.invokeLater(() -> {
+                    for (CellKey key : removed) {
+                        dataset.removeValue(key.type(), key.month());
+                    }
+                    applyCells(dataset, changed);
+                    status.setText(String.format("Updated %d bars at %s", changed.size() + removed.size(),
+                            LocalTime.now().truncatedTo(ChronoUnit.SECONDS)));
+                });
+            } catch (SQLException e) {
+                System.err.println("Error refreshing chart: " + e.getMessage());
+            }
+        }
+
+        /** Cancels a load still in progress and stops live refresh. Called on the EDT. */
+        void stop() {
+            cancel(true);
+            if (refresher != null) {
+                refresher.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Measures EDT responsiveness: a daemon thread posts an empty task every few milliseconds and
+     * records how long it waits to run. Any wait longer than a frame (16 ms) counts as a stall.
+     * The chart stops it once the initial load is done, so the report covers the load.
+     */
+    static final class EdtMonitor {
+        private static final long PROBE_MILLIS = 5;
+        private static final long STALL_NANOS = 16_000_000L;
+
+        private volatile long maxNanos;
+        private volatile long stalledNanos;
+        private volatile int stalls;
+        private volatile boolean running = true;
+
+        static EdtMonitor start() {
+            EdtMonitor monitor = new EdtMonitor();
+            Thread probe = VirtualThreads.daemonThreads("edt-monitor").newThread(monitor::probe);
+            probe.start();
+            return monitor;
+        }
+
+        private void probe() {
+            try {
+                while (running) {
+                    long posted = System.nanoTime();
+                    EventQueue.invokeAndWait(() -> record(System.nanoTime() - posted));
+                    Thread.sleep(PROBE_MILLIS);
+                }
+            } catch (InterruptedException | InvocationTargetException e) {
+                // monitoring ends with the JVM
+            }
+        }
+
+        // Runs on the EDT, so it is ordered with everything else the EDT does
+        private void record(long waited) {
+            maxNanos = Math.max(maxNanos, waited);
+            if (waited > STALL_NANOS) {
+                stalledNanos += waited;
+                stalls++;
+            }
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        String report() {
+            return String.format("EDT: longest stall %.1f ms, %d stalls over 16 ms totalling %.1f ms",
+                    maxNanos / 1e6, stalls, stalledNanos / 1e6);
+        }
+    }
+}
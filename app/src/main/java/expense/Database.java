@@ -0,0 +1,389 @@
+package expense;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared SQLite data-access layer used by all of the tools.
+ * Keeps a small bounded pool of connections per database file, each with its own
+ * prepared-statement cache, so callers no longer pay for opening the file on every operation.
+ */
+public final class Database {
+    public static final String FINANCE_URL = System.getProperty("expense.db.financeUrl", "jdbc:sqlite:finance.db");
+    public static final String USERS_URL = System.getProperty("expense.db.usersUrl", "jdbc:sqlite:users.db");
+
+    private static final int POOL_SIZE = Integer.getInteger("expense.db.poolSize", 4);
+    private static final long ACQUIRE_TIMEOUT_MS = Long.getLong("expense.db.acquireTimeoutMs", 30_000);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("expense.db.statementCacheSize", 32);
+    private static final boolean PRINT_STATS = Boolean.getBoolean("expense.db.printStats");
+
+    private static final Map<String, Database> POOLS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Database::closeAll, "database-shutdown"));
+    }
+
+    private final String url;
+    private final int maxSize;
+    private final BlockingQueue<PooledConnection> idle;
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean closed;
+
+    // Pool metrics
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final AtomicLongMax maxWaitNanos = new AtomicLongMax();
+    private final AtomicLongMax maxHoldNanos = new AtomicLongMax();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private Database(String url, int maxSize) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    public static Database finance() {
+        return forUrl(FINANCE_URL);
+    }
+
+    public static Database users() {
+        return forUrl(USERS_URL);
+    }
+
+    public static Database forUrl(String url) {
+        return POOLS.computeIfAbsent(url, u -> new Database(u, POOL_SIZE));
+    }
+
+    /**
+     * A pool that is not registered with {@link #forUrl(String)}, for databases opened and closed on
+     * demand such as ledger shards. The caller closes it; connections still borrowed at that point
+     * are closed when they are returned.
+     */
+    public static Database open(String url, int maxSize) {
+        return new Database(url, maxSize);
+    }
+
+    public static void closeAll() {
+        if (PRINT_STATS) {
+            POOLS.values().forEach(db -> System.out.println(db.stats()));
+            if (QueryMetrics.ENABLED) {
+                QueryMetrics.printTop(System.out, 10);
+            }
+        }
+        POOLS.values().forEach(Database::close);
+    }
+
+    /** Stats of every registered pool. */
+    public static List<Stats> allStats() {
+        return POOLS.values().stream().map(Database::stats).toList();
+    }
+
+    public String url() {
+        return url;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if the pool is not yet full.
+     * The returned connection goes back to the pool when closed.
+     */
+    public PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool for " + url + " is closed");
+        }
+        long start = System.nanoTime();
+        PooledConnection conn = idle.poll();
+        if (conn == null) {
+            conn = tryCreate();
+        }
+        if (conn == null) {
+            try {
+                conn = idle.poll(ACQUIRE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection to " + url, e);
+            }
+            if (conn == null) {
+                throw new SQLException("Timed out waiting for a connection to " + url);
+            }
+        }
+        long waited = System.nanoTime() - start;
+        if (QueryMetrics.ENABLED) {
+            QueryMetrics.acquired(url, waited);
+        }
+        acquisitions.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.update(waited);
+        conn.borrowedAt = System.nanoTime();
+        conn.inUse = true;
+        return conn;
+    }
+
+    private PooledConnection tryCreate() throws SQLException {
+        while (true) {
+            int count = created.get();
+            if (count >= maxSize) {
+                return null;
+            }
+            if (created.compareAndSet(count, count + 1)) {
+                try {
+                    return new PooledConnection(this, openConnection());
+                } catch (SQLException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        return connect(url);
+    }
+
+    /**
+     * A connection outside any pool, set up like pooled ones, for backups and for statements SQLite
+     * refuses while another statement on the connection is unfinished, such as VACUUM. Pooled
+     * connections cannot run those once they have been used, because sqlite-jdbc leaves a cached
+     * statement run with executeUpdate active until it is run again or closed. The caller closes it.
+     */
+    public static Connection connect(String url) throws SQLException {
+        Connection conn = DriverManager.getConnection(url);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+            stmt.execute("PRAGMA synchronous = NORMAL");
+            stmt.execute("PRAGMA cache_size = -16000");      // ~16 MB page cache
+            stmt.execute("PRAGMA mmap_size = 268435456");    // 256 MB memory-mapped I/O
+            stmt.execute("PRAGMA temp_store = MEMORY");
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private void release(PooledConnection conn) {
+        long held = System.nanoTime() - conn.borrowedAt;
+        holdNanos.add(held);
+        maxHoldNanos.update(held);
+
+        boolean healthy;
+        try {
+            Connection raw = conn.raw;
+            if (!raw.getAutoCommit()) {
+                // Caller left a transaction open; never hand out a connection mid-transaction
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            healthy = !raw.isClosed();
+        } catch (SQLException e) {
+            healthy = false;
+        }
+
+        if (healthy && !closed && idle.offer(conn)) {
+            return;
+        }
+        conn.closePhysical();
+        created.decrementAndGet();
+    }
+
+    public void close() {
+        closed = true;
+        PooledConnection conn;
+        while ((conn = idle.poll()) != null) {
+            conn.closePhysical();
+            created.decrementAndGet();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(url, created.get(), idle.size(), maxSize,
+                acquisitions.sum(), waitNanos.sum(), maxWaitNanos.get(),
+                holdNanos.sum(), maxHoldNanos.get(),
+                statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    public record Stats(String url, int open, int idle, int maxSize,
+                        long acquisitions, long totalWaitNanos, long maxWaitNanos,
+                        long totalHoldNanos, long maxHoldNanos,
+                        long statementCacheHits, long statementCacheMisses) {
+
+        public double avgWaitMillis() {
+            return acquisitions == 0 ? 0.0 : totalWaitNanos / 1e6 / acquisitions;
+        }
+
+        public double avgHoldMillis() {
+            return acquisitions == 0 ? 0.0 : totalHoldNanos / 1e6 / acquisitions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s: open=%d idle=%d max=%d acquisitions=%d wait(avg=%.3fms max=%.3fms) hold(avg=%.3fms max=%.3fms) stmtCache(hits=%d misses=%d)",
+                    url, open, idle, maxSize, acquisitions,
+                    avgWaitMillis(), maxWaitNanos / 1e6, avgHoldMillis(), maxHoldNanos / 1e6,
+                    statementCacheHits, statementCacheMisses);
+        }
+    }
+
+    /**
+     * A pooled connection. Statements returned by {@link #prepare(String)} are cached and owned
+     * by the connection, so callers must close their ResultSets but not the statements. Cached
+     * statements stay prepared across borrowers, so VACUUM needs {@link #connect(String)} instead.
+     */
+    public static final class PooledConnection implements AutoCloseable {
+        private final Database pool;
+        private final Connection raw;
+        private final Map<String, PreparedStatement> statements;
+        private long borrowedAt;
+        private boolean inUse;
+
+        private PooledConnection(Database pool, Connection raw) {
+            this.pool = pool;
+            this.raw = raw;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement pstmt = statements.get(sql);
+            if (pstmt != null && !pstmt.isClosed()) {
+                pool.statementCacheHits.increment();
+                pstmt.clearParameters();
+                return pstmt;
+            }
+            pool.statementCacheMisses.increment();
+            if (!QueryMetrics.ENABLED) {
+                pstmt = raw.prepareStatement(sql);
+            } else {
+                try {
+                    pstmt = QueryMetrics.wrap(raw.prepareStatement(sql), sql);
+                } catch (SQLException e) {
+                    QueryMetrics.prepareFailed(sql);
+                    throw e;
+                }
+            }
+            statements.put(sql, pstmt);
+            return pstmt;
+        }
+
+        /** Plain statement for one-off DDL; the caller closes it. */
+        public Statement createStatement() throws SQLException {
+            Statement stmt = raw.createStatement();
+            return QueryMetrics.ENABLED ? QueryMetrics.wrap(stmt) : stmt;
+        }
+
+        public Connection connection() {
+            return raw;
+        }
+
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            raw.setAutoCommit(autoCommit);
+        }
+
+        public void commit() throws SQLException {
+            raw.commit();
+        }
+
+        public void rollback() throws SQLException {
+            raw.rollback();
+        }
+
+        /**
+         * Runs {@code work} inside BEGIN IMMEDIATE ... COMMIT, so read-then-write sequences take the
+         * write lock up front instead of failing to upgrade a read lock under contention.
+         */
+        public <T> T inTransaction(SqlWork<T> work) throws SQLException {
+            prepare("BEGIN IMMEDIATE").execute();
+            boolean committed = false;
+            try {
+                T result = work.run();
+                prepare("COMMIT").execute();
+                committed = true;
+                return result;
+            } finally {
+                if (!committed) {
+                    try {
+                        prepare("ROLLBACK").execute();
+                    } catch (SQLException e) {
+                        System.err.println("Error rolling back transaction: " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            pool.release(this);
+        }
+
+        private void closePhysical() {
+            for (PreparedStatement pstmt : new HashMap<>(statements).values()) {
+                closeQuietly(pstmt);
+            }
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing connection: " + e.getMessage());
+            }
+        }
+
+        private static void closeQuietly(Statement stmt) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+                // Statement is being discarded anyway
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    private static final class AtomicLongMax {
+        private final AtomicLong value = new AtomicLong();
+
+        void update(long candidate) {
+            long current;
+            while (candidate > (current = value.get())) {
+                if (value.compareAndSet(current, candidate)) {
+                    return;
+                }
+            }
+        }
+
+        long get() {
+            return value.get();
+        }
+    }
+}
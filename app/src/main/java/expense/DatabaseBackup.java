@@ -0,0 +1,647 @@
+package expense;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+
+/**
+ * Online backups of finance.db, users.db and the ledger shards. Each backup starts with a
+ * snapshot through SQLite's online backup API, copying every page in one step and so from one
+ * read transaction. In WAL mode writers carry on while it runs; the WAL just cannot be
+ * checkpointed past the snapshot until it ends.
+ *
+ * The first backup of a chain keeps the snapshot whole. Later ones keep only the pages that
+ * differ from the previous backup, found by comparing per-page digests, each stored with a CRC32C.
+ * A new chain starts every {@code expense.backup.fullEvery} (14) backups, or when more than half
+ * the pages changed, and the last {@code expense.backup.keepChains} (2) chains are kept. Every
+ * backup has a manifest of its page digests, written last, so a backup without one never happened
+ * and is overwritten by the next.
+ *
+ * The snapshot keeps every page where it is in the database, so appends and edits make small
+ * deltas, while a VACUUM of the database moves most pages and starts a new chain. Backups live in
+ * {@code expense.backup.dir} ({@code backups}), one directory per database. A snapshot needs as
+ * much free space there as the database.
+ *
+ *   java expense.DatabaseBackup backup [finance|users|ledgers/&lt;shard&gt;|all]
+ *   java expense.DatabaseBackup list|verify [name]
+ *   java expense.DatabaseBackup restore name target.db [backup]
+ *
+ * {@code verify} checks every page and digest without writing anything. {@code restore} rebuilds a
+ * backup into a new file and checks its digest before renaming it into place; the file can then
+ * replace the database while no tool is running.
+ */
+public final class DatabaseBackup {
+    static final Path DIR = Path.of(System.getProperty("expense.backup.dir", "backups"));
+    private static final int FULL_EVERY = Integer.getInteger("expense.backup.fullEvery", 14);
+    private static final int KEEP_CHAINS = Math.max(1, Integer.getInteger("expense.backup.keepChains", 2));
+
+    private static final String URL_PREFIX = "jdbc:sqlite:";
+    private static final byte[] MANIFEST_MAGIC = {'E', 'X', 'P', 'A', 'G', 'E', 'S', '1'};
+    private static final byte[] DELTA_MAGIC = {'E', 'X', 'D', 'E', 'L', 'T', 'A', '1'};
+    private static final int DIGEST_BYTES = 16;
+    private static final int BUFFER_BYTES = 1 << 20;
+    // pageSize, pageCount, baseSeq
+    private static final int DELTA_HEADER_BYTES = DELTA_MAGIC.length + 4 + 4 + 8;
+    // entries, header CRC
+    private static final int DELTA_TRAILER_BYTES = 4 + 4;
+    private static final Pattern BACKUP_FILE = Pattern.compile("(\\d{6})\\.(full\\.db|delta)");
+
+    /** A database that can be backed up; {@code name} is also its directory under {@link #DIR}. */
+    public record Source(String name, String url) {
+        Path file() {
+            String path = url.substring(URL_PREFIX.length());
+            int query = path.indexOf('?');
+            return Path.of(query < 0 ? path : path.substring(0, query));
+        }
+    }
+
+    /** One backup on disk; {@code file} is the snapshot of a full backup or the pages of a delta. */
+    public record Backup(long seq, boolean full, Path file, Path manifest) {
+        @Override
+        public String toString() {
+            return String.format("%06d", seq) + (full ? " full" : " delta");
+        }
+    }
+
+    public record Result(String name, long seq, boolean full, int pages, int changedPages, long bytes,
+                         long databaseBytes, long snapshotNanos, long totalNanos) {
+        @Override
+        public String toString() {
+            return String.format("%s: backup %06d, %s, %,d of %,d pages, %,d bytes written; snapshot %.1f s, total %.1f s (%.0f MB/s)",
+                    name, seq, full ? "full" : "delta", changedPages, pages, bytes, snapshotNanos / 1e9,
+                    totalNanos / 1e9, databaseBytes / 1e6 / Math.max(totalNanos / 1e9, 1e-9));
+        }
+    }
+
+    private DatabaseBackup() {
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "list";
+        try {
+            switch (command) {
+                case "backup" -> {
+                    for (Source source : sources(args.length > 1 ? args[1] : "all")) {
+                        System.out.println(backup(source));
+                    }
+                }
+                case "list" -> {
+                    for (Source source : sources(args.length > 1 ? args[1] : "all")) {
+                        for (Backup backup : backups(source.name())) {
+                            System.out.printf("%s %s: %,d bytes%n", source.name(), backup, Files.size(backup.file()));
+                        }
+                    }
+                }
+                case "verify" -> {
+                    List<String> problems = new ArrayList<>();
+                    int checked = 0;
+                    for (Source source : sources(args.length > 1 ? args[1] : "all")) {
+                        long start = System.nanoTime();
+                        List<String> found = verify(source.name());
+                        int count = backups(source.name()).size();
+                        checked += count;
+                        System.out.printf("%s: %d backups checked in %.1f s%n", source.name(), count,
+                                (System.nanoTime() - start) / 1e9);
+                        problems.addAll(found);
+                    }
+                    if (!problems.isEmpty()) {
+                        problems.forEach(p -> System.out.println("  " + p));
+                        System.exit(1);
+                    }
+                    System.out.println("All " + checked + " backups match their checksums and digests.");
+                }
+                case "restore" -> {
+                    if (args.length < 3) {
+                        System.out.println("Usage: DatabaseBackup restore name target.db [backup]");
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    Backup restored = restore(args[1], Path.of(args[2]), args.length > 3 ? Long.parseLong(args[3]) : -1);
+                    System.out.printf("Restored %s %s to %s (%,d bytes) in %.1f s%n", args[1], restored, args[2],
+                            Files.size(Path.of(args[2])), (System.nanoTime() - start) / 1e9);
+                }
+                default -> System.out.println("Usage: DatabaseBackup [backup|list|verify|restore] ...");
+            }
+        } catch (SQLException | IOException | NumberFormatException e) {
+            System.err.println("Error in backup: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** finance, users, ledgers/&lt;shard&gt;, or all of them that exist. */
+    static List<Source> sources(String which) throws IOException {
+        List<Source> sources = new ArrayList<>();
+        sources.add(new Source("finance", Database.FINANCE_URL));
+        sources.add(new Source("users", Database.USERS_URL));
+        Path shards = Ledger.directory();
+        if (Files.isDirectory(shards)) {
+            try (Stream<Path> files = Files.list(shards)) {
+                files.map(f -> f.getFileName().toString()).filter(f -> f.endsWith(".db")).sorted()
+                        .forEach(f -> sources.add(new Source("ledgers/" + f.substring(0, f.length() - 3),
+                                URL_PREFIX + shards.resolve(f))));
+            }
+        }
+        List<Source> chosen = new ArrayList<>();
+        for (Source source : sources) {
+            boolean exists = !source.url().contains(":memory:") && Files.exists(source.file());
+            if (exists && (which.equals("all") || which.equals(source.name()))) {
+                chosen.add(source);
+            }
+        }
+        if (chosen.isEmpty() && !which.equals("all")) {
+            throw new IOException("No database named " + which);
+        }
+        return chosen;
+    }
+
+    /**
+     * Takes a backup: a snapshot, then either the whole of it or the pages that changed since the
+     * last backup. Only one backup of a database runs at a time, across processes.
+     */
+    public static Result backup(Source source) throws SQLException, IOException {
+        Path dir = DIR.resolve(source.name());
+        Files.createDirectories(dir);
+        try (FileChannel lockFile = FileChannel.open(dir.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockFile.tryLock()) {
+            if (lock == null) {
+                throw new IOException("Another backup of " + source.name() + " is running");
+            }
+            Path snapshot = dir.resolve("snapshot.tmp");
+            Files.deleteIfExists(snapshot);
+            try {
+                long start = System.nanoTime();
+                snapshot(source, snapshot);
+                long snapshotNanos = System.nanoTime() - start;
+
+                List<Backup> backups = backups(source.name());
+                Backup last = backups.isEmpty() ? null : backups.get(backups.size() - 1);
+                long seq = last == null ? 1 : last.seq() + 1;
+                Manifest previous = last == null ? null : Manifest.read(last.manifest());
+                boolean full = previous == null || chainLength(backups) >= FULL_EVERY;
+
+                Path delta = dir.resolve(String.format("%06d.delta", seq));
+                Path partial = dir.resolve(delta.getFileName() + ".partial");
+                Scan scan = scan(snapshot, full ? null : previous, full ? null : partial, last == null ? 0 : last.seq());
+                long bytes;
+                if (scan.changed() > scan.manifest().pageCount() / 2 || full) {
+                    // Cheaper to keep the snapshot than most of its pages
+                    Files.deleteIfExists(partial);
+                    full = true;
+                    bytes = Files.size(snapshot);
+                    Path target = dir.resolve(String.format("%06d.full.db", seq));
+                    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                    Files.move(snapshot, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    bytes = Files.size(partial);
+                    Files.move(partial, delta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+                scan.manifest().write(dir.resolve(String.format("%06d.pages", seq)));
+                if (full) {
+                    prune(source.name());
+                }
+                Manifest manifest = scan.manifest();
+                return new Result(source.name(), seq, full, manifest.pageCount(), full ? manifest.pageCount() : scan.changed(),
+                        bytes, (long) manifest.pageCount() * manifest.pageSize(), snapshotNanos, System.nanoTime() - start);
+            } finally {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+    }
+
+    // A page-for-page copy in a single backup step, on a connection of its own rather than a pooled one
+    private static void snapshot(Source source, Path target) throws SQLException {
+        try (Connection conn = Database.connect(source.url())) {
+            int rc = conn.unwrap(SQLiteConnection.class).getDatabase()
+                    .backup("main", target.toAbsolutePath().toString(), null, 100, 50, -1);
+            if (rc != SQLiteErrorCode.SQLITE_OK.code) {
+                throw new SQLException("Snapshot of " + source.name() + " failed: " + SQLiteErrorCode.getErrorCode(rc));
+            }
+        }
+    }
+
+    /** The complete backups of a database in order; leftovers of interrupted ones are skipped. */
+    public static List<Backup> backups(String name) throws IOException {
+        Path dir = DIR.resolve(name);
+        List<Backup> backups = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return backups;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted()::iterator) {
+                Matcher m = BACKUP_FILE.matcher(file.getFileName().toString());
+                if (m.matches()) {
+                    long seq = Long.parseLong(m.group(1));
+                    Path manifest = dir.resolve(m.group(1) + ".pages");
+                    if (Files.exists(manifest)) {
+                        backups.add(new Backup(seq, m.group(2).startsWith("full"), file, manifest));
+                    }
+                }
+            }
+        }
+        return backups;
+    }
+
+    // Backups since the last full one, which starts the chain
+    private static int chainLength(List<Backup> backups) {
+        int length = 0;
+        for (int i = backups.size() - 1; i >= 0 && !backups.get(i).full(); i--) {
+            length++;
+        }
+        return length;
+    }
+
+    // Deletes every chain but the newest KEEP_CHAINS
+    private static void prune(String name) throws IOException {
+        List<Backup> backups = backups(name);
+        int chains = 0;
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            Backup backup = backups.get(i);
+            if (chains >= KEEP_CHAINS) {
+                Files.deleteIfExists(backup.manifest()); // first, so a half-deleted backup is not listed
+                Files.deleteIfExists(backup.file());
+            } else if (backup.full()) {
+                chains++;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds backup {@code seq} (the latest when negative) of a database into {@code target}, which
+     * must not exist, and returns it. The result is checked against the backup's digest before it is
+     * renamed into place.
+     */
+    public static Backup restore(String name, Path target, long seq) throws IOException {
+        if (Files.exists(target)) {
+            throw new IOException(target + " already exists; restore into a new file");
+        }
+        List<Backup> chain = chain(backups(name), seq);
+        Backup last = chain.get(chain.size() - 1);
+        Manifest expected = Manifest.read(last.manifest());
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+        try {
+            try (FileChannel in = FileChannel.open(chain.get(0).file(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = in.size();
+                for (long done = 0; done < size; ) {
+                    done += in.transferTo(done, size - done, out);
+                }
+                ByteBuffer page = ByteBuffer.allocate(expected.pageSize());
+                long baseSeq = chain.get(0).seq();
+                for (Backup delta : chain.subList(1, chain.size())) {
+                    DeltaReader reader = new DeltaReader(delta.file());
+                    try (reader) {
+                        if (reader.baseSeq != baseSeq || reader.pageSize != expected.pageSize()) {
+                            throw new IOException("Backup " + delta + " does not follow backup " + baseSeq);
+                        }
+                        int pgno;
+                        while ((pgno = reader.next(page.array())) > 0) {
+                            page.clear();
+                            while (page.hasRemaining()) {
+                                out.write(page, (long) (pgno - 1) * reader.pageSize + page.position());
+                            }
+                        }
+                    }
+                    out.truncate((long) reader.pageCount * reader.pageSize);
+                    baseSeq = delta.seq();
+                }
+                out.force(true);
+            }
+            Manifest actual = Manifest.of(partial);
+            if (!Arrays.equals(actual.fileDigest(), expected.fileDigest())) {
+                throw new IOException("Restored file does not match the digest of backup " + last);
+            }
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            return last;
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    // The full backup and deltas that rebuild backup seq, or the latest when seq is negative
+    private static List<Backup> chain(List<Backup> backups, long seq) throws IOException {
+        int end = backups.size() - 1;
+        if (seq >= 0) {
+            while (end >= 0 && backups.get(end).seq() != seq) {
+                end--;
+            }
+        }
+        if (end < 0) {
+            throw new IOException(seq < 0 ? "No backups" : "No backup " + seq);
+        }
+        int begin = end;
+        while (begin >= 0 && !backups.get(begin).full()) {
+            begin--;
+        }
+        if (begin < 0) {
+            throw new IOException("Backup " + backups.get(end) + " has no full backup before it");
+        }
+        List<Backup> chain = backups.subList(begin, end + 1);
+        for (int i = 1; i < chain.size(); i++) {
+            if (chain.get(i).seq() != chain.get(i - 1).seq() + 1) {
+                throw new IOException("Backup " + (chain.get(i - 1).seq() + 1) + " is missing");
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Checks every backup of a database without rebuilding any: each full snapshot is hashed, each
+     * delta's pages are checked against their CRCs and applied to the previous digests, and the
+     * result is compared with the backup's manifest.
+     */
+    public static List<String> verify(String name) throws IOException {
+        List<String> problems = new ArrayList<>();
+        Manifest state = null;
+        long previousSeq = -1;
+        for (Backup backup : backups(name)) {
+            String label = name + " " + backup;
+            try {
+                Manifest expected = Manifest.read(backup.manifest());
+                if (backup.full()) {
+                    state = Manifest.of(backup.file());
+                } else if (state == null || previousSeq != backup.seq() - 1) {
+                    problems.add(label + ": the backup before it is missing or damaged");
+                    state = null;
+                    previousSeq = backup.seq();
+                    continue;
+                } else {
+                    state = apply(state, backup, previousSeq);
+                }
+                if (!Arrays.equals(state.fileDigest(), expected.fileDigest())) {
+                    problems.add(label + ": pages do not match the manifest");
+                    state = null;
+                }
+            } catch (IOException e) {
+                problems.add(label + ": " + e.getMessage());
+                state = null;
+            }
+            previousSeq = backup.seq();
+        }
+        return problems;
+    }
+
+    // The digests after applying a delta's pages, checking them on the way
+    private static Manifest apply(Manifest base, Backup delta, long baseSeq) throws IOException {
+        try (DeltaReader reader = new DeltaReader(delta.file())) {
+            if (reader.baseSeq != baseSeq || reader.pageSize != base.pageSize()) {
+                throw new IOException("delta does not follow backup " + baseSeq);
+            }
+            byte[] digests = Arrays.copyOf(base.digests(), reader.pageCount * DIGEST_BYTES);
+            byte[] page = new byte[reader.pageSize];
+            MessageDigest sha = sha256();
+            int pgno;
+            while ((pgno = reader.next(page)) > 0) {
+                sha.update(page);
+                System.arraycopy(sha.digest(), 0, digests, (pgno - 1) * DIGEST_BYTES, DIGEST_BYTES);
+            }
+            return Manifest.of(reader.pageSize, reader.pageCount, digests);
+        }
+    }
+
+    private record Scan(Manifest manifest, int changed) {
+    }
+
+    /**
+     * Hashes every page of a snapshot. With a previous manifest, pages whose digest differs are
+     * written to {@code delta}, which is synced before returning.
+     */
+    private static Scan scan(Path snapshot, Manifest previous, Path delta, long baseSeq) throws IOException {
+        try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(100);
+            in.read(header, 0);
+            // Big-endian at offset 16; 1 stands for 65536
+            int pageSize = ((header.get(16) & 0xff) << 8) | (header.get(17) & 0xff);
+            pageSize = pageSize == 1 ? 65536 : pageSize;
+            if (pageSize < 512 || in.size() % pageSize != 0) {
+                throw new IOException(snapshot + " is not an SQLite database");
+            }
+            int pageCount = (int) (in.size() / pageSize);
+            boolean diff = previous != null && previous.pageSize() == pageSize;
+            byte[] digests = new byte[pageCount * DIGEST_BYTES];
+            int changed = 0;
+
+            MessageDigest sha = sha256();
+            CRC32C crc = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES - BUFFER_BYTES % pageSize);
+            try (DataOutputStream out = diff ? new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(delta),
+                    BUFFER_BYTES)) : null) {
+                if (out != null) {
+                    out.write(DELTA_MAGIC);
+                    out.writeInt(pageSize);
+                    out.writeInt(pageCount);
+                    out.writeLong(baseSeq);
+                }
+                int pgno = 0;
+                long position = 0;
+                while (pgno < pageCount) {
+                    buffer.clear();
+                    while (buffer.hasRemaining() && position + buffer.position() < in.size()) {
+                        if (in.read(buffer, position + buffer.position()) < 0) {
+                            break;
+                        }
+                    }
+                    position += buffer.position();
+                    byte[] bytes = buffer.array();
+                    for (int offset = 0; offset < buffer.position(); offset += pageSize, pgno++) {
+                        sha.update(bytes, offset, pageSize);
+                        byte[] digest = sha.digest();
+                        System.arraycopy(digest, 0, digests, pgno * DIGEST_BYTES, DIGEST_BYTES);
+                        if (out != null && !previous.matches(pgno, digest)) {
+                            crc.reset();
+                            crc.update(bytes, offset, pageSize);
+                            out.writeInt(pgno + 1);
+                            out.writeInt((int) crc.getValue());
+                            out.write(bytes, offset, pageSize);
+                            changed++;
+                        }
+                    }
+                }
+                if (out != null) {
+                    crc.reset();
+                    crc.update(DELTA_MAGIC);
+                    crc.update(ByteBuffer.allocate(16).putInt(pageSize).putInt(pageCount).putLong(baseSeq).flip());
+                    out.writeInt(changed);
+                    out.writeInt((int) crc.getValue());
+                    out.flush();
+                }
+            }
+            if (diff) {
+                try (FileChannel channel = FileChannel.open(delta, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            } else {
+                changed = pageCount;
+            }
+            return new Scan(Manifest.of(pageSize, pageCount, digests), changed);
+        }
+    }
+
+    /** Reads a delta's pages in order, checking each against its CRC32C. */
+    private static final class DeltaReader implements AutoCloseable {
+        final int pageSize;
+        final int pageCount;
+        final long baseSeq;
+        private final DataInputStream in;
+        private final long entries;
+        private final CRC32C crc = new CRC32C();
+        private long read;
+
+        DeltaReader(Path file) throws IOException {
+            long size = Files.size(file);
+            int expectedCrc;
+            int count;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer trailer = ByteBuffer.allocate(DELTA_TRAILER_BYTES);
+                channel.read(trailer, size - DELTA_TRAILER_BYTES);
+                trailer.flip();
+                count = trailer.getInt();
+                expectedCrc = trailer.getInt();
+            }
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES));
+            try {
+                byte[] magic = new byte[DELTA_MAGIC.length];
+                in.readFully(magic);
+                pageSize = in.readInt();
+                pageCount = in.readInt();
+                baseSeq = in.readLong();
+                crc.update(magic);
+                crc.update(ByteBuffer.allocate(16).putInt(pageSize).putInt(pageCount).putLong(baseSeq).flip());
+                if (!Arrays.equals(magic, DELTA_MAGIC) || (int) crc.getValue() != expectedCrc
+                        || size != DELTA_HEADER_BYTES + (long) count * (8 + pageSize) + DELTA_TRAILER_BYTES) {
+                    throw new IOException(file + " is damaged or not a backup delta");
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            entries = count;
+        }
+
+        /** Reads the next page into {@code page} and returns its number, or 0 at the end. */
+        int next(byte[] page) throws IOException {
+            if (read == entries) {
+                return 0;
+            }
+            try {
+                int pgno = in.readInt();
+                int expected = in.readInt();
+                in.readFully(page, 0, pageSize);
+                crc.reset();
+                crc.update(page, 0, pageSize);
+                if ((int) crc.getValue() != expected || pgno < 1 || pgno > pageCount) {
+                    throw new IOException("page " + pgno + " fails its checksum");
+                }
+                read++;
+                return pgno;
+            } catch (EOFException e) {
+                throw new IOException("delta is truncated", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Digests of a database's pages (the first 16 bytes of each page's SHA-256) and of the whole
+     * file, which is the SHA-256 of the page size, page count and page digests.
+     */
+    record Manifest(int pageSize, int pageCount, byte[] digests, byte[] fileDigest) {
+        static Manifest of(int pageSize, int pageCount, byte[] digests) {
+            MessageDigest sha = sha256();
+            sha.update(ByteBuffer.allocate(8).putInt(pageSize).putInt(pageCount).array());
+            sha.update(digests, 0, pageCount * DIGEST_BYTES);
+            return new Manifest(pageSize, pageCount, digests, sha.digest());
+        }
+
+        static Manifest of(Path database) throws IOException {
+            return scan(database, null, null, 0).manifest();
+        }
+
+        boolean matches(int page, byte[] digest) {
+            return page < pageCount && Arrays.equals(digests, page * DIGEST_BYTES, (page + 1) * DIGEST_BYTES,
+                    digest, 0, DIGEST_BYTES);
+        }
+
+        void write(Path file) throws IOException {
+            Path partial = file.resolveSibling(file.getFileName() + ".partial");
+            CRC32C crc = new CRC32C();
+            try (OutputStream stream = Files.newOutputStream(partial);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_BYTES))) {
+                ByteBuffer header = ByteBuffer.allocate(MANIFEST_MAGIC.length + 8 + fileDigest.length)
+                        .put(MANIFEST_MAGIC).putInt(pageSize).putInt(pageCount).put(fileDigest);
+                out.write(header.array());
+                out.write(digests, 0, pageCount * DIGEST_BYTES);
+                crc.update(header.array());
+                crc.update(digests, 0, pageCount * DIGEST_BYTES);
+                out.writeInt((int) crc.getValue());
+            }
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        static Manifest read(Path file) throws IOException {
+            try (InputStream stream = Files.newInputStream(file);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_BYTES))) {
+                byte[] header = new byte[MANIFEST_MAGIC.length + 8 + 32];
+                in.readFully(header);
+                ByteBuffer fields = ByteBuffer.wrap(header, MANIFEST_MAGIC.length, 8);
+                int pageSize = fields.getInt();
+                int pageCount = fields.getInt();
+                if (!Arrays.equals(header, 0, MANIFEST_MAGIC.length, MANIFEST_MAGIC, 0, MANIFEST_MAGIC.length)
+                        || pageCount < 0 || (long) pageCount * DIGEST_BYTES + header.length + 4 != Files.size(file)) {
+                    throw new IOException(file + " is not a backup manifest");
+                }
+                byte[] digests = new byte[pageCount * DIGEST_BYTES];
+                in.readFully(digests);
+                CRC32C crc = new CRC32C();
+                crc.update(header);
+                crc.update(digests);
+                if ((int) crc.getValue() != in.readInt()) {
+                    throw new IOException(file + " fails its checksum");
+                }
+                return new Manifest(pageSize, pageCount, digests, Arrays.copyOfRange(header, header.length - 32, header.length));
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package expense;
+
+import java.io.IOException;
+import java.sql.*;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Scanner;
+
+public class ExpenseManager {
+    private static final RecurringScheduler RECURRING = new RecurringScheduler(Clock.systemUTC());
+
+    public static void main(String[] args) {
+        createTables();
+        watchBudgets();
+        watchSpending();
+        openJournal();
+        startRecurring();
+        Scanner scanner = new Scanner(System.in);
+
+        while (true) {
+            System.out.println("\nExpense and Income Manager");
+            System.out.println("1. Add Income");
+            System.out.println("2. Add Expense");
+            System.out.println("3. View Transactions");
+            System.out.println("4. Edit Transaction");
+            System.out.println("5. Delete Transaction");
+            System.out.println("6. Import Transactions (CSV/OFX)");
+            System.out.println("7. Search Notes");
+            System.out.println("8. Recurring Transactions");
+            System.out.println("9. Exit");
+            System.out.print("Choose an option: ");
+            int choice = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
+
+            switch (choice) {
+                case 1 -> addTransaction(scanner, "Income");
+                case 2 -> addTransaction(scanner, "Expense");
+                case 3 -> viewTransactions(scanner);
+                case 4 -> editTransaction(scanner);
+                case 5 -> deleteTransaction(scanner);
+                case 6 -> importTransactions(scanner);
+                case 7 -> searchNotes(scanner);
+                case 8 -> manageRecurring(scanner);
+                case 9 -> {
+                    RECURRING.close();
+                    TransactionJournal.shutdown();
+                    System.out.println("Exiting... Goodbye!");
+                    scanner.close();
+                    return;
+                }
+                default -> System.out.println("Invalid choice. Please try again.");
+            }
+        }
+    }
+
+    static void createTables() {
+        try {
+            Schema.migrate();
+        } catch (SQLException e) {
+            System.err.println("Error creating table: " + e.getMessage());
+        }
+    }
+
+    private static void watchBudgets() {
+        BudgetAlerts.get().addListener(alert -> System.out.println(alert));
+        try {
+            BudgetAlerts.get().reconcile(Ledger.shared());
+        } catch (SQLException e) {
+            System.err.println("Error loading budgets: " + e.getMessage());
+        }
+    }
+
+    private static void watchSpending() {
+        if (!SpendingMonitor.enabled()) {
+            return;
+        }
+        SpendingMonitor.get().addListener(signal -> System.out.println(signal));
+        try {
+            SpendingMonitor.get().backfill(Ledger.shared());
+        } catch (SQLException e) {
+            System.err.println("Error loading spending history: " + e.getMessage());
+        }
+    }
+
+    // In write-behind mode, replays what the last run left in the journal before the menu starts
+    private static void openJournal() {
+        if (TransactionJournal.ENABLED) {
+            try {
+                TransactionJournal.get();
+            } catch (IOException e) {
+                System.err.println("Error opening journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Posts what fell due while the tracker was not running, then keeps checking in the background
+    private static void startRecurring() {
+        try {
+            RECURRING.load(Ledger.shared());
+            int posted = RECURRING.advance();
+            if (posted > 0) {
+                System.out.println("Posted " + posted + " recurring transaction(s) that fell due.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error posting recurring transactions: " + e.getMessage());
+        }
+        RECURRING.start();
+    }
+
+    private static void manageRecurring(Scanner scanner) {
+        try {
+            List<RecurringScheduler.Rule> rules = RecurringScheduler.rules(Ledger.shared());
+            System.out.println("\nRecurring transactions:");
+            rules.forEach(System.out::println);
+            if (rules.isEmpty()) {
+                System.out.println("None.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving recurring transactions: " + e.getMessage());
+            return;
+        }
+        System.out.print("[a]dd, [d]elete, [q]uit: ");
+        switch (scanner.nextLine().trim().toLowerCase()) {
+            case "a" -> addRecurring(scanner);
+            case "d" -> deleteRecurring(scanner);
+            case "q", "" -> {
+            }
+            default -> System.out.println("Invalid choice.");
+        }
+    }
+
+    private static void addRecurring(Scanner scanner) {
+        System.out.print("Type (Income/Expense): ");
+        String type = scanner.nextLine().trim();
+        if (!type.equalsIgnoreCase("Income") && !type.equalsIgnoreCase("Expense")) {
+            System.out.println("Type must be Income or Expense.");
+            return;
+        }
+        type = Character.toUpperCase(type.charAt(0)) + type.substring(1).toLowerCase();
+        long amountCents = readAmount(scanner, "Enter amount: ");
+        if (amountCents == Money.INVALID) {
+            return;
+        }
+        System.out.print("Enter notes (optional): ");
+        String notes = scanner.nextLine();
+        String category = null;
+        if (type.equals("Expense")) {
+            System.out.print("Enter category (optional): ");
+            category = scanner.nextLine();
+        }
+        System.out.print("Repeat rule (e.g. FREQ=MONTHLY;BYMONTHDAY=1 or FREQ=WEEKLY;INTERVAL=2;BYDAY=FR): ");
+        String rule = scanner.nextLine();
+        System.out.print("Start date (YYYY-MM-DD, blank for today): ");
+        String start = scanner.nextLine().trim();
+
+        try {
+            Recurrence recurrence = Recurrence.parse(rule, start.isEmpty() ? LocalDate.now() : LocalDate.parse(start));
+            RECURRING.addRule(Ledger.shared(), type, amountCents, notes.isBlank() ? null : notes, category, recurrence);
+            int posted = RECURRING.advance();
+            System.out.println("Recurring " + type.toLowerCase() + " added" + (posted > 0
+                    ? ", with " + posted + " past occurrence(s) posted." : "."));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            System.out.println("Invalid rule: " + e.getMessage());
+        } catch (SQLException e) {
+            System.err.println("Error adding recurring transaction: " + e.getMessage());
+        }
+    }
+
+    private static void deleteRecurring(Scanner scanner) {
+        System.out.print("Enter the ID of the rule to delete: ");
+        String id = scanner.nextLine().trim();
+        try {
+            if (RECURRING.deleteRule(Ledger.shared(), Long.parseLong(id))) {
+                System.out.println("Rule deleted; transactions it posted are kept.");
+            } else {
+                System.out.println("Rule not found.");
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid ID.");
+        } catch (SQLException e) {
+            System.err.println("Error deleting recurring transaction: " + e.getMessage());
+        }
+    }
+
+    // Journaled rows may not be in finance.db yet; reads and edits wait for them first
+    private static void awaitJournal() {
+        try {
+            if (TransactionJournal.ENABLED && !TransactionJournal.get().awaitApplied(30_000)) {
+                System.out.println("Some journaled transactions are not written yet.");
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening journal: " + e.getMessage());
+        }
+    }
+
+    private static void addTransaction(Scanner scanner, String type) {
+        long amountCents = readAmount(scanner, "Enter amount: ");
+        if (amountCents == Money.INVALID) {
+            return;
+        }
+        System.out.print("Enter notes (optional): ");
+        String notes = scanner.nextLine();
+        String category = null;
+        if (type.equals("Expense")) {
+            System.out.print("Enter category (optional): ");
+            category = scanner.nextLine();
+        }
+
+        try {
+            if (TransactionJournal.ENABLED) {
+                TransactionJournal.get().append(Ledger.shared(), type, amountCents, notes.isBlank() ? null : notes,
+                        TransactionStore.now(), category);
+            } else {
+                TransactionStore.insert(Ledger.shared(), type, amountCents, notes.isBlank() ? null : notes,
+                        TransactionStore.now(), category);
+            }
+            System.out.println(type + " added successfully!");
+        } catch (SQLException | IOException e) {
+            System.err.println("Error adding " + type.toLowerCase() + ": " + e.getMessage());
+        }
+    }
+
+    private static void importTransactions(Scanner scanner) {
+        System.out.print("Enter the path of the CSV or OFX file: ");
+        String file = scanner.nextLine().trim();
+
+        try {
+            TransactionImporter.Result result = TransactionImporter.importFile(
+                    java.nio.file.Path.of(file), TransactionImporter.DEFAULT_BATCH_SIZE);
+            System.out.println(result);
+        } catch (java.io.IOException | SQLException e) {
+            System.err.println("Error importing transactions: " + e.getMessage());
+        }
+    }
+
+    private static void viewTransactions(Scanner scanner) {
+        awaitJournal();
+        TransactionPager.Filter filter = TransactionPager.Filter.NONE;
+        int size = TransactionPager.DEFAULT_PAGE_SIZE;
+        try {
+            TransactionPager.Page page = TransactionPager.firstPage(filter, size);
+            while (true) {
+                printPage(page, filter);
+                System.out.print("[n]ext (older), [p]rev (newer), [f]ilter, [q]uit: ");
+                String command = scanner.nextLine().trim().toLowerCase();
+                switch (command) {
+                    case "n" -> {
+                        if (page.hasOlder()) {
+                            page = TransactionPager.olderPage(filter, page.oldest(), size);
+                        } else {
+                            System.out.println("Already at the oldest page.");
+                        }
+                    }
+                    case "p" -> {
+                        if (page.hasNewer()) {
+                            page = TransactionPager.newerPage(filter, page.newest(), size);
+                        } else {
+                            System.out.println("Already at the newest page.");
+                        }
+                    }
+                    case "f" -> {
+                        filter = readFilter(scanner);
+                        page = TransactionPager.firstPage(filter, size);
+                    }
+                    case "q", "" -> {
+                        return;
+                    }
+                    default -> System.out.println("Invalid choice. Please try again.");
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error retrieving transactions: " + e.getMessage());
+        }
+    }
+
+    private static void searchNotes(Scanner scanner) {
+        System.out.print("Search notes (word, prefix*, or \"exact phrase\"): ");
+        String query = scanner.nextLine();
+        awaitJournal();
+        try {
+            List<TransactionPager.Row> rows = NoteSearch.search(Ledger.shared(), query, TransactionPager.DEFAULT_PAGE_SIZE);
+            printPage(new TransactionPager.Page(rows, false, false), TransactionPager.Filter.NONE);
+        } catch (SQLException e) {
+            System.err.println("Error searching notes: " + e.getMessage());
+        }
+    }
+
+    private static void printPage(TransactionPager.Page page, TransactionPager.Filter filter) {
+        // Build the whole page first so it reaches the terminal in one write
+        StringBuilder out = new StringBuilder(128 * (page.rows().size() + 4));
+        Formatter formatter = new Formatter(out);
+        out.append("\nTransactions").append(filter.isEmpty() ? "" : " (filtered)").append(":\n");
+        formatter.format("%-5s %-10s %-10s %-30s %-20s%n", "ID", "Type", "Amount", "Notes", "Timestamp");
+        out.append("-----------------------------------------------------------------------\n");
+        for (TransactionPager.Row row : page.rows()) {
+            int start = out.length();
+            pad(out.append(row.id()), start, 6);
+            start = out.length();
+            pad(out.append(row.type()), start, 11);
+            Money.appendPadded(out, row.amountCents(), 10).append(' ');
+            start = out.length();
+            pad(out.append(row.notes() == null ? "N/A" : row.notes()), start, 31);
+            out.append(row.timestamp()).append('\n');
+        }
+        if (page.rows().isEmpty()) {
+            out.append("No transactions found.\n");
+        }
+        System.out.print(out);
+        System.out.flush();
+    }
+
+    // Pads the column that starts at {@code start} with spaces up to {@code width} characters
+    private static void pad(StringBuilder out, int start, int width) {
+        for (int i = out.length() - start; i < width; i++) {
+            out.append(' ');
+        }
+    }
+
+    /** Reads a whole line as an amount in cents; prints a message and returns Money.INVALID if it is not one. */
+    static long readAmount(Scanner scanner, String prompt) {
+        System.out.print(prompt);
+        long cents = Money.parse(scanner.nextLine().trim());
+        if (cents == Money.INVALID) {
+            System.out.println("Invalid amount.");
+        }
+        return cents;
+    }
+
+    private static TransactionPager.Filter readFilter(Scanner scanner) {
+        System.out.print("Type (Income/Expense, blank for both): ");
+        String type = scanner.nextLine().trim();
+        System.out.print("Minimum amount (blank for none): ");
+        String min = scanner.nextLine().trim();
+        System.out.print("Maximum amount (blank for none): ");
+        String max = scanner.nextLine().trim();
+        System.out.print("Start date (YYYY-MM-DD, blank for none): ");
+        String from = scanner.nextLine().trim();
+        System.out.print("End date (YYYY-MM-DD, blank for none): ");
+        String to = scanner.nextLine().trim();
+        System.out.print("Notes contain (blank for any): ");
+        String notes = scanner.nextLine().trim();
+
+        try {
+            return new TransactionPager.Filter(
+                    type.isEmpty() ? null : Character.toUpperCase(type.charAt(0)) + type.substring(1).toLowerCase(),
+                    min.isEmpty() ? null : Money.of(min).cents(),
+                    max.isEmpty() ? null : Money.of(max).cents(),
+                    from.isEmpty() ? null : LocalDate.parse(from),
+                    to.isEmpty() ? null : LocalDate.parse(to),
+                    notes.isEmpty() ? null : notes);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            System.out.println("Invalid filter, showing all transactions: " + e.getMessage());
+            return TransactionPager.Filter.NONE;
+        }
+    }
+
+    private static void editTransaction(Scanner scanner) {
+        System.out.print("Enter the ID of the transaction to edit: ");
+        int id = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
+
+        long amountCents = readAmount(scanner, "Enter new amount: ");
+        if (amountCents == Money.INVALID) {
+            return;
+        }
+        System.out.print("Enter new notes (optional): ");
+        String notes = scanner.nextLine();
+
+        awaitJournal();
+        try {
+            boolean updated = TransactionStore.update(id, amountCents, notes.isBlank() ? null : notes);
+
+            if (updated) {
+                System.out.println("Transaction updated successfully!");
+            } else if (TransactionArchive.isArchived(Ledger.shared(), id)) {
+                System.out.println("Transaction " + id + " is archived and cannot be changed.");
+            } else {
+                System.out.println("Transaction not found.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error updating transaction: " + e.getMessage());
+        }
+    }
+
+    private static void deleteTransaction(Scanner scanner) {
+        System.out.print("Enter the ID of the transaction to delete: ");
+        int id = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
+
+        awaitJournal();
+        try {
+            boolean deleted = TransactionStore.delete(id);
+
+            if (deleted) {
+                System.out.println("Transaction deleted successfully!");
+            } else if (TransactionArchive.isArchived(Ledger.shared(), id)) {
+                System.out.println("Transaction " + id + " is archived and cannot be changed.");
+            } else {
+                System.out.println("Transaction not found.");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error deleting transaction: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * One user's transactions and budgets: a user id from users.db plus the database that holds
+ * them. Every row carries its {@code user_id}, and per-user indexes lead with it, so a user's
+ * queries touch only that user's rows whichever file they live in.
+ *
+ * {@code -Dexpense.ledger.shards} picks where ledgers live:
+ * <ul>
+ *   <li>{@code none} (default): every user in finance.db.</li>
+ *   <li>{@code user}: one file per user, {@code user-<id>.db}.</li>
+ *   <li>{@code bucket}: {@code bucket-<n>.db} for {@code n = id % expense.ledger.buckets} (64).</li>
+ * </ul>
+ * Shard files are created in {@code expense.ledger.dir} ({@code ledgers}) and migrated on first
+ * use. At most {@code expense.ledger.openLimit} (32) are open at once; the least recently used
+ * one is closed to make room.
+ *
+ * The {@code monthly_totals} and {@code daily_totals} rollups are keyed by user, so each ledger has its own.
+ */
+public final class Ledger {
+    /** Owner of everything written before ledgers had users, and of the single-user tools. */
+    public static final long SHARED_USER = 0;
+
+    private static final String SHARDS = System.getProperty("expense.ledger.shards", "none");
+    private static final int BUCKETS = Integer.getInteger("expense.ledger.buckets", 64);
+    private static final Path DIR = Path.of(System.getProperty("expense.ledger.dir", "ledgers"));
+    private static final int OPEN_LIMIT = Integer.getInteger("expense.ledger.openLimit", 32);
+    private static final int SHARD_POOL_SIZE = 2;
+
+    private static final ShardCache SHARD_CACHE = new ShardCache(OPEN_LIMIT);
+
+    private final long userId;
+    private final String shard;
+
+    private Ledger(long userId, String shard) {
+        this.userId = userId;
+        this.shard = shard;
+    }
+
+    /** The ledger the single-user tools read and write: user 0 in finance.db. */
+    public static Ledger shared() {
+        return new Ledger(SHARED_USER, null);
+    }
+
+    public static Ledger forUser(long userId) {
+        return switch (SHARDS) {
+            case "none" -> new Ledger(userId, null);
+            case "user" -> new Ledger(userId, "user-" + userId);
+            case "bucket" -> new Ledger(userId, "bucket-" + Math.floorMod(userId, BUCKETS));
+            default -> throw new IllegalStateException("Unknown expense.ledger.shards: " + SHARDS);
+        };
+    }
+
+    public long userId() {
+        return userId;
+    }
+
+    /** Name of the database file holding this ledger, without extension: "finance" or the shard. */
+    String fileName() {
+        return shard == null ? "finance" : shard;
+    }
+
+    /** Directory holding the shard files. */
+    static Path directory() {
+        return DIR;
+    }
+
+    /** Borrows a connection to the database holding this ledger. */
+    public Database.PooledConnection acquire() throws SQLException {
+        if (shard == null) {
+            return Database.finance().acquire();
+        }
+        while (true) {
+            Database database = SHARD_CACHE.get(shard);
+            try {
+                return database.acquire();
+            } catch (SQLException e) {
+                // Evicted between lookup and acquire; the next lookup reopens it
+                if (!database.isClosed()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /** Ledgers are equal when they are the same user's rows in the same file. */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Ledger other && userId == other.userId && Objects.equals(shard, other.shard);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(userId) * 31 + Objects.hashCode(shard);
+    }
+
+    @Override
+    public String toString() {
+        return "ledger of user " + userId + (shard == null ? "" : " in " + shard);
+    }
+
+    /** Open shard databases, least recently used first. */
+    private static final class ShardCache {
+        private final Map<String, Database> open;
+
+        ShardCache(int limit) {
+            this.open = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Database> eldest) {
+                    if (size() > limit) {
+                        eldest.getValue().close();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized Database get(String shard) throws SQLException {
+            Database database = open.get(shard);
+            if (database != null) {
+                return database;
+            }
+            try {
+                Files.createDirectories(DIR);
+            } catch (IOException e) {
+                throw new SQLException("Cannot create ledger directory " + DIR, e);
+            }
+            database = Database.open("jdbc:sqlite:" + DIR.resolve(shard + ".db"), SHARD_POOL_SIZE);
+            try {
+                Schema.migrate(database);
+            } catch (SQLException e) {
+                database.close();
+                throw e;
+            }
+            open.put(shard, database);
+            return database;
+        }
+
+        synchronized int size() {
+            return open.size();
+        }
+    }
+
+    /** Number of shard files currently open, for benchmarks. */
+    static int openShards() {
+        return SHARD_CACHE.size();
+    }
+}
@@ -0,0 +1,136 @@
+package expense;
+
+/**
+ * Exact money amount in minor units (cents). The hot paths work on the raw {@code long} through
+ * the static helpers, which parse and format without allocating intermediate objects; the record
+ * itself is for APIs where a typed value reads better than a bare long.
+ */
+public record Money(long cents) implements Comparable<Money> {
+    /** Returned by the parse methods for text that is not an amount. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final Money ZERO = new Money(0);
+
+    // Largest magnitude we accept, well inside long range so sums of many rows cannot overflow
+    private static final long MAX_CENTS = 1_000_000_000_000_000L;
+
+    public static Money of(String text) {
+        long cents = parse(text);
+        if (cents == INVALID) {
+            throw new NumberFormatException("Not an amount: " + text);
+        }
+        return new Money(cents);
+    }
+
+    public static long parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses amounts such as "12", "-1,234.56", "$12.30", "(12.30)" or "0.125" into cents.
+     * More than two decimals are rounded half-up. Returns {@link #INVALID} if the text is not a number.
+     */
+    public static long parse(CharSequence text, int from, int to) {
+        long units = 0;
+        int decimals = -1;
+        int digits = 0;
+        boolean negative = false;
+        int roundDigit = -1;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (decimals >= 2) {
+                    if (roundDigit < 0) {
+                        roundDigit = c - '0';
+                    }
+                    continue;
+                }
+                units = units * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                if (units > MAX_CENTS) {
+                    return INVALID;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if ((c == '-' || c == '(') && digits == 0) {
+                negative = true; // (12.30) is accounting notation for a negative amount
+            } else if (c != ',' && c != '$' && c != '+' && c != ' ' && c != ')') {
+                return INVALID;
+            }
+        }
+        if (digits == 0) {
+            return INVALID;
+        }
+        for (int d = Math.max(decimals, 0); d < 2; d++) {
+            units *= 10;
+        }
+        if (roundDigit >= 5) {
+            units++;
+        }
+        if (units > MAX_CENTS) {
+            return INVALID;
+        }
+        return negative ? -units : units;
+    }
+
+    /** Appends cents as a plain decimal, e.g. -1234.50, with no grouping separators. */
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    /** Appends the amount left-aligned in a column of {@code width} characters, like {@code %-10.2f}. */
+    public static StringBuilder appendPadded(StringBuilder out, long cents, int width) {
+        int start = out.length();
+        appendTo(out, cents);
+        for (int i = out.length() - start; i < width; i++) {
+            out.append(' ');
+        }
+        return out;
+    }
+
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(24), cents).toString();
+    }
+
+    public static long fromDouble(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / 100.0;
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(cents, other.cents));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(cents, other.cents));
+    }
+
+    public boolean isNegative() {
+        return cents < 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(cents, other.cents);
+    }
+
+    @Override
+    public String toString() {
+        return format(cents);
+    }
+}
@@ -0,0 +1,175 @@
+package expense;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintenance commands for the {@code monthly_totals} and {@code daily_totals} rollups, which hold
+ * totals per ledger. The tables are kept current by {@link TransactionStore} on every write; this class can rebuild them from
+ * scratch and check them against a fresh aggregation of {@code transactions}. Months moved to the
+ * {@link TransactionArchive} are still counted by the rollups, so their segments' totals are added
+ * in through the temp tables {@link TransactionArchive#loadTotals} fills.
+ */
+public final class MonthlyTotals {
+    static final String REBUILD_SQL = """
+                                      INSERT INTO monthly_totals(user_id, year_month, type, total_cents, count)
+                                      SELECT user_id, year_month, type, SUM(amount_cents), COUNT(*)
+                                      FROM transactions
+                                      WHERE year_month IS NOT NULL
+                                      GROUP BY user_id, year_month, type;
+                                      """;
+
+    static final String REBUILD_DAILY_SQL = """
+                                            INSERT INTO daily_totals(user_id, epoch_day, type, total_cents, count)
+                                            SELECT user_id, epoch_day, type, SUM(amount_cents), COUNT(*)
+                                            FROM transactions
+                                            WHERE epoch_day IS NOT NULL
+                                            GROUP BY user_id, epoch_day, type;
+                                            """;
+
+    private static final String REBUILD_ARCHIVED_SQL = """
+                                                       INSERT INTO monthly_totals(user_id, year_month, type, total_cents, count)
+                                                       SELECT user_id, year_month, type, total_cents, count
+                                                       FROM temp.archived_monthly_totals WHERE true
+                                                       ON CONFLICT(user_id, year_month, type) DO UPDATE
+                                                       SET total_cents = total_cents + excluded.total_cents,
+                                                           count = count + excluded.count;
+                                                       """;
+
+    private static final String REBUILD_ARCHIVED_DAILY_SQL = """
+                                                             INSERT INTO daily_totals(user_id, epoch_day, type, total_cents, count)
+                                                             SELECT user_id, epoch_day, type, total_cents, count
+                                                             FROM temp.archived_daily_totals WHERE true
+                                                             ON CONFLICT(user_id, epoch_day, type) DO UPDATE
+                                                             SET total_cents = total_cents + excluded.total_cents,
+                                                                 count = count + excluded.count;
+                                                             """;
+
+    private static final String VERIFY_SQL = """
+                                             SELECT COALESCE(a.user_id, r.user_id) AS user_id,
+                                                    COALESCE(a.year_month, r.year_month) AS year_month,
+                                                    COALESCE(a.type, r.type) AS type,
+                                                    a.total_cents AS expectedTotal, a.count AS expectedCount,
+                                                    r.total_cents AS rollupTotal, r.count AS rollupCount
+                                             FROM (SELECT user_id, year_month, type, SUM(total_cents) AS total_cents, SUM(count) AS count
+                                                   FROM (SELECT user_id, year_month, type, amount_cents AS total_cents, 1 AS count
+                                                         FROM transactions
+                                                         UNION ALL
+                                                         SELECT user_id, year_month, type, total_cents, count
+                                                         FROM temp.archived_monthly_totals)
+                                                   GROUP BY user_id, year_month, type) a
+                                             FULL OUTER JOIN monthly_totals r
+                                                  ON r.user_id = a.user_id AND r.year_month = a.year_month AND r.type = a.type
+                                             WHERE r.year_month IS NULL OR a.year_month IS NULL
+                                                OR r.count <> a.count OR r.total_cents <> a.total_cents
+                                             ORDER BY 1, 2, 3;
+                                             """;
+
+    private static final String VERIFY_DAILY_SQL = """
+                                                   SELECT COALESCE(a.user_id, r.user_id) AS user_id,
+                                                          COALESCE(a.epoch_day, r.epoch_day) AS epoch_day,
+                                                          COALESCE(a.type, r.type) AS type,
+                                                          a.total_cents AS expectedTotal, a.count AS expectedCount,
+                                                          r.total_cents AS rollupTotal, r.count AS rollupCount
+                                                   FROM (SELECT user_id, epoch_day, type, SUM(total_cents) AS total_cents, SUM(count) AS count
+                                                         FROM (SELECT user_id, epoch_day, type, amount_cents AS total_cents, 1 AS count
+                                                               FROM transactions
+                                                               WHERE epoch_day IS NOT NULL
+                                                               UNION ALL
+                                                               SELECT user_id, epoch_day, type, total_cents, count
+                                                               FROM temp.archived_daily_totals)
+                                                         GROUP BY user_id, epoch_day, type) a
+                                                   FULL OUTER JOIN daily_totals r
+                                                        ON r.user_id = a.user_id AND r.epoch_day = a.epoch_day AND r.type = a.type
+                                                   WHERE r.epoch_day IS NULL OR a.epoch_day IS NULL
+                                                      OR r.count <> a.count OR r.total_cents <> a.total_cents
+                                                   ORDER BY 1, 2, 3;
+                                                   """;
+
+    private MonthlyTotals() {
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "verify";
+        try {
+            Schema.migrate();
+            switch (command) {
+                case "rebuild" -> {
+                    long start = System.nanoTime();
+                    int groups = rebuild();
+                    System.out.printf("Rebuilt monthly_totals: %d groups in %.1f ms%n", groups, (System.nanoTime() - start) / 1e6);
+                }
+                case "verify" -> {
+                    List<String> mismatches = verify();
+                    if (mismatches.isEmpty()) {
+                        System.out.println("monthly_totals and daily_totals are consistent with transactions.");
+                    } else {
+                        System.out.println("The rollups have " + mismatches.size() + " mismatched groups:");
+                        mismatches.forEach(m -> System.out.println("  " + m));
+                        System.out.println("Run 'MonthlyTotals rebuild' to repair it.");
+                        System.exit(1);
+                    }
+                }
+                default -> System.out.println("Usage: MonthlyTotals [verify|rebuild]");
+            }
+        } catch (SQLException e) {
+            System.err.println("Error maintaining monthly totals: " + e.getMessage());
+        }
+    }
+
+    /** Recomputes both rollups in a single write transaction; returns the number of groups written. */
+    public static int rebuild() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            try {
+                int groups = rebuild(conn);
+                stmt.execute("COMMIT");
+                return groups;
+            } catch (SQLException e) {
+                stmt.execute("ROLLBACK");
+                throw e;
+            }
+        }
+    }
+
+    /** As above, inside the caller's transaction on {@code conn}. */
+    static int rebuild(Database.PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            TransactionArchive.loadTotals(conn);
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("DELETE FROM daily_totals");
+            int groups = stmt.executeUpdate(REBUILD_SQL) + stmt.executeUpdate(REBUILD_DAILY_SQL);
+            stmt.executeUpdate(REBUILD_ARCHIVED_SQL);
+            stmt.executeUpdate(REBUILD_ARCHIVED_DAILY_SQL);
+            return groups;
+        }
+    }
+
+    /** Returns a description of every group where a rollup disagrees with the transactions table. */
+    public static List<String> verify() throws SQLException {
+        List<String> mismatches = new ArrayList<>();
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            TransactionArchive.loadTotals(conn);
+            try (ResultSet rs = conn.prepare(VERIFY_SQL).executeQuery()) {
+                while (rs.next()) {
+                    mismatches.add(String.format("user %d %s %-8s expected %s (%s rows), rollup has %s (%s rows)",
+                            rs.getLong("user_id"), Schema.formatYearMonth(rs.getInt("year_month")), rs.getString("type"),
+                            rs.getString("expectedTotal"), rs.getString("expectedCount"),
+                            rs.getString("rollupTotal"), rs.getString("rollupCount")));
+                }
+            }
+            try (ResultSet rs = conn.prepare(VERIFY_DAILY_SQL).executeQuery()) {
+                while (rs.next()) {
+                    mismatches.add(String.format("user %d %s %-8s expected %s (%s rows), rollup has %s (%s rows)",
+                            rs.getLong("user_id"), LocalDate.ofEpochDay(rs.getLong("epoch_day")), rs.getString("type"),
+                            rs.getString("expectedTotal"), rs.getString("expectedCount"),
+                            rs.getString("rollupTotal"), rs.getString("rollupCount")));
+                }
+            }
+        }
+        return mismatches;
+    }
+}
@@ -0,0 +1,126 @@
+package expense;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ranked full-text search over one ledger's transaction notes, backed by the
+ * {@code transactions_fts} FTS5 table that {@link Schema} keeps in sync with triggers.
+ *
+ * Query syntax: plain words must all match, {@code word*} matches a prefix and
+ * {@code "two words"} matches a phrase. Results are ordered by BM25 relevance.
+ */
+public final class NoteSearch {
+    static final String REBUILD_SQL = "INSERT INTO transactions_fts(transactions_fts) VALUES ('rebuild');";
+
+    static final String SEARCH_SQL = """
+                                     SELECT t.id, t.type, t.amount_cents, t.notes, t.timestamp, t.category
+                                     FROM transactions_fts f
+                                     JOIN transactions t ON t.id = f.rowid
+                                     WHERE transactions_fts MATCH ? AND t.user_id = ?
+                                     ORDER BY f.rank
+                                     LIMIT ?;
+                                     """;
+
+    private NoteSearch() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: NoteSearch rebuild | NoteSearch <query>");
+            return;
+        }
+        try {
+            Schema.migrate();
+            if (args.length == 1 && args[0].equals("rebuild")) {
+                long start = System.nanoTime();
+                rebuild();
+                System.out.printf("Rebuilt notes index in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            } else {
+                for (TransactionPager.Row row : search(Ledger.shared(), String.join(" ", args), 50)) {
+                    System.out.printf("%-7d %-8s %10s  %-20s %s%n",
+                            row.id(), row.type(), Money.format(row.amountCents()), row.timestamp(), row.notes());
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            System.err.println("Error searching notes: " + e.getMessage());
+        }
+    }
+
+    /** Re-indexes every note; use after restoring an old database or if the index is suspect. */
+    public static void rebuild() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(REBUILD_SQL);
+        }
+    }
+
+    /** The ledger's transactions whose notes match {@code query}, best first. */
+    public static List<TransactionPager.Row> search(Ledger ledger, String query, int limit) throws SQLException {
+        String match = toMatchExpression(query);
+        List<TransactionPager.Row> rows = new ArrayList<>();
+        if (match.isEmpty()) {
+            return rows;
+        }
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(SEARCH_SQL);
+            pstmt.setString(1, match);
+            pstmt.setLong(2, ledger.userId());
+            pstmt.setInt(3, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new TransactionPager.Row(rs.getLong("id"), rs.getString("type"), rs.getLong("amount_cents"),
+                            rs.getString("notes"), rs.getString("timestamp"), rs.getString("category")));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Turns user input into an FTS5 MATCH expression. Every term is quoted so punctuation and FTS
+     * keywords (AND, OR, NEAR, column filters) in notes are treated as text, not syntax.
+     */
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        int i = 0;
+        int n = query.length();
+        while (i < n) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            StringBuilder term = new StringBuilder();
+            boolean prefix = false;
+            if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = n;
+                }
+                term.append(query, i + 1, end);
+                i = end + 1;
+            } else {
+                while (i < n && !Character.isWhitespace(query.charAt(i))) {
+                    term.append(query.charAt(i++));
+                }
+                if (term.length() > 1 && term.charAt(term.length() - 1) == '*') {
+                    term.setLength(term.length() - 1);
+                    prefix = true;
+                }
+            }
+            if (term.toString().isBlank()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term.toString().replace("\"", "\"\"")).append('"');
+            if (prefix) {
+                match.append('*');
+            }
+        }
+        return match.toString();
+    }
+}
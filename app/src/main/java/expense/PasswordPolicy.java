@@ -0,0 +1,141 @@
+package expense;
+
+/**
+ * Password rules checked in one pass over the characters, with no regexes and no allocation.
+ * Special characters are looked up in a 128-bit ASCII bitmap built once from the configured set.
+ *
+ * Configured with {@code expense.password.*} system properties:
+ * {@code minLength} (8), {@code maxLength} (72, the most BCrypt looks at),
+ * {@code requireDigit}, {@code requireUppercase} (both true), {@code requireLowercase} (false) and
+ * {@code specialChars} ({@code !@#$%^&*}; empty for no special character rule).
+ */
+public final class PasswordPolicy {
+    public static final int TOO_SHORT = 1;
+    public static final int TOO_LONG = 1 << 1;
+    public static final int NO_DIGIT = 1 << 2;
+    public static final int NO_UPPERCASE = 1 << 3;
+    public static final int NO_LOWERCASE = 1 << 4;
+    public static final int NO_SPECIAL = 1 << 5;
+
+    private static final PasswordPolicy DEFAULT = fromSystemProperties();
+
+    private final int minLength;
+    private final int maxLength;
+    private final int required;
+    private final long specialLow;
+    private final long specialHigh;
+    private final String specialChars;
+
+    public PasswordPolicy(int minLength, int maxLength, boolean requireDigit, boolean requireUppercase,
+                          boolean requireLowercase, String specialChars) {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < specialChars.length(); i++) {
+            char c = specialChars.charAt(i);
+            if (c >= 128) {
+                throw new IllegalArgumentException("Special characters must be ASCII: " + c);
+            }
+            if (c < 64) {
+                low |= 1L << c;
+            } else {
+                high |= 1L << (c - 64);
+            }
+        }
+        this.specialLow = low;
+        this.specialHigh = high;
+        this.specialChars = specialChars;
+        this.required = (requireDigit ? NO_DIGIT : 0) | (requireUppercase ? NO_UPPERCASE : 0)
+                | (requireLowercase ? NO_LOWERCASE : 0) | (specialChars.isEmpty() ? 0 : NO_SPECIAL);
+    }
+
+    public static PasswordPolicy fromSystemProperties() {
+        return new PasswordPolicy(
+                Integer.getInteger("expense.password.minLength", 8),
+                Integer.getInteger("expense.password.maxLength", 72),
+                booleanProperty("expense.password.requireDigit", true),
+                booleanProperty("expense.password.requireUppercase", true),
+                booleanProperty("expense.password.requireLowercase", false),
+                System.getProperty("expense.password.specialChars", "!@#$%^&*"));
+    }
+
+    private static boolean booleanProperty(String name, boolean defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /** The policy configured for this JVM. */
+    public static PasswordPolicy get() {
+        return DEFAULT;
+    }
+
+    public boolean isValid(CharSequence password) {
+        return violations(password) == 0;
+    }
+
+    /** The rules {@code password} breaks, as a mask of the constants above; 0 if it is acceptable. */
+    public int violations(CharSequence password) {
+        int length = password.length();
+        int missing = required;
+        for (int i = 0; i < length && missing != 0; i++) {
+            char c = password.charAt(i);
+            if (c >= '0' && c <= '9') {
+                missing &= ~NO_DIGIT;
+            } else if (c >= 'A' && c <= 'Z') {
+                missing &= ~NO_UPPERCASE;
+            } else if (c >= 'a' && c <= 'z') {
+                missing &= ~NO_LOWERCASE;
+            } else if (c < 64 ? (specialLow & (1L << c)) != 0 : c < 128 && (specialHigh & (1L << (c - 64))) != 0) {
+                missing &= ~NO_SPECIAL;
+            }
+        }
+        if (length < minLength) {
+            missing |= TOO_SHORT;
+        } else if (length > maxLength) {
+            missing |= TOO_LONG;
+        }
+        return missing;
+    }
+
+    /** The rules as shown in the registration prompt, e.g. "min 8 chars, at least 1 digit". */
+    public String describe() {
+        return describe(required | TOO_SHORT | TOO_LONG);
+    }
+
+    /** Human-readable list of the rules in {@code violations}. */
+    public String describe(int violations) {
+        StringBuilder sb = new StringBuilder();
+        if ((violations & TOO_SHORT) != 0) {
+            sb.append("min ").append(minLength).append(" chars");
+        }
+        if ((violations & TOO_LONG) != 0) {
+            separate(sb).append("max ").append(maxLength).append(" chars");
+        }
+        int classes = violations & (NO_DIGIT | NO_UPPERCASE | NO_LOWERCASE | NO_SPECIAL);
+        if (classes != 0) {
+            separate(sb).append("at least");
+            String joiner = " ";
+            if ((classes & NO_DIGIT) != 0) {
+                sb.append(joiner).append("1 digit");
+                joiner = ", ";
+            }
+            if ((classes & NO_UPPERCASE) != 0) {
+                sb.append(joiner).append("1 uppercase");
+                joiner = ", ";
+            }
+            if ((classes & NO_LOWERCASE) != 0) {
+                sb.append(joiner).append("1 lowercase");
+                joiner = ", ";
+            }
+            if ((classes & NO_SPECIAL) != 0) {
+                sb.append(joiner).append("1 special char (").append(specialChars).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder separate(StringBuilder sb) {
+        return sb.isEmpty() ? sb : sb.append(", ");
+    }
+}
@@ -0,0 +1,469 @@
+package expense;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Timing for every statement run through {@link Database}: a latency histogram, row and error
+ * counts per distinct SQL text, connection-acquire latency per pool, and a log of queries slower
+ * than a threshold. Off unless {@code -Dexpense.metrics.enabled=true}; when off the pool hands
+ * out the driver's own statements and nothing here is touched, so the cost is one constant
+ * branch the JIT removes.
+ *
+ * A query's time is the time spent inside the driver: executing it and stepping its ResultSet,
+ * not the caller's work between rows. It is recorded when the ResultSet is exhausted or closed.
+ *
+ * When enabled, results are available as
+ * <ul>
+ *   <li>the {@code expense:type=QueryMetrics} MXBean (JConsole, VisualVM, jcmd);</li>
+ *   <li>Prometheus text format from {@link #writePrometheus(Appendable)}, served by
+ *       {@code ApiServer} at {@code /metrics} and, with {@code -Dexpense.metrics.file=<path>},
+ *       rewritten atomically every {@code expense.metrics.intervalSeconds} (15) for the node
+ *       exporter's textfile collector.</li>
+ * </ul>
+ * Queries taking {@code expense.metrics.slowQueryMillis} (100) or longer are logged to
+ * {@code expense.metrics.slowQueryLog}, or to stderr when that is not set.
+ */
+public final class QueryMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("expense.metrics.enabled");
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final Path DUMP_FILE = pathProperty("expense.metrics.file");
+    private static final Path SLOW_LOG = pathProperty("expense.metrics.slowQueryLog");
+
+    private static final Map<String, StatementMetrics> STATEMENTS = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> ACQUIRES = new ConcurrentHashMap<>();
+    private static final LongAdder SLOW_QUERIES = new LongAdder();
+    private static volatile long slowQueryNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("expense.metrics.slowQueryMillis", 100));
+
+    static {
+        if (ENABLED) {
+            start();
+        }
+    }
+
+    private QueryMetrics() {
+    }
+
+    /** Per distinct SQL text. */
+    private static final class StatementMetrics {
+        final String sql;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        StatementMetrics(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private static StatementMetrics metrics(String sql) {
+        return STATEMENTS.computeIfAbsent(sql, StatementMetrics::new);
+    }
+
+    /** Wraps a statement prepared for {@code sql} so its executions are timed. */
+    static PreparedStatement wrap(PreparedStatement pstmt, String sql) {
+        return (PreparedStatement) Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new StatementHandler(pstmt, metrics(normalize(sql))));
+    }
+
+    /** Wraps a plain statement; each execution is filed under the SQL it is given. */
+    static Statement wrap(Statement stmt) {
+        return (Statement) Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(),
+                new Class<?>[]{Statement.class}, new StatementHandler(stmt, null));
+    }
+
+    /** Counts a statement the driver refused to prepare, e.g. a syntax error. */
+    static void prepareFailed(String sql) {
+        metrics(normalize(sql)).errors.increment();
+    }
+
+    static void acquired(String url, long waitedNanos) {
+        ACQUIRES.computeIfAbsent(url, u -> new LatencyHistogram()).record(waitedNanos);
+    }
+
+    private static void record(StatementMetrics metrics, long nanos, long rows) {
+        metrics.latency.record(nanos);
+        metrics.rows.add(rows);
+        if (nanos >= slowQueryNanos) {
+            SLOW_QUERIES.increment();
+            logSlow(metrics.sql, nanos, rows);
+        }
+    }
+
+    private static void logSlow(String sql, long nanos, long rows) {
+        String line = String.format("%s Slow query (%.1f ms, %d rows): %s%n",
+                TransactionStore.now(), nanos / 1e6, rows, sql);
+        if (SLOW_LOG == null) {
+            System.err.print(line);
+            return;
+        }
+        synchronized (QueryMetrics.class) {
+            try {
+                Files.writeString(SLOW_LOG, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Error writing slow query log: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String normalize(String sql) {
+        return sql.strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Times execute calls on a statement, and hands back ResultSets that add the time spent in
+     * {@code next()} and count rows until they are exhausted or closed.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final StatementMetrics metrics; // null for plain statements
+
+        StatementHandler(Statement target, StatementMetrics metrics) {
+            this.target = target;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                return call(method, args);
+            }
+            StatementMetrics m = metrics != null ? metrics
+                    : metrics(normalize(args != null && args.length > 0 && args[0] instanceof String sql ? sql : "?"));
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(method, args);
+            } catch (SQLException e) {
+                m.errors.increment();
+                throw e;
+            }
+            long elapsed = System.nanoTime() - start;
+            if (result instanceof ResultSet rs) {
+                return Proxy.newProxyInstance(QueryMetrics.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                        new ResultSetHandler(rs, m, elapsed));
+            }
+            record(m, elapsed, rowCount(result));
+            return result;
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private static long rowCount(Object result) {
+            if (result instanceof Integer n) {
+                return Math.max(0, n);
+            }
+            if (result instanceof Long n) {
+                return Math.max(0, n);
+            }
+            long total = 0;
+            if (result instanceof int[] counts) {
+                for (int n : counts) {
+                    total += Math.max(0, n);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long n : counts) {
+                    total += Math.max(0, n);
+                }
+            }
+            return total;
+        }
+    }
+
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final StatementMetrics metrics;
+        private long nanos;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet target, StatementMetrics metrics, long executeNanos) {
+            this.target = target;
+            this.metrics = metrics;
+            this.nanos = executeNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                boolean more;
+                try {
+                    more = target.next();
+                } catch (SQLException e) {
+                    metrics.errors.increment();
+                    throw e;
+                }
+                nanos += System.nanoTime() - start;
+                if (more) {
+                    rows++;
+                } else {
+                    finish();
+                }
+                return more;
+            }
+            if (name.equals("close")) {
+                finish();
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void finish() {
+            if (!recorded) {
+                recorded = true;
+                record(metrics, nanos, rows);
+            }
+        }
+    }
+
+    // ---- Export ----
+
+    /** Writes every metric in Prometheus text exposition format. */
+    public static void writePrometheus(Appendable out) throws IOException {
+        List<StatementMetrics> statements = new ArrayList<>(STATEMENTS.values());
+        statements.sort(Comparator.comparing(s -> s.sql));
+
+        out.append("# HELP expense_query_duration_seconds Time spent in the driver per statement execution.\n");
+        out.append("# TYPE expense_query_duration_seconds summary\n");
+        for (StatementMetrics s : statements) {
+            summary(out, "expense_query_duration_seconds", "sql", s.sql, s.latency);
+        }
+        out.append("# HELP expense_query_duration_max_seconds Longest execution per statement.\n");
+        out.append("# TYPE expense_query_duration_max_seconds gauge\n");
+        for (StatementMetrics s : statements) {
+            sample(out, "expense_query_duration_max_seconds", "sql", s.sql, s.latency.max() / 1e9);
+        }
+        out.append("# HELP expense_query_rows_total Rows returned or changed per statement.\n");
+        out.append("# TYPE expense_query_rows_total counter\n");
+        for (StatementMetrics s : statements) {
+            sample(out, "expense_query_rows_total", "sql", s.sql, s.rows.sum());
+        }
+        out.append("# HELP expense_query_errors_total Executions that threw per statement.\n");
+        out.append("# TYPE expense_query_errors_total counter\n");
+        for (StatementMetrics s : statements) {
+            sample(out, "expense_query_errors_total", "sql", s.sql, s.errors.sum());
+        }
+        out.append("# HELP expense_slow_queries_total Executions at or above the slow query threshold.\n");
+        out.append("# TYPE expense_slow_queries_total counter\n");
+        out.append("expense_slow_queries_total ").append(Long.toString(SLOW_QUERIES.sum())).append('\n');
+
+        out.append("# HELP expense_pool_acquire_seconds Time to borrow a connection.\n");
+        out.append("# TYPE expense_pool_acquire_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> entry : ACQUIRES.entrySet()) {
+            summary(out, "expense_pool_acquire_seconds", "pool", entry.getKey(), entry.getValue());
+        }
+        List<Database.Stats> pools = Database.allStats();
+        out.append("# HELP expense_pool_connections Connections per pool by state.\n");
+        out.append("# TYPE expense_pool_connections gauge\n");
+        for (Database.Stats pool : pools) {
+            out.append("expense_pool_connections{pool=\"").append(escape(pool.url())).append("\",state=\"open\"} ")
+                    .append(Integer.toString(pool.open())).append('\n');
+            out.append("expense_pool_connections{pool=\"").append(escape(pool.url())).append("\",state=\"idle\"} ")
+                    .append(Integer.toString(pool.idle())).append('\n');
+        }
+        out.append("# HELP expense_pool_statement_cache_total Prepared statement cache lookups.\n");
+        out.append("# TYPE expense_pool_statement_cache_total counter\n");
+        for (Database.Stats pool : pools) {
+            out.append("expense_pool_statement_cache_total{pool=\"").append(escape(pool.url())).append("\",result=\"hit\"} ")
+                    .append(Long.toString(pool.statementCacheHits())).append('\n');
+            out.append("expense_pool_statement_cache_total{pool=\"").append(escape(pool.url())).append("\",result=\"miss\"} ")
+                    .append(Long.toString(pool.statementCacheMisses())).append('\n');
+        }
+    }
+
+    public static String prometheusText() {
+        StringBuilder sb = new StringBuilder(4096);
+        try {
+            writePrometheus(sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    private static void summary(Appendable out, String name, String label, String value, LatencyHistogram histogram)
+            throws IOException {
+        String escaped = escape(value);
+        for (double q : QUANTILES) {
+            out.append(name).append('{').append(label).append("=\"").append(escaped).append("\",quantile=\"")
+                    .append(Double.toString(q)).append("\"} ")
+                    .append(Double.toString(histogram.percentile(q * 100) / 1e9)).append('\n');
+        }
+        out.append(name).append("_sum{").append(label).append("=\"").append(escaped).append("\"} ")
+                .append(Double.toString(histogram.sum() / 1e9)).append('\n');
+        out.append(name).append("_count{").append(label).append("=\"").append(escaped).append("\"} ")
+                .append(Long.toString(histogram.count())).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String label, String value, double sample)
+            throws IOException {
+        out.append(name).append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+                .append(sample == Math.rint(sample) && Math.abs(sample) < 1e15 ? Long.toString((long) sample)
+                        : Double.toString(sample))
+                .append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /** Rewrites the dump file through a temporary file so scrapers never read half of it. */
+    static void dump(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writePrometheus(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void start() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(),
+                    new ObjectName("expense:type=QueryMetrics"));
+        } catch (Exception e) {
+            System.err.println("Error registering query metrics MBean: " + e.getMessage());
+        }
+        if (DUMP_FILE != null) {
+            long interval = Long.getLong("expense.metrics.intervalSeconds", 15);
+            Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonThreads("metrics-dump"))
+                    .scheduleWithFixedDelay(QueryMetrics::dumpQuietly, interval, interval, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(QueryMetrics::dumpQuietly, "metrics-dump-shutdown"));
+        }
+    }
+
+    private static void dumpQuietly() {
+        try {
+            dump(DUMP_FILE);
+        } catch (IOException e) {
+            System.err.println("Error writing metrics to " + DUMP_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private static Path pathProperty(String name) {
+        String value = System.getProperty(name);
+        return value == null || value.isBlank() ? null : Path.of(value);
+    }
+
+    /** Prints the slowest statements by p99 to {@code out}. */
+    public static void printTop(PrintStream out, int n) {
+        List<StatementMetrics> statements = new ArrayList<>(STATEMENTS.values());
+        statements.sort(Comparator.comparingLong((StatementMetrics s) -> s.latency.percentile(99)).reversed());
+        for (StatementMetrics s : statements.subList(0, Math.min(n, statements.size()))) {
+            out.println(describe(s));
+        }
+    }
+
+    private static String describe(StatementMetrics s) {
+        LatencyHistogram h = s.latency;
+        return String.format("n=%d p50=%.3fms p99=%.3fms max=%.3fms rows=%d errors=%d  %s", h.count(),
+                h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.max() / 1e6, s.rows.sum(), s.errors.sum(), s.sql);
+    }
+
+    public interface QueryMetricsMXBean {
+        long getExecutions();
+
+        long getErrors();
+
+        long getSlowQueries();
+
+        long getSlowQueryMillis();
+
+        void setSlowQueryMillis(long millis);
+
+        /** One line per statement, slowest p99 first. */
+        List<String> getStatements();
+
+        String prometheus();
+
+        void reset();
+    }
+
+    private static final class Bean implements QueryMetricsMXBean {
+        @Override
+        public long getExecutions() {
+            return STATEMENTS.values().stream().mapToLong(s -> s.latency.count()).sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return STATEMENTS.values().stream().mapToLong(s -> s.errors.sum()).sum();
+        }
+
+        @Override
+        public long getSlowQueries() {
+            return SLOW_QUERIES.sum();
+        }
+
+        @Override
+        public long getSlowQueryMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(slowQueryNanos);
+        }
+
+        @Override
+        public void setSlowQueryMillis(long millis) {
+            slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public List<String> getStatements() {
+            List<StatementMetrics> statements = new ArrayList<>(STATEMENTS.values());
+            statements.sort(Comparator.comparingLong((StatementMetrics s) -> s.latency.percentile(99)).reversed());
+            return statements.stream().map(QueryMetrics::describe).toList();
+        }
+
+        @Override
+        public String prometheus() {
+            return prometheusText();
+        }
+
+        @Override
+        public void reset() {
+            for (StatementMetrics s : STATEMENTS.values()) {
+                s.latency.reset();
+                s.rows.reset();
+                s.errors.reset();
+            }
+            ACQUIRES.values().forEach(LatencyHistogram::reset);
+            SLOW_QUERIES.reset();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package expense;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * When a recurring transaction falls due: a subset of the iCalendar RRULE (RFC 5545) anchored at
+ * a start date, e.g. {@code FREQ=MONTHLY;BYMONTHDAY=1} for rent or {@code FREQ=WEEKLY;INTERVAL=2;BYDAY=FR}
+ * for a fortnightly salary. Supported parts:
+ * <ul>
+ *   <li>{@code FREQ}: DAILY, WEEKLY, MONTHLY or YEARLY (required).</li>
+ *   <li>{@code INTERVAL}: every n-th period (default 1).</li>
+ *   <li>{@code BYMONTHDAY}: day of the month for MONTHLY and YEARLY, negative counting from the
+ *       end (-1 is the last day); defaults to the start date's day.</li>
+ *   <li>{@code BYDAY}: weekday for WEEKLY (MO..SU); defaults to the start date's weekday.</li>
+ *   <li>{@code COUNT}, {@code UNTIL}: stop after n occurrences, or after a date (inclusive).</li>
+ * </ul>
+ * Unlike RFC 5545, a day past the end of a month falls on its last day instead of skipping the
+ * month, so {@code BYMONTHDAY=31} pays every month and a yearly rule started on 29 February
+ * falls on the 28th in other years.
+ *
+ * Occurrences are numbered from 0 and computed directly from their number, so a scheduler that
+ * has posted the first n only needs n to find the next one.
+ */
+public record Recurrence(Frequency frequency, int interval, int monthDay, DayOfWeek weekday, long count,
+                         LocalDate until, LocalDate start) {
+    private static final DateTimeFormatter BASIC_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    public enum Frequency {
+        DAILY, WEEKLY, MONTHLY, YEARLY
+    }
+
+    public Recurrence {
+        if (frequency == null || start == null) {
+            throw new IllegalArgumentException("A recurrence needs FREQ and a start date");
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("INTERVAL must be at least 1");
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("COUNT must not be negative");
+        }
+        boolean byMonthDay = frequency == Frequency.MONTHLY || frequency == Frequency.YEARLY;
+        if (byMonthDay ? monthDay == 0 || monthDay < -31 || monthDay > 31 : monthDay != 0) {
+            throw new IllegalArgumentException("BYMONTHDAY " + monthDay + " does not fit FREQ=" + frequency);
+        }
+        if ((frequency == Frequency.WEEKLY) != (weekday != null)) {
+            throw new IllegalArgumentException("BYDAY is only for FREQ=WEEKLY");
+        }
+    }
+
+    /** Parses an RRULE such as {@code FREQ=MONTHLY;BYMONTHDAY=-1;COUNT=12}, with or without the "RRULE:" prefix. */
+    public static Recurrence parse(String rule, LocalDate start) {
+        String text = rule.trim().toUpperCase(Locale.ROOT);
+        if (text.startsWith("RRULE:")) {
+            text = text.substring(6);
+        }
+        Frequency frequency = null;
+        int interval = 1;
+        Integer monthDay = null;
+        DayOfWeek weekday = null;
+        long count = 0;
+        LocalDate until = null;
+        try {
+            for (String part : text.split(";")) {
+                if (part.isBlank()) {
+                    continue;
+                }
+                int eq = part.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected NAME=VALUE in RRULE, got " + part);
+                }
+                String value = part.substring(eq + 1).trim();
+                switch (part.substring(0, eq).trim()) {
+                    case "FREQ" -> frequency = Frequency.valueOf(value);
+                    case "INTERVAL" -> interval = Integer.parseInt(value);
+                    case "BYMONTHDAY" -> monthDay = Integer.parseInt(value);
+                    case "BYDAY" -> weekday = weekday(value);
+                    case "COUNT" -> count = Long.parseLong(value);
+                    // Dates only; a time part (20301231T000000Z) is ignored
+                    case "UNTIL" -> until = value.length() == 10 ? LocalDate.parse(value)
+                            : LocalDate.parse(value.substring(0, 8), BASIC_DATE);
+                    default -> throw new IllegalArgumentException("Unsupported RRULE part " + part);
+                }
+            }
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid UNTIL in RRULE " + rule, e);
+        }
+        if (frequency == null) {
+            throw new IllegalArgumentException("RRULE " + rule + " has no FREQ");
+        }
+        if (monthDay == null && (frequency == Frequency.MONTHLY || frequency == Frequency.YEARLY)) {
+            monthDay = start.getDayOfMonth();
+        }
+        if (weekday == null && frequency == Frequency.WEEKLY) {
+            weekday = start.getDayOfWeek();
+        }
+        return new Recurrence(frequency, interval, monthDay == null ? 0 : monthDay, weekday, count, until, start);
+    }
+
+    private static DayOfWeek weekday(String value) {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (day.name().startsWith(value) && value.length() == 2) {
+                return day;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported BYDAY " + value + " (one of MO, TU, WE, TH, FR, SA, SU)");
+    }
+
+    /** Occurrence {@code n} (from 0), or null if the rule ends before it. */
+    public LocalDate occurrence(long n) {
+        if (n < 0 || (count > 0 && n >= count)) {
+            return null;
+        }
+        // A month or year's occurrence can fall before the start date; the first one counted is then the next
+        LocalDate date = raw(raw(0).isBefore(start) ? n + 1 : n);
+        return until != null && date.isAfter(until) ? null : date;
+    }
+
+    private LocalDate raw(long n) {
+        return switch (frequency) {
+            case DAILY -> start.plusDays(n * interval);
+            case WEEKLY -> start.with(TemporalAdjusters.nextOrSame(weekday)).plusWeeks(n * interval);
+            case MONTHLY -> day(YearMonth.from(start).plusMonths(n * interval));
+            case YEARLY -> day(YearMonth.from(start).plusYears(n * interval));
+        };
+    }
+
+    private LocalDate day(YearMonth month) {
+        int length = month.lengthOfMonth();
+        return month.atDay(monthDay > 0 ? Math.min(monthDay, length) : Math.max(1, length + monthDay + 1));
+    }
+
+    /** The rule in RRULE syntax, without the start date. */
+    public String rule() {
+        StringBuilder out = new StringBuilder("FREQ=").append(frequency);
+        if (interval != 1) {
+            out.append(";INTERVAL=").append(interval);
+        }
+        if (monthDay != 0) {
+            out.append(";BYMONTHDAY=").append(monthDay);
+        }
+        if (weekday != null) {
+            out.append(";BYDAY=").append(weekday.name(), 0, 2);
+        }
+        if (count > 0) {
+            out.append(";COUNT=").append(count);
+        }
+        if (until != null) {
+            out.append(";UNTIL=").append(until.format(BASIC_DATE));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return rule() + " from " + start;
+    }
+}
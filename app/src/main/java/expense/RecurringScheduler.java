@@ -0,0 +1,382 @@
+package expense;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts recurring transactions (rent, salaries, subscriptions) when they fall due. Rules are
+ * {@link Recurrence}s stored in {@code recurring_rules} next to the transactions of their ledger.
+ *
+ * Loaded rules wait on a timing wheel of one slot per day: a rule sits in the slot of the day
+ * it is next due, and moving the clock forward a day looks only at that day's slot, so a check
+ * costs nothing when nothing is due however many rules there are. Rules further out than one
+ * turn of the wheel stay in their slot until the turn they are due in.
+ *
+ * Everything a ledger has due is posted through one {@link TransactionStore.Batch}: after days
+ * of downtime every missed occurrence of every rule goes in with a single commit, along with
+ * each rule's new position. Each occurrence also inserts the key (rule, occurrence number) into
+ * {@code recurring_posted} in that transaction and is only written if the key was new, so a
+ * restart, a second scheduler on the same file or a rules table older than its transactions
+ * never posts an occurrence twice.
+ *
+ * Occurrences are stamped at midnight UTC of their day. The clock is a parameter so the
+ * scheduler can be driven by a simulated one; {@link #start()} checks it every
+ * {@code expense.recurring.checkSeconds} (60).
+ */
+public final class RecurringScheduler implements AutoCloseable {
+    private static final int WHEEL_SLOTS = 64;
+    private static final long CHECK_SECONDS = Long.getLong("expense.recurring.checkSeconds", 60);
+    private static final String OCCURRENCE_TIME = " 00:00:00";
+
+    private static final String INSERT_RULE_SQL = """
+                                                  INSERT INTO recurring_rules(user_id, type, amount_cents, notes, category, rrule, start_date, next_due)
+                                                  VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+                                                  RETURNING id
+                                                  """;
+    private static final String SELECT_RULES_SQL = """
+                                                   SELECT id, type, amount_cents, notes, category, rrule, start_date, next_occurrence, next_due
+                                                   FROM recurring_rules
+                                                   WHERE user_id = ?
+                                                   """;
+    private static final String LOAD_RULES_SQL = SELECT_RULES_SQL + " AND next_due IS NOT NULL";
+    private static final String LIST_RULES_SQL = SELECT_RULES_SQL + " ORDER BY id";
+    private static final String POSITION_SQL = "SELECT next_occurrence FROM recurring_rules WHERE id = ? AND user_id = ?";
+    private static final String POST_SQL = "INSERT OR IGNORE INTO recurring_posted(rule_id, occurrence) VALUES(?, ?)";
+    private static final String ADVANCE_SQL = "UPDATE recurring_rules SET next_occurrence = ?, next_due = ? WHERE id = ?";
+    private static final String DELETE_RULE_SQL = "DELETE FROM recurring_rules WHERE id = ? AND user_id = ?";
+    private static final String DELETE_POSTED_SQL = "DELETE FROM recurring_posted WHERE rule_id = ?";
+
+    /** A stored rule; {@code posted} occurrences are in the ledger and nextDue is null once it has ended. */
+    public record Rule(long id, String type, long amountCents, String notes, String category, Recurrence recurrence,
+                       long posted, LocalDate nextDue) {
+        @Override
+        public String toString() {
+            return "#" + id + " " + type + " " + Money.format(amountCents) + (notes == null ? "" : " " + notes)
+                    + (category == null ? "" : " [" + category + "]") + ", " + recurrence + ", " + posted + " posted"
+                    + (nextDue == null ? ", ended" : ", next " + nextDue);
+        }
+    }
+
+    public record Stats(int rules, long commits, long posted, long skipped, long failures) {
+        @Override
+        public String toString() {
+            return String.format("recurring: rules=%d commits=%d posted=%d skipped=%d failures=%d",
+                    rules, commits, posted, skipped, failures);
+        }
+    }
+
+    private record Key(Ledger ledger, long id) {
+    }
+
+    /** A loaded rule and where it is up to. */
+    private static final class Entry {
+        final Ledger ledger;
+        final Rule rule;
+        long due;
+        boolean cancelled;
+
+        Entry(Ledger ledger, Rule rule) {
+            this.ledger = ledger;
+            this.rule = rule;
+            this.due = rule.nextDue().toEpochDay();
+        }
+    }
+
+    private final Clock clock;
+    private final List<List<Entry>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private final List<Entry> overdue = new ArrayList<>();
+    private final Map<Key, Entry> entries = new HashMap<>();
+    private long tick; // every slot up to this epoch day has been swept
+    private long commits;
+    private long posted;
+    private long skipped;
+    private long failures;
+    private ScheduledExecutorService checker;
+
+    public RecurringScheduler(Clock clock) {
+        this.clock = clock;
+        this.tick = today();
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Loads the ledger's active rules; those already due are posted by the next {@link #advance()}.
+     * Returns how many rules were loaded.
+     */
+    public synchronized int load(Ledger ledger) throws SQLException {
+        int loaded = 0;
+        for (Rule rule : select(ledger, LOAD_RULES_SQL)) {
+            Key key = new Key(ledger, rule.id());
+            if (!entries.containsKey(key)) {
+                Entry entry = new Entry(ledger, rule);
+                entries.put(key, entry);
+                schedule(entry);
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+
+    /** Every rule of the ledger, including those that have ended. */
+    public static List<Rule> rules(Ledger ledger) throws SQLException {
+        return select(ledger, LIST_RULES_SQL);
+    }
+
+    /**
+     * Stores a new rule and schedules it. Occurrences between its start and today are posted by
+     * the next {@link #advance()}.
+     */
+    public synchronized long addRule(Ledger ledger, String type, long amountCents, String notes, String category,
+                                     Recurrence recurrence) throws SQLException {
+        LocalDate first = recurrence.occurrence(0);
+        String normalized = category == null || category.isBlank() ? null : category.trim();
+        long id;
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(INSERT_RULE_SQL);
+            pstmt.setLong(1, ledger.userId());
+            pstmt.setString(2, type);
+            pstmt.setLong(3, amountCents);
+            pstmt.setString(4, notes);
+            pstmt.setString(5, normalized);
+            pstmt.setString(6, recurrence.rule());
+            pstmt.setString(7, recurrence.start().toString());
+            if (first == null) {
+                pstmt.setNull(8, Types.INTEGER);
+            } else {
+                pstmt.setLong(8, first.toEpochDay());
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                id = rs.getLong(1);
+            }
+        }
+        if (first != null) {
+            Entry entry = new Entry(ledger, new Rule(id, type, amountCents, notes, normalized, recurrence, 0, first));
+            entries.put(new Key(ledger, id), entry);
+            schedule(entry);
+        }
+        return id;
+    }
+
+    /** Deletes a rule; transactions it already posted stay. Returns false if there is no such rule. */
+    public synchronized boolean deleteRule(Ledger ledger, long id) throws SQLException {
+        boolean deleted;
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            deleted = conn.inTransaction(() -> {
+                PreparedStatement rule = conn.prepare(DELETE_RULE_SQL);
+                rule.setLong(1, id);
+                rule.setLong(2, ledger.userId());
+                if (rule.executeUpdate() == 0) {
+                    return false;
+                }
+                PreparedStatement keys = conn.prepare(DELETE_POSTED_SQL);
+                keys.setLong(1, id);
+                keys.executeUpdate();
+                return true;
+            });
+        }
+        Entry entry = entries.remove(new Key(ledger, id));
+        if (entry != null) {
+            // Dropped from its slot when the wheel next reaches it
+            entry.cancelled = true;
+        }
+        return deleted;
+    }
+
+    /**
+     * Moves the wheel up to the clock's current day and posts every occurrence due by then, one
+     * transaction per ledger. Returns the number of transactions posted. Rules whose ledger
+     * failed stay due and are retried by the next call.
+     */
+    public synchronized int advance() throws SQLException {
+        long today = today();
+        if (today > tick) {
+            // A jump of a whole turn or more visits each slot once
+            long last = Math.min(today, tick + WHEEL_SLOTS);
+            for (long day = tick + 1; day <= last; day++) {
+                Iterator<Entry> slot = wheel.get(Math.floorMod(day, WHEEL_SLOTS)).iterator();
+                while (slot.hasNext()) {
+                    Entry entry = slot.next();
+                    if (entry.cancelled || entry.due <= today) {
+                        slot.remove();
+                        if (!entry.cancelled) {
+                            overdue.add(entry);
+                        }
+                    }
+                }
+            }
+            tick = today;
+        }
+        if (overdue.isEmpty()) {
+            return 0;
+        }
+
+        Map<Ledger, List<Entry>> byLedger = new LinkedHashMap<>();
+        for (Entry entry : overdue) {
+            if (!entry.cancelled) {
+                byLedger.computeIfAbsent(entry.ledger, k -> new ArrayList<>()).add(entry);
+            }
+        }
+        overdue.clear();
+        int count = 0;
+        SQLException failure = null;
+        for (Map.Entry<Ledger, List<Entry>> group : byLedger.entrySet()) {
+            try {
+                count += post(group.getKey(), group.getValue(), today);
+            } catch (SQLException e) {
+                failures++;
+                overdue.addAll(group.getValue());
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return count;
+    }
+
+    // Posts every occurrence of the ledger's due rules up to today in one transaction
+    private int post(Ledger ledger, List<Entry> due, long today) throws SQLException {
+        boolean[] gone = new boolean[due.size()];
+        LocalDate[] nextDue = new LocalDate[due.size()];
+        int written = 0;
+        int ignored = 0;
+        try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, Integer.MAX_VALUE)) {
+            Database.PooledConnection conn = batch.connection();
+            PreparedStatement position = conn.prepare(POSITION_SQL);
+            PreparedStatement key = conn.prepare(POST_SQL);
+            PreparedStatement advance = conn.prepare(ADVANCE_SQL);
+            for (int i = 0; i < due.size(); i++) {
+                Rule rule = due.get(i).rule;
+                // The stored position, which another process may have moved on since this rule was loaded
+                position.setLong(1, rule.id());
+                position.setLong(2, ledger.userId());
+                long n;
+                try (ResultSet rs = position.executeQuery()) {
+                    if (!rs.next()) {
+                        gone[i] = true;
+                        continue;
+                    }
+                    n = rs.getLong(1);
+                }
+                LocalDate date = rule.recurrence().occurrence(n);
+                while (date != null && date.toEpochDay() <= today) {
+                    key.setLong(1, rule.id());
+                    key.setLong(2, n);
+                    if (key.executeUpdate() == 1) {
+                        batch.add(rule.type(), rule.amountCents(), rule.notes(), date + OCCURRENCE_TIME, rule.category());
+                        written++;
+                    } else {
+                        ignored++;
+                    }
+                    date = rule.recurrence().occurrence(++n);
+                }
+                advance.setLong(1, n);
+                if (date == null) {
+                    advance.setNull(2, Types.INTEGER);
+                } else {
+                    advance.setLong(2, date.toEpochDay());
+                }
+                advance.setLong(3, rule.id());
+                advance.addBatch();
+                nextDue[i] = date;
+            }
+            advance.executeBatch();
+            batch.flush();
+            conn.commit();
+        }
+
+        commits++;
+        posted += written;
+        skipped += ignored;
+        for (int i = 0; i < due.size(); i++) {
+            Entry entry = due.get(i);
+            if (gone[i] || nextDue[i] == null) {
+                // Deleted by another process, or ended
+                entries.remove(new Key(ledger, entry.rule.id()));
+                continue;
+            }
+            entry.due = nextDue[i].toEpochDay();
+            schedule(entry);
+        }
+        return written;
+    }
+
+    private void schedule(Entry entry) {
+        if (entry.due <= tick) {
+            overdue.add(entry);
+        } else {
+            wheel.get(Math.floorMod(entry.due, WHEEL_SLOTS)).add(entry);
+        }
+    }
+
+    private long today() {
+        return LocalDate.now(clock).toEpochDay();
+    }
+
+    private static List<Rule> select(Ledger ledger, String sql) throws SQLException {
+        List<Rule> rules = new ArrayList<>();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setLong(1, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long nextDue = rs.getLong("next_due");
+                    LocalDate due = rs.wasNull() ? null : LocalDate.ofEpochDay(nextDue);
+                    rules.add(new Rule(rs.getLong("id"), rs.getString("type"), rs.getLong("amount_cents"),
+                            rs.getString("notes"), rs.getString("category"),
+                            Recurrence.parse(rs.getString("rrule"), LocalDate.parse(rs.getString("start_date"))),
+                            rs.getLong("next_occurrence"), due));
+                }
+            }
+        }
+        return rules;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(entries.size(), commits, posted, skipped, failures);
+    }
+
+    /** Checks the clock every {@code expense.recurring.checkSeconds} on a background thread until closed. */
+    public synchronized void start() {
+        if (checker == null) {
+            checker = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonThreads("recurring"));
+            checker.scheduleWithFixedDelay(this::check, CHECK_SECONDS, CHECK_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void check() {
+        try {
+            advance();
+        } catch (SQLException e) {
+            System.err.println("Error posting recurring transactions: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+    }
+}
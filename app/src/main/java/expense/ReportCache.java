@@ -0,0 +1,282 @@
+package expense;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Rendered reports on disk, keyed by (ledger, filter, data version, date). The data version is
+ * the sum of the {@code month_versions} counters of the months the filter covers; every write
+ * bumps its month's counter, so the sum changes whenever anything in the report could have, and
+ * a report of unchanged data is a file copy. The date is part of the key because reports print
+ * it. Formats missing from an entry are rendered together in one {@link ReportPipeline} pass.
+ *
+ * Files live in {@code expense.report.cacheDir} ({@code report-cache}); once they add up to more
+ * than {@code expense.report.cacheMaxBytes} (256 MB) the least recently used are deleted, sparing
+ * the report just requested even when it alone is larger.
+ * {@code -Dexpense.report.cache=false} renders every request afresh.
+ */
+public final class ReportCache {
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("expense.report.cache"));
+
+    private static final Path DIR = Path.of(System.getProperty("expense.report.cacheDir", "report-cache"));
+    private static final long MAX_BYTES = Long.getLong("expense.report.cacheMaxBytes", 256L << 20);
+    // Bump when the output of a renderer changes, so old entries are not served
+    private static final int LAYOUT_VERSION = 1;
+
+    private static final String VERSION_SQL = "SELECT COALESCE(SUM(version), 0) FROM month_versions";
+
+    /**
+     * The report files of one request, open for reading, and whether they all came from the cache.
+     * Open files survive eviction, so read them through these channels and close the report.
+     */
+    public record Report(Map<ReportPipeline.Format, FileChannel> files, ReportPipeline.Result result, boolean cached)
+            implements Closeable {
+        @Override
+        public void close() throws IOException {
+            closeAll(files.values());
+        }
+    }
+
+    private ReportCache() {
+    }
+
+    /**
+     * The report of {@code ledger} in each of {@code formats}, rendering whatever the cache does
+     * not hold. The files belong to the cache: read them, do not write to them.
+     */
+    public static Report get(Ledger ledger, ReportFilter filter, Set<ReportPipeline.Format> formats)
+            throws SQLException, IOException {
+        // Read before the data, so a write that lands during rendering bumps the version past this key
+        long version = version(ledger, filter);
+        String key = key(ledger, filter, version);
+        Files.createDirectories(DIR);
+
+        Path meta = DIR.resolve(key + ".meta");
+        // Another process can evict a file between finding it and opening it; it is rendered again then
+        for (int attempt = 0; ; attempt++) {
+            ReportPipeline.Result known = readMeta(meta);
+            Map<ReportPipeline.Format, Path> files = new EnumMap<>(ReportPipeline.Format.class);
+            Set<ReportPipeline.Format> missing = EnumSet.noneOf(ReportPipeline.Format.class);
+            for (ReportPipeline.Format format : formats) {
+                Path file = DIR.resolve(key + "." + format.extension());
+                files.put(format, file);
+                // Scanned formats also need the transaction count kept in the .meta file
+                if (!touch(file) || (format != ReportPipeline.Format.TEXT && known == null)) {
+                    missing.add(format);
+                }
+            }
+
+            ReportPipeline.Result result = known;
+            if (!missing.isEmpty()) {
+                result = render(ledger, filter, missing, files);
+                if (result.transactions() >= 0) {
+                    Path temp = Files.createTempFile(DIR, key, ".tmp");
+                    Files.writeString(temp, result.transactions() + " " + result.hasData(), StandardCharsets.UTF_8);
+                    Files.move(temp, meta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } else if (known != null) {
+                    result = known;
+                }
+            }
+            Map<ReportPipeline.Format, FileChannel> open = openAndEvict(key, files);
+            if (open == null) {
+                if (attempt > 0) {
+                    throw new NoSuchFileException(DIR.resolve(key).toString(), null, "evicted while being read");
+                }
+                continue;
+            }
+            if (result == null) {
+                // Only a text summary can be cached without a .meta; an empty summary means no data
+                result = new ReportPipeline.Result(-1, open.get(ReportPipeline.Format.TEXT).size() > 0);
+            }
+            return new Report(open, result, missing.isEmpty());
+        }
+    }
+
+    /**
+     * Opens the files of {@code key}, or returns null if one is gone, then evicts other entries.
+     * Eviction in this process waits for the open, and no entry evicts itself, so a report larger
+     * than the limit is still served.
+     */
+    private static synchronized Map<ReportPipeline.Format, FileChannel> openAndEvict(
+            String key, Map<ReportPipeline.Format, Path> files) throws IOException {
+        Map<ReportPipeline.Format, FileChannel> open = new EnumMap<>(ReportPipeline.Format.class);
+        boolean done = false;
+        try {
+            for (Map.Entry<ReportPipeline.Format, Path> file : files.entrySet()) {
+                open.put(file.getKey(), FileChannel.open(file.getValue()));
+            }
+            evict(key);
+            done = true;
+            return open;
+        } catch (NoSuchFileException e) {
+            return null;
+        } finally {
+            if (!done) {
+                closeAll(open.values());
+            }
+        }
+    }
+
+    private static void closeAll(Iterable<FileChannel> channels) throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Renders {@code formats} into temporary files and moves them into place once all succeed. */
+    private static ReportPipeline.Result render(Ledger ledger, ReportFilter filter, Set<ReportPipeline.Format> formats,
+                                                Map<ReportPipeline.Format, Path> files) throws SQLException, IOException {
+        Map<ReportPipeline.Format, Path> temps = new EnumMap<>(ReportPipeline.Format.class);
+        Map<ReportPipeline.Format, OutputStream> outputs = new EnumMap<>(ReportPipeline.Format.class);
+        boolean done = false;
+        try {
+            for (ReportPipeline.Format format : formats) {
+                Path temp = Files.createTempFile(DIR, "render-", "." + format.extension() + ".tmp");
+                temps.put(format, temp);
+                outputs.put(format, new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024));
+            }
+            ReportPipeline.Result result = ReportPipeline.render(ledger, filter, outputs);
+            for (OutputStream out : outputs.values()) {
+                out.close();
+            }
+            for (Map.Entry<ReportPipeline.Format, Path> temp : temps.entrySet()) {
+                Files.move(temp.getValue(), files.get(temp.getKey()), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            done = true;
+            return result;
+        } finally {
+            if (!done) {
+                for (OutputStream out : outputs.values()) {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                        // Being discarded anyway
+                    }
+                }
+                for (Path temp : temps.values()) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+    }
+
+    /** Sum of the version counters of the months {@code filter} covers. */
+    static long version(Ledger ledger, ReportFilter filter) throws SQLException {
+        StringBuilder sql = new StringBuilder(VERSION_SQL).append(" WHERE user_id = ?");
+        List<Object> params = new ArrayList<>();
+        params.add(ledger.userId());
+        if (filter.from() != null) {
+            sql.append(" AND year_month >= ?");
+            params.add(filter.from().getYear() * 100 + filter.from().getMonthValue());
+        }
+        if (filter.to() != null) {
+            sql.append(" AND year_month <= ?");
+            params.add(filter.to().getYear() * 100 + filter.to().getMonthValue());
+        }
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                pstmt.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static String key(Ledger ledger, ReportFilter filter, long version) {
+        String text = LAYOUT_VERSION + "|" + Database.FINANCE_URL + "|" + ledger
+                + "|" + filter.from() + "|" + filter.to() + "|" + filter.type() + "|" + version + "|" + LocalDate.now();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Marks a cached file as just used; false if it is not there. */
+    private static boolean touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ReportPipeline.Result readMeta(Path meta) {
+        try {
+            String[] parts = Files.readString(meta, StandardCharsets.UTF_8).trim().split(" ");
+            touch(meta);
+            return new ReportPipeline.Result(Long.parseLong(parts[0]), Boolean.parseBoolean(parts[1]));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Deletes the least recently used files until the total fits, never key's own; the caller holds the lock
+    private static void evict(String key) throws IOException {
+        record Entry(Path path, long size, long lastUsed) {
+        }
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> files = Files.list(DIR)) {
+            for (Path path : files.filter(p -> !p.toString().endsWith(".tmp")).toList()) {
+                try {
+                    Entry entry = new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+                    if (!path.getFileName().toString().startsWith(key + ".")) {
+                        entries.add(entry);
+                    }
+                    total += entry.size();
+                } catch (NoSuchFileException e) {
+                    // Evicted by another process
+                }
+            }
+        }
+        if (total <= MAX_BYTES) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(Entry::lastUsed));
+        for (Entry entry : entries) {
+            if (total <= MAX_BYTES) {
+                break;
+            }
+            Files.deleteIfExists(entry.path());
+            total -= entry.size();
+        }
+    }
+}
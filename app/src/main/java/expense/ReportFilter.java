@@ -0,0 +1,114 @@
+package expense;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Date-range and type filter shared by the report queries. Dates are inclusive; either bound and
+ * the type may be null to leave that side open. Predicates are written as ranges on indexed
+ * columns so they never force per-row date formatting.
+ */
+public record ReportFilter(LocalDate from, LocalDate to, String type) {
+    public static final ReportFilter ALL = new ReportFilter(null, null, null);
+
+    public ReportFilter {
+        if (from != null && to != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("End date " + to + " is before start date " + from);
+        }
+    }
+
+    public boolean isEmpty() {
+        return from == null && to == null && type == null;
+    }
+
+    /** True when the range covers whole months, so monthly_totals can answer it. */
+    public boolean monthAligned() {
+        return (from == null || from.getDayOfMonth() == 1)
+                && (to == null || to.getDayOfMonth() == to.lengthOfMonth());
+    }
+
+    /** WHERE clause (including the keyword, or empty) over the transactions table. */
+    public String transactionsWhere() {
+        List<String> predicates = new ArrayList<>();
+        if (from != null) {
+            predicates.add("timestamp >= ?");
+        }
+        if (to != null) {
+            predicates.add("timestamp < ?");
+        }
+        if (type != null) {
+            predicates.add("type = ?");
+        }
+        return predicates.isEmpty() ? "" : " WHERE " + String.join(" AND ", predicates);
+    }
+
+    /** Like {@link #transactionsWhere()}, restricted to one ledger; the user id is the first parameter. */
+    public String ledgerTransactionsWhere() {
+        String where = transactionsWhere();
+        return where.isEmpty() ? " WHERE user_id = ?" : " WHERE user_id = ? AND " + where.substring(" WHERE ".length());
+    }
+
+    public int bindLedgerTransactions(PreparedStatement pstmt, int index, Ledger ledger) throws SQLException {
+        pstmt.setLong(index++, ledger.userId());
+        return bindTransactions(pstmt, index);
+    }
+
+    public int bindTransactions(PreparedStatement pstmt, int index) throws SQLException {
+        if (from != null) {
+            pstmt.setString(index++, from.toString());
+        }
+        if (to != null) {
+            pstmt.setString(index++, to.plusDays(1).toString());
+        }
+        if (type != null) {
+            pstmt.setString(index++, type);
+        }
+        return index;
+    }
+
+    /**
+     * WHERE clause over one ledger's rows of monthly_totals, the user id being the first parameter;
+     * only valid when {@link #monthAligned()}.
+     */
+    public String monthlyTotalsWhere() {
+        List<String> predicates = new ArrayList<>();
+        predicates.add("user_id = ?");
+        if (from != null) {
+            predicates.add("year_month >= ?");
+        }
+        if (to != null) {
+            predicates.add("year_month <= ?");
+        }
+        if (type != null) {
+            predicates.add("type = ?");
+        }
+        return " WHERE " + String.join(" AND ", predicates);
+    }
+
+    public int bindMonthlyTotals(PreparedStatement pstmt, int index, Ledger ledger) throws SQLException {
+        pstmt.setLong(index++, ledger.userId());
+        if (from != null) {
+            pstmt.setInt(index++, from.getYear() * 100 + from.getMonthValue());
+        }
+        if (to != null) {
+            pstmt.setInt(index++, to.getYear() * 100 + to.getMonthValue());
+        }
+        if (type != null) {
+            pstmt.setString(index++, type);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "all transactions";
+        }
+        return (type == null ? "Income and Expense" : type)
+                + " from " + (from == null ? "the beginning" : from)
+                + " to " + (to == null ? "today" : to);
+    }
+}
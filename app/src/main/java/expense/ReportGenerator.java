@@ -0,0 +1,468 @@
+package expense;
+
+import com.itextpdf.text.*;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ReportGenerator {
+    static final String SUMMARY_SQL = summarySql(ReportFilter.ALL);
+    static final String DETAIL_SQL = detailSql(ReportFilter.ALL);
+
+    // Rows added to the PDF table between flushes; bounds memory regardless of report size
+    private static final int PDF_CHUNK_ROWS = Integer.getInteger("expense.report.pdfChunkRows", 500);
+    private static final int TEXT_BUFFER_SIZE = 64 * 1024;
+
+    public static void main(String[] args) {
+        try {
+            Schema.migrate();
+        } catch (SQLException e) {
+            System.err.println("Error upgrading database schema: " + e.getMessage());
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            batch(args);
+            return;
+        }
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("\nReport Generator");
+        System.out.println("1. View Report");
+        System.out.println("2. Export Report as Text File");
+        System.out.println("3. Export Report as PDF");
+        System.out.println("4. Export Report as CSV");
+        System.out.println("5. Export Report as HTML");
+        System.out.println("6. Export Report in All Formats");
+        System.out.print("Choose an option: ");
+        int choice = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
+
+        if (choice < 1 || choice > 6) {
+            System.out.println("Invalid choice. Exiting.");
+            scanner.close();
+            return;
+        }
+
+        ReportFilter filter = readFilter(scanner);
+        if (filter != null) {
+            switch (choice) {
+                case 1 -> viewReport(filter);
+                case 2 -> exportReportAsText(filter);
+                case 3 -> exportReportAsPDF(filter);
+                case 4 -> exportReport(filter, EnumSet.of(ReportPipeline.Format.CSV));
+                case 5 -> exportReport(filter, EnumSet.of(ReportPipeline.Format.HTML));
+                case 6 -> exportReport(filter, EnumSet.allOf(ReportPipeline.Format.class));
+                default -> throw new IllegalStateException();
+            }
+        }
+
+        scanner.close();
+    }
+
+    /**
+     * {@code batch <from YYYY-MM> <to YYYY-MM> [dir] [formats]}: one report per month in the
+     * range, written to {@code dir} (default {@code reports}) as {@code BudgetReport-YYYY-MM.<ext>}.
+     * Formats are comma-separated extensions (default all). Months are rendered concurrently on
+     * {@code expense.report.threads} threads (default the number of processors, at most the pool size).
+     */
+    private static void batch(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: ReportGenerator batch <from YYYY-MM> <to YYYY-MM> [dir] [txt,pdf,csv,html]");
+            return;
+        }
+        YearMonth first;
+        YearMonth last;
+        Set<ReportPipeline.Format> formats = EnumSet.noneOf(ReportPipeline.Format.class);
+        try {
+            first = YearMonth.parse(args[1]);
+            last = YearMonth.parse(args[2]);
+            for (String format : (args.length > 4 ? args[4] : "txt,pdf,csv,html").split(",")) {
+                formats.add(ReportPipeline.Format.parse(format.trim()));
+            }
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            System.out.println("Invalid batch arguments: " + e.getMessage());
+            return;
+        }
+        Path dir = Path.of(args.length > 3 ? args[3] : "reports");
+        int threads = Integer.getInteger("expense.report.threads",
+                Math.min(Runtime.getRuntime().availableProcessors(), Integer.getInteger("expense.db.poolSize", 4)));
+
+        long start = System.nanoTime();
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), VirtualThreads.daemonThreads("report-batch"));
+        try {
+            Files.createDirectories(dir);
+            List<Future<String>> results = new ArrayList<>();
+            for (YearMonth month : months) {
+                results.add(executor.submit(() -> exportMonth(month, formats, dir)));
+            }
+            for (int i = 0; i < months.size(); i++) {
+                try {
+                    System.out.println(results.get(i).get());
+                } catch (ExecutionException e) {
+                    System.err.println("Error exporting " + months.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error creating report directory: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.printf("%d months in %.2f s%n", months.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private static String exportMonth(YearMonth month, Set<ReportPipeline.Format> formats, Path dir)
+            throws SQLException, IOException {
+        ReportFilter filter = new ReportFilter(month.atDay(1), month.atEndOfMonth(), null);
+        Map<ReportPipeline.Format, Path> targets = new EnumMap<>(ReportPipeline.Format.class);
+        for (ReportPipeline.Format format : formats) {
+            targets.put(format, dir.resolve("BudgetReport-" + month + "." + format.extension()));
+        }
+        Export export = export(filter, targets);
+        if (!export.result().hasData()) {
+            return month + ": no transactions";
+        }
+        return month + ": " + (export.result().transactions() >= 0 ? export.result().transactions() + " transactions" : "summary")
+                + (export.cached() ? " (cached)" : "");
+    }
+
+    private record Export(ReportPipeline.Result result, boolean cached) {
+    }
+
+    /**
+     * Writes the report in each format to its target file from one scan, or copies it from
+     * {@link ReportCache} when the data has not changed since it was last rendered. Targets are
+     * written even when there is no data.
+     */
+    private static Export export(ReportFilter filter, Map<ReportPipeline.Format, Path> targets)
+            throws SQLException, IOException {
+        if (ReportCache.ENABLED) {
+            try (ReportCache.Report report = ReportCache.get(Ledger.shared(), filter, targets.keySet())) {
+                for (Map.Entry<ReportPipeline.Format, Path> target : targets.entrySet()) {
+                    Files.copy(Channels.newInputStream(report.files().get(target.getKey())), target.getValue(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                return new Export(report.result(), report.cached());
+            }
+        }
+        Map<ReportPipeline.Format, OutputStream> outputs = new EnumMap<>(ReportPipeline.Format.class);
+        try {
+            for (Map.Entry<ReportPipeline.Format, Path> target : targets.entrySet()) {
+                outputs.put(target.getKey(), new BufferedOutputStream(Files.newOutputStream(target.getValue()), TEXT_BUFFER_SIZE));
+            }
+            return new Export(ReportPipeline.render(Ledger.shared(), filter, outputs), false);
+        } finally {
+            for (OutputStream out : outputs.values()) {
+                out.close();
+            }
+        }
+    }
+
+    /** Exports to BudgetReport.&lt;ext&gt; in the working directory; empty reports are not kept. */
+    static void exportReport(ReportFilter filter, Set<ReportPipeline.Format> formats) {
+        Map<ReportPipeline.Format, Path> targets = new EnumMap<>(ReportPipeline.Format.class);
+        for (ReportPipeline.Format format : formats) {
+            targets.put(format, Path.of("BudgetReport." + format.extension()));
+        }
+        Export export;
+        try {
+            export = export(filter, targets);
+        } catch (SQLException | IOException e) {
+            System.err.println("Error saving report: " + e.getMessage());
+            return;
+        }
+
+        if (!export.result().hasData()) {
+            targets.values().forEach(ReportGenerator::deleteQuietly);
+            System.out.println("No data available to generate a report.");
+            return;
+        }
+        String count = export.result().transactions() >= 0 ? " (" + export.result().transactions() + " transactions)" : "";
+        for (Path file : targets.values()) {
+            System.out.println("Report saved as " + file + count + (export.cached() ? ", unchanged since last export" : ""));
+        }
+    }
+
+    private static ReportFilter readFilter(Scanner scanner) {
+        try {
+            System.out.print("Start date (YYYY-MM-DD, blank for all): ");
+            String from = scanner.nextLine().trim();
+            System.out.print("End date (YYYY-MM-DD, blank for all): ");
+            String to = scanner.nextLine().trim();
+            System.out.print("Type (Income/Expense, blank for both): ");
+            String type = scanner.nextLine().trim();
+            return new ReportFilter(
+                    from.isEmpty() ? null : LocalDate.parse(from),
+                    to.isEmpty() ? null : LocalDate.parse(to),
+                    type.isEmpty() ? null : Character.toUpperCase(type.charAt(0)) + type.substring(1).toLowerCase());
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            System.out.println("Invalid filter: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // One ledger's queries, the user id first. Whole months come from its rows of the rollup;
+    // other ranges group its rows through the (user_id, ...) indexes
+    static String summarySql(ReportFilter filter) {
+        if (filter.monthAligned()) {
+            return "SELECT year_month, type, total_cents FROM monthly_totals" + filter.monthlyTotalsWhere()
+                    + " ORDER BY year_month, type;";
+        }
+        return "SELECT year_month, type, SUM(amount_cents) AS total_cents FROM transactions"
+                + filter.ledgerTransactionsWhere() + " GROUP BY year_month, type ORDER BY year_month, type;";
+    }
+
+    static int bindSummary(PreparedStatement pstmt, ReportFilter filter, Ledger ledger) throws SQLException {
+        return filter.monthAligned() ? filter.bindMonthlyTotals(pstmt, 1, ledger)
+                : filter.bindLedgerTransactions(pstmt, 1, ledger);
+    }
+
+    static String detailSql(ReportFilter filter) {
+        return "SELECT year_month, type, amount_cents, notes, timestamp FROM transactions" + filter.ledgerTransactionsWhere()
+                + " ORDER BY timestamp;";
+    }
+
+    private static void viewReport(ReportFilter filter) {
+        // Stream to stdout through one buffer instead of building the report in memory
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), TEXT_BUFFER_SIZE);
+        try {
+            out.write('\n');
+            if (!writeSummary(out, filter)) {
+                System.out.println("No data available to generate a report.");
+            }
+            out.flush();
+        } catch (SQLException | IOException e) {
+            System.err.println("Error generating report content: " + e.getMessage());
+        }
+    }
+
+    static void exportReportAsText(ReportFilter filter) {
+        exportReport(filter, EnumSet.of(ReportPipeline.Format.TEXT));
+    }
+
+    static void exportReportAsPDF(ReportFilter filter) {
+        exportReport(filter, EnumSet.of(ReportPipeline.Format.PDF));
+    }
+
+    /**
+     * Writes the PDF report of {@code ledger} to {@code out} and returns the number of transactions in it. The table is flushed to the
+     * stream as it grows, so memory stays bounded however large the report is.
+     */
+    static long writePdf(OutputStream out, Ledger ledger, ReportFilter filter) throws DocumentException, SQLException {
+        PdfReport pdf = new PdfReport(out, filter);
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(detailSql(filter));
+            filter.bindLedgerTransactions(pstmt, 1, ledger);
+            TransactionArchive.Scan cold = TransactionArchive.scan(conn, ledger, filter, true);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ArchiveSegment.Row archived = cold.next();
+                boolean hot = rs.next();
+                while (hot || archived != null) {
+                    if (archived != null && (!hot || archived.timestamp().compareTo(rs.getString("timestamp")) <= 0)) {
+                        pdf.add(TransactionStore.yearMonth(archived.timestamp()), archived.type(), archived.amountCents(),
+                                archived.notes());
+                        archived = cold.next();
+                    } else {
+                        pdf.add(rs.getInt("year_month"), rs.getString("type"), rs.getLong("amount_cents"), rs.getString("notes"));
+                        hot = rs.next();
+                    }
+                }
+            }
+        }
+        return pdf.finish();
+    }
+
+    /** The PDF report, built a row at a time; {@link #finish()} closes the document. */
+    static final class PdfReport {
+        private final Document document = new Document();
+        private final PdfPTable table = new PdfPTable(4); // 4 columns: Month, Type, Amount, Notes
+        private long rows;
+
+        PdfReport(OutputStream out, ReportFilter filter) throws DocumentException {
+            PdfWriter.getInstance(document, out);
+            document.open();
+
+            document.add(new Paragraph("Budget Report"));
+            document.add(new Paragraph("Generated on: " + LocalDate.now()));
+            if (!filter.isEmpty()) {
+                document.add(new Paragraph("Filter: " + filter));
+            }
+            document.add(new Paragraph("\n"));
+
+            // Large-table mode: rows are flushed to the writer every PDF_CHUNK_ROWS instead of
+            // accumulating the whole table before document.add
+            table.setComplete(false);
+            table.setHeaderRows(1);
+            table.addCell("Month");
+            table.addCell("Type");
+            table.addCell("Amount");
+            table.addCell("Notes");
+        }
+
+        void add(int yearMonth, String type, long amountCents, String notes) throws DocumentException {
+            table.addCell(cell(Schema.formatYearMonth(yearMonth)));
+            table.addCell(cell(type));
+            table.addCell(cell(Money.format(amountCents)));
+            table.addCell(cell(notes == null ? "N/A" : notes));
+            if (++rows % PDF_CHUNK_ROWS == 0) {
+                document.add(table);
+            }
+        }
+
+        /** Completes the document and returns the number of transactions in it. */
+        long finish() throws DocumentException {
+            if (rows == 0) {
+                document.add(new Paragraph("No transactions match this report."));
+            }
+            table.setComplete(true);
+            document.add(table);
+            document.close();
+            return rows;
+        }
+    }
+
+    /**
+     * Writes the monthly summary of the shared ledger for {@code filter} row by row as the query
+     * produces it. Returns false, having written nothing, when there is no matching data.
+     */
+    static boolean writeSummary(Appendable out, ReportFilter filter) throws SQLException, IOException {
+        return writeSummary(out, Ledger.shared(), filter);
+    }
+
+    /** As {@link #writeSummary(Appendable, ReportFilter)}, for one ledger. */
+    static boolean writeSummary(Appendable out, Ledger ledger, ReportFilter filter) throws SQLException, IOException {
+        if (ledger.equals(Ledger.shared()) && AnalyticsEngine.enabled()) {
+            List<AnalyticsEngine.MonthTotal> totals = AnalyticsEngine.get().monthlyTotals(filter);
+            if (totals.isEmpty()) {
+                return false; // No data
+            }
+            writeSummaryHeader(out, filter);
+            StringBuilder line = new StringBuilder(64);
+            for (AnalyticsEngine.MonthTotal total : totals) {
+                writeSummaryRow(out, line, Schema.formatYearMonth(total.yearMonth()), total.type(), total.cents());
+            }
+            return true;
+        }
+
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(summarySql(filter));
+            bindSummary(pstmt, filter, ledger);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // The rollups still count archived months
+                return writeSummaryRows(out, filter, rs,
+                        filter.monthAligned() ? List.of() : TransactionArchive.segments(conn, ledger, filter));
+            }
+        }
+    }
+
+    private static boolean writeSummaryRows(Appendable out, ReportFilter filter, ResultSet rs,
+                                            List<TransactionArchive.Segment> archived) throws SQLException, IOException {
+        if (!archived.isEmpty()) {
+            return writeSummaryTotals(out, filter, rs, archived);
+        }
+        if (!rs.next()) {
+            return false; // No data
+        }
+
+        writeSummaryHeader(out, filter);
+        StringBuilder line = new StringBuilder(64);
+        do {
+            String month = Schema.formatYearMonth(rs.getInt("year_month"));
+            String type = rs.getString("type");
+            writeSummaryRow(out, line, month, type, rs.getLong("total_cents"));
+        } while (rs.next());
+        return true;
+    }
+
+    // The query's totals with the archived months added, which need sorting in among them
+    private static boolean writeSummaryTotals(Appendable out, ReportFilter filter, ResultSet rs,
+                                              List<TransactionArchive.Segment> archived) throws SQLException, IOException {
+        TreeMap<Integer, TreeMap<String, long[]>> totals = new TreeMap<>();
+        while (rs.next()) {
+            totals.computeIfAbsent(rs.getInt("year_month"), m -> new TreeMap<>())
+                    .computeIfAbsent(rs.getString("type"), t -> new long[1])[0] += rs.getLong("total_cents");
+        }
+        TransactionArchive.addTotals(archived, filter, totals);
+        if (totals.isEmpty()) {
+            return false; // No data
+        }
+
+        writeSummaryHeader(out, filter);
+        StringBuilder line = new StringBuilder(64);
+        for (Map.Entry<Integer, TreeMap<String, long[]>> month : totals.entrySet()) {
+            for (Map.Entry<String, long[]> type : month.getValue().entrySet()) {
+                writeSummaryRow(out, line, Schema.formatYearMonth(month.getKey()), type.getKey(), type.getValue()[0]);
+            }
+        }
+        return true;
+    }
+
+    static void writeSummaryHeader(Appendable out, ReportFilter filter) throws IOException {
+        out.append("Budget Report\n");
+        out.append("Generated on: ").append(LocalDate.now().toString()).append("\n");
+        if (!filter.isEmpty()) {
+            out.append("Filter: ").append(filter.toString()).append("\n");
+        }
+        out.append("\n");
+        out.append(String.format("%-10s %-10s %-10s\n", "Month", "Type", "Amount"));
+        out.append("-------------------------------\n");
+    }
+
+    // Same layout as "%-10s %-10s %-10.2f", built in a reused buffer instead of through Formatter
+    static void writeSummaryRow(Appendable out, StringBuilder line, String month, String type,
+                                        long totalCents) throws IOException {
+        line.setLength(0);
+        padTo(line.append(month), 11);
+        padTo(line.append(type), 22);
+        Money.appendPadded(line, totalCents, 10).append('\n');
+        out.append(line);
+    }
+
+    private static void padTo(StringBuilder line, int column) {
+        while (line.length() < column) {
+            line.append(' ');
+        }
+    }
+
+    // iText's default split check runs a date regex for every '-' it meets, which dominated
+    // export time for month cells; table cells only ever need to wrap at whitespace
+    private static final SplitCharacter SPLIT_ON_WHITESPACE = (start, current, end, cc, ck) -> cc[current] <= ' ';
+
+    private static Phrase cell(String text) {
+        return new Phrase(new Chunk(text).setSplitCharacter(SPLIT_ON_WHITESPACE));
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Error removing empty report " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package expense;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Renders one report in several formats from a single pass over the transactions. The scanning
+ * thread reads rows in chunks and hands every chunk to each format's renderer, which runs on its
+ * own thread and streams to its own output, so the formats are produced side by side and memory
+ * stays bounded by the chunk queues. The monthly summary is totalled during the scan, so text
+ * output needs no query of its own; asked for text alone, the pipeline uses the cheaper
+ * {@link ReportGenerator#writeSummary} query over the rollups instead of scanning.
+ */
+public final class ReportPipeline {
+    private static final int CHUNK_ROWS = 512;
+    private static final int QUEUE_CHUNKS = 16;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Chunk END = new Chunk(new Row[0], 0);
+    private static final ExecutorService RENDERERS = VirtualThreads.newExecutor("report-renderer");
+
+    public enum Format {
+        TEXT("txt"), PDF("pdf"), CSV("csv"), HTML("html");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        /** Parses a format name or file extension, e.g. "pdf" or "txt". */
+        public static Format parse(String text) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(text) || format.name().equalsIgnoreCase(text)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown report format: " + text);
+        }
+    }
+
+    /**
+     * What a run produced. {@code transactions} is -1 when only the summary was written, which
+     * does not count them; {@code hasData} is false when nothing matched the filter.
+     */
+    public record Result(long transactions, boolean hasData) {
+    }
+
+    record Row(String timestamp, int yearMonth, String type, long amountCents, String category, String notes) {
+    }
+
+    record SummaryLine(int yearMonth, String type, long totalCents) {
+    }
+
+    private record Chunk(Row[] rows, int size) {
+    }
+
+    /** One output format. Called from a single renderer thread: begin, rows per chunk, then end. */
+    private interface Renderer {
+        void begin() throws Exception;
+
+        void rows(Row[] rows, int size) throws Exception;
+
+        void end(List<SummaryLine> summary) throws Exception;
+    }
+
+    private ReportPipeline() {
+    }
+
+    static String scanSql(ReportFilter filter) {
+        return "SELECT timestamp, year_month, type, amount_cents, category, notes FROM transactions"
+                + filter.ledgerTransactionsWhere() + " ORDER BY timestamp;";
+    }
+
+    /**
+     * Writes the report of {@code ledger} in each format of {@code outputs} to its stream. The streams are flushed but not closed.
+     */
+    public static Result render(Ledger ledger, ReportFilter filter, Map<Format, OutputStream> outputs)
+            throws SQLException, IOException {
+        if (outputs.size() == 1 && outputs.containsKey(Format.TEXT)) {
+            Writer out = writer(outputs.get(Format.TEXT));
+            boolean hasData = ReportGenerator.writeSummary(out, ledger, filter);
+            out.flush();
+            return new Result(-1, hasData);
+        }
+
+        Map<Format, Renderer> renderers = new EnumMap<>(Format.class);
+        for (Map.Entry<Format, OutputStream> output : outputs.entrySet()) {
+            renderers.put(output.getKey(), renderer(output.getKey(), output.getValue(), filter));
+        }
+        List<BlockingQueue<Chunk>> queues = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        List<SummaryLine> summary = new ArrayList<>();
+        for (Map.Entry<Format, Renderer> entry : renderers.entrySet()) {
+            BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+            queues.add(queue);
+            running.add(RENDERERS.submit(() -> {
+                drive(entry.getKey(), entry.getValue(), queue, summary);
+                return null;
+            }));
+        }
+
+        long transactions = 0;
+        boolean scanned = false;
+        try {
+            TreeMap<Integer, TreeMap<String, long[]>> totals = new TreeMap<>();
+            try (Database.PooledConnection conn = ledger.acquire()) {
+                PreparedStatement pstmt = conn.prepare(scanSql(filter));
+                filter.bindLedgerTransactions(pstmt, 1, ledger);
+                TransactionArchive.Scan cold = TransactionArchive.scan(conn, ledger, filter, true);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    Row[] rows = new Row[CHUNK_ROWS];
+                    int size = 0;
+                    int month = -1;
+                    TreeMap<String, long[]> monthTotals = null;
+                    // Archived months merged in by timestamp; they come first on a tie
+                    ArchiveSegment.Row archived = cold.next();
+                    boolean hot = rs.next();
+                    while (hot || archived != null) {
+                        Row row;
+                        if (archived != null && (!hot || archived.timestamp().compareTo(rs.getString(1)) <= 0)) {
+                            row = new Row(archived.timestamp(), TransactionStore.yearMonth(archived.timestamp()),
+                                    archived.type(), archived.amountCents(), archived.category(), archived.notes());
+                            archived = cold.next();
+                        } else {
+                            row = new Row(rs.getString(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getString(5),
+                                    rs.getString(6));
+                            hot = rs.next();
+                        }
+                        if (row.yearMonth() != month) {
+                            month = row.yearMonth();
+                            monthTotals = totals.computeIfAbsent(month, m -> new TreeMap<>());
+                        }
+                        monthTotals.computeIfAbsent(row.type(), t -> new long[1])[0] += row.amountCents();
+                        rows[size++] = row;
+                        transactions++;
+                        if (size == CHUNK_ROWS) {
+                            publish(queues, new Chunk(rows, size));
+                            rows = new Row[CHUNK_ROWS]; // renderers may still be reading the last one
+                            size = 0;
+                        }
+                    }
+                    if (size > 0) {
+                        publish(queues, new Chunk(rows, size));
+                    }
+                }
+            }
+            totals.forEach((month, types) -> types.forEach((type, cents) -> summary.add(new SummaryLine(month, type, cents[0]))));
+            scanned = true;
+        } finally {
+            // Sent even when the scan failed, so no renderer is left waiting. The summary list is
+            // complete before END is queued, and renderers only read it after taking END
+            for (BlockingQueue<Chunk> queue : queues) {
+                putUninterruptibly(queue, END);
+            }
+            IOException failure = null;
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause().getMessage(), e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = new IOException("Interrupted while rendering", e);
+                }
+            }
+            if (failure != null && scanned) {
+                throw failure;
+            }
+        }
+        return new Result(transactions, transactions > 0);
+    }
+
+    private static void publish(List<BlockingQueue<Chunk>> queues, Chunk chunk) {
+        for (BlockingQueue<Chunk> queue : queues) {
+            putUninterruptibly(queue, chunk);
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Chunk> queue, Chunk chunk) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(chunk);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs one renderer. After a failure it keeps taking chunks, so the scan never blocks on a full
+    // queue, and rethrows at the end
+    private static void drive(Format format, Renderer renderer, BlockingQueue<Chunk> queue, List<SummaryLine> summary)
+            throws Exception {
+        Exception failure = null;
+        try {
+            renderer.begin();
+        } catch (Exception e) {
+            failure = e;
+        }
+        while (true) {
+            Chunk chunk = queue.take();
+            if (chunk == END) {
+                break;
+            }
+            if (failure == null) {
+                try {
+                    renderer.rows(chunk.rows(), chunk.size());
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure == null) {
+            renderer.end(summary);
+            return;
+        }
+        throw new IOException("Error rendering " + format + " report: " + failure.getMessage(), failure);
+    }
+
+    private static Renderer renderer(Format format, OutputStream out, ReportFilter filter) {
+        return switch (format) {
+            case TEXT -> new TextRenderer(writer(out), filter);
+            case PDF -> new PdfRenderer(out, filter);
+            case CSV -> new CsvRenderer(writer(out));
+            case HTML -> new HtmlRenderer(writer(out), filter);
+        };
+    }
+
+    private static Writer writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /** The monthly summary, identical to {@link ReportGenerator#writeSummary}'s. */
+    private static final class TextRenderer implements Renderer {
+        private final Writer out;
+        private final ReportFilter filter;
+
+        TextRenderer(Writer out, ReportFilter filter) {
+            this.out = out;
+            this.filter = filter;
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void rows(Row[] rows, int size) {
+        }
+
+        @Override
+        public void end(List<SummaryLine> summary) throws IOException {
+            if (!summary.isEmpty()) {
+                ReportGenerator.writeSummaryHeader(out, filter);
+                StringBuilder line = new StringBuilder(64);
+                for (SummaryLine total : summary) {
+                    ReportGenerator.writeSummaryRow(out, line, Schema.formatYearMonth(total.yearMonth()), total.type(),
+                            total.totalCents());
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private static final class PdfRenderer implements Renderer {
+        private final OutputStream out;
+        private final ReportFilter filter;
+        private ReportGenerator.PdfReport pdf;
+
+        PdfRenderer(OutputStream out, ReportFilter filter) {
+            this.out = out;
+            this.filter = filter;
+        }
+
+        @Override
+        public void begin() throws Exception {
+            pdf = new ReportGenerator.PdfReport(out, filter);
+        }
+
+        @Override
+        public void rows(Row[] rows, int size) throws Exception {
+            for (int i = 0; i < size; i++) {
+                Row row = rows[i];
+                pdf.add(row.yearMonth(), row.type(), row.amountCents(), row.notes());
+            }
+        }
+
+        @Override
+        public void end(List<SummaryLine> summary) throws Exception {
+            pdf.finish();
+            out.flush();
+        }
+    }
+
+    /**
+     * One line per transaction with RFC 4180 quoting. The first four columns are the ones
+     * {@link TransactionImporter} reads, so an export can be imported elsewhere.
+     */
+    private static final class CsvRenderer implements Renderer {
+        private final Writer out;
+        private final StringBuilder line = new StringBuilder(128);
+
+        CsvRenderer(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write("type,amount,notes,timestamp,category\n");
+        }
+
+        @Override
+        public void rows(Row[] rows, int size) throws IOException {
+            for (int i = 0; i < size; i++) {
+                Row row = rows[i];
+                line.setLength(0);
+                field(line, row.type()).append(',');
+                line.append(Money.format(row.amountCents())).append(',');
+                field(line, row.notes()).append(',');
+                field(line, row.timestamp()).append(',');
+                field(line, row.category()).append('\n');
+                out.append(line);
+            }
+        }
+
+        @Override
+        public void end(List<SummaryLine> summary) throws IOException {
+            out.flush();
+        }
+
+        private static StringBuilder field(StringBuilder line, String value) {
+            if (value == null) {
+                return line;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return line.append(value);
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            return line.append('"');
+        }
+    }
+
+    /** A standalone page: the transactions, then the monthly summary, which is only known at the end. */
+    private static final class HtmlRenderer implements Renderer {
+        private final Writer out;
+        private final ReportFilter filter;
+        private final StringBuilder line = new StringBuilder(256);
+        private long rows;
+
+        HtmlRenderer(Writer out, ReportFilter filter) {
+            this.out = out;
+            this.filter = filter;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write("""
+                      <!DOCTYPE html>
+                      <html lang="en">
+                      <head>
+                      <meta charset="utf-8">
+                      <title>Budget Report</title>
+                      <style>
+                      body { font-family: sans-serif; margin: 2em; }
+                      table { border-collapse: collapse; margin-bottom: 2em; }
+                      th, td { border: 1px solid #ccc; padding: 4px 8px; text-align: left; }
+                      td.amount { text-align: right; font-variant-numeric: tabular-nums; }
+                      </style>
+                      </head>
+                      <body>
+                      <h1>Budget Report</h1>
+                      """);
+            out.write("<p>Generated on: " + LocalDate.now() + "</p>\n");
+            if (!filter.isEmpty()) {
+                out.write("<p>Filter: " + escape(filter.toString()) + "</p>\n");
+            }
+            out.write("<h2>Transactions</h2>\n<table>\n<tr><th>Date</th><th>Type</th><th>Amount</th><th>Category</th><th>Notes</th></tr>\n");
+        }
+
+        @Override
+        public void rows(Row[] chunk, int size) throws IOException {
+            for (int i = 0; i < size; i++) {
+                Row row = chunk[i];
+                line.setLength(0);
+                line.append("<tr><td>").append(escape(row.timestamp()))
+                        .append("</td><td>").append(escape(row.type()))
+                        .append("</td><td class=\"amount\">").append(Money.format(row.amountCents()))
+                        .append("</td><td>").append(escape(row.category()))
+                        .append("</td><td>").append(escape(row.notes())).append("</td></tr>\n");
+                out.append(line);
+            }
+            rows += size;
+        }
+
+        @Override
+        public void end(List<SummaryLine> summary) throws IOException {
+            out.write("</table>\n");
+            if (rows == 0) {
+                out.write("<p>No transactions match this report.</p>\n");
+            } else {
+                out.write("<h2>Monthly Summary</h2>\n<table>\n<tr><th>Month</th><th>Type</th><th>Amount</th></tr>\n");
+                for (SummaryLine total : summary) {
+                    out.write("<tr><td>" + Schema.formatYearMonth(total.yearMonth()) + "</td><td>" + escape(total.type())
+                            + "</td><td class=\"amount\">" + Money.format(total.totalCents()) + "</td></tr>\n");
+                }
+                out.write("</table>\n");
+            }
+            out.write("</body>\n</html>\n");
+            out.flush();
+        }
+
+        private static String escape(String text) {
+            if (text == null) {
+                return "";
+            }
+            StringBuilder escaped = null;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                String replacement = switch (c) {
+                    case '<' -> "&lt;";
+                    case '>' -> "&gt;";
+                    case '&' -> "&amp;";
+                    case '"' -> "&quot;";
+                    default -> null;
+                };
+                if (replacement != null && escaped == null) {
+                    escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+                }
+                if (escaped != null) {
+                    if (replacement != null) {
+                        escaped.append(replacement);
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+            return escaped == null ? text : escaped.toString();
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package expense;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned schema for finance.db. The applied version is kept in {@code PRAGMA user_version};
+ * each entry in {@link #MIGRATIONS} moves the database up by one version.
+ */
+public final class Schema {
+    static final String EPOCH_DAY_OF_TIMESTAMP = "CAST(strftime('%s', timestamp) AS INTEGER) / 86400";
+    static final String YEAR_MONTH_OF_TIMESTAMP = "CAST(strftime('%Y%m', timestamp) AS INTEGER)";
+
+    // Triggers and indexes on transactions, shared by the migration that creates them and the one
+    // that rebuilds the table
+    private static final String DATES_INSERT_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS trg_transactions_dates_insert AFTER INSERT ON transactions
+            WHEN NEW.epoch_day IS NULL OR NEW.year_month IS NULL
+            BEGIN
+                UPDATE transactions
+                SET epoch_day = %s, year_month = %s
+                WHERE id = NEW.id;
+            END;
+            """.formatted(EPOCH_DAY_OF_TIMESTAMP, YEAR_MONTH_OF_TIMESTAMP);
+    private static final String DATES_UPDATE_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS trg_transactions_dates_update AFTER UPDATE OF timestamp ON transactions
+            BEGIN
+                UPDATE transactions
+                SET epoch_day = %s, year_month = %s
+                WHERE id = NEW.id;
+            END;
+            """.formatted(EPOCH_DAY_OF_TIMESTAMP, YEAR_MONTH_OF_TIMESTAMP);
+    private static final String FTS_INSERT_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_insert AFTER INSERT ON transactions
+            WHEN NEW.notes IS NOT NULL
+            BEGIN
+                INSERT INTO transactions_fts(rowid, notes) VALUES (NEW.id, NEW.notes);
+            END;
+            """;
+    private static final String FTS_DELETE_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_delete AFTER DELETE ON transactions
+            WHEN OLD.notes IS NOT NULL
+            BEGIN
+                INSERT INTO transactions_fts(transactions_fts, rowid, notes) VALUES ('delete', OLD.id, OLD.notes);
+            END;
+            """;
+    private static final String FTS_UPDATE_TRIGGER = """
+            CREATE TRIGGER IF NOT EXISTS trg_transactions_fts_update AFTER UPDATE OF notes ON transactions
+            BEGIN
+                INSERT INTO transactions_fts(transactions_fts, rowid, notes)
+                    SELECT 'delete', OLD.id, OLD.notes WHERE OLD.notes IS NOT NULL;
+                INSERT INTO transactions_fts(rowid, notes)
+                    SELECT NEW.id, NEW.notes WHERE NEW.notes IS NOT NULL;
+            END;
+            """;
+    // budget.month was free text ("January", "2025-01", ...); this reads it the way yearMonth() does
+    private static final String BUDGET_MONTH_KEY = """
+            CASE
+                WHEN trim(month) GLOB '[0-9][0-9][0-9][0-9]-[0-9][0-9]' AND substr(trim(month), 6, 2) BETWEEN '01' AND '12'
+                THEN CAST(substr(trim(month), 1, 4) AS INTEGER) * 100 + CAST(substr(trim(month), 6, 2) AS INTEGER)
+                ELSE CAST(strftime('%Y', 'now') AS INTEGER) * 100 + CASE lower(trim(month))
+                    WHEN 'january' THEN 1 WHEN 'february' THEN 2 WHEN 'march' THEN 3 WHEN 'april' THEN 4
+                    WHEN 'may' THEN 5 WHEN 'june' THEN 6 WHEN 'july' THEN 7 WHEN 'august' THEN 8
+                    WHEN 'september' THEN 9 WHEN 'october' THEN 10 WHEN 'november' THEN 11 WHEN 'december' THEN 12
+                END
+            END""";
+    private static final String TIMESTAMP_INDEX = "CREATE INDEX IF NOT EXISTS idx_transactions_timestamp ON transactions(timestamp);";
+    private static final String EPOCH_DAY_INDEX = "CREATE INDEX IF NOT EXISTS idx_transactions_epoch_day ON transactions(epoch_day);";
+
+    private static final String[][] MIGRATIONS = {
+            // 1: original tables
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS transactions (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        type TEXT NOT NULL,
+                        amount REAL NOT NULL,
+                        notes TEXT,
+                        timestamp DATETIME DEFAULT CURRENT_TIMESTAMP
+                    );
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS budget (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        month TEXT UNIQUE NOT NULL,
+                        amount REAL NOT NULL
+                    );
+                    """
+            },
+            // 2: typed date columns derived from timestamp, plus covering indexes for the hot queries.
+            // Writers that know the timestamp fill the columns themselves; the triggers cover everything else.
+            {
+                    "ALTER TABLE transactions ADD COLUMN epoch_day INTEGER;",
+                    "ALTER TABLE transactions ADD COLUMN year_month INTEGER;",
+                    "UPDATE transactions SET epoch_day = " + EPOCH_DAY_OF_TIMESTAMP + ", year_month = " + YEAR_MONTH_OF_TIMESTAMP + ";",
+                    DATES_INSERT_TRIGGER,
+                    DATES_UPDATE_TRIGGER,
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_type_month ON transactions(type, year_month, amount);",
+                    TIMESTAMP_INDEX,
+                    EPOCH_DAY_INDEX
+            },
+            // 3: monthly_totals rollup, kept current by TransactionStore on every write
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS monthly_totals (
+                        year_month INTEGER NOT NULL,
+                        type TEXT NOT NULL,
+                        total REAL NOT NULL,
+                        count INTEGER NOT NULL,
+                        PRIMARY KEY (year_month, type)
+                    ) WITHOUT ROWID;
+                    """,
+                    """
+                    INSERT INTO monthly_totals(year_month, type, total, count)
+                    SELECT year_month, type, SUM(amount), COUNT(*)
+                    FROM transactions
+                    WHERE year_month IS NOT NULL
+                    GROUP BY year_month, type;
+                    """
+            },
+            // 4: full-text index over notes (external content, so the text is not stored twice)
+            {
+                    """
+                    CREATE VIRTUAL TABLE IF NOT EXISTS transactions_fts USING fts5(
+                        notes, content = 'transactions', content_rowid = 'id', prefix = '2 3'
+                    );
+                    """,
+                    FTS_INSERT_TRIGGER,
+                    FTS_DELETE_TRIGGER,
+                    FTS_UPDATE_TRIGGER,
+                    NoteSearch.REBUILD_SQL
+            },
+            // 5: amounts as INTEGER cents. SQLite cannot change a column type in place, so the tables
+            // are copied; ids are kept, so the notes index (keyed by rowid) stays valid
+            {
+                    """
+                    CREATE TABLE transactions_v5 (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        type TEXT NOT NULL,
+                        amount_cents INTEGER NOT NULL,
+                        notes TEXT,
+                        timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
+                        epoch_day INTEGER,
+                        year_month INTEGER
+                    );
+                    """,
+                    """
+                    INSERT INTO transactions_v5(id, type, amount_cents, notes, timestamp, epoch_day, year_month)
+                    SELECT id, type, CAST(round(amount * 100) AS INTEGER), notes, timestamp, epoch_day, year_month
+                    FROM transactions;
+                    """,
+                    "DROP TABLE transactions;",
+                    "ALTER TABLE transactions_v5 RENAME TO transactions;",
+                    DATES_INSERT_TRIGGER,
+                    DATES_UPDATE_TRIGGER,
+                    FTS_INSERT_TRIGGER,
+                    FTS_DELETE_TRIGGER,
+                    FTS_UPDATE_TRIGGER,
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_type_month ON transactions(type, year_month, amount_cents);",
+                    TIMESTAMP_INDEX,
+                    EPOCH_DAY_INDEX,
+                    """
+                    CREATE TABLE budget_v5 (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        month TEXT UNIQUE NOT NULL,
+                        amount_cents INTEGER NOT NULL
+                    );
+                    """,
+                    "INSERT INTO budget_v5(id, month, amount_cents) SELECT id, month, CAST(round(amount * 100) AS INTEGER) FROM budget;",
+                    "DROP TABLE budget;",
+                    "ALTER TABLE budget_v5 RENAME TO budget;",
+                    "DROP TABLE monthly_totals;",
+                    """
+                    CREATE TABLE monthly_totals (
+                        year_month INTEGER NOT NULL,
+                        type TEXT NOT NULL,
+                        total_cents INTEGER NOT NULL,
+                        count INTEGER NOT NULL,
+                        PRIMARY KEY (year_month, type)
+                    ) WITHOUT ROWID;
+                    """,
+                    """
+                    INSERT INTO monthly_totals(year_month, type, total_cents, count)
+                    SELECT year_month, type, SUM(amount_cents), COUNT(*)
+                    FROM transactions
+                    WHERE year_month IS NOT NULL
+                    GROUP BY year_month, type;
+                    """
+            },
+            // 6: per-day rollup, the finest level of detail for time-series charts
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS daily_totals (
+                        epoch_day INTEGER NOT NULL,
+                        type TEXT NOT NULL,
+                        total_cents INTEGER NOT NULL,
+                        count INTEGER NOT NULL,
+                        PRIMARY KEY (epoch_day, type)
+                    ) WITHOUT ROWID;
+                    """,
+                    """
+                    INSERT INTO daily_totals(epoch_day, type, total_cents, count)
+                    SELECT epoch_day, type, SUM(amount_cents), COUNT(*)
+                    FROM transactions
+                    WHERE epoch_day IS NOT NULL
+                    GROUP BY epoch_day, type;
+                    """
+            },
+            // 7: ledgers per user. Existing rows belong to the shared ledger (user 0); per-user
+            // indexes lead with user_id so one user's queries read only that user's rows
+            {
+                    "ALTER TABLE transactions ADD COLUMN user_id INTEGER NOT NULL DEFAULT 0;",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_user_time ON transactions(user_id, timestamp, id);",
+                    "CREATE INDEX IF NOT EXISTS idx_transactions_user_month ON transactions(user_id, year_month, type, amount_cents);",
+                    """
+                    CREATE TABLE budget_v7 (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL DEFAULT 0,
+                        month TEXT NOT NULL,
+                        amount_cents INTEGER NOT NULL,
+                        UNIQUE (user_id, month)
+                    );
+                    """,
+                    "INSERT INTO budget_v7(id, user_id, month, amount_cents) SELECT id, 0, month, amount_cents FROM budget;",
+                    "DROP TABLE budget;",
+                    "ALTER TABLE budget_v7 RENAME TO budget;"
+            },
+            // 8: optional categories, and budgets keyed by year_month instead of free-text month names.
+            // Where two texts name the same month the later budget wins; texts that name no month are
+            // kept aside in budget_unparsed
+            {
+                    "ALTER TABLE transactions ADD COLUMN category TEXT;",
+                    """
+                    CREATE TABLE budget_v8 (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL DEFAULT 0,
+                        year_month INTEGER NOT NULL,
+                        category TEXT NOT NULL DEFAULT '',
+                        amount_cents INTEGER NOT NULL,
+                        UNIQUE (user_id, year_month, category)
+                    );
+                    """,
+                    "INSERT OR REPLACE INTO budget_v8(id, user_id, year_month, amount_cents) SELECT id, user_id, "
+                            + BUDGET_MONTH_KEY + ", amount_cents FROM budget WHERE " + BUDGET_MONTH_KEY + " IS NOT NULL ORDER BY id;",
+                    "CREATE TABLE budget_unparsed AS SELECT * FROM budget WHERE " + BUDGET_MONTH_KEY + " IS NULL;",
+                    "DROP TABLE budget;",
+                    "ALTER TABLE budget_v8 RENAME TO budget;"
+            },
+            // 9: how far the write-behind journal has been applied to each ledger, committed with the
+            // rows themselves so replaying the journal after a crash skips what is already here
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS journal_applied (
+                        user_id INTEGER PRIMARY KEY,
+                        seq INTEGER NOT NULL
+                    );
+                    """
+            },
+            // 10: a counter per ledger and month, bumped by every write to that month, so a cached
+            // report can tell whether any month it covers has changed
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS month_versions (
+                        user_id INTEGER NOT NULL,
+                        year_month INTEGER NOT NULL,
+                        version INTEGER NOT NULL,
+                        PRIMARY KEY (user_id, year_month)
+                    ) WITHOUT ROWID;
+                    """
+            },
+            // 11: recurring transactions. next_occurrence counts the occurrences already posted and
+            // next_due is the epoch day of the next one (NULL once the rule has ended);
+            // recurring_posted holds one key per posted occurrence, so no occurrence is posted twice
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS recurring_rules (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL DEFAULT 0,
+                        type TEXT NOT NULL,
+                        amount_cents INTEGER NOT NULL,
+                        notes TEXT,
+                        category TEXT,
+                        rrule TEXT NOT NULL,
+                        start_date TEXT NOT NULL,
+                        next_occurrence INTEGER NOT NULL DEFAULT 0,
+                        next_due INTEGER
+                    );
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_recurring_rules_user_due ON recurring_rules(user_id, next_due);",
+                    """
+                    CREATE TABLE IF NOT EXISTS recurring_posted (
+                        rule_id INTEGER NOT NULL,
+                        occurrence INTEGER NOT NULL,
+                        PRIMARY KEY (rule_id, occurrence)
+                    ) WITHOUT ROWID;
+                    """
+            },
+            // 12: catalog of archived months. Their rows live in segment files under expense.archive.dir
+            // and are gone from transactions; the rollups still count them
+            {
+                    """
+                    CREATE TABLE IF NOT EXISTS archive_segments (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        user_id INTEGER NOT NULL,
+                        year_month INTEGER NOT NULL,
+                        file TEXT NOT NULL UNIQUE,
+                        rows INTEGER NOT NULL,
+                        min_id INTEGER NOT NULL,
+                        max_id INTEGER NOT NULL
+                    );
+                    """,
+                    "CREATE INDEX IF NOT EXISTS idx_archive_segments_user_month ON archive_segments(user_id, year_month);",
+                    "CREATE INDEX IF NOT EXISTS idx_archive_segments_month ON archive_segments(year_month);"
+            },
+            // 13: rollups per ledger, so one user's totals never include another's. Refilled by
+            // MonthlyTotals.rebuild once the tables exist, archived months included
+            {
+                    "DROP TABLE monthly_totals;",
+                    """
+                    CREATE TABLE monthly_totals (
+                        user_id INTEGER NOT NULL,
+                        year_month INTEGER NOT NULL,
+                        type TEXT NOT NULL,
+                        total_cents INTEGER NOT NULL,
+                        count INTEGER NOT NULL,
+                        PRIMARY KEY (user_id, year_month, type)
+                    ) WITHOUT ROWID;
+                    """,
+                    "DROP TABLE daily_totals;",
+                    """
+                    CREATE TABLE daily_totals (
+                        user_id INTEGER NOT NULL,
+                        epoch_day INTEGER NOT NULL,
+                        type TEXT NOT NULL,
+                        total_cents INTEGER NOT NULL,
+                        count INTEGER NOT NULL,
+                        PRIMARY KEY (user_id, epoch_day, type)
+                    ) WITHOUT ROWID;
+                    """
+            }
+    };
+    // The migration that leaves the rollups empty for MonthlyTotals.rebuild to fill
+    private static final int PER_USER_ROLLUPS = 13;
+
+    public static final int CURRENT_VERSION = MIGRATIONS.length;
+
+    private Schema() {
+    }
+
+    /** Brings finance.db up to {@link #CURRENT_VERSION}; safe to call from every tool on startup. */
+    public static void migrate() throws SQLException {
+        migrate(Database.finance());
+    }
+
+    public static void migrate(Database database) throws SQLException {
+        try (Database.PooledConnection conn = database.acquire();
+             Statement stmt = conn.createStatement()) {
+            if (version(stmt) >= CURRENT_VERSION) {
+                return;
+            }
+            // BEGIN IMMEDIATE so two tools starting together cannot both apply the same step
+            stmt.execute("BEGIN IMMEDIATE");
+            try {
+                for (int version = version(stmt); version < CURRENT_VERSION; version++) {
+                    for (String sql : MIGRATIONS[version]) {
+                        stmt.execute(sql);
+                    }
+                    if (version + 1 == PER_USER_ROLLUPS) {
+                        MonthlyTotals.rebuild(conn);
+                    }
+                    stmt.execute("PRAGMA user_version = " + (version + 1));
+                }
+                stmt.execute("COMMIT");
+            } catch (SQLException e) {
+                stmt.execute("ROLLBACK");
+                throw e;
+            }
+        }
+    }
+
+    private static int version(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /** Turns "2025-01" or a month name such as "January" (current year) into a year_month key like 202501. */
+    public static int yearMonth(String month) {
+        String text = month.trim();
+        if (text.length() == 7 && text.charAt(4) == '-') {
+            int value = Integer.parseInt(text.substring(5));
+            if (value < 1 || value > 12) {
+                throw new IllegalArgumentException("No month " + value + " in " + text);
+            }
+            return Integer.parseInt(text.substring(0, 4)) * 100 + value;
+        }
+        java.time.Month parsed = java.time.Month.valueOf(text.toUpperCase(java.util.Locale.ROOT));
+        return java.time.LocalDate.now().getYear() * 100 + parsed.getValue();
+    }
+
+    public static String formatYearMonth(int yearMonth) {
+        int month = yearMonth % 100;
+        return (yearMonth / 100) + (month < 10 ? "-0" : "-") + month;
+    }
+
+    public static List<String> explain(Database.PooledConnection conn, String sql, Object... params) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.connection().prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * The application's transaction queries with sample parameters: the SQL first, then its
+     * parameters. None of them may scan the transactions table in full.
+     */
+    static Object[][] indexedQueries() {
+        return new Object[][]{
+                {TransactionPager.sql(TransactionPager.Filter.NONE, false, true), 0, 20},
+                {TransactionPager.sql(TransactionPager.Filter.NONE, true, true), 0, "2025-01-01 00:00:00", 100, 20},
+                {TransactionPager.sql(TransactionPager.Filter.NONE, true, false), 0, "2025-01-01 00:00:00", 100, 20},
+                {BudgetingTool.EXPENSE_SQL, 0, 202501},
+                {BudgetingTool.BUDGET_SQL, 0, 202501, ""},
+                {ReportGenerator.SUMMARY_SQL, 0},
+                {ReportGenerator.DETAIL_SQL, 0},
+                {ReportPipeline.scanSql(ReportFilter.ALL), 0},
+                {DataVisualization.CHART_SQL, 0},
+                {TimeSeriesData.DAY_SQL, 0, 20000, 20100},
+                {TimeSeriesData.WEEK_SQL, 0, 18000, 20000},
+                {TimeSeriesData.MONTH_SQL, 0, 201501, 202412},
+                {TimeSeriesData.YEAR_SQL, 0, 201501, 202412}
+        };
+    }
+
+    /**
+     * Migrates the database and checks with EXPLAIN QUERY PLAN that none of the application's
+     * transaction queries falls back to a full table scan. Exits non-zero if one does.
+     */
+    public static void main(String[] args) throws SQLException {
+        migrate();
+        Object[][] queries = indexedQueries();
+
+        boolean ok = true;
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            for (Object[] query : queries) {
+                String sql = (String) query[0];
+                Object[] params = java.util.Arrays.copyOfRange(query, 1, query.length);
+                List<String> plan = explain(conn, sql, params);
+                boolean scans = plan.stream().anyMatch(Schema::isFullScan);
+                ok &= !scans;
+                System.out.println((scans ? "FULL SCAN " : "OK        ") + sql.strip().replaceAll("\\s+", " "));
+                plan.forEach(step -> System.out.println("          " + step));
+            }
+        }
+        System.out.println("Schema version " + CURRENT_VERSION + (ok ? ": all queries use indexes" : ": full scans found"));
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    // Only the transactions table grows with history; the rollup is small by construction
+    static boolean isFullScan(String step) {
+        return step.startsWith("SCAN transactions") && !step.contains(" USING ");
+    }
+}
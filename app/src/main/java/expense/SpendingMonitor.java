@@ -0,0 +1,561 @@
+package expense;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streaming statistics per ledger, type and category, used to flag unusual transactions as they
+ * are written and to project month-end spend. Every write updates a few counters, whatever the
+ * size of the ledger:
+ * <ul>
+ *   <li>the mean and variance of log amounts, over all history (Welford) and recent history
+ *       (exponentially weighted, half-life {@code expense.anomaly.halfLife} transactions, default 50);</li>
+ *   <li>the current month's spend by day of month, folded when the month ends into an exponentially
+ *       weighted monthly total and share of it spent on each day of the month (half-life
+ *       {@code expense.anomaly.seasonMonths}, default 6).</li>
+ * </ul>
+ *
+ * A transaction is flagged when its amount is more than {@code expense.anomaly.zScore} (3.5)
+ * standard deviations above both the long-run and the recent mean for its category (for its type
+ * when uncategorised), once the series has {@code expense.anomaly.minSamples} (30) transactions.
+ * Deviations under 10% are never flagged, so a fixed amount such as rent does not flag on its first
+ * small rise. A month's projection is what was spent so far plus what the series usually spends
+ * over the rest of the month, from the day-of-month shares. An expense that pushes the projection
+ * of a budgeted month or category over its budget, before spending itself reaches it, warns once.
+ *
+ * Turned on with {@code -Dexpense.anomaly.enabled=true}. A ledger is tracked once {@link #backfill}
+ * has read its history in one pass, inside a write transaction as {@link BudgetAlerts} does, so no
+ * write is missed or counted twice. Edits and deletes change the current month's spend, but not the
+ * amount statistics, which only move forwards. Writes from other processes are not seen.
+ *
+ *   java expense.SpendingMonitor [YYYY-MM [day]]
+ */
+public final class SpendingMonitor {
+    private static final boolean ENABLED = Boolean.getBoolean("expense.anomaly.enabled");
+    private static final double Z_SCORE = Double.parseDouble(System.getProperty("expense.anomaly.zScore", "3.5"));
+    private static final int MIN_SAMPLES = Integer.getInteger("expense.anomaly.minSamples", 30);
+    private static final double ALPHA = decay(Integer.getInteger("expense.anomaly.halfLife", 50));
+    private static final double BETA = decay(Integer.getInteger("expense.anomaly.seasonMonths", 6));
+    // Log-amount spread below which a series counts as fixed: a 10% change
+    private static final double MIN_SPREAD = Math.log(1.1);
+
+    private static final String HISTORY_SQL = """
+                                              SELECT timestamp, type, amount_cents, category FROM transactions
+                                              WHERE user_id = ?
+                                              ORDER BY timestamp, id
+                                              """;
+    private static final String BUDGETS_SQL = "SELECT year_month, category, amount_cents FROM budget WHERE user_id = ?";
+
+    private static final SpendingMonitor INSTANCE = new SpendingMonitor();
+
+    /** What the monitor reports to its listeners. */
+    public sealed interface Signal permits Anomaly, Forecast {
+    }
+
+    /** An unusually large transaction; {@code id} is -1 for rows written in a batch. */
+    public record Anomaly(long userId, long id, String timestamp, String type, String category, long amountCents,
+                          long typicalCents, double zScore) implements Signal {
+        @Override
+        public String toString() {
+            return String.format("Unusual %s: %s%s on %s, typically %s (%.1f standard deviations above)",
+                    type.toLowerCase(), Money.format(amountCents), category == null ? "" : " in " + category,
+                    timestamp.substring(0, Math.min(10, timestamp.length())), Money.format(typicalCents), zScore);
+        }
+    }
+
+    /**
+     * Projected expenses for a month as of {@code day}; category is empty for the whole month and
+     * {@code budgetCents} is -1 when the month or category has no budget.
+     */
+    public record Forecast(long userId, int yearMonth, String category, int day, long spentCents, long projectedCents,
+                           long budgetCents) implements Signal {
+        public boolean overBudget() {
+            return budgetCents >= 0 && projectedCents > budgetCents;
+        }
+
+        @Override
+        public String toString() {
+            String name = Schema.formatYearMonth(yearMonth) + (category.isEmpty() ? "" : " " + category);
+            String text = "Forecast: " + name + " spending of " + Money.format(spentCents) + " by day " + day
+                    + " is on course for " + Money.format(projectedCents);
+            return budgetCents < 0 ? text : text + " against a budget of " + Money.format(budgetCents);
+        }
+    }
+
+    /** A series' baseline, for display. Typical amounts are geometric means. */
+    public record Baseline(String type, String category, long count, long typicalCents, long recentTypicalCents,
+                           double spread, long monthlyCents) {
+    }
+
+    public interface Listener {
+        void onSignal(Signal signal);
+    }
+
+    /** One row written in a batch, passed on once its chunk has committed. */
+    record Observation(String type, long amountCents, String timestamp, String category) {
+    }
+
+    private final Map<Long, LedgerState> ledgers = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    SpendingMonitor() {
+    }
+
+    public static SpendingMonitor get() {
+        return INSTANCE;
+    }
+
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    public static void main(String[] args) {
+        try {
+            Schema.migrate();
+            YearMonth month = args.length > 0 ? YearMonth.parse(args[0]) : YearMonth.now();
+            int day = args.length > 1 ? Integer.parseInt(args[1])
+                    : month.equals(YearMonth.now()) ? LocalDate.now().getDayOfMonth() : month.lengthOfMonth();
+            int yearMonth = month.getYear() * 100 + month.getMonthValue();
+            Ledger ledger = Ledger.shared();
+
+            long start = System.nanoTime();
+            long rows = INSTANCE.backfill(ledger);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Backfilled %,d transactions in %.2f s (%,.0f rows/s)%n%n", rows, seconds, rows / seconds);
+
+            System.out.printf("%-10s %-16s %9s %12s %12s %7s %14s%n", "Type", "Category", "Count", "Typical",
+                    "Recent", "Spread", "Per month");
+            for (Baseline b : INSTANCE.baselines(ledger)) {
+                System.out.printf("%-10s %-16s %,9d %12s %12s %6.2fx %14s%n", b.type(),
+                        b.category() == null ? "(all)" : b.category(), b.count(), Money.format(b.typicalCents()),
+                        Money.format(b.recentTypicalCents()), b.spread(), Money.format(b.monthlyCents()));
+            }
+            System.out.println();
+            for (Forecast forecast : INSTANCE.forecasts(ledger, yearMonth, day)) {
+                System.out.println(forecast + (forecast.overBudget() ? " (over budget)" : ""));
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error forecasting spending: " + e.getMessage());
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * (Re)builds a ledger's statistics from its whole history, archived months included, in one
+     * pass in timestamp order, and returns the number of transactions read. Writers to the ledger
+     * wait until it is done.
+     */
+    public long backfill(Ledger ledger) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            LedgerState state = new LedgerState(ledger.userId());
+            long rows = conn.inTransaction(() -> {
+                PreparedStatement budgets = conn.prepare(BUDGETS_SQL);
+                budgets.setLong(1, ledger.userId());
+                try (ResultSet rs = budgets.executeQuery()) {
+                    while (rs.next()) {
+                        state.setBudget(rs.getInt(1), rs.getString(2), rs.getLong(3));
+                    }
+                }
+
+                long count = 0;
+                TransactionArchive.Scan cold = TransactionArchive.scan(conn, ledger, ReportFilter.ALL, false);
+                PreparedStatement pstmt = conn.prepare(HISTORY_SQL);
+                pstmt.setLong(1, ledger.userId());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    ArchiveSegment.Row archived = cold.next();
+                    boolean hot = rs.next();
+                    while (hot || archived != null) {
+                        if (archived != null && (!hot || archived.timestamp().compareTo(rs.getString(1)) <= 0)) {
+                            state.replay(archived.type(), archived.amountCents(), archived.timestamp(), archived.category());
+                            archived = cold.next();
+                        } else {
+                            state.replay(rs.getString(2), rs.getLong(3), rs.getString(1), rs.getString(4));
+                            hot = rs.next();
+                        }
+                        count++;
+                    }
+                }
+                // Installed while writers still wait, so the next write lands on the new state
+                ledgers.put(ledger.userId(), state);
+                return count;
+            });
+            return rows;
+        }
+    }
+
+    /** Starts tracking a ledger with no history, for replaying transactions by hand. */
+    void track(Ledger ledger) {
+        ledgers.put(ledger.userId(), new LedgerState(ledger.userId()));
+    }
+
+    public boolean tracks(Ledger ledger) {
+        return ledgers.containsKey(ledger.userId());
+    }
+
+    /** Forgets a ledger; it is not tracked again until the next {@link #backfill}. */
+    public void forget(Ledger ledger) {
+        ledgers.remove(ledger.userId());
+    }
+
+    /** A committed insert. Does nothing for ledgers that are not tracked. */
+    void observe(Ledger ledger, long id, String type, long amountCents, String timestamp, String category) {
+        LedgerState state = ledgers.get(ledger.userId());
+        if (state != null) {
+            fire(state.observe(id, type, amountCents, timestamp, category, null));
+        }
+    }
+
+    /** A committed chunk of batch inserts. */
+    void observe(Ledger ledger, List<Observation> rows) {
+        LedgerState state = ledgers.get(ledger.userId());
+        if (state == null || rows.isEmpty()) {
+            return;
+        }
+        List<Signal> signals = null;
+        for (Observation row : rows) {
+            signals = state.observe(-1, row.type(), row.amountCents(), row.timestamp(), row.category(), signals);
+        }
+        fire(signals);
+    }
+
+    /** A committed edit or delete that changed a transaction's amount by {@code deltaCents}. */
+    void onChange(Ledger ledger, String type, String category, int yearMonth, long epochDay, long deltaCents) {
+        LedgerState state = ledgers.get(ledger.userId());
+        if (state != null && deltaCents != 0) {
+            state.change(type, category, yearMonth, LocalDate.ofEpochDay(epochDay).getDayOfMonth(), deltaCents);
+        }
+    }
+
+    /** A committed budget; category is empty for the whole month. */
+    void onBudget(Ledger ledger, int yearMonth, String category, long budgetCents) {
+        LedgerState state = ledgers.get(ledger.userId());
+        if (state != null) {
+            state.setBudget(yearMonth, category, budgetCents);
+        }
+    }
+
+    /**
+     * The expense projection for a month, or one category of it, as of {@code day}; null if the
+     * month has already ended in the ledger's history. A ledger that is not tracked is backfilled first.
+     */
+    public Forecast forecast(Ledger ledger, int yearMonth, String category, int day) throws SQLException {
+        return loaded(ledger).forecast(yearMonth, category == null ? "" : category.trim(), day);
+    }
+
+    /** Projections for the whole month and every expense category seen or budgeted. */
+    public List<Forecast> forecasts(Ledger ledger, int yearMonth, int day) throws SQLException {
+        return loaded(ledger).forecasts(yearMonth, day);
+    }
+
+    public List<Baseline> baselines(Ledger ledger) throws SQLException {
+        return loaded(ledger).baselines();
+    }
+
+    private LedgerState loaded(Ledger ledger) throws SQLException {
+        LedgerState state = ledgers.get(ledger.userId());
+        if (state == null) {
+            backfill(ledger);
+            state = ledgers.get(ledger.userId());
+        }
+        return state;
+    }
+
+    private void fire(List<Signal> signals) {
+        if (signals == null) {
+            return;
+        }
+        for (Signal signal : signals) {
+            for (Listener listener : listeners) {
+                listener.onSignal(signal);
+            }
+        }
+    }
+
+    // Weight of the newest value for a half-life of n values
+    private static double decay(int halfLife) {
+        return 1 - Math.pow(0.5, 1.0 / Math.max(1, halfLife));
+    }
+
+    private static int dayOfMonth(String timestamp) {
+        return (timestamp.charAt(8) - '0') * 10 + (timestamp.charAt(9) - '0');
+    }
+
+    private static int daysIn(int yearMonth) {
+        return YearMonth.of(yearMonth / 100, yearMonth % 100).lengthOfMonth();
+    }
+
+    private record SeriesKey(String type, String category) {
+    }
+
+    private record BudgetKey(int yearMonth, String category) {
+    }
+
+    private static final class Budget {
+        long cents;
+        boolean warned;
+    }
+
+    /** One type and category, or a whole type when category is null. */
+    private static final class Series {
+        // Log amounts: all history (Welford) and recent history (exponentially weighted)
+        long count;
+        double mean;
+        double m2;
+        double recentMean;
+        double recentVariance;
+        // The latest month seen, by day of month
+        int month = -1;
+        long monthCents;
+        final long[] monthDays = new long[31];
+        // Earlier months: weighted monthly total, share of it by day, and running sums of the shares
+        int months;
+        double monthlyCents;
+        final double[] dayShare = new double[31];
+        final double[] shareThrough = new double[32];
+
+        /** Standard deviations above both means; 0 until the series has enough history. */
+        double score(double x) {
+            if (count < MIN_SAMPLES) {
+                return 0;
+            }
+            double longRun = (x - mean) / Math.max(Math.sqrt(m2 / (count - 1)), MIN_SPREAD);
+            double recent = (x - recentMean) / Math.max(Math.sqrt(recentVariance), MIN_SPREAD);
+            return Math.min(longRun, recent);
+        }
+
+        void observe(double x) {
+            count++;
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+            if (count == 1) {
+                recentMean = x;
+            } else {
+                double diff = x - recentMean;
+                double step = ALPHA * diff;
+                recentMean += step;
+                recentVariance = (1 - ALPHA) * (recentVariance + diff * step);
+            }
+        }
+
+        /** Adds spend to a day; months before the latest have been folded and are left alone. */
+        void spend(int yearMonth, int day, long cents) {
+            if (yearMonth > month) {
+                roll(yearMonth);
+            }
+            if (yearMonth == month) {
+                monthCents += cents;
+                monthDays[day - 1] += cents;
+            }
+        }
+
+        private void roll(int yearMonth) {
+            if (month >= 0) {
+                fold();
+                // Months with nothing in them count as zero spend
+                int gap = Math.min(monthsBetween(month, yearMonth) - 1, 120);
+                for (int i = 0; i < gap; i++) {
+                    monthlyCents *= 1 - BETA;
+                }
+            }
+            month = yearMonth;
+            monthCents = 0;
+            Arrays.fill(monthDays, 0);
+        }
+
+        private void fold() {
+            boolean first = months++ == 0;
+            monthlyCents = first ? monthCents : monthlyCents + BETA * (monthCents - monthlyCents);
+            if (monthCents > 0) {
+                for (int d = 0; d < 31; d++) {
+                    double share = (double) monthDays[d] / monthCents;
+                    dayShare[d] = first ? share : dayShare[d] + BETA * (share - dayShare[d]);
+                }
+            }
+            for (int d = 0; d < 31; d++) {
+                shareThrough[d + 1] = shareThrough[d] + dayShare[d];
+            }
+        }
+
+        /** {spent, projected}: spent so far plus the usual spend over the rest of the month; null once the month is folded. */
+        long[] projection(int yearMonth, int day) {
+            if (yearMonth < month) {
+                return null;
+            }
+            long spent = yearMonth == month ? monthCents : 0;
+            int days = daysIn(yearMonth);
+            day = Math.max(1, Math.min(day, days));
+            if (months == 0) {
+                // No finished month yet: extrapolate the days seen so far
+                return new long[]{spent, spent * days / day};
+            }
+            double whole = shareThrough[days];
+            double remaining = whole > 0 ? 1 - shareThrough[day] / whole : (double) (days - day) / days;
+            return new long[]{spent, spent + Math.round(monthlyCents * remaining)};
+        }
+
+        private static int monthsBetween(int from, int to) {
+            return (to / 100 - from / 100) * 12 + (to % 100 - from % 100);
+        }
+    }
+
+    /** One ledger's series and budgets. Guarded by its own monitor. */
+    private static final class LedgerState {
+        private final long userId;
+        private final Map<SeriesKey, Series> series = new HashMap<>();
+        private final Map<BudgetKey, Budget> budgets = new HashMap<>();
+
+        LedgerState(long userId) {
+            this.userId = userId;
+        }
+
+        synchronized void setBudget(int yearMonth, String category, long cents) {
+            Budget budget = budgets.computeIfAbsent(new BudgetKey(yearMonth, category == null ? "" : category),
+                    k -> new Budget());
+            budget.cents = cents;
+            budget.warned = false;
+        }
+
+        /** A row of history: updates the statistics without flagging anything. */
+        synchronized void replay(String type, long cents, String timestamp, String category) {
+            update(type, category, cents, TransactionStore.yearMonth(timestamp), dayOfMonth(timestamp));
+        }
+
+        synchronized List<Signal> observe(long id, String type, long cents, String timestamp, String category,
+                                          List<Signal> signals) {
+            int yearMonth = TransactionStore.yearMonth(timestamp);
+            if (yearMonth < 0) {
+                return signals;
+            }
+            Series flagged = series(type, category);
+            if (cents > 0) {
+                double score = flagged.score(Math.log(cents));
+                if (score > Z_SCORE) {
+                    signals = add(signals, new Anomaly(userId, id, timestamp, type, category, cents,
+                            Math.round(Math.exp(flagged.mean)), score));
+                }
+            }
+            int day = dayOfMonth(timestamp);
+            update(type, category, cents, yearMonth, day);
+            if ("Expense".equals(type)) {
+                signals = checkBudget(yearMonth, "", series(type, null), day, signals);
+                if (category != null) {
+                    signals = checkBudget(yearMonth, category, series(type, category), day, signals);
+                }
+            }
+            return signals;
+        }
+
+        synchronized void change(String type, String category, int yearMonth, int day, long deltaCents) {
+            series(type, null).spend(yearMonth, day, deltaCents);
+            if (category != null) {
+                series(type, category).spend(yearMonth, day, deltaCents);
+            }
+        }
+
+        synchronized Forecast forecast(int yearMonth, String category, int day) {
+            Series s = series.get(new SeriesKey("Expense", category.isEmpty() ? null : category));
+            long[] projection = s == null ? new long[2] : s.projection(yearMonth, day);
+            if (projection == null) {
+                return null;
+            }
+            Budget budget = budgets.get(new BudgetKey(yearMonth, category));
+            return new Forecast(userId, yearMonth, category, Math.max(1, Math.min(day, daysIn(yearMonth))),
+                    projection[0], projection[1], budget == null ? -1 : budget.cents);
+        }
+
+        synchronized List<Forecast> forecasts(int yearMonth, int day) {
+            TreeMap<String, Boolean> categories = new TreeMap<>();
+            categories.put("", true);
+            for (SeriesKey key : series.keySet()) {
+                if ("Expense".equals(key.type()) && key.category() != null) {
+                    categories.put(key.category(), true);
+                }
+            }
+            for (BudgetKey key : budgets.keySet()) {
+                if (key.yearMonth() == yearMonth) {
+                    categories.put(key.category(), true);
+                }
+            }
+            List<Forecast> forecasts = new ArrayList<>();
+            for (String category : categories.keySet()) {
+                Forecast forecast = forecast(yearMonth, category, day);
+                if (forecast != null) {
+                    forecasts.add(forecast);
+                }
+            }
+            return forecasts;
+        }
+
+        synchronized List<Baseline> baselines() {
+            List<Baseline> baselines = new ArrayList<>();
+            series.forEach((key, s) -> baselines.add(new Baseline(key.type(), key.category(), s.count,
+                    Math.round(Math.exp(s.mean)), Math.round(Math.exp(s.recentMean)),
+                    s.count > 1 ? Math.exp(Math.sqrt(s.m2 / (s.count - 1))) : 1, Math.round(s.monthlyCents))));
+            baselines.sort((a, b) -> a.type().equals(b.type())
+                    ? String.valueOf(a.category()).compareTo(String.valueOf(b.category()))
+                    : a.type().compareTo(b.type()));
+            return baselines;
+        }
+
+        private void update(String type, String category, long cents, int yearMonth, int day) {
+            Series whole = series(type, null);
+            whole.spend(yearMonth, day, cents);
+            if (category != null) {
+                Series s = series(type, category);
+                s.spend(yearMonth, day, cents);
+                if (cents > 0) {
+                    s.observe(Math.log(cents));
+                }
+            }
+            if (cents > 0) {
+                whole.observe(Math.log(cents));
+            }
+        }
+
+        private List<Signal> checkBudget(int yearMonth, String category, Series s, int day, List<Signal> signals) {
+            Budget budget = budgets.get(new BudgetKey(yearMonth, category));
+            if (budget == null || budget.warned || budget.cents <= 0) {
+                return signals;
+            }
+            long[] projection = s.projection(yearMonth, day);
+            // Once spending itself reaches the budget, BudgetAlerts reports it
+            if (projection != null && projection[1] > budget.cents && projection[0] < budget.cents) {
+                budget.warned = true;
+                signals = add(signals, new Forecast(userId, yearMonth, category, day, projection[0], projection[1],
+                        budget.cents));
+            }
+            return signals;
+        }
+
+        private Series series(String type, String category) {
+            return series.computeIfAbsent(new SeriesKey(type, category), k -> new Series());
+        }
+
+        private static List<Signal> add(List<Signal> signals, Signal signal) {
+            if (signals == null) {
+                signals = new ArrayList<>(2);
+            }
+            signals.add(signal);
+            return signals;
+        }
+    }
+}
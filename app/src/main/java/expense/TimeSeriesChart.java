@@ -0,0 +1,186 @@
+package expense;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.data.Range;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import javax.swing.*;
+import java.awt.BorderLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Zoomable time-series view of income and expenses ({@code java DataVisualization timeseries}).
+ * The visible date range picks the level of detail: every zoom or pan refetches only that range
+ * from {@link TimeSeriesData} at the matching tier, downsampled to the plot width, so redraw
+ * cost follows the window size rather than the ledger size.
+ *
+ * Drag to zoom, use the mouse wheel, or ctrl-drag to pan; "Auto Range" in the context menu
+ * returns to the whole history.
+ */
+public final class TimeSeriesChart {
+    private static final long DAY_MILLIS = 86_400_000L;
+    // Coalesces the burst of axis events from a wheel scroll or pan drag into one fetch
+    private static final int DEBOUNCE_MILLIS = 150;
+    private static final ExecutorService FETCHERS = VirtualThreads.newExecutor("series-fetch");
+
+    private final XYSeriesCollection dataset = new XYSeriesCollection();
+    private final JFreeChart chart;
+    private final DateAxis axis;
+    private final ChartPanel panel;
+    private final JLabel status = new JLabel("Loading...");
+    private final Timer debounce;
+    private final JFrame frame = new JFrame("Income and Expenses over Time");
+    private long[] extent;
+    private SwingWorker<TimeSeriesData.Series, Void> inFlight;
+    private String lastRequest = "";
+
+    private TimeSeriesChart() {
+        chart = ChartFactory.createTimeSeriesChart("Income and Expenses over Time", "Date", "Amount (USD)", dataset);
+        chart.getXYPlot().setDomainPannable(true);
+        axis = (DateAxis) chart.getXYPlot().getDomainAxis();
+        panel = new ChartPanel(chart) {
+            @Override
+            public void restoreAutoDomainBounds() {
+                // Auto-ranging would only fit the range already loaded; go back to the full history
+                if (extent != null) {
+                    axis.setRange(toMillis(extent[0]), toMillis(extent[1] + 1));
+                }
+            }
+        };
+        panel.setMouseWheelEnabled(true);
+        panel.setRangeZoomable(false);
+        debounce = new Timer(DEBOUNCE_MILLIS, e -> fetchVisible());
+        debounce.setRepeats(false);
+    }
+
+    /** Opens the window; must be called on the EDT. */
+    static void show() {
+        new TimeSeriesChart().open();
+    }
+
+    private void open() {
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.setSize(1000, 600);
+        frame.add(panel);
+        frame.add(status, BorderLayout.SOUTH);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                debounce.stop();
+                if (inFlight != null) {
+                    inFlight.cancel(true);
+                }
+            }
+        });
+        frame.setVisible(true);
+
+        new SwingWorker<long[], Void>() {
+            @Override
+            protected long[] doInBackground() throws Exception {
+                return TimeSeriesData.extent();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    extent = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    reportError(e);
+                    return;
+                }
+                if (extent == null) {
+                    JOptionPane.showMessageDialog(null, "No data available for visualization.");
+                    frame.dispose();
+                    return;
+                }
+                axis.addChangeListener(event -> debounce.restart());
+                panel.addComponentListener(new ComponentAdapter() {
+                    @Override
+                    public void componentResized(ComponentEvent event) {
+                        debounce.restart();
+                    }
+                });
+                panel.restoreAutoDomainBounds();
+            }
+        }.execute();
+    }
+
+    /** Fetches the visible range at the tier for the current plot width, replacing any fetch in flight. */
+    private void fetchVisible() {
+        Range range = axis.getRange();
+        long fromDay = Math.max(extent[0], Math.floorDiv((long) range.getLowerBound(), DAY_MILLIS));
+        long toDay = Math.min(extent[1], Math.floorDiv((long) range.getUpperBound(), DAY_MILLIS));
+        int pixels = (int) Math.max(panel.getScreenDataArea().getWidth(), 100);
+        // Take in a margin either side so lines run off the edges instead of stopping short
+        long margin = Math.max(1, (toDay - fromDay) / 20);
+        long from = Math.max(extent[0], fromDay - margin);
+        long to = Math.min(extent[1], toDay + margin);
+
+        String request = from + ":" + to + ":" + pixels;
+        if (request.equals(lastRequest)) {
+            return; // our own dataset update, or a resize that did not change the plot width
+        }
+        lastRequest = request;
+        if (inFlight != null) {
+            inFlight.cancel(true);
+        }
+
+        long start = System.nanoTime();
+        inFlight = new SwingWorker<>() {
+            @Override
+            protected TimeSeriesData.Series doInBackground() throws Exception {
+                return TimeSeriesData.fetch(from, to, pixels);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    display(get(), (System.nanoTime() - start) / 1e6);
+                } catch (InterruptedException | ExecutionException e) {
+                    reportError(e);
+                }
+            }
+        };
+        FETCHERS.execute(inFlight);
+    }
+
+    private void display(TimeSeriesData.Series series, double elapsedMillis) {
+        // Swap all series in one change event
+        chart.setNotify(false);
+        dataset.removeAllSeries();
+        for (Map.Entry<String, List<TimeSeriesData.Point>> entry : series.points().entrySet()) {
+            XYSeries xy = new XYSeries(entry.getKey(), false, false);
+            for (TimeSeriesData.Point point : entry.getValue()) {
+                xy.add(toMillis(point.epochDay()), Money.toDouble(point.cents()), false);
+            }
+            dataset.addSeries(xy);
+        }
+        chart.setNotify(true);
+        status.setText(String.format("%s totals: %d buckets, %d points drawn, fetched in %.0f ms",
+                series.tier(), series.buckets(), series.pointCount(), elapsedMillis));
+    }
+
+    private void reportError(Exception e) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        System.err.println("Error fetching data for chart: " + cause.getMessage());
+        status.setText("Error loading data: " + cause.getMessage());
+    }
+
+    private static double toMillis(long epochDay) {
+        return epochDay * (double) DAY_MILLIS;
+    }
+}
@@ -0,0 +1,222 @@
+package expense;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Level-of-detail series of the shared ledger for the time-series chart. Day and month totals come
+ * straight from its rows of the {@code daily_totals} and {@code monthly_totals} rollups; weeks and years are grouped from them
+ * for the requested range only. The tier is picked so a fetch reads a bounded number of buckets
+ * for the plot width, and the result is then downsampled with LTTB to at most one point per pixel.
+ */
+public final class TimeSeriesData {
+    // Read up to this many buckets per pixel before moving to a coarser tier; LTTB does the rest
+    private static final int OVERSAMPLE = 4;
+
+    static final String EXTENT_SQL = "SELECT MIN(epoch_day), MAX(epoch_day) FROM daily_totals WHERE user_id = ?";
+
+    static final String DAY_SQL = """
+                                  SELECT epoch_day AS bucket, type, total_cents
+                                  FROM daily_totals
+                                  WHERE user_id = ? AND epoch_day BETWEEN ? AND ?
+                                  ORDER BY epoch_day;
+                                  """;
+    // Weeks start on Monday; day 0 (1970-01-01) was a Thursday
+    static final String WEEK_SQL = """
+                                   SELECT (epoch_day + 3) / 7 AS bucket, type, SUM(total_cents) AS total_cents
+                                   FROM daily_totals
+                                   WHERE user_id = ? AND epoch_day BETWEEN ? AND ?
+                                   GROUP BY bucket, type
+                                   ORDER BY bucket;
+                                   """;
+    static final String MONTH_SQL = """
+                                    SELECT year_month AS bucket, type, total_cents
+                                    FROM monthly_totals
+                                    WHERE user_id = ? AND year_month BETWEEN ? AND ?
+                                    ORDER BY year_month;
+                                    """;
+    static final String YEAR_SQL = """
+                                   SELECT year_month / 100 AS bucket, type, SUM(total_cents) AS total_cents
+                                   FROM monthly_totals
+                                   WHERE user_id = ? AND year_month BETWEEN ? AND ?
+                                   GROUP BY bucket, type
+                                   ORDER BY bucket;
+                                   """;
+
+    public enum Tier {
+        DAY(1), WEEK(7), MONTH(30), YEAR(365);
+
+        final int approxDays;
+
+        Tier(int approxDays) {
+            this.approxDays = approxDays;
+        }
+    }
+
+    /** A bucket, identified by its first day (days since 1970-01-01), and its total. */
+    public record Point(long epochDay, long cents) {
+    }
+
+    /** Points per type for one fetched range; {@code buckets} is the count before downsampling. */
+    public record Series(Tier tier, Map<String, List<Point>> points, int buckets) {
+        public int pointCount() {
+            return points.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    private TimeSeriesData() {
+    }
+
+    /** First and last day with any transaction, or null for an empty ledger. */
+    public static long[] extent() throws SQLException {
+        Ledger ledger = Ledger.shared();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(EXTENT_SQL);
+            pstmt.setLong(1, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return null;
+                }
+                return new long[]{rs.getLong(1), rs.getLong(2)};
+            }
+        }
+    }
+
+    /** The finest tier that covers {@code fromDay..toDay} in at most OVERSAMPLE buckets per pixel. */
+    public static Tier tierFor(long fromDay, long toDay, int pixels) {
+        long span = toDay - fromDay + 1;
+        for (Tier tier : Tier.values()) {
+            if (span / tier.approxDays <= (long) pixels * OVERSAMPLE) {
+                return tier;
+            }
+        }
+        return Tier.YEAR;
+    }
+
+    public static Series fetch(long fromDay, long toDay, int pixels) throws SQLException {
+        Tier tier = tierFor(fromDay, toDay, pixels);
+        Map<String, List<Point>> points = new TreeMap<>();
+        int buckets = 0;
+        Ledger ledger = Ledger.shared();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(sqlFor(tier));
+            pstmt.setLong(1, ledger.userId());
+            if (tier == Tier.MONTH || tier == Tier.YEAR) {
+                pstmt.setInt(2, yearMonthOf(fromDay));
+                pstmt.setInt(3, yearMonthOf(toDay));
+            } else {
+                pstmt.setLong(2, fromDay);
+                pstmt.setLong(3, toDay);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    long day = startDay(tier, rs.getLong("bucket"));
+                    points.computeIfAbsent(rs.getString("type"), k -> new ArrayList<>())
+                            .add(new Point(day, rs.getLong("total_cents")));
+                    buckets++;
+                }
+            }
+        }
+        Map<String, List<Point>> sampled = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Point>> entry : points.entrySet()) {
+            sampled.put(entry.getKey(), lttb(entry.getValue(), Math.max(pixels, 3)));
+        }
+        return new Series(tier, sampled, buckets);
+    }
+
+    static String sqlFor(Tier tier) {
+        return switch (tier) {
+            case DAY -> DAY_SQL;
+            case WEEK -> WEEK_SQL;
+            case MONTH -> MONTH_SQL;
+            case YEAR -> YEAR_SQL;
+        };
+    }
+
+    private static long startDay(Tier tier, long bucket) {
+        return switch (tier) {
+            case DAY -> bucket;
+            case WEEK -> bucket * 7 - 3;
+            case MONTH -> TransactionStore.epochDay((int) (bucket / 100), (int) (bucket % 100), 1);
+            case YEAR -> TransactionStore.epochDay((int) bucket, 1, 1);
+        };
+    }
+
+    private static int yearMonthOf(long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets downsampling. Keeps the first and last point and, from each
+     * of the {@code threshold - 2} buckets in between, the point that forms the largest triangle
+     * with the previously kept point and the average of the next bucket. Unlike averaging, this
+     * keeps the spikes that make a spending chart worth looking at.
+     */
+    static List<Point> lttb(List<Point> points, int threshold) {
+        int n = points.size();
+        if (threshold >= n || threshold < 3) {
+            return points;
+        }
+        List<Point> sampled = new ArrayList<>(threshold);
+        double every = (double) (n - 2) / (threshold - 2);
+        int kept = 0;
+        sampled.add(points.get(0));
+        for (int i = 0; i < threshold - 2; i++) {
+            int avgStart = (int) ((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) ((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += points.get(j).epochDay();
+                avgY += points.get(j).cents();
+            }
+            avgX /= avgEnd - avgStart;
+            avgY /= avgEnd - avgStart;
+
+            Point a = points.get(kept);
+            int rangeEnd = (int) ((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = (int) (i * every) + 1;
+            for (int j = next; j < rangeEnd; j++) {
+                Point b = points.get(j);
+                double area = Math.abs((a.epochDay() - avgX) * (b.cents() - a.cents())
+                        - (a.epochDay() - b.epochDay()) * (avgY - a.cents()));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled.add(points.get(next));
+            kept = next;
+        }
+        sampled.add(points.get(n - 1));
+        return sampled;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        int pixels = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+        Schema.migrate();
+        long[] extent = extent();
+        if (extent == null) {
+            System.out.println("No transactions.");
+            return;
+        }
+        System.out.printf("Ledger spans %s to %s; plot width %d px%n",
+                LocalDate.ofEpochDay(extent[0]), LocalDate.ofEpochDay(extent[1]), pixels);
+        long[] spans = {extent[1] - extent[0], 5 * 365, 365, 90, 30};
+        for (long span : spans) {
+            long from = Math.max(extent[0], extent[1] - span);
+            fetch(from, extent[1], pixels); // warm the page cache
+            long start = System.nanoTime();
+            Series series = fetch(from, extent[1], pixels);
+            System.out.printf("%5d days: tier %-5s %6d buckets -> %5d points in %.2f ms%n", extent[1] - from,
+                    series.tier(), series.buckets(), series.pointCount(), (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,661 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for closed months. {@link #archive} moves each month of a ledger older than
+ * {@code expense.archive.keepMonths} (12) out of {@code transactions} into an immutable
+ * {@link ArchiveSegment} file under {@code expense.archive.dir} ({@code archive}) and records it
+ * in {@code archive_segments}. The file is complete on disk before the transaction that
+ * catalogs it and deletes the rows commits, so a month is always in exactly one tier.
+ *
+ * The rollups are left alone, so charts and month-aligned summaries read them as before. The
+ * readers that went to {@code transactions} merge in the cold tier: listings, lookups by id,
+ * report scans, per-ledger summaries and budget spend. Summaries and budgets take whole months
+ * from segment footers; rows are only decoded for listings, scans and partial months. Segments
+ * are read through memory mappings, and the last {@code expense.archive.cachedSegments} (16)
+ * decoded for listings are kept.
+ *
+ * Archived rows cannot be edited or deleted, and their notes are no longer in the full-text index.
+ *
+ *   java expense.TransactionArchive archive [keepMonths] [userId ...]
+ *   java expense.TransactionArchive list|verify [userId ...]
+ *
+ * Without user ids the commands cover every user in finance.db.
+ */
+public final class TransactionArchive {
+    static final Path DIR = Path.of(System.getProperty("expense.archive.dir", "archive"));
+    static final int KEEP_MONTHS = Integer.getInteger("expense.archive.keepMonths", 12);
+    private static final int CACHED_SEGMENTS = Integer.getInteger("expense.archive.cachedSegments", 16);
+
+    private static final String MONTHS_SQL = """
+                                             SELECT DISTINCT year_month FROM transactions
+                                             WHERE user_id = ? AND year_month < ?
+                                             ORDER BY year_month
+                                             """;
+    private static final String MONTH_ROWS_SQL = """
+                                                 SELECT id, timestamp, type, amount_cents, notes, category FROM transactions
+                                                 WHERE user_id = ? AND year_month = ?
+                                                 ORDER BY timestamp, id
+                                                 """;
+    private static final String CATALOG_SQL = """
+                                              INSERT INTO archive_segments(user_id, year_month, file, rows, min_id, max_id)
+                                              VALUES(?, ?, ?, ?, ?, ?)
+                                              """;
+    private static final String DELETE_MONTH_SQL = "DELETE FROM transactions WHERE user_id = ? AND year_month = ?";
+    private static final String SEGMENTS_SQL = """
+                                               SELECT user_id, year_month, file, rows FROM archive_segments
+                                               WHERE user_id = ? AND year_month BETWEEN ? AND ?
+                                               ORDER BY year_month, id
+                                               """;
+    private static final String FILE_SEGMENTS_SQL = """
+                                                    SELECT user_id, year_month, file, rows FROM archive_segments
+                                                    WHERE year_month BETWEEN ? AND ?
+                                                    ORDER BY year_month, id
+                                                    """;
+    private static final String FIND_SQL = """
+                                           SELECT user_id, year_month, file, rows FROM archive_segments
+                                           WHERE user_id = ? AND min_id <= ? AND max_id >= ?
+                                           """;
+    private static final String USERS_SQL = "SELECT user_id FROM transactions GROUP BY user_id";
+
+    private static final Map<Path, ArchiveSegment.Footer> FOOTERS = new ConcurrentHashMap<>();
+    private static final Map<Path, List<ArchiveSegment.Row>> DECODED = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, List<ArchiveSegment.Row>> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+
+    /** A cataloged segment; {@code file} is relative to {@link #DIR}. */
+    record Segment(long userId, int yearMonth, String file, int rows) {
+        Path path() {
+            return DIR.resolve(file);
+        }
+    }
+
+    public record Result(int months, long rows, long bytes) {
+        @Override
+        public String toString() {
+            return String.format("archived %d months, %,d rows, %,d bytes of segments", months, rows, bytes);
+        }
+    }
+
+    private TransactionArchive() {
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "list";
+        try {
+            Schema.migrate();
+            switch (command) {
+                case "archive" -> {
+                    int keep = args.length > 1 ? Integer.parseInt(args[1]) : KEEP_MONTHS;
+                    int before = cutoff(keep);
+                    long start = System.nanoTime();
+                    for (Ledger ledger : ledgers(args, 2)) {
+                        System.out.println(ledger + ": " + archive(ledger, before));
+                    }
+                    System.out.printf("Months before %s archived in %.1f s%n", Schema.formatYearMonth(before),
+                            (System.nanoTime() - start) / 1e9);
+                }
+                case "list" -> {
+                    for (Ledger ledger : ledgers(args, 1)) {
+                        try (Database.PooledConnection conn = ledger.acquire()) {
+                            for (Segment segment : segments(conn, ledger, 0, Integer.MAX_VALUE)) {
+                                ArchiveSegment.Footer footer = footer(segment);
+                                System.out.printf("%s user %d: %,d rows, income %s, expense %s, %,d bytes, %s%n",
+                                        Schema.formatYearMonth(segment.yearMonth()), segment.userId(), footer.rows(),
+                                        Money.format(footer.totalCents("Income", null)),
+                                        Money.format(footer.totalCents("Expense", null)),
+                                        Files.size(segment.path()), segment.file());
+                            }
+                        }
+                    }
+                }
+                case "verify" -> {
+                    List<String> problems = new ArrayList<>();
+                    for (Ledger ledger : ledgers(args, 1)) {
+                        problems.addAll(verify(ledger));
+                    }
+                    if (problems.isEmpty()) {
+                        System.out.println("Every archive segment matches its checksums, footer and catalog entry.");
+                    } else {
+                        problems.forEach(p -> System.out.println("  " + p));
+                        System.exit(1);
+                    }
+                }
+                default -> System.out.println("Usage: TransactionArchive [archive [keepMonths]|list|verify] [userId ...]");
+            }
+        } catch (SQLException | IOException | NumberFormatException e) {
+            System.err.println("Error archiving transactions: " + e.getMessage());
+        }
+    }
+
+    /** The first year_month to keep when the last {@code keepMonths} months, this one included, stay hot. */
+    public static int cutoff(int keepMonths) {
+        YearMonth first = YearMonth.now().minusMonths(Math.max(1, keepMonths) - 1L);
+        return first.getYear() * 100 + first.getMonthValue();
+    }
+
+    // The ledgers named on the command line from args[from], or every user in finance.db
+    private static List<Ledger> ledgers(String[] args, int from) throws SQLException {
+        List<Ledger> ledgers = new ArrayList<>();
+        for (int i = from; i < args.length; i++) {
+            ledgers.add(Ledger.forUser(Long.parseLong(args[i])));
+        }
+        if (ledgers.isEmpty()) {
+            Set<Long> users = new HashSet<>();
+            try (Database.PooledConnection conn = Database.finance().acquire();
+                 Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery(USERS_SQL)) {
+                    while (rs.next()) {
+                        users.add(rs.getLong(1));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT DISTINCT user_id FROM archive_segments")) {
+                    while (rs.next()) {
+                        users.add(rs.getLong(1));
+                    }
+                }
+            }
+            users.stream().sorted().forEach(user -> ledgers.add(Ledger.forUser(user)));
+        }
+        return ledgers;
+    }
+
+    /**
+     * Moves every month of {@code ledger} before {@code beforeYearMonth} into a segment, one
+     * transaction per month. The write lock is held while the month is read and its file written,
+     * so no row can land in the month between the copy and the delete.
+     */
+    public static Result archive(Ledger ledger, int beforeYearMonth) throws SQLException {
+        List<Integer> months = new ArrayList<>();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(MONTHS_SQL);
+            pstmt.setLong(1, ledger.userId());
+            pstmt.setInt(2, beforeYearMonth);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    months.add(rs.getInt(1));
+                }
+            }
+        }
+
+        int archived = 0;
+        long rows = 0;
+        long bytes = 0;
+        for (int month : months) {
+            long[] written;
+            try (Database.PooledConnection conn = ledger.acquire()) {
+                written = conn.inTransaction(() -> archiveMonth(conn, ledger, month));
+            }
+            if (written != null) {
+                archived++;
+                rows += written[0];
+                bytes += written[1];
+            }
+        }
+        return new Result(archived, rows, bytes);
+    }
+
+    // Returns {rows, bytes}, or null if the month had no rows after all
+    private static long[] archiveMonth(Database.PooledConnection conn, Ledger ledger, int month) throws SQLException {
+        List<ArchiveSegment.Row> rows = new ArrayList<>();
+        PreparedStatement select = conn.prepare(MONTH_ROWS_SQL);
+        select.setLong(1, ledger.userId());
+        select.setInt(2, month);
+        long minId = Long.MAX_VALUE;
+        try (ResultSet rs = select.executeQuery()) {
+            while (rs.next()) {
+                ArchiveSegment.Row row = new ArchiveSegment.Row(rs.getLong(1), rs.getString(2), rs.getString(3),
+                        rs.getLong(4), rs.getString(5), rs.getString(6));
+                minId = Math.min(minId, row.id());
+                rows.add(row);
+            }
+        }
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        // Named by the first id, so a retry after a crash before the commit overwrites its own leftover
+        String file = ledger.fileName() + "/u" + ledger.userId() + "-" + month + "-" + minId + ArchiveSegment.EXTENSION;
+        Path path = DIR.resolve(file);
+        ArchiveSegment.Footer footer;
+        long bytes;
+        try {
+            footer = ArchiveSegment.write(path, ledger.userId(), month, rows);
+            bytes = Files.size(path);
+        } catch (IOException e) {
+            throw new SQLException("Cannot write archive segment " + path + ": " + e.getMessage(), e);
+        }
+        try {
+            PreparedStatement catalog = conn.prepare(CATALOG_SQL);
+            catalog.setLong(1, ledger.userId());
+            catalog.setInt(2, month);
+            catalog.setString(3, file);
+            catalog.setInt(4, footer.rows());
+            catalog.setLong(5, footer.minId());
+            catalog.setLong(6, footer.maxId());
+            catalog.executeUpdate();
+            PreparedStatement delete = conn.prepare(DELETE_MONTH_SQL);
+            delete.setLong(1, ledger.userId());
+            delete.setInt(2, month);
+            delete.executeUpdate();
+        } catch (SQLException e) {
+            deleteQuietly(path);
+            throw e;
+        }
+        FOOTERS.put(path, footer);
+        return new long[]{rows.size(), bytes};
+    }
+
+    /**
+     * Segments of {@code ledger}, or of every ledger in finance.db when it is null, for months
+     * {@code fromMonth..toMonth}, in month order.
+     */
+    static List<Segment> segments(Database.PooledConnection conn, Ledger ledger, int fromMonth, int toMonth)
+            throws SQLException {
+        PreparedStatement pstmt;
+        int index = 1;
+        if (ledger == null) {
+            pstmt = conn.prepare(FILE_SEGMENTS_SQL);
+        } else {
+            pstmt = conn.prepare(SEGMENTS_SQL);
+            pstmt.setLong(index++, ledger.userId());
+        }
+        pstmt.setInt(index++, fromMonth);
+        pstmt.setInt(index, toMonth);
+        return readSegments(pstmt);
+    }
+
+    static List<Segment> segments(Database.PooledConnection conn, Ledger ledger, ReportFilter filter)
+            throws SQLException {
+        return segments(conn, ledger, yearMonth(filter.from(), 0), yearMonth(filter.to(), Integer.MAX_VALUE));
+    }
+
+    private static List<Segment> readSegments(PreparedStatement pstmt) throws SQLException {
+        List<Segment> segments = new ArrayList<>();
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                segments.add(new Segment(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getInt(4)));
+            }
+        }
+        return segments;
+    }
+
+    private static int yearMonth(LocalDate date, int none) {
+        return date == null ? none : date.getYear() * 100 + date.getMonthValue();
+    }
+
+    static ArchiveSegment.Footer footer(Segment segment) throws SQLException {
+        Path path = segment.path();
+        ArchiveSegment.Footer footer = FOOTERS.get(path);
+        if (footer == null) {
+            try {
+                footer = ArchiveSegment.footer(path);
+            } catch (IOException e) {
+                throw new SQLException("Cannot read archive segment " + path + ": " + e.getMessage(), e);
+            }
+            FOOTERS.put(path, footer);
+        }
+        return footer;
+    }
+
+    // Every row of the segment with notes, through the cache of recently decoded segments
+    private static List<ArchiveSegment.Row> decoded(Segment segment) throws SQLException {
+        Path path = segment.path();
+        synchronized (DECODED) {
+            List<ArchiveSegment.Row> rows = DECODED.get(path);
+            if (rows != null) {
+                return rows;
+            }
+        }
+        List<ArchiveSegment.Row> rows = read(segment, true);
+        synchronized (DECODED) {
+            DECODED.put(path, rows);
+        }
+        return rows;
+    }
+
+    private static List<ArchiveSegment.Row> read(Segment segment, boolean notes) throws SQLException {
+        try {
+            return ArchiveSegment.read(segment.path(), footer(segment), notes);
+        } catch (IOException e) {
+            throw new SQLException("Cannot read archive segment " + segment.path() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Adds the archived part of a monthly summary to {@code totals} (month, then type, to cents).
+     * Months the filter covers whole come from the footers; the rows of a partly covered month
+     * are decoded and filtered.
+     */
+    static void addTotals(List<Segment> segments, ReportFilter filter, Map<Integer, TreeMap<String, long[]>> totals)
+            throws SQLException {
+        for (Segment segment : segments) {
+            ArchiveSegment.Footer footer = footer(segment);
+            YearMonth month = YearMonth.of(segment.yearMonth() / 100, segment.yearMonth() % 100);
+            boolean whole = (filter.from() == null || !filter.from().isAfter(month.atDay(1)))
+                    && (filter.to() == null || !filter.to().isBefore(month.atEndOfMonth()));
+            if (whole) {
+                for (ArchiveSegment.Group group : footer.groups()) {
+                    if (filter.type() == null || filter.type().equals(group.type())) {
+                        totals.computeIfAbsent(segment.yearMonth(), m -> new TreeMap<>())
+                                .computeIfAbsent(group.type(), t -> new long[1])[0] += group.totalCents();
+                    }
+                }
+            } else if (footer.hasType(filter.type())) {
+                for (ArchiveSegment.Row row : read(segment, false)) {
+                    if (matches(row, filter)) {
+                        totals.computeIfAbsent(segment.yearMonth(), m -> new TreeMap<>())
+                                .computeIfAbsent(row.type(), t -> new long[1])[0] += row.amountCents();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Archived expenses of a ledger's month, from the footers; a blank category means all of them. */
+    static long expenseCents(Database.PooledConnection conn, Ledger ledger, int yearMonth, String category)
+            throws SQLException {
+        long total = 0;
+        for (Segment segment : segments(conn, ledger, yearMonth, yearMonth)) {
+            total += footer(segment).totalCents("Expense", category == null || category.isEmpty() ? null : category);
+        }
+        return total;
+    }
+
+    /** The archived transaction with this id in {@code ledger}, or null. */
+    static TransactionPager.Row find(Database.PooledConnection conn, Ledger ledger, long id) throws SQLException {
+        PreparedStatement pstmt = conn.prepare(FIND_SQL);
+        pstmt.setLong(1, ledger.userId());
+        pstmt.setLong(2, id);
+        pstmt.setLong(3, id);
+        for (Segment segment : readSegments(pstmt)) {
+            for (ArchiveSegment.Row row : decoded(segment)) {
+                if (row.id() == id) {
+                    return pagerRow(row);
+                }
+            }
+        }
+        return null;
+    }
+
+    public static boolean isArchived(Ledger ledger, long id) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            return find(conn, ledger, id) != null;
+        }
+    }
+
+    /**
+     * Up to {@code limit} archived rows of a listing page, beyond {@code cursor} in the page's
+     * direction and in its order. Months are visited nearest first and never overlap in time, so
+     * the walk stops at the first month that brings the count to {@code limit}. Months past
+     * {@code boundMonth}, where the hot rows already filled the page, are skipped; -1 for none.
+     */
+    static List<TransactionPager.Row> page(Database.PooledConnection conn, Ledger ledger, TransactionPager.Filter filter,
+                                           TransactionPager.Cursor cursor, boolean older, int limit, int boundMonth)
+            throws SQLException {
+        int from = yearMonth(filter.from(), 0);
+        int to = yearMonth(filter.to(), Integer.MAX_VALUE);
+        if (boundMonth >= 0) {
+            if (older) {
+                from = Math.max(from, boundMonth);
+            } else {
+                to = Math.min(to, boundMonth);
+            }
+        }
+        int cursorMonth = cursor == null ? -1 : TransactionStore.yearMonth(cursor.timestamp());
+        if (cursorMonth >= 0) {
+            if (older) {
+                to = Math.min(to, cursorMonth);
+            } else {
+                from = Math.max(from, cursorMonth);
+            }
+        }
+        List<Segment> segments = segments(conn, ledger, from, to);
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        if (older) {
+            Collections.reverse(segments);
+        }
+
+        List<TransactionPager.Row> rows = new ArrayList<>();
+        int i = 0;
+        while (i < segments.size() && rows.size() < limit) {
+            int month = segments.get(i).yearMonth();
+            List<TransactionPager.Row> monthRows = new ArrayList<>();
+            for (; i < segments.size() && segments.get(i).yearMonth() == month; i++) {
+                Segment segment = segments.get(i);
+                ArchiveSegment.Footer footer = footer(segment);
+                if (!footer.hasType(filter.type())
+                        || (filter.minCents() != null && footer.maxCents() < filter.minCents())
+                        || (filter.maxCents() != null && footer.minCents() > filter.maxCents())) {
+                    continue;
+                }
+                for (ArchiveSegment.Row row : decoded(segment)) {
+                    if (matches(row, filter) && beyond(row, cursor, older)) {
+                        monthRows.add(pagerRow(row));
+                    }
+                }
+            }
+            monthRows.sort(older ? TransactionPager.NEWEST_FIRST : TransactionPager.NEWEST_FIRST.reversed());
+            rows.addAll(monthRows);
+        }
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    /**
+     * Archived rows matching {@code filter} in timestamp order, for {@code ledger} or every ledger
+     * in finance.db when it is null. One month's rows are held at a time.
+     */
+    static Scan scan(Database.PooledConnection conn, Ledger ledger, ReportFilter filter, boolean notes)
+            throws SQLException {
+        return new Scan(segments(conn, ledger, filter), filter, notes);
+    }
+
+    /** A pass over archived rows; {@link #next()} returns null at the end. */
+    static final class Scan {
+        private final List<Segment> segments;
+        private final ReportFilter filter;
+        private final boolean notes;
+        private int segment;
+        private List<ArchiveSegment.Row> month = List.of();
+        private int row;
+
+        private Scan(List<Segment> segments, ReportFilter filter, boolean notes) {
+            this.segments = segments;
+            this.filter = filter;
+            this.notes = notes;
+        }
+
+        boolean isEmpty() {
+            return segments.isEmpty();
+        }
+
+        ArchiveSegment.Row next() throws SQLException {
+            while (row == month.size()) {
+                if (segment == segments.size()) {
+                    return null;
+                }
+                // Every segment of the next month; several ledgers, or re-archived rows, are merged by time
+                int yearMonth = segments.get(segment).yearMonth();
+                List<ArchiveSegment.Row> rows = new ArrayList<>();
+                int count = 0;
+                for (; segment < segments.size() && segments.get(segment).yearMonth() == yearMonth; segment++, count++) {
+                    if (footer(segments.get(segment)).hasType(filter.type())) {
+                        for (ArchiveSegment.Row r : read(segments.get(segment), notes)) {
+                            if (matches(r, filter)) {
+                                rows.add(r);
+                            }
+                        }
+                    }
+                }
+                if (count > 1) {
+                    rows.sort(OLDEST_FIRST);
+                }
+                month = rows;
+                row = 0;
+            }
+            return month.get(row++);
+        }
+    }
+
+    private static final java.util.Comparator<ArchiveSegment.Row> OLDEST_FIRST =
+            java.util.Comparator.comparing(ArchiveSegment.Row::timestamp).thenComparingLong(ArchiveSegment.Row::id);
+
+    private static boolean matches(ArchiveSegment.Row row, ReportFilter filter) {
+        return (filter.type() == null || filter.type().equals(row.type()))
+                && (filter.from() == null || row.timestamp().compareTo(filter.from().toString()) >= 0)
+                && (filter.to() == null || row.timestamp().compareTo(filter.to().plusDays(1).toString()) < 0);
+    }
+
+    // The listing's SQL predicates, applied to an archived row
+    private static boolean matches(ArchiveSegment.Row row, TransactionPager.Filter filter) {
+        return (filter.type() == null || filter.type().equals(row.type()))
+                && (filter.minCents() == null || row.amountCents() >= filter.minCents())
+                && (filter.maxCents() == null || row.amountCents() <= filter.maxCents())
+                && (filter.from() == null || row.timestamp().compareTo(filter.from().toString()) >= 0)
+                && (filter.to() == null || row.timestamp().compareTo(filter.to().plusDays(1).toString()) < 0)
+                && (filter.notesContains() == null || (row.notes() != null && contains(row.notes(), filter.notesContains())));
+    }
+
+    // Case-insensitive like SQLite's LIKE
+    private static boolean contains(String text, String part) {
+        for (int i = 0; i + part.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean beyond(ArchiveSegment.Row row, TransactionPager.Cursor cursor, boolean older) {
+        if (cursor == null) {
+            return true;
+        }
+        int c = row.timestamp().compareTo(cursor.timestamp());
+        if (c == 0) {
+            c = Long.compare(row.id(), cursor.id());
+        }
+        return older ? c < 0 : c > 0;
+    }
+
+    private static TransactionPager.Row pagerRow(ArchiveSegment.Row row) {
+        return new TransactionPager.Row(row.id(), row.type(), row.amountCents(), row.notes(), row.timestamp(),
+                row.category());
+    }
+
+    /**
+     * Fills {@code temp.archived_monthly_totals} and {@code temp.archived_daily_totals} on this
+     * connection with the totals of every segment in its file, for checking and rebuilding the
+     * rollups. Monthly totals come from the footers.
+     */
+    static void loadTotals(Database.PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE IF NOT EXISTS archived_monthly_totals(user_id INTEGER, year_month INTEGER, type TEXT, total_cents INTEGER, count INTEGER)");
+            stmt.execute("CREATE TEMP TABLE IF NOT EXISTS archived_daily_totals(user_id INTEGER, epoch_day INTEGER, type TEXT, total_cents INTEGER, count INTEGER)");
+            stmt.execute("DELETE FROM temp.archived_monthly_totals");
+            stmt.execute("DELETE FROM temp.archived_daily_totals");
+        }
+        PreparedStatement month = conn.prepare("INSERT INTO temp.archived_monthly_totals VALUES(?, ?, ?, ?, ?)");
+        PreparedStatement day = conn.prepare("INSERT INTO temp.archived_daily_totals VALUES(?, ?, ?, ?, ?)");
+        for (Segment segment : segments(conn, null, 0, Integer.MAX_VALUE)) {
+            ArchiveSegment.Footer footer = footer(segment);
+            Map<String, long[]> byType = new TreeMap<>();
+            for (ArchiveSegment.Group group : footer.groups()) {
+                long[] t = byType.computeIfAbsent(group.type(), k -> new long[2]);
+                t[0] += group.totalCents();
+                t[1] += group.count();
+            }
+            for (Map.Entry<String, long[]> entry : byType.entrySet()) {
+                bindTotal(month, segment.userId(), segment.yearMonth(), entry.getKey(), entry.getValue());
+                month.addBatch();
+            }
+            Map<List<Object>, long[]> byDay = new LinkedHashMap<>();
+            for (ArchiveSegment.Row row : read(segment, false)) {
+                long[] t = byDay.computeIfAbsent(List.of(TransactionStore.epochDay(row.timestamp()), row.type()),
+                        k -> new long[2]);
+                t[0] += row.amountCents();
+                t[1]++;
+            }
+            for (Map.Entry<List<Object>, long[]> entry : byDay.entrySet()) {
+                bindTotal(day, segment.userId(), (Long) entry.getKey().get(0), (String) entry.getKey().get(1), entry.getValue());
+                day.addBatch();
+            }
+        }
+        month.executeBatch();
+        day.executeBatch();
+    }
+
+    private static void bindTotal(PreparedStatement pstmt, long userId, long bucket, String type, long[] total)
+            throws SQLException {
+        pstmt.setLong(1, userId);
+        pstmt.setLong(2, bucket);
+        pstmt.setString(3, type);
+        pstmt.setLong(4, total[0]);
+        pstmt.setLong(5, total[1]);
+    }
+
+    /** Problems with a ledger's segments: checksums, footers that disagree with the catalog, files not cataloged. */
+    static List<String> verify(Ledger ledger) throws SQLException, IOException {
+        List<String> problems = new ArrayList<>();
+        Set<Path> cataloged = new HashSet<>();
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            for (Segment segment : segments(conn, ledger, 0, Integer.MAX_VALUE)) {
+                cataloged.add(segment.path().toAbsolutePath().normalize());
+                try {
+                    ArchiveSegment.Footer footer = ArchiveSegment.verify(segment.path());
+                    if (footer.userId() != segment.userId() || footer.yearMonth() != segment.yearMonth()
+                            || footer.rows() != segment.rows()) {
+                        problems.add(segment.file() + ": footer says user " + footer.userId() + ", "
+                                + Schema.formatYearMonth(footer.yearMonth()) + ", " + footer.rows()
+                                + " rows; the catalog says user " + segment.userId() + ", "
+                                + Schema.formatYearMonth(segment.yearMonth()) + ", " + segment.rows());
+                    }
+                } catch (IOException e) {
+                    problems.add(segment.file() + ": " + e.getMessage());
+                }
+            }
+        }
+        // Left by a crash between writing a segment and committing its catalog entry
+        Path dir = DIR.resolve(ledger.fileName());
+        String prefix = "u" + ledger.userId() + "-";
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                files.filter(f -> f.getFileName().toString().startsWith(prefix))
+                        .filter(f -> !cataloged.contains(f.toAbsolutePath().normalize()))
+                        .forEach(f -> problems.add(f + ": not in the catalog; safe to delete"));
+            }
+        }
+        return problems;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Error removing archive segment " + file + ": " + e.getMessage());
+        }
+    }
+}
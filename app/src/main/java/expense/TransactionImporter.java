@@ -0,0 +1,365 @@
+package expense;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+
+/**
+ * Bulk loader for bank exports. Files are streamed through a fixed buffer and parsed
+ * character by character, and rows are written through {@link TransactionStore.Batch}
+ * in chunked transactions instead of one autocommit per row.
+ *
+ * CSV columns: type, amount, notes, timestamp (notes and timestamp optional, header optional).
+ * Timestamps must start with yyyy-MM-dd; rows with other dates are skipped, and rows without one
+ * are dated now. A blank type is inferred from the sign of the amount; rows with any type other
+ * than Income or Expense are skipped. OFX transactions without a valid DTPOSTED are skipped.
+ */
+public final class TransactionImporter {
+    public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("expense.import.batchSize", 5_000);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private TransactionImporter() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: TransactionImporter <file.csv|file.ofx> [batchSize]");
+            return;
+        }
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+        ExpenseManager.createTables();
+        try {
+            System.out.println(importFile(Path.of(args[0]), batchSize));
+        } catch (IOException | SQLException e) {
+            System.err.println("Error importing transactions: " + e.getMessage());
+        }
+    }
+
+    public record Result(long rows, long skipped, long elapsedNanos) {
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d rows (%d skipped) in %.2f s (%.0f rows/sec)",
+                    rows, skipped, elapsedNanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    public static Result importFile(Path file, int batchSize) throws IOException, SQLException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".ofx") || name.endsWith(".qfx")) {
+            return importOfx(file, batchSize);
+        }
+        return importCsv(file, batchSize);
+    }
+
+    public static Result importCsv(Path file, int batchSize) throws IOException, SQLException {
+        long start = System.nanoTime();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BatchWriter writer = new BatchWriter(batchSize)) {
+            new CsvParser(reader, writer).run();
+            writer.flush();
+            return new Result(writer.rows, writer.skipped, System.nanoTime() - start);
+        }
+    }
+
+    public static Result importOfx(Path file, int batchSize) throws IOException, SQLException {
+        long start = System.nanoTime();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BatchWriter writer = new BatchWriter(batchSize)) {
+            new OfxParser(reader, writer).run();
+            writer.flush();
+            return new Result(writer.rows, writer.skipped, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean equalsIgnoreCase(StringBuilder sb, String s) {
+        if (sb.length() != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.toLowerCase(sb.charAt(i)) != Character.toLowerCase(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBlank(StringBuilder sb) {
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String emptyToNull(StringBuilder sb) {
+        int start = 0;
+        int end = sb.length();
+        while (start < end && sb.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && sb.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return start == end ? null : sb.substring(start, end);
+    }
+
+    /** Validates parsed rows and hands them to a {@link TransactionStore.Batch}. */
+    private static final class BatchWriter implements AutoCloseable {
+        private final TransactionStore.Batch batch;
+        long rows;
+        long skipped;
+
+        BatchWriter(int batchSize) throws SQLException {
+            this.batch = TransactionStore.openBatch(batchSize);
+        }
+
+        void skip() {
+            skipped++;
+        }
+
+        void add(String type, long amountCents, String notes, String timestamp) throws SQLException {
+            if (amountCents == Money.INVALID) {
+                skipped++;
+                return;
+            }
+            if (type == null) {
+                type = amountCents < 0 ? "Expense" : "Income";
+            }
+            if (batch.add(type, Math.abs(amountCents), notes, timestamp)) {
+                rows++;
+            } else {
+                skipped++;
+            }
+        }
+
+        void flush() throws SQLException {
+            batch.flush();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            batch.close();
+        }
+    }
+
+    /** RFC 4180 style CSV reader that reuses its field buffers for every record. */
+    private static final class CsvParser {
+        private static final int MAX_FIELDS = 4;
+
+        private final Reader reader;
+        private final BatchWriter writer;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder[] fields = new StringBuilder[MAX_FIELDS];
+        private int fieldCount;
+        private long record;
+
+        CsvParser(Reader reader, BatchWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+            for (int i = 0; i < MAX_FIELDS; i++) {
+                fields[i] = new StringBuilder(64);
+            }
+        }
+
+        void run() throws IOException, SQLException {
+            boolean inQuotes = false;
+            boolean pendingQuote = false;
+            boolean recordHasData = false;
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    if (inQuotes) {
+                        if (pendingQuote) {
+                            pendingQuote = false;
+                            if (c == '"') {
+                                append(c); // escaped quote
+                                continue;
+                            }
+                            inQuotes = false; // closing quote, fall through to handle c
+                        } else if (c == '"') {
+                            pendingQuote = true;
+                            continue;
+                        } else {
+                            append(c);
+                            continue;
+                        }
+                    }
+                    switch (c) {
+                        case '"' -> {
+                            inQuotes = true;
+                            recordHasData = true;
+                        }
+                        case ',' -> {
+                            fieldCount++;
+                            recordHasData = true;
+                        }
+                        case '\r' -> {
+                            // handled by the following '\n'
+                        }
+                        case '\n' -> {
+                            if (recordHasData) {
+                                endRecord();
+                            }
+                            recordHasData = false;
+                        }
+                        default -> {
+                            append(c);
+                            recordHasData = true;
+                        }
+                    }
+                }
+            }
+            if (recordHasData) {
+                endRecord();
+            }
+        }
+
+        private void append(char c) {
+            if (fieldCount < MAX_FIELDS) {
+                fields[fieldCount].append(c);
+            }
+        }
+
+        private void endRecord() throws SQLException {
+            record++;
+            StringBuilder typeField = fields[0];
+            boolean header = record == 1 && equalsIgnoreCase(typeField, "type");
+            if (!header) {
+                String type = null;
+                if (equalsIgnoreCase(typeField, "income")) {
+                    type = "Income";
+                } else if (equalsIgnoreCase(typeField, "expense")) {
+                    type = "Expense";
+                }
+                if (type == null && !isBlank(typeField)) {
+                    writer.skip();
+                } else {
+                    StringBuilder amountField = fields[1];
+                    long amountCents = Money.parse(amountField, 0, amountField.length());
+                    writer.add(type, amountCents, emptyToNull(fields[2]), emptyToNull(fields[3]));
+                }
+            }
+            for (StringBuilder field : fields) {
+                field.setLength(0);
+            }
+            fieldCount = 0;
+        }
+    }
+
+    /**
+     * Minimal OFX 1.x/2.x reader: picks DTPOSTED, TRNAMT, NAME and MEMO out of each STMTTRN block.
+     * Works for both the SGML form (no closing tags) and the XML form.
+     */
+    private static final class OfxParser {
+        private final Reader reader;
+        private final BatchWriter writer;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder tag = new StringBuilder(16);
+        private final StringBuilder value = new StringBuilder(64);
+        private final StringBuilder name = new StringBuilder(64);
+        private final StringBuilder memo = new StringBuilder(64);
+        private final StringBuilder posted = new StringBuilder(24);
+        private long amountCents = Money.INVALID;
+        private boolean inTransaction;
+
+        OfxParser(Reader reader, BatchWriter writer) {
+            this.reader = reader;
+            this.writer = writer;
+        }
+
+        void run() throws IOException, SQLException {
+            boolean inTag = false;
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    char c = buffer[i];
+                    if (c == '<') {
+                        endValue();
+                        inTag = true;
+                        tag.setLength(0);
+                    } else if (c == '>' && inTag) {
+                        inTag = false;
+                        startElement();
+                    } else if (inTag) {
+                        tag.append(c);
+                    } else if (c != '\r' && c != '\n') {
+                        value.append(c);
+                    }
+                }
+            }
+            endValue();
+        }
+
+        private void startElement() throws SQLException {
+            if (equalsIgnoreCase(tag, "STMTTRN")) {
+                inTransaction = true;
+                amountCents = Money.INVALID;
+                name.setLength(0);
+                memo.setLength(0);
+                posted.setLength(0);
+            } else if (equalsIgnoreCase(tag, "/STMTTRN")) {
+                if (inTransaction) {
+                    String timestamp = formatOfxDate(posted);
+                    if (timestamp == null) {
+                        // A batch would date it now; a bank row belongs to the day it was posted
+                        writer.skip();
+                    } else {
+                        String notes = memo.length() > 0 ? emptyToNull(memo) : emptyToNull(name);
+                        writer.add(null, amountCents, notes, timestamp);
+                    }
+                }
+                inTransaction = false;
+            }
+            value.setLength(0);
+        }
+
+        private void endValue() {
+            if (!inTransaction || tag.length() == 0 || tag.charAt(0) == '/') {
+                value.setLength(0);
+                return;
+            }
+            if (equalsIgnoreCase(tag, "TRNAMT")) {
+                amountCents = Money.parse(value, 0, value.length());
+            } else if (equalsIgnoreCase(tag, "NAME")) {
+                name.setLength(0);
+                name.append(value);
+            } else if (equalsIgnoreCase(tag, "MEMO")) {
+                memo.setLength(0);
+                memo.append(value);
+            } else if (equalsIgnoreCase(tag, "DTPOSTED")) {
+                posted.setLength(0);
+                posted.append(value);
+            }
+            value.setLength(0);
+        }
+
+        // OFX dates look like 20250103[120000[.000][-5:EST]]; store them as SQLite datetimes, null if missing or malformed
+        private static String formatOfxDate(StringBuilder raw) {
+            int len = 0;
+            while (len < raw.length() && len < 14 && Character.isDigit(raw.charAt(len))) {
+                len++;
+            }
+            if (len < 8) {
+                return null;
+            }
+            StringBuilder out = new StringBuilder(19)
+                    .append(raw, 0, 4).append('-').append(raw, 4, 6).append('-').append(raw, 6, 8);
+            if (len >= 14) {
+                out.append(' ').append(raw, 8, 10).append(':').append(raw, 10, 12).append(':').append(raw, 12, 14);
+            } else {
+                out.append(" 00:00:00");
+            }
+            return out.toString();
+        }
+    }
+}
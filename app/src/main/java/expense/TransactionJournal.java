@@ -0,0 +1,604 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind mode for new transactions. {@link #append} writes the transaction to an
+ * append-only journal of memory-mapped segment files and returns as soon as it is as durable as
+ * {@code expense.journal.durability} asks; a background writer then moves journal entries into
+ * SQLite through {@link TransactionStore.Batch}, as many per commit as have piled up (up to
+ * {@code expense.journal.groupSize}, default 2000), so a burst of entries costs one SQLite commit
+ * instead of one each.
+ *
+ * Durability levels:
+ * <ul>
+ *   <li>{@code process}: acknowledged once copied into the mapping. Survives the JVM being
+ *       killed, since the pages belong to the OS, but not a power cut.</li>
+ *   <li>{@code interval}: as {@code process}, and the mapping is forced to disk every
+ *       {@code expense.journal.flushMillis} (10) ms, bounding what a power cut can lose.</li>
+ *   <li>{@code fsync} (default): acknowledged only after the entry has been forced to disk.
+ *       Threads appending at the same time share one force (group commit).</li>
+ * </ul>
+ *
+ * Every entry has a sequence number. Each ledger's high-water mark is stored in
+ * {@code journal_applied} in the same SQLite transaction as the rows, so on start-up the journal
+ * is replayed from the oldest segment still on disk and entries already applied are skipped:
+ * after a crash at any point each acknowledged entry is in the database exactly once. Segments
+ * are deleted once everything in them has been applied; an entry torn by a power cut fails its
+ * checksum and ends the replay of that segment.
+ *
+ * Entries are not visible to queries until applied; {@link #awaitApplied(long)} waits for that.
+ * Enabled for the console tools with {@code -Dexpense.journal.enabled=true}; files live in
+ * {@code expense.journal.dir} ({@code journal}), which one process at a time may use.
+ */
+public final class TransactionJournal implements AutoCloseable {
+    public static final boolean ENABLED = Boolean.getBoolean("expense.journal.enabled");
+
+    private static final Path DIR = Path.of(System.getProperty("expense.journal.dir", "journal"));
+    private static final int SEGMENT_BYTES = Integer.getInteger("expense.journal.segmentBytes", 8 << 20);
+    private static final int GROUP_SIZE = Integer.getInteger("expense.journal.groupSize", 2_000);
+    private static final long FLUSH_MILLIS = Long.getLong("expense.journal.flushMillis", 10);
+    private static final long CLOSE_TIMEOUT_MS = Long.getLong("expense.journal.closeTimeoutMs", 30_000);
+    private static final long RETRY_MILLIS = 500;
+
+    private static final String APPLIED_SQL = "SELECT seq FROM journal_applied WHERE user_id = ?";
+
+    private static final int MAGIC = 0x45584A31; // "EXJ1"
+    private static final int SEGMENT_HEADER_BYTES = 16; // magic, version, first sequence number
+    private static final int ENTRY_HEADER_BYTES = 8;    // payload length, CRC-32 of the payload
+    private static final int FLAG_SHARED = 1;
+    private static final int FLAG_EXPENSE = 2;
+
+    private static TransactionJournal instance;
+
+    public enum Durability {
+        PROCESS, INTERVAL, FSYNC;
+
+        public static Durability parse(String text) {
+            return valueOf(text.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** One journaled transaction. */
+    public record Entry(long seq, long userId, boolean shared, String type, long amountCents, String notes,
+                        String timestamp, String category) {
+        Ledger ledger() {
+            return shared ? Ledger.shared() : Ledger.forUser(userId);
+        }
+    }
+
+    public record Stats(long appended, long applied, long skipped, long groups, int segments) {
+        @Override
+        public String toString() {
+            return String.format("journal: appended=%d applied=%d skipped=%d groups=%d (avg %.1f per commit) segments=%d",
+                    appended, applied, skipped, groups, groups == 0 ? 0.0 : (double) applied / groups, segments);
+        }
+    }
+
+    private final Path dir;
+    private final Durability durability;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>(); // oldest first; the last is appended to
+    private final LinkedBlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+    private final Object forceLock = new Object();
+    private final Object appliedLock = new Object();
+    private final Map<Ledger, Long> watermarks = new HashMap<>(); // writer thread only
+    private final Thread writer;
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder groups = new LongAdder();
+
+    private long nextSeq;               // guarded by this
+    private volatile long appendedSeq;  // last sequence number written to a segment
+    private volatile long forcedSeq;    // last sequence number known to be on disk
+    private volatile long appliedSeq;   // every entry up to here is in SQLite
+    private volatile boolean closed;
+
+    /** The journal configured by the {@code expense.journal.*} properties, opened and replayed on first use. */
+    public static synchronized TransactionJournal get() throws IOException {
+        if (instance == null) {
+            TransactionJournal journal = open(DIR,
+                    Durability.parse(System.getProperty("expense.journal.durability", "fsync")));
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "journal-shutdown"));
+            instance = journal;
+        }
+        return instance;
+    }
+
+    /** Closes the journal opened by {@link #get()}, if any. */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+        }
+    }
+
+    /**
+     * Opens the journal in {@code dir}, queues every entry still in it for the writer, and starts
+     * a new segment for appends.
+     */
+    public static TransactionJournal open(Path dir, Durability durability) throws IOException {
+        return new TransactionJournal(dir, durability);
+    }
+
+    private TransactionJournal(Path dir, Durability durability) throws IOException {
+        this.dir = dir;
+        this.durability = durability;
+        Files.createDirectories(dir);
+        lockChannel = FileChannel.open(dir.resolve("journal.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Journal " + dir + " is in use by another process");
+        }
+
+        List<Entry> recovered = new ArrayList<>();
+        try {
+            long lastSeq = 0;
+            boolean found = false;
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().matches("journal-\\d{20}\\.log")).sorted().toList()) {
+                    Segment segment = Segment.recover(file, recovered);
+                    found = true;
+                    lastSeq = Math.max(lastSeq, segment.lastSeq);
+                    if (segment.lastSeq < segment.firstSeq) {
+                        // Nothing in it to replay, as when the last run appended nothing. Its name
+                        // is the one the segment for the next sequence number needs
+                        Files.delete(file);
+                    } else {
+                        segments.add(segment);
+                    }
+                }
+            }
+            // A fresh journal numbers from the clock, so its entries sort after any mark a deleted
+            // journal left in journal_applied
+            nextSeq = found ? lastSeq + 1 : System.currentTimeMillis() * 1000;
+            appendedSeq = nextSeq - 1;
+            forcedSeq = nextSeq - 1;
+            appliedSeq = recovered.isEmpty() ? nextSeq - 1 : recovered.get(0).seq() - 1;
+            pending.addAll(recovered);
+            segments.add(Segment.create(dir, nextSeq, SEGMENT_BYTES, durability != Durability.PROCESS));
+        } catch (IOException | RuntimeException e) {
+            // Another open of this directory must not find it locked by a journal that never started
+            try {
+                lock.release();
+                lockChannel.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+            throw e;
+        }
+        if (!recovered.isEmpty()) {
+            System.out.println("Replaying " + recovered.size() + " journaled transactions from " + dir);
+        }
+
+        writer = new Thread(this::drain, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        if (durability == Durability.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::forceQuietly, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    public Durability durability() {
+        return durability;
+    }
+
+    /**
+     * Journals a new transaction and returns its sequence number once it is as durable as the
+     * journal's {@link Durability}. The row reaches the database later; it gets its id then.
+     *
+     * @throws IllegalArgumentException for a type other than Income or Expense, or a timestamp
+     *                                  {@link TransactionStore} cannot store
+     */
+    public long append(Ledger ledger, String type, long amountCents, String notes, String timestamp,
+                       String category) throws IOException {
+        boolean expense = "Expense".equals(type);
+        if (!expense && !"Income".equals(type)) {
+            throw new IllegalArgumentException("Unknown transaction type: " + type);
+        }
+        if (TransactionStore.yearMonth(timestamp) < 0) {
+            throw new IllegalArgumentException("Unsupported timestamp: " + timestamp);
+        }
+        boolean shared = ledger.equals(Ledger.shared());
+        byte[] payload = encode(ledger.userId(), (shared ? FLAG_SHARED : 0) | (expense ? FLAG_EXPENSE : 0),
+                amountCents, timestamp, notes, category);
+        long seq;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Journal " + dir + " is closed");
+            }
+            seq = nextSeq;
+            ByteBuffer.wrap(payload).putLong(0, seq);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            Segment segment = segments.getLast();
+            if (segment.buffer.remaining() < ENTRY_HEADER_BYTES + payload.length) {
+                segment = roll(payload.length);
+            }
+            segment.buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            segment.lastSeq = seq;
+            nextSeq = seq + 1;
+            appendedSeq = seq;
+            pending.add(new Entry(seq, ledger.userId(), shared, type, amountCents, notes, timestamp, category));
+        }
+        appended.increment();
+        if (durability == Durability.FSYNC) {
+            force(seq);
+        }
+        return seq;
+    }
+
+    /**
+     * Waits until every entry appended so far is in the database. Returns false if that did not
+     * happen within {@code timeoutMillis}.
+     */
+    public boolean awaitApplied(long timeoutMillis) {
+        long target = appendedSeq;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (appliedLock) {
+            while (appliedSeq < target) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (left <= 0) {
+                    return false;
+                }
+                try {
+                    appliedLock.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(appended.sum(), applied.sum(), skipped.sum(), groups.sum(), segments.size());
+    }
+
+    /**
+     * Stops accepting entries and gives the writer up to {@code expense.journal.closeTimeoutMs} to
+     * apply what is queued. Anything it could not apply stays in the journal for the next open.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            System.err.println("Journal writer did not finish; " + pending.size() + " entries will be replayed on next start");
+            writer.interrupt();
+        }
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        if (durability != Durability.PROCESS) {
+            forceQuietly();
+        }
+        try {
+            lock.release();
+            lockChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+    }
+
+    /** Moves to a new segment; called with the append lock held. */
+    private Segment roll(int payloadBytes) throws IOException {
+        if (SEGMENT_HEADER_BYTES + ENTRY_HEADER_BYTES + payloadBytes > SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Transaction of " + payloadBytes + " bytes does not fit in a journal segment");
+        }
+        if (durability != Durability.PROCESS) {
+            Segment full = segments.getLast();
+            full.force(full.buffer.position());
+        }
+        Segment segment = Segment.create(dir, nextSeq, SEGMENT_BYTES, durability != Durability.PROCESS);
+        segments.add(segment);
+        return segment;
+    }
+
+    /** Forces the journal to disk at least up to {@code seq}; one caller forces for everyone waiting. */
+    private void force(long seq) throws IOException {
+        synchronized (forceLock) {
+            if (forcedSeq >= seq) {
+                return;
+            }
+            Segment segment;
+            int end;
+            long upTo;
+            synchronized (this) {
+                segment = segments.getLast();
+                end = segment.buffer.position();
+                upTo = appendedSeq;
+            }
+            segment.force(end); // earlier segments were forced when they filled up
+            forcedSeq = upTo;
+        }
+    }
+
+    private void forceQuietly() {
+        try {
+            force(appendedSeq);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error flushing journal: " + e.getMessage());
+        }
+    }
+
+    private void drain() {
+        List<Entry> group = new ArrayList<>(GROUP_SIZE);
+        while (true) {
+            try {
+                if (group.isEmpty()) {
+                    Entry first = pending.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (closed) {
+                            return;
+                        }
+                        continue;
+                    }
+                    group.add(first);
+                    pending.drainTo(group, GROUP_SIZE - 1);
+                }
+                apply(group);
+                group.clear();
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException | RuntimeException e) {
+                if (closed) {
+                    return; // the entries are still in the journal
+                }
+                System.err.println("Error applying journal, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Writes one group, one commit per ledger in it, skipping entries a ledger already has. */
+    private void apply(List<Entry> group) throws SQLException {
+        Map<Ledger, List<Entry>> byLedger = new LinkedHashMap<>();
+        for (Entry entry : group) {
+            byLedger.computeIfAbsent(entry.ledger(), l -> new ArrayList<>()).add(entry);
+        }
+        for (Map.Entry<Ledger, List<Entry>> ledgerEntries : byLedger.entrySet()) {
+            Ledger ledger = ledgerEntries.getKey();
+            List<Entry> entries = ledgerEntries.getValue();
+            long watermark = watermark(ledger);
+            long last = entries.get(entries.size() - 1).seq();
+            if (last <= watermark) {
+                skipped.add(entries.size());
+                continue;
+            }
+            int written = 0;
+            try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, Integer.MAX_VALUE)) {
+                for (Entry entry : entries) {
+                    if (entry.seq() > watermark) {
+                        batch.add(entry.type(), entry.amountCents(), entry.notes(), entry.timestamp(), entry.category());
+                        written++;
+                    }
+                }
+                batch.journaled(last);
+                batch.flush();
+            }
+            watermarks.put(ledger, last);
+            applied.add(written);
+            skipped.add(entries.size() - written);
+        }
+        groups.increment();
+        synchronized (appliedLock) {
+            appliedSeq = group.get(group.size() - 1).seq();
+            appliedLock.notifyAll();
+        }
+        retire();
+    }
+
+    private long watermark(Ledger ledger) throws SQLException {
+        Long cached = watermarks.get(ledger);
+        if (cached != null) {
+            return cached;
+        }
+        long seq = 0;
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(APPLIED_SQL);
+            pstmt.setLong(1, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    seq = rs.getLong(1);
+                }
+            }
+        }
+        watermarks.put(ledger, seq);
+        return seq;
+    }
+
+    /** Deletes segments whose entries are all applied, keeping the one being appended to. */
+    private void retire() {
+        List<Segment> done = new ArrayList<>();
+        synchronized (this) {
+            while (segments.size() > 1 && segments.getFirst().lastSeq <= appliedSeq) {
+                done.add(segments.removeFirst());
+            }
+        }
+        for (Segment segment : done) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                System.err.println("Error deleting journal segment " + segment.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Payload: seq, user id, flags, amount, then timestamp, notes and category as length-prefixed
+    // UTF-8 (length -1 for null). The seq is filled in under the append lock
+    private static byte[] encode(long userId, int flags, long amountCents, String timestamp, String notes,
+                                 String category) {
+        byte[] ts = timestamp.getBytes(StandardCharsets.UTF_8);
+        byte[] n = notes == null ? null : notes.getBytes(StandardCharsets.UTF_8);
+        byte[] c = category == null ? null : category.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 1 + 8 + 12 + ts.length + (n == null ? 0 : n.length)
+                + (c == null ? 0 : c.length));
+        buffer.putLong(0).putLong(userId).put((byte) flags).putLong(amountCents);
+        putBytes(buffer, ts);
+        putBytes(buffer, n);
+        putBytes(buffer, c);
+        return buffer.array();
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static Entry decode(ByteBuffer payload) {
+        long seq = payload.getLong();
+        long userId = payload.getLong();
+        int flags = payload.get();
+        long amountCents = payload.getLong();
+        String timestamp = getString(payload);
+        String notes = getString(payload);
+        String category = getString(payload);
+        return new Entry(seq, userId, (flags & FLAG_SHARED) != 0, (flags & FLAG_EXPENSE) != 0 ? "Expense" : "Income",
+                amountCents, notes, timestamp, category);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** One mapped journal file, named after the first sequence number it may hold. */
+    private static final class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        final long firstSeq;
+        volatile long lastSeq;
+        private int forcedTo;
+
+        private Segment(Path path, MappedByteBuffer buffer, long firstSeq, long lastSeq) {
+            this.path = path;
+            this.buffer = buffer;
+            this.firstSeq = firstSeq;
+            this.lastSeq = lastSeq;
+            this.forcedTo = buffer.position();
+        }
+
+        static Segment create(Path dir, long firstSeq, int size, boolean force) throws IOException {
+            Path path = dir.resolve(String.format("journal-%020d.log", firstSeq));
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            buffer.putInt(MAGIC).putInt(1).putLong(firstSeq);
+            if (force) {
+                buffer.force(0, SEGMENT_HEADER_BYTES);
+            }
+            return new Segment(path, buffer, firstSeq, firstSeq - 1);
+        }
+
+        /**
+         * Maps an existing segment and adds its entries to {@code entries}, stopping at the end of
+         * what was written or at the first entry that fails its checksum.
+         */
+        static Segment recover(Path path, List<Entry> entries) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            if (buffer.limit() < SEGMENT_HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != 1) {
+                throw new IOException("Not a journal segment: " + path);
+            }
+            long firstSeq = buffer.getLong();
+            long lastSeq = firstSeq - 1;
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= ENTRY_HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    buffer.position(start);
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    System.err.println("Journal " + path + " ends in a torn entry at byte " + start + "; ignoring the rest");
+                    buffer.position(start);
+                    break;
+                }
+                Entry entry = decode(payload);
+                entries.add(entry);
+                lastSeq = entry.seq();
+                buffer.position(buffer.position() + length);
+            }
+            return new Segment(path, buffer, firstSeq, lastSeq);
+        }
+
+        synchronized void force(int end) {
+            if (end > forcedTo) {
+                buffer.force(forcedTo, end - forcedTo);
+                forcedTo = end;
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package expense;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keyset-paginated transaction listing, newest first. Pages are addressed by the (timestamp, id)
+ * of their boundary rows rather than by OFFSET, so fetching any page costs one index seek plus
+ * the page itself, however deep into the ledger it is. Listings are of one {@link Ledger}, read
+ * through the (user_id, timestamp, id) index; methods without one list {@link Ledger#shared()}.
+ * Months moved to the {@link TransactionArchive} are merged in from their segments.
+ */
+public final class TransactionPager {
+    public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("expense.list.pageSize", 20);
+
+    private static final String FIND_SQL = "SELECT id, type, amount_cents, notes, timestamp, category FROM transactions WHERE id = ? AND user_id = ?";
+
+    static final Comparator<Row> NEWEST_FIRST =
+            Comparator.comparing(Row::timestamp).thenComparingLong(Row::id).reversed();
+
+    private TransactionPager() {
+    }
+
+    /** Optional listing filters; null fields are ignored. Dates and amounts (in cents) are inclusive. */
+    public record Filter(String type, Long minCents, Long maxCents,
+                         LocalDate from, LocalDate to, String notesContains) {
+        public static final Filter NONE = new Filter(null, null, null, null, null, null);
+
+        public boolean isEmpty() {
+            return equals(NONE);
+        }
+    }
+
+    public record Row(long id, String type, long amountCents, String notes, String timestamp, String category) {
+    }
+
+    /** Position of a row in the (timestamp, id) ordering. */
+    public record Cursor(String timestamp, long id) {
+    }
+
+    public record Page(List<Row> rows, boolean hasNewer, boolean hasOlder) {
+        public Cursor newest() {
+            return rows.isEmpty() ? null : cursorOf(rows.get(0));
+        }
+
+        public Cursor oldest() {
+            return rows.isEmpty() ? null : cursorOf(rows.get(rows.size() - 1));
+        }
+
+        private static Cursor cursorOf(Row row) {
+            return new Cursor(row.timestamp(), row.id());
+        }
+    }
+
+    /** One row of {@code ledger}, archived or not, or null if it has no transaction with that id. */
+    public static Row find(Ledger ledger, long id) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(FIND_SQL);
+            pstmt.setLong(1, id);
+            pstmt.setLong(2, ledger.userId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Row(rs.getLong("id"), rs.getString("type"), rs.getLong("amount_cents"),
+                            rs.getString("notes"), rs.getString("timestamp"), rs.getString("category"));
+                }
+            }
+            return TransactionArchive.find(conn, ledger, id);
+        }
+    }
+
+    public static Page firstPage(Filter filter, int size) throws SQLException {
+        return firstPage(Ledger.shared(), filter, size);
+    }
+
+    public static Page firstPage(Ledger ledger, Filter filter, int size) throws SQLException {
+        List<Row> rows = fetch(ledger, filter, null, true, size + 1);
+        boolean hasOlder = trim(rows, size);
+        return new Page(rows, false, hasOlder);
+    }
+
+    /** The page of rows older than {@code after}. */
+    public static Page olderPage(Filter filter, Cursor after, int size) throws SQLException {
+        return olderPage(Ledger.shared(), filter, after, size);
+    }
+
+    public static Page olderPage(Ledger ledger, Filter filter, Cursor after, int size) throws SQLException {
+        List<Row> rows = fetch(ledger, filter, after, true, size + 1);
+        boolean hasOlder = trim(rows, size);
+        return new Page(rows, true, hasOlder);
+    }
+
+    /** The page of rows newer than {@code before}. */
+    public static Page newerPage(Filter filter, Cursor before, int size) throws SQLException {
+        return newerPage(Ledger.shared(), filter, before, size);
+    }
+
+    public static Page newerPage(Ledger ledger, Filter filter, Cursor before, int size) throws SQLException {
+        List<Row> rows = fetch(ledger, filter, before, false, size + 1);
+        boolean hasNewer = trim(rows, size);
+        Collections.reverse(rows);
+        return new Page(rows, hasNewer, true);
+    }
+
+    private static boolean trim(List<Row> rows, int size) {
+        if (rows.size() > size) {
+            rows.remove(rows.size() - 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * SQL for one page. {@code older} walks the timestamp index backwards from the cursor;
+     * otherwise it walks forwards, and the caller reverses the rows.
+     */
+    static String sql(Filter filter, boolean hasCursor, boolean older) {
+        StringBuilder sql = new StringBuilder("SELECT id, type, amount_cents, notes, timestamp, category FROM transactions");
+        List<String> predicates = new ArrayList<>();
+        predicates.add("user_id = ?");
+        if (hasCursor) {
+            predicates.add(older ? "(timestamp, id) < (?, ?)" : "(timestamp, id) > (?, ?)");
+        }
+        if (filter.type() != null) {
+            predicates.add("type = ?");
+        }
+        if (filter.minCents() != null) {
+            predicates.add("amount_cents >= ?");
+        }
+        if (filter.maxCents() != null) {
+            predicates.add("amount_cents <= ?");
+        }
+        if (filter.from() != null) {
+            predicates.add("timestamp >= ?");
+        }
+        if (filter.to() != null) {
+            predicates.add("timestamp < ?");
+        }
+        if (filter.notesContains() != null) {
+            predicates.add("notes LIKE ? ESCAPE '\\'");
+        }
+        sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        sql.append(older ? " ORDER BY timestamp DESC, id DESC" : " ORDER BY timestamp ASC, id ASC");
+        return sql.append(" LIMIT ?").toString();
+    }
+
+    private static List<Row> fetch(Ledger ledger, Filter filter, Cursor cursor, boolean older, int limit)
+            throws SQLException {
+        List<Row> rows = new ArrayList<>(limit);
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(sql(filter, cursor != null, older));
+            int index = 1;
+            pstmt.setLong(index++, ledger.userId());
+            if (cursor != null) {
+                pstmt.setString(index++, cursor.timestamp());
+                pstmt.setLong(index++, cursor.id());
+            }
+            if (filter.type() != null) {
+                pstmt.setString(index++, filter.type());
+            }
+            if (filter.minCents() != null) {
+                pstmt.setLong(index++, filter.minCents());
+            }
+            if (filter.maxCents() != null) {
+                pstmt.setLong(index++, filter.maxCents());
+            }
+            if (filter.from() != null) {
+                pstmt.setString(index++, filter.from().toString());
+            }
+            if (filter.to() != null) {
+                pstmt.setString(index++, filter.to().plusDays(1).toString());
+            }
+            if (filter.notesContains() != null) {
+                pstmt.setString(index++, "%" + escapeLike(filter.notesContains()) + "%");
+            }
+            pstmt.setInt(index, limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(new Row(rs.getLong("id"), rs.getString("type"), rs.getLong("amount_cents"),
+                            rs.getString("notes"), rs.getString("timestamp"), rs.getString("category")));
+                }
+            }
+
+            // A full page of hot rows bounds how far into the archive the page can reach
+            int bound = rows.size() == limit ? TransactionStore.yearMonth(rows.get(limit - 1).timestamp()) : -1;
+            List<Row> archived = TransactionArchive.page(conn, ledger, filter, cursor, older, limit, bound);
+            if (!archived.isEmpty()) {
+                rows.addAll(archived);
+                rows.sort(older ? NEWEST_FIRST : NEWEST_FIRST.reversed());
+                if (rows.size() > limit) {
+                    rows.subList(limit, rows.size()).clear();
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,484 @@
+package expense;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write path for the transactions table. Every insert, edit and delete goes through here so the
+ * derived date columns and the {@code monthly_totals} and {@code daily_totals} rollups are updated
+ * in the same transaction as the row itself. Methods without a {@link Ledger} act on
+ * {@link Ledger#shared()}; edits and deletes only see rows of the given ledger. Expense changes
+ * are also passed to {@link BudgetAlerts}, whose alerts fire once the write has committed, and
+ * committed writes to {@link SpendingMonitor}.
+ */
+public final class TransactionStore {
+    public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String INSERT_SQL = """
+                                             INSERT INTO transactions(type, amount_cents, notes, timestamp, epoch_day, year_month, user_id, category)
+                                             VALUES(?, ?, ?, ?, ?, ?, ?, ?)
+                                             """;
+    private static final String INSERT_RETURNING_SQL = INSERT_SQL + " RETURNING id";
+    private static final String SELECT_FOR_CHANGE_SQL = """
+                                                        SELECT type, amount_cents, year_month, epoch_day, category
+                                                        FROM transactions
+                                                        WHERE id = ? AND user_id = ?
+                                                        """;
+    private static final String UPDATE_SQL = "UPDATE transactions SET amount_cents = ?, notes = ? WHERE id = ?";
+    private static final String DELETE_SQL = "DELETE FROM transactions WHERE id = ?";
+    private static final String MONTH_ROLLUP_ADD_SQL = """
+                                                       INSERT INTO monthly_totals(user_id, year_month, type, total_cents, count)
+                                                       VALUES(?, ?, ?, ?, ?)
+                                                       ON CONFLICT(user_id, year_month, type)
+                                                       DO UPDATE SET total_cents = total_cents + excluded.total_cents, count = count + excluded.count
+                                                       """;
+    private static final String MONTH_ROLLUP_PRUNE_SQL = "DELETE FROM monthly_totals WHERE user_id = ? AND year_month = ? AND type = ? AND count <= 0";
+    private static final String DAY_ROLLUP_ADD_SQL = """
+                                                     INSERT INTO daily_totals(user_id, epoch_day, type, total_cents, count)
+                                                     VALUES(?, ?, ?, ?, ?)
+                                                     ON CONFLICT(user_id, epoch_day, type)
+                                                     DO UPDATE SET total_cents = total_cents + excluded.total_cents, count = count + excluded.count
+                                                     """;
+    private static final String JOURNAL_APPLIED_SQL = """
+                                                      INSERT INTO journal_applied(user_id, seq) VALUES(?, ?)
+                                                      ON CONFLICT(user_id) DO UPDATE SET seq = MAX(seq, excluded.seq)
+                                                      """;
+    private static final String MONTH_VERSION_SQL = """
+                                                    INSERT INTO month_versions(user_id, year_month, version) VALUES(?, ?, 1)
+                                                    ON CONFLICT(user_id, year_month) DO UPDATE SET version = version + 1
+                                                    """;
+    private static final String DAY_ROLLUP_PRUNE_SQL = "DELETE FROM daily_totals WHERE user_id = ? AND epoch_day = ? AND type = ? AND count <= 0";
+
+    private TransactionStore() {
+    }
+
+    public static String now() {
+        return LocalDateTime.now(ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+    }
+
+    /** Inserts one transaction stamped with the current time and returns its id. Amounts are in cents. */
+    public static long insert(String type, long amountCents, String notes) throws SQLException {
+        return insert(type, amountCents, notes, now());
+    }
+
+    public static long insert(String type, long amountCents, String notes, String timestamp) throws SQLException {
+        return insert(Ledger.shared(), type, amountCents, notes, timestamp);
+    }
+
+    public static long insert(Ledger ledger, String type, long amountCents, String notes, String timestamp)
+            throws SQLException {
+        return insert(ledger, type, amountCents, notes, timestamp, null);
+    }
+
+    /** As above, with an optional category (null or blank for none). */
+    public static long insert(Ledger ledger, String type, long amountCents, String notes, String timestamp,
+                              String category) throws SQLException {
+        int yearMonth = yearMonth(timestamp);
+        if (yearMonth < 0) {
+            throw new SQLException("Unsupported timestamp: " + timestamp);
+        }
+        String normalized = category(category);
+        long id;
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            id = commit(conn, ledger, () -> {
+                PreparedStatement pstmt = conn.prepare(INSERT_RETURNING_SQL);
+                long epochDay = epochDay(timestamp);
+                bindInsert(pstmt, ledger, type, amountCents, notes, timestamp, epochDay, yearMonth, normalized);
+                long inserted;
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    inserted = rs.getLong(1);
+                }
+                adjustRollup(conn, ledger, yearMonth, epochDay, type, amountCents, 1);
+                touch(conn, ledger, yearMonth);
+                return new Written<>(inserted, spend(conn, ledger, type, yearMonth, normalized, amountCents));
+            });
+        }
+        SpendingMonitor.get().observe(ledger, id, type, amountCents, timestamp, normalized);
+        return id;
+    }
+
+    /** Changes the amount and notes of a transaction; returns false if the id does not exist. */
+    public static boolean update(long id, long amountCents, String notes) throws SQLException {
+        return update(Ledger.shared(), id, amountCents, notes);
+    }
+
+    public static boolean update(Ledger ledger, long id, long amountCents, String notes) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            return commit(conn, ledger, () -> {
+                Existing old = select(conn, ledger, id);
+                if (old == null) {
+                    return new Written<>(false, null);
+                }
+                PreparedStatement pstmt = conn.prepare(UPDATE_SQL);
+                pstmt.setLong(1, amountCents);
+                pstmt.setString(2, notes);
+                pstmt.setLong(3, id);
+                pstmt.executeUpdate();
+                long delta = amountCents - old.amountCents;
+                adjustRollup(conn, ledger, old.yearMonth, old.epochDay, old.type, delta, 0);
+                touch(conn, ledger, old.yearMonth);
+                return new Written<>(true, spend(conn, ledger, old.type, old.yearMonth, old.category, delta),
+                        () -> SpendingMonitor.get().onChange(ledger, old.type, old.category, old.yearMonth, old.epochDay, delta));
+            });
+        }
+    }
+
+    /** Deletes a transaction; returns false if the id does not exist. */
+    public static boolean delete(long id) throws SQLException {
+        return delete(Ledger.shared(), id);
+    }
+
+    public static boolean delete(Ledger ledger, long id) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            return commit(conn, ledger, () -> {
+                Existing old = select(conn, ledger, id);
+                if (old == null) {
+                    return new Written<>(false, null);
+                }
+                PreparedStatement pstmt = conn.prepare(DELETE_SQL);
+                pstmt.setLong(1, id);
+                pstmt.executeUpdate();
+                adjustRollup(conn, ledger, old.yearMonth, old.epochDay, old.type, -old.amountCents, -1);
+                touch(conn, ledger, old.yearMonth);
+                return new Written<>(true, spend(conn, ledger, old.type, old.yearMonth, old.category, -old.amountCents),
+                        () -> SpendingMonitor.get().onChange(ledger, old.type, old.category, old.yearMonth, old.epochDay,
+                                -old.amountCents));
+            });
+        }
+    }
+
+    public static Batch openBatch(int batchSize) throws SQLException {
+        return openBatch(Ledger.shared(), batchSize);
+    }
+
+    public static Batch openBatch(Ledger ledger, int batchSize) throws SQLException {
+        return new Batch(ledger, batchSize);
+    }
+
+    private record Existing(String type, long amountCents, int yearMonth, long epochDay, String category) {
+    }
+
+    /** A write's result, its budget alerts, and what to tell other listeners once it has committed. */
+    private record Written<T>(T result, List<BudgetAlerts.Alert> alerts, Runnable committed) {
+        Written(T result, List<BudgetAlerts.Alert> alerts) {
+            this(result, alerts, null);
+        }
+    }
+
+    /** Runs a write in a transaction and fires the budget alerts it produced once it has committed. */
+    private static <T> T commit(Database.PooledConnection conn, Ledger ledger, Database.SqlWork<Written<T>> work)
+            throws SQLException {
+        Written<T> written;
+        try {
+            written = conn.inTransaction(work);
+        } catch (SQLException | RuntimeException e) {
+            BudgetAlerts.get().invalidate(ledger); // the counters may hold a delta that was rolled back
+            throw e;
+        }
+        BudgetAlerts.get().fire(written.alerts());
+        if (written.committed() != null) {
+            written.committed().run();
+        }
+        return written.result();
+    }
+
+    private static List<BudgetAlerts.Alert> spend(Database.PooledConnection conn, Ledger ledger, String type,
+                                                  int yearMonth, String category, long deltaCents) throws SQLException {
+        return "Expense".equals(type) ? BudgetAlerts.get().onExpense(conn, ledger, yearMonth, category, deltaCents) : null;
+    }
+
+    private static String category(String category) {
+        return category == null || category.isBlank() ? null : category.trim();
+    }
+
+    private static Existing select(Database.PooledConnection conn, Ledger ledger, long id) throws SQLException {
+        PreparedStatement pstmt = conn.prepare(SELECT_FOR_CHANGE_SQL);
+        pstmt.setLong(1, id);
+        pstmt.setLong(2, ledger.userId());
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? new Existing(rs.getString("type"), rs.getLong("amount_cents"), rs.getInt("year_month"),
+                    rs.getLong("epoch_day"), rs.getString("category")) : null;
+        }
+    }
+
+    private static void bindInsert(PreparedStatement pstmt, Ledger ledger, String type, long amountCents, String notes,
+                                   String timestamp, long epochDay, int yearMonth, String category) throws SQLException {
+        pstmt.setString(1, type);
+        pstmt.setLong(2, amountCents);
+        pstmt.setString(3, notes);
+        pstmt.setString(4, timestamp);
+        pstmt.setLong(5, epochDay);
+        pstmt.setInt(6, yearMonth);
+        pstmt.setLong(7, ledger.userId());
+        pstmt.setString(8, category);
+    }
+
+    private static void adjustRollup(Database.PooledConnection conn, Ledger ledger, int yearMonth, long epochDay,
+                                     String type, long centsDelta, int countDelta) throws SQLException {
+        PreparedStatement month = conn.prepare(MONTH_ROLLUP_ADD_SQL);
+        bindRollup(month, ledger, yearMonth, type, centsDelta, countDelta);
+        month.executeUpdate();
+        PreparedStatement day = conn.prepare(DAY_ROLLUP_ADD_SQL);
+        bindRollup(day, ledger, epochDay, type, centsDelta, countDelta);
+        day.executeUpdate();
+        if (countDelta < 0) {
+            PreparedStatement prune = conn.prepare(MONTH_ROLLUP_PRUNE_SQL);
+            prune.setLong(1, ledger.userId());
+            prune.setInt(2, yearMonth);
+            prune.setString(3, type);
+            prune.executeUpdate();
+            prune = conn.prepare(DAY_ROLLUP_PRUNE_SQL);
+            prune.setLong(1, ledger.userId());
+            prune.setLong(2, epochDay);
+            prune.setString(3, type);
+            prune.executeUpdate();
+        }
+    }
+
+    /** Bumps the version of a ledger's month, which invalidates cached reports covering it. */
+    private static void touch(Database.PooledConnection conn, Ledger ledger, int yearMonth) throws SQLException {
+        PreparedStatement pstmt = conn.prepare(MONTH_VERSION_SQL);
+        pstmt.setLong(1, ledger.userId());
+        pstmt.setInt(2, yearMonth);
+        pstmt.executeUpdate();
+    }
+
+    private static void bindRollup(PreparedStatement pstmt, Ledger ledger, long bucket, String type,
+                                   long centsDelta, long countDelta) throws SQLException {
+        pstmt.setLong(1, ledger.userId());
+        pstmt.setLong(2, bucket);
+        pstmt.setString(3, type);
+        pstmt.setLong(4, centsDelta);
+        pstmt.setLong(5, countDelta);
+    }
+
+    /**
+     * Parses the year_month key (e.g. 202501) out of a "yyyy-MM-dd[ HH:mm:ss]" timestamp without
+     * allocating. Returns -1 if the text does not start with a date.
+     */
+    public static int yearMonth(CharSequence timestamp) {
+        if (!isDate(timestamp)) {
+            return -1;
+        }
+        return digits(timestamp, 0, 4) * 100 + digits(timestamp, 5, 7);
+    }
+
+    /** Days since 1970-01-01 for a "yyyy-MM-dd[ HH:mm:ss]" timestamp, or Long.MIN_VALUE if invalid. */
+    public static long epochDay(CharSequence timestamp) {
+        if (!isDate(timestamp)) {
+            return Long.MIN_VALUE;
+        }
+        return epochDay(digits(timestamp, 0, 4), digits(timestamp, 5, 7), digits(timestamp, 8, 10));
+    }
+
+    // Howard Hinnant's days_from_civil
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static boolean isDate(CharSequence s) {
+        if (s == null || s.length() < 10 || s.charAt(4) != '-' || s.charAt(7) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 7 && (s.charAt(i) < '0' || s.charAt(i) > '9')) {
+                return false;
+            }
+        }
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        return month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    private static int digits(CharSequence s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Bulk insert session: rows are added with addBatch and written with executeBatch, committing
+     * every {@code batchSize} rows. Rollup deltas are accumulated per chunk and applied once per
+     * (month, type) and (day, type) at commit time instead of once per row; expense deltas reach
+     * {@link BudgetAlerts} the same way, once per (month, category).
+     */
+    public static final class Batch implements AutoCloseable {
+        private final int batchSize;
+        private final Ledger ledger;
+        private final Database.PooledConnection conn;
+        private final PreparedStatement pstmt;
+        private final Map<RollupKey, long[]> monthRollup = new HashMap<>();
+        private final Map<RollupKey, long[]> dayRollup = new HashMap<>();
+        private final Map<SpendKey, long[]> expenses = new HashMap<>();
+        private final List<SpendingMonitor.Observation> observed = new ArrayList<>();
+        private int pending;
+        private long rows;
+        private long journalSeq = -1;
+
+        private Batch(Ledger ledger, int batchSize) throws SQLException {
+            this.batchSize = Math.max(1, batchSize);
+            this.ledger = ledger;
+            this.conn = ledger.acquire();
+            try {
+                conn.setAutoCommit(false);
+                this.pstmt = conn.prepare(INSERT_SQL);
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+
+        /** Queues one row; returns false (and skips it) if the timestamp is not a valid date. */
+        public boolean add(String type, long amountCents, String notes, String timestamp) throws SQLException {
+            return add(type, amountCents, notes, timestamp, null);
+        }
+
+        public boolean add(String type, long amountCents, String notes, String timestamp, String category)
+                throws SQLException {
+            if (timestamp == null) {
+                timestamp = now();
+            }
+            int yearMonth = yearMonth(timestamp);
+            if (yearMonth < 0) {
+                return false;
+            }
+            long epochDay = epochDay(timestamp);
+            String normalized = category(category);
+            bindInsert(pstmt, ledger, type, amountCents, notes, timestamp, epochDay, yearMonth, normalized);
+            pstmt.addBatch();
+            accumulate(monthRollup, yearMonth, type, amountCents);
+            accumulate(dayRollup, epochDay, type, amountCents);
+            if ("Expense".equals(type)) {
+                expenses.computeIfAbsent(new SpendKey(yearMonth, normalized), k -> new long[1])[0] += amountCents;
+            }
+            if (SpendingMonitor.enabled()) {
+                observed.add(new SpendingMonitor.Observation(type, amountCents, timestamp, normalized));
+            }
+            rows++;
+            if (++pending >= batchSize) {
+                flush();
+            }
+            return true;
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        /**
+         * Records with the next flush that {@link TransactionJournal} entries up to {@code seq} are
+         * in this ledger, so the rows and the mark commit or roll back together.
+         */
+        void journaled(long seq) {
+            journalSeq = seq;
+        }
+
+        /**
+         * The batch's connection, for statements that must commit or roll back with its rows. They
+         * commit at the next {@link #flush()} that has rows to write; call {@code commit()} on it
+         * when none were added.
+         */
+        Database.PooledConnection connection() {
+            return conn;
+        }
+
+        public void flush() throws SQLException {
+            if (pending == 0) {
+                return;
+            }
+            List<BudgetAlerts.Alert> alerts = new ArrayList<>();
+            try {
+                pstmt.executeBatch();
+                touchMonths();
+                applyRollup(MONTH_ROLLUP_ADD_SQL, monthRollup);
+                applyRollup(DAY_ROLLUP_ADD_SQL, dayRollup);
+                for (Map.Entry<SpendKey, long[]> entry : expenses.entrySet()) {
+                    List<BudgetAlerts.Alert> fired = BudgetAlerts.get().onExpense(conn, ledger,
+                            entry.getKey().yearMonth(), entry.getKey().category(), entry.getValue()[0]);
+                    if (fired != null) {
+                        alerts.addAll(fired);
+                    }
+                }
+                expenses.clear();
+                if (journalSeq >= 0) {
+                    PreparedStatement mark = conn.prepare(JOURNAL_APPLIED_SQL);
+                    mark.setLong(1, ledger.userId());
+                    mark.setLong(2, journalSeq);
+                    mark.executeUpdate();
+                    journalSeq = -1;
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                BudgetAlerts.get().invalidate(ledger);
+                throw e;
+            }
+            pending = 0;
+            BudgetAlerts.get().fire(alerts);
+            SpendingMonitor.get().observe(ledger, observed);
+            observed.clear();
+        }
+
+        private static void accumulate(Map<RollupKey, long[]> rollup, long bucket, String type, long amountCents) {
+            long[] delta = rollup.computeIfAbsent(new RollupKey(bucket, type), k -> new long[2]);
+            delta[0] += amountCents;
+            delta[1]++;
+        }
+
+        private void touchMonths() throws SQLException {
+            PreparedStatement touch = conn.prepare(MONTH_VERSION_SQL);
+            for (long month : monthRollup.keySet().stream().mapToLong(RollupKey::bucket).distinct().toArray()) {
+                touch.setLong(1, ledger.userId());
+                touch.setInt(2, (int) month);
+                touch.addBatch();
+            }
+            touch.executeBatch();
+        }
+
+        private void applyRollup(String sql, Map<RollupKey, long[]> rollup) throws SQLException {
+            PreparedStatement upsert = conn.prepare(sql);
+            for (Map.Entry<RollupKey, long[]> entry : rollup.entrySet()) {
+                bindRollup(upsert, ledger, entry.getKey().bucket(), entry.getKey().type(), entry.getValue()[0], entry.getValue()[1]);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+            rollup.clear();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (pending > 0) {
+                    // Only reached when the caller failed part-way; drop the incomplete chunk
+                    pstmt.clearBatch();
+                    expenses.clear();
+                    observed.clear();
+                }
+                // Leaving manual-commit mode would commit whatever is uncommitted on connection()
+                conn.rollback();
+                conn.setAutoCommit(true);
+            } finally {
+                conn.close();
+            }
+        }
+
+        private record RollupKey(long bucket, String type) {
+        }
+
+        private record SpendKey(int yearMonth, String category) {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.Scanner;
+
+public class UserAuthentication {
+
+    public static void main(String[] args) {
+        createUsersTable();
+        Scanner scanner = new Scanner(System.in);
+        System.out.println("Welcome! Choose an option: ");
+        System.out.println("1. Register");
+        System.out.println("2. Login");
+        System.out.println("3. Import users from CSV");
+        int choice = scanner.nextInt();
+        scanner.nextLine(); // Consume newline
+
+        if (choice == 1) {
+            registerUser(scanner);
+        } else if (choice == 2) {
+            loginUser(scanner);
+        } else if (choice == 3) {
+            importUsers(scanner);
+        } else {
+            System.out.println("Invalid option. Exiting...");
+        }
+        scanner.close();
+    }
+
+    static void createUsersTable() {
+        String sql = """
+                     CREATE TABLE IF NOT EXISTS users (
+                         id INTEGER PRIMARY KEY AUTOINCREMENT,
+                         username TEXT UNIQUE NOT NULL,
+                         password TEXT NOT NULL
+                     );
+                     """;
+        try (Database.PooledConnection conn = Database.users().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            System.err.println("Error creating table: " + e.getMessage());
+        }
+    }
+
+    private static void registerUser(Scanner scanner) {
+        System.out.print("Enter username: ");
+        String username = scanner.nextLine();
+        
+        if (username.isBlank()) {
+            System.out.println("Username cannot be empty.");
+            return;
+        }
+
+        PasswordPolicy policy = PasswordPolicy.get();
+        System.out.print("Enter password (" + policy.describe() + "): ");
+        String password = scanner.nextLine();
+
+        int violations = policy.violations(password);
+        if (violations != 0) {
+            System.out.println("Password does not meet the criteria: " + policy.describe(violations));
+            return;
+        }
+
+        switch (AuthService.get().register(username, password).join()) {
+            case SUCCESS -> System.out.println("Registration successful!");
+            case INVALID -> System.out.println("Username is already taken.");
+            case BUSY -> System.out.println("Too many requests right now. Please try again.");
+            default -> System.err.println("Error during registration. Please try again.");
+        }
+    }
+
+    private static void loginUser(Scanner scanner) {
+        System.out.print("Enter username: ");
+        String username = scanner.nextLine();
+        System.out.print("Enter password: ");
+        String password = scanner.nextLine();
+
+        switch (AuthService.get().login(username, password, "console").join()) {
+            case SUCCESS -> System.out.println("Login successful! Welcome, " + username);
+            case INVALID -> System.out.println("Invalid username or password.");
+            case THROTTLED -> System.out.println("Too many login attempts. Please wait and try again.");
+            case BUSY -> System.out.println("Too many requests right now. Please try again.");
+            default -> System.err.println("Error during login. Please try again.");
+        }
+    }
+
+    private static void importUsers(Scanner scanner) {
+        System.out.print("Enter path to CSV file (username,password): ");
+        String path = scanner.nextLine().trim();
+        try {
+            System.out.println(UserProvisioning.importCsv(Path.of(path), TransactionImporter.DEFAULT_BATCH_SIZE));
+        } catch (IOException | SQLException e) {
+            System.err.println("Error importing users: " + e.getMessage());
+        }
+    }
+}
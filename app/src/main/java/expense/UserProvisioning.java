@@ -0,0 +1,198 @@
+package expense;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bulk user import for HR exports. Rows are read in chunks; each chunk's passwords are checked
+ * against {@link PasswordPolicy}, hashed in parallel on a fork-join pool, and the users are then
+ * written in one transaction. Usernames that already exist are left untouched.
+ *
+ * CSV columns: username, password (header optional). Quoted fields may contain commas and
+ * doubled quotes but not line breaks.
+ *
+ * Uses the BCrypt cost and thread count of {@link AuthService.Config#fromSystemProperties()}.
+ */
+public final class UserProvisioning {
+    private static final String INSERT_SQL = "INSERT OR IGNORE INTO users(username, password) VALUES(?, ?)";
+
+    // A BCrypt hash is milliseconds of work, so split down to single passwords
+    private static final int HASH_THRESHOLD = 1;
+
+    private UserProvisioning() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: UserProvisioning <users.csv> [batchSize]");
+            return;
+        }
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : TransactionImporter.DEFAULT_BATCH_SIZE;
+        UserAuthentication.createUsersTable();
+        try {
+            System.out.println(importCsv(Path.of(args[0]), batchSize));
+        } catch (IOException | SQLException e) {
+            System.err.println("Error importing users: " + e.getMessage());
+        }
+    }
+
+    public record Result(long created, long existing, long rejected, long elapsedNanos) {
+        public double usersPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : created * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Created %d users (%d already existed, %d rejected) in %.2f s (%.1f users/sec)",
+                    created, existing, rejected, elapsedNanos / 1e9, usersPerSecond());
+        }
+    }
+
+    public static Result importCsv(Path file, int batchSize) throws IOException, SQLException {
+        AuthService.Config config = AuthService.Config.fromSystemProperties();
+        ForkJoinPool pool = new ForkJoinPool(config.threads());
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importRows(reader, batchSize, PasswordPolicy.get(), config.cost(), pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static Result importRows(BufferedReader reader, int batchSize, PasswordPolicy policy, int cost,
+                             ForkJoinPool pool) throws IOException, SQLException {
+        long start = System.nanoTime();
+        long created = 0;
+        long existing = 0;
+        long rejected = 0;
+        String[] usernames = new String[batchSize];
+        String[] secrets = new String[batchSize];
+        List<String> fields = new ArrayList<>(2);
+        int size = 0;
+        boolean first = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            split(line, fields);
+            String username = fields.get(0).strip();
+            if (first && username.equalsIgnoreCase("username")) {
+                first = false;
+                continue; // header
+            }
+            first = false;
+            if (username.isEmpty() || fields.size() < 2 || !policy.isValid(fields.get(1))) {
+                rejected++;
+                continue;
+            }
+            usernames[size] = username;
+            secrets[size] = fields.get(1);
+            if (++size == batchSize) {
+                int inserted = writeChunk(usernames, secrets, size, cost, pool);
+                created += inserted;
+                existing += size - inserted;
+                size = 0;
+            }
+        }
+        if (size > 0) {
+            int inserted = writeChunk(usernames, secrets, size, cost, pool);
+            created += inserted;
+            existing += size - inserted;
+        }
+        return new Result(created, existing, rejected, System.nanoTime() - start);
+    }
+
+    /** Hashes {@code secrets[0..size)} in place and inserts the chunk; returns the number of new users. */
+    private static int writeChunk(String[] usernames, String[] secrets, int size, int cost, ForkJoinPool pool)
+            throws SQLException {
+        pool.invoke(new HashTask(secrets, 0, size, cost));
+        try (Database.PooledConnection conn = Database.users().acquire()) {
+            int[] counts = conn.inTransaction(() -> {
+                PreparedStatement pstmt = conn.prepare(INSERT_SQL);
+                for (int i = 0; i < size; i++) {
+                    pstmt.setString(1, usernames[i]);
+                    pstmt.setString(2, secrets[i]);
+                    pstmt.addBatch();
+                }
+                return pstmt.executeBatch();
+            });
+            int inserted = 0;
+            for (int count : counts) {
+                inserted += count > 0 ? 1 : 0;
+            }
+            return inserted;
+        } finally {
+            Arrays.fill(usernames, 0, size, null);
+            Arrays.fill(secrets, 0, size, null);
+        }
+    }
+
+    /** Replaces each password in {@code secrets[from..to)} with its BCrypt hash. */
+    private static final class HashTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] secrets;
+        private final int from;
+        private final int to;
+        private final int cost;
+
+        HashTask(String[] secrets, int from, int to, int cost) {
+            this.secrets = secrets;
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= HASH_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    secrets[i] = BCrypt.hashpw(secrets[i], BCrypt.gensalt(cost));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new HashTask(secrets, from, mid, cost), new HashTask(secrets, mid, to, cost));
+        }
+    }
+
+    /** Splits one CSV line into {@code fields}, handling quoted fields and doubled quotes. */
+    static void split(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+}
@@ -0,0 +1,57 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AuthServiceTest {
+    private static final int COST = 4;
+
+    @BeforeEach
+    void reset() throws SQLException {
+        if (!Database.USERS_URL.contains("test-data")) {
+            throw new IllegalStateException("Tests must run against target/test-data, not " + Database.USERS_URL);
+        }
+        UserAuthentication.createUsersTable();
+        try (Database.PooledConnection conn = Database.users().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM users");
+        }
+    }
+
+    @Test
+    void logsInWhenTheRehashCannotBeWritten() throws SQLException {
+        AuthService old = new AuthService(new AuthService.Config(1, 4, COST, 5, 1, 5, 1), Database.users());
+        assertEquals(AuthService.Outcome.SUCCESS, old.register("alice", "correct horse").join());
+
+        // A writer holding users.db past the busy timeout makes the rehash to the new cost fail
+        AuthService upgraded = new AuthService(new AuthService.Config(1, 4, COST + 1, 5, 1, 5, 1), Database.users());
+        try (Connection writer = Database.connect(Database.USERS_URL);
+             Statement stmt = writer.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+            assertEquals(AuthService.Outcome.SUCCESS, upgraded.login("alice", "correct horse", "10.0.0.1").join());
+            stmt.execute("ROLLBACK");
+        }
+        assertEquals(0, upgraded.metrics().rehashed());
+        assertEquals(AuthService.Outcome.INVALID, upgraded.login("alice", "wrong", "10.0.0.1").join());
+    }
+
+    @Test
+    void throttleStaysBoundedUnderSpraying() {
+        AuthService.Throttle throttle = new AuthService.Throttle(1, 1e-9);
+        assertTrue(throttle.tryAcquire("known"));
+        for (int i = 0; i < AuthService.MAX_BUCKETS + 50_000; i++) {
+            throttle.tryAcquire("spray-" + i);
+        }
+        assertTrue(throttle.size() <= AuthService.MAX_BUCKETS, () -> throttle.size() + " buckets");
+        // Known keys are still throttled by their own bucket; new ones wait for room
+        assertFalse(throttle.tryAcquire("known"));
+        assertFalse(throttle.tryAcquire("newcomer"));
+    }
+}
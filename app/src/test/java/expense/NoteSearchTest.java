@@ -0,0 +1,34 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class NoteSearchTest {
+    private static final Ledger ALICE = Ledger.forUser(3);
+    private static final Ledger BOB = Ledger.forUser(4);
+
+    @BeforeAll
+    static void seed() throws SQLException, IOException {
+        TestDatabases.reset();
+        TransactionStore.insert(ALICE, "Expense", 1_000, "dentist visit", "2024-05-10 12:00:00");
+        TransactionStore.insert(BOB, "Expense", 2_000, "dentist visit", "2024-05-11 12:00:00");
+        TransactionStore.insert(BOB, "Expense", 3_000, "private clinic", "2024-05-12 12:00:00");
+    }
+
+    @Test
+    void findsOnlyTheLedgersOwnNotes() throws SQLException {
+        assertEquals(List.of(1_000L), amounts(NoteSearch.search(ALICE, "dentist", 50)));
+        assertEquals(List.of(2_000L), amounts(NoteSearch.search(BOB, "dentist", 50)));
+        assertEquals(List.of(), amounts(NoteSearch.search(ALICE, "clinic", 50)));
+        assertEquals(List.of(), amounts(NoteSearch.search(Ledger.shared(), "dentist", 50)));
+    }
+
+    private static List<Long> amounts(List<TransactionPager.Row> rows) {
+        return rows.stream().map(TransactionPager.Row::amountCents).toList();
+    }
+}
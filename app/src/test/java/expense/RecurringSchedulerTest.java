@@ -0,0 +1,228 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link RecurringScheduler} driven by a simulated clock: catching up after downtime, and never
+ * posting an occurrence twice across restarts, a second scheduler on the same file, or a rules
+ * table set back to an older state, over ten simulated years. {@code RecurringSimulation} in the
+ * benchmarks runs the same checks with more rules.
+ */
+class RecurringSchedulerTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+    private static final int USERS = 3;
+    private static final int YEARS = 10;
+    private static final int MAX_RULES = 200;
+
+    /** A clock whose instant the test sets. */
+    private static final class SimulatedClock extends Clock {
+        private volatile Instant now;
+
+        SimulatedClock(LocalDate day) {
+            set(day);
+        }
+
+        void set(LocalDate day) {
+            now = day.atTime(12, 0).toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private record Planned(Ledger ledger, String notes, Recurrence recurrence) {
+    }
+
+    @BeforeEach
+    void reset() throws SQLException, IOException {
+        TestDatabases.reset();
+    }
+
+    @Test
+    void catchesUpAfterDowntimeWithOneCommitPerLedger() throws SQLException {
+        SimulatedClock clock = new SimulatedClock(FIRST_DAY);
+        List<Planned> planned = List.of(
+                new Planned(Ledger.forUser(1), "rent", Recurrence.parse("FREQ=MONTHLY;BYMONTHDAY=1", FIRST_DAY)),
+                new Planned(Ledger.forUser(1), "gym", Recurrence.parse("FREQ=MONTHLY;BYMONTHDAY=-1", FIRST_DAY)),
+                new Planned(Ledger.forUser(2), "salary", Recurrence.parse("FREQ=WEEKLY;INTERVAL=2;BYDAY=FR", FIRST_DAY)),
+                new Planned(Ledger.forUser(2), "pills", Recurrence.parse("FREQ=DAILY;INTERVAL=3;COUNT=10", FIRST_DAY)));
+        try (RecurringScheduler scheduler = new RecurringScheduler(clock)) {
+            for (Planned rule : planned) {
+                scheduler.addRule(rule.ledger(), "Expense", 1_000, rule.notes(), null, rule.recurrence());
+            }
+            scheduler.advance();
+            long commits = scheduler.stats().commits();
+
+            LocalDate lastDay = FIRST_DAY.plusDays(120);
+            clock.set(lastDay);
+            scheduler.advance();
+            assertEquals(commits + 2, scheduler.stats().commits(), "one commit per ledger for the whole gap");
+            assertEquals(expected(planned, lastDay), actual());
+        }
+    }
+
+    @Test
+    void postsEachOccurrenceOnceThroughRestartsAndRewinds() throws SQLException {
+        Random random = new Random(21);
+        LocalDate lastDay = FIRST_DAY.plusYears(YEARS).minusDays(1);
+        SimulatedClock clock = new SimulatedClock(FIRST_DAY);
+        RecurringScheduler scheduler = new RecurringScheduler(clock);
+        RecurringScheduler second = null;
+        List<Planned> planned = new ArrayList<>();
+        long skipped = 0;
+        int ruleCount = 0;
+        for (long day = FIRST_DAY.toEpochDay(); day <= lastDay.toEpochDay(); day++) {
+            int roll = random.nextInt(100);
+            if (roll < 2) {
+                // Downtime: the clock jumps ahead and a new scheduler catches up
+                day = Math.min(day + 1 + random.nextInt(90), lastDay.toEpochDay());
+                clock.set(LocalDate.ofEpochDay(day));
+                skipped += scheduler.stats().skipped();
+                scheduler.close();
+                scheduler = restart(clock);
+            } else if (roll < 4) {
+                // A restart from a rules table older than the ledger, as after restoring a backup of it
+                clock.set(LocalDate.ofEpochDay(day));
+                skipped += scheduler.stats().skipped();
+                scheduler.close();
+                rewind(Ledger.forUser(1 + random.nextInt(USERS)));
+                scheduler = restart(clock);
+            } else if (roll < 6 && second == null) {
+                // A second scheduler on the same file, with its own wheel
+                clock.set(LocalDate.ofEpochDay(day));
+                second = restart(clock);
+            } else if (roll < 8 && second != null) {
+                skipped += second.stats().skipped();
+                second.close();
+                second = null;
+            }
+            LocalDate today = LocalDate.ofEpochDay(day);
+            clock.set(today);
+            if (random.nextInt(12) == 0 && ruleCount < MAX_RULES) {
+                Planned rule = plan(ruleCount++, today, random);
+                scheduler.addRule(rule.ledger(), "Expense", 1_000 + random.nextInt(50_000), rule.notes(), null,
+                        rule.recurrence());
+                planned.add(rule);
+            }
+            if (second != null) {
+                loadAll(second);
+                second.advance();
+            }
+            scheduler.advance();
+        }
+        skipped += scheduler.stats().skipped();
+        scheduler.close();
+        if (second != null) {
+            skipped += second.stats().skipped();
+            second.close();
+        }
+
+        assertTrue(skipped > 0, "no occurrence was ever found already posted; the test exercised nothing");
+        assertEquals(expected(planned, lastDay), actual());
+        assertEquals(List.of(), MonthlyTotals.verify());
+    }
+
+    private static RecurringScheduler restart(Clock clock) throws SQLException {
+        RecurringScheduler scheduler = new RecurringScheduler(clock);
+        loadAll(scheduler);
+        return scheduler;
+    }
+
+    private static void loadAll(RecurringScheduler scheduler) throws SQLException {
+        for (int user = 1; user <= USERS; user++) {
+            scheduler.load(Ledger.forUser(user));
+        }
+    }
+
+    // Sets one of the ledger's rules back to before its first occurrence
+    private static void rewind(Ledger ledger) throws SQLException {
+        for (RecurringScheduler.Rule rule : RecurringScheduler.rules(ledger)) {
+            LocalDate first = rule.recurrence().occurrence(0);
+            if (rule.posted() > 0 && first != null) {
+                try (Database.PooledConnection conn = ledger.acquire()) {
+                    PreparedStatement pstmt = conn.prepare(
+                            "UPDATE recurring_rules SET next_occurrence = 0, next_due = ? WHERE id = ?");
+                    pstmt.setLong(1, first.toEpochDay());
+                    pstmt.setLong(2, rule.id());
+                    pstmt.executeUpdate();
+                }
+                return;
+            }
+        }
+    }
+
+    private static Planned plan(int i, LocalDate today, Random random) {
+        LocalDate start = today.minusDays(random.nextInt(60));
+        String rule = switch (i % 5) {
+            case 0 -> "FREQ=MONTHLY;BYMONTHDAY=1";
+            case 1 -> "FREQ=WEEKLY;INTERVAL=2;BYDAY=FR";
+            case 2 -> "FREQ=MONTHLY;BYMONTHDAY=-1";
+            case 3 -> "FREQ=WEEKLY;BYDAY=SA;UNTIL=" + start.plusDays(random.nextInt(400)).toString().replace("-", "");
+            default -> "FREQ=DAILY;INTERVAL=" + (1 + random.nextInt(5)) + ";COUNT=" + (1 + random.nextInt(100));
+        };
+        return new Planned(Ledger.forUser(1 + i % USERS), "rec-" + i, Recurrence.parse(rule, start));
+    }
+
+    // Each rule's occurrences up to lastDay, by ledger and notes
+    private static Map<Long, Map<String, List<LocalDate>>> expected(List<Planned> planned, LocalDate lastDay) {
+        Map<Long, Map<String, List<LocalDate>>> expected = new HashMap<>();
+        for (Planned rule : planned) {
+            List<LocalDate> dates = new ArrayList<>();
+            for (long n = 0; ; n++) {
+                LocalDate date = rule.recurrence().occurrence(n);
+                if (date == null || date.isAfter(lastDay)) {
+                    break;
+                }
+                dates.add(date);
+            }
+            if (!dates.isEmpty()) {
+                expected.computeIfAbsent(rule.ledger().userId(), k -> new HashMap<>()).put(rule.notes(), dates);
+            }
+        }
+        return expected;
+    }
+
+    private static Map<Long, Map<String, List<LocalDate>>> actual() throws SQLException {
+        Map<Long, Map<String, List<LocalDate>>> actual = new HashMap<>();
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             ResultSet rs = conn.prepare("SELECT user_id, notes, date(timestamp) FROM transactions ORDER BY user_id, notes, timestamp")
+                     .executeQuery()) {
+            while (rs.next()) {
+                actual.computeIfAbsent(rs.getLong(1), k -> new HashMap<>())
+                        .computeIfAbsent(rs.getString(2), k -> new ArrayList<>())
+                        .add(LocalDate.parse(rs.getString(3)));
+            }
+        }
+        return actual;
+    }
+}
@@ -0,0 +1,69 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link ReportCache} with a limit smaller than one report, in a child JVM since the limit is read
+ * when the class loads: a report must still be served whole, and stay cached until another evicts it.
+ */
+class ReportCacheTest {
+    private static final Path DIR = Path.of("target", "test-data", "report-cache-test");
+
+    @BeforeEach
+    void reset() throws SQLException, IOException {
+        TestDatabases.reset();
+        for (int i = 0; i < 50; i++) {
+            TransactionStore.insert(Ledger.shared(), "Expense", 1_000 + i, "row " + i, "2024-05-10 12:00:00");
+        }
+        if (Files.exists(DIR)) {
+            try (Stream<Path> files = Files.list(DIR)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void servesReportsLargerThanTheLimit() throws Exception {
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dexpense.db.financeUrl=jdbc:sqlite:" + Path.of(Database.FINANCE_URL.substring("jdbc:sqlite:".length())).toAbsolutePath(),
+                "-Dexpense.report.cacheDir=" + DIR.toAbsolutePath(),
+                "-Dexpense.report.cacheMaxBytes=500",
+                Child.class.getName())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        List<String> lines = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        assertEquals(0, process.waitFor());
+        assertEquals(List.of("miss 50", "hit 50", "miss 0", "miss 50"), lines);
+    }
+
+    /** Prints "hit" or "miss" and the number of rows in the CSV for each request. */
+    static final class Child {
+        public static void main(String[] args) throws Exception {
+            ReportFilter other = new ReportFilter(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31), null);
+            for (ReportFilter filter : new ReportFilter[]{ReportFilter.ALL, ReportFilter.ALL, other, ReportFilter.ALL}) {
+                try (ReportCache.Report report = ReportCache.get(Ledger.shared(), filter, EnumSet.of(ReportPipeline.Format.CSV))) {
+                    String csv = new String(Channels.newInputStream(report.files().get(ReportPipeline.Format.CSV)).readAllBytes(),
+                            StandardCharsets.UTF_8);
+                    long rows = csv.lines().filter(line -> line.contains("row ")).count();
+                    System.out.println((report.cached() ? "hit " : "miss ") + rows);
+                }
+            }
+        }
+    }
+}
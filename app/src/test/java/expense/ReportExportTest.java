@@ -0,0 +1,89 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exports a generated ledger in a child JVM whose heap is capped at 64 MB. By default it has 100k
+ * rows, which checks every format end to end in seconds. {@code -Dexpense.test.exportRows=5000000}
+ * makes the CSV, HTML and PDF reports each hundreds of MB, so an export that held a report or its
+ * rows in memory would fail with OutOfMemoryError; that run takes minutes and a GB of disk.
+ */
+class ReportExportTest {
+    private static final int ROWS = Integer.getInteger("expense.test.exportRows", 100_000);
+    private static final String MAX_HEAP = "-Xmx64m";
+
+    @BeforeAll
+    static void seed() throws SQLException, IOException {
+        TestDatabases.reset();
+        // One statement rather than TransactionStore batches, which take minutes at this size;
+        // the rollups are rebuilt afterwards
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            conn.inTransaction(() -> {
+                PreparedStatement pstmt = conn.prepare("""
+                        INSERT INTO transactions(type, amount_cents, notes, timestamp, epoch_day, year_month, user_id, category)
+                        WITH RECURSIVE n(i) AS (SELECT 0 UNION ALL SELECT i + 1 FROM n WHERE i < ? - 1),
+                             rows(i, ts) AS (SELECT i, date('2015-01-01', '+' || (i * 3650 / ?) || ' days')
+                                                       || printf(' %02d:%02d:00', i % 24, i % 60) FROM n)
+                        SELECT CASE WHEN i % 10 = 0 THEN 'Income' ELSE 'Expense' END, 100 + i % 50000, 'row ' || i, ts,
+                               CAST(strftime('%s', ts) AS INTEGER) / 86400, CAST(strftime('%Y%m', ts) AS INTEGER), 0,
+                               CASE i % 3 WHEN 0 THEN 'Groceries' WHEN 1 THEN 'Dining' ELSE 'Transport' END
+                        FROM rows
+                        """);
+                pstmt.setInt(1, ROWS);
+                pstmt.setInt(2, ROWS);
+                return pstmt.executeUpdate();
+            });
+        }
+        MonthlyTotals.rebuild();
+    }
+
+    @Test
+    void exportsEveryFormatInBoundedHeap() throws IOException, InterruptedException {
+        Path dir = Files.createDirectories(Path.of("target", "test-data", "export"));
+        List<String> output = exportInChildJvm(dir);
+        for (ReportPipeline.Format format : ReportPipeline.Format.values()) {
+            assertTrue(output.contains("Report saved as BudgetReport." + format.extension() + " (" + ROWS + " transactions)"),
+                    output::toString);
+        }
+        if (ROWS >= 5_000_000) {
+            assertTrue(Files.size(dir.resolve("BudgetReport.csv")) > 64L * 1024 * 1024, "the CSV report should outgrow the heap");
+        }
+    }
+
+    private static List<String> exportInChildJvm(Path dir) throws IOException, InterruptedException {
+        Path log = dir.resolve("export.log");
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                MAX_HEAP, "-cp", System.getProperty("java.class.path"),
+                "-Dexpense.db.financeUrl=jdbc:sqlite:" + Path.of(Database.FINANCE_URL.substring("jdbc:sqlite:".length())).toAbsolutePath(),
+                "-Dexpense.report.cache=false",
+                Export.class.getName())
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        assertTrue(process.waitFor(30, TimeUnit.MINUTES), "export timed out");
+        List<String> output = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(0, process.exitValue(), () -> String.join("\n", output));
+        return output;
+    }
+
+    /** Runs in the child JVM: text, PDF, CSV and HTML from one scan. */
+    static final class Export {
+        public static void main(String[] args) {
+            ReportGenerator.exportReport(ReportFilter.ALL, EnumSet.allOf(ReportPipeline.Format.class));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ReportGeneratorTest {
+    private static final Ledger OTHER = Ledger.forUser(7);
+
+    @BeforeAll
+    static void seed() throws SQLException, IOException {
+        TestDatabases.reset();
+        TransactionStore.insert(Ledger.shared(), "Expense", 1_000, "shared", "2024-05-10 12:00:00");
+        TransactionStore.insert(OTHER, "Expense", 99_900, "other user", "2024-05-11 12:00:00");
+        TransactionStore.insert(OTHER, "Income", 50_000, "other user", "2024-06-01 12:00:00");
+    }
+
+    @Test
+    void summaryCoversOnlyTheSharedLedger() throws SQLException, IOException {
+        // Whole months read the rollup, other ranges group the rows; both must stop at user 0
+        for (ReportFilter filter : new ReportFilter[]{ReportFilter.ALL,
+                new ReportFilter(LocalDate.of(2024, 5, 2), LocalDate.of(2024, 6, 30), null)}) {
+            StringBuilder out = new StringBuilder();
+            assertTrue(ReportGenerator.writeSummary(out, filter));
+            assertTrue(out.toString().contains("10.00"), out::toString);
+            assertFalse(out.toString().contains("999.00"), out::toString);
+            assertFalse(out.toString().contains("500.00"), out::toString);
+        }
+    }
+
+    @Test
+    void rollupsAreKeptPerUser() throws SQLException {
+        assertEquals(List.of(), MonthlyTotals.verify());
+        List<DataVisualization.Cell> cells = new ArrayList<>();
+        DataVisualization.readCells(false, cells::add);
+        assertEquals(List.of(new DataVisualization.Cell("2024-05", "Expense", 1_000)), cells);
+    }
+}
@@ -0,0 +1,47 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class SchemaTest {
+
+    @BeforeAll
+    static void migrate() throws SQLException, IOException {
+        TestDatabases.reset();
+    }
+
+    @Test
+    void transactionQueriesUseIndexes() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            for (Object[] query : Schema.indexedQueries()) {
+                String sql = (String) query[0];
+                List<String> plan = Schema.explain(conn, sql, Arrays.copyOfRange(query, 1, query.length));
+                assertFalse(plan.stream().anyMatch(Schema::isFullScan),
+                        () -> "full scan in " + sql.strip().replaceAll("\\s+", " ") + ": " + plan);
+            }
+        }
+    }
+
+    @Test
+    void insertsFillTheDateColumns() throws SQLException {
+        long id = TransactionStore.insert(Ledger.shared(), "Expense", 1_250, "lunch", "2024-03-31 23:59:59");
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            PreparedStatement pstmt = conn.prepare("SELECT year_month, epoch_day FROM transactions WHERE id = ?");
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                assertEquals(202403, rs.getInt("year_month"));
+                assertEquals(java.time.LocalDate.of(2024, 3, 31).toEpochDay(), rs.getLong("epoch_day"));
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The databases tests run against, under target/test-data; app/pom.xml points surefire's
+ * {@code expense.*} properties there. Refuses to touch anything else, so a test started from an
+ * IDE without those properties cannot empty a real finance.db.
+ */
+final class TestDatabases {
+    private TestDatabases() {
+    }
+
+    /** Migrates finance.db and empties every table in it. */
+    static void reset() throws SQLException, IOException {
+        Path file = Path.of(Database.FINANCE_URL.substring("jdbc:sqlite:".length()));
+        if (!file.toString().contains("test-data")) {
+            throw new IllegalStateException("Tests must run against target/test-data, not " + Database.FINANCE_URL);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Schema.migrate();
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            List<String> tables = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table'"
+                    + " AND name NOT LIKE 'sqlite_%' AND name NOT LIKE 'transactions_fts%'")) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+            for (String table : tables) {
+                stmt.execute("DELETE FROM " + table);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TransactionImporterTest {
+    private static final Path DIR = Path.of("target", "test-data", "import");
+
+    @BeforeEach
+    void reset() throws SQLException, IOException {
+        TestDatabases.reset();
+        Files.createDirectories(DIR);
+    }
+
+    @Test
+    void skipsCsvRowsWithUnknownTypesOrBadDates() throws IOException, SQLException {
+        Path file = Files.writeString(DIR.resolve("bank.csv"), """
+                type,amount,notes,timestamp
+                Expense,12.50,lunch,2024-03-05 12:00:00
+                ,-20.00,inferred expense,2024-03-06
+                ,30.00,inferred income,2024-03-07
+                Transfer,40.00,unknown type,2024-03-08
+                Expense,5.00,bad date,2024-99-01
+                """);
+        TransactionImporter.Result result = TransactionImporter.importFile(file, 2);
+        assertEquals(3, result.rows());
+        assertEquals(2, result.skipped());
+        assertEquals(List.of("Expense 1250 lunch", "Expense 2000 inferred expense", "Income 3000 inferred income"),
+                imported());
+    }
+
+    @Test
+    void skipsOfxTransactionsWithoutAPostedDate() throws IOException, SQLException {
+        Path file = Files.writeString(DIR.resolve("bank.ofx"), """
+                <OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>
+                <STMTTRN><TRNTYPE>DEBIT</TRNTYPE><DTPOSTED>20240310120000[-5:EST]</DTPOSTED><TRNAMT>-15.00</TRNAMT><NAME>Coffee</NAME></STMTTRN>
+                <STMTTRN><TRNTYPE>DEBIT</TRNTYPE><DTPOSTED>garbage</DTPOSTED><TRNAMT>-99.00</TRNAMT><NAME>Bad date</NAME></STMTTRN>
+                <STMTTRN><TRNTYPE>DEBIT</TRNTYPE><TRNAMT>-77.00</TRNAMT><NAME>No date</NAME></STMTTRN>
+                <STMTTRN><TRNTYPE>DEBIT</TRNTYPE><DTPOSTED>20241399</DTPOSTED><TRNAMT>-66.00</TRNAMT><NAME>No such day</NAME></STMTTRN>
+                </BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>
+                """);
+        TransactionImporter.Result result = TransactionImporter.importFile(file, 2);
+        assertEquals(1, result.rows());
+        assertEquals(3, result.skipped());
+        assertEquals(List.of("Expense 1500 Coffee"), imported());
+    }
+
+    private static List<String> imported() throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             ResultSet rs = conn.prepare("SELECT type, amount_cents, notes FROM transactions ORDER BY timestamp").executeQuery()) {
+            while (rs.next()) {
+                rows.add(rs.getString(1) + " " + rs.getLong(2) + " " + rs.getString(3));
+            }
+        }
+        return rows;
+    }
+}
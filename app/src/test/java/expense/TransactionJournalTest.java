@@ -0,0 +1,187 @@
+package expense;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Crash recovery of {@link TransactionJournal}: child JVMs append and are killed with SIGKILL,
+ * some before appending anything, and the next open must replay every acknowledged entry into
+ * the database exactly once.
+ */
+class TransactionJournalTest {
+    private static final String TIMESTAMP = "2024-06-15 12:00:00";
+    private static final Path ROOT = Path.of("target", "test-data", "journal-test");
+
+    @BeforeEach
+    void reset() throws SQLException, IOException {
+        TestDatabases.reset();
+        if (Files.exists(ROOT)) {
+            try (Stream<Path> files = Files.walk(ROOT)) {
+                for (Path file : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.createDirectories(ROOT);
+    }
+
+    @Test
+    void reopensAfterRunsThatAppendNothing() throws IOException, SQLException {
+        Path dir = ROOT.resolve("idle");
+        for (int run = 0; run < 5; run++) {
+            TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC).close();
+        }
+        try (TransactionJournal journal = TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC)) {
+            journal.append(Ledger.shared(), "Expense", 1_234, "after idle runs", TIMESTAMP, null);
+            assertTrue(journal.awaitApplied(TimeUnit.SECONDS.toMillis(30)));
+        }
+        TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC).close();
+        assertEquals(1, count("after idle runs"));
+    }
+
+    @Test
+    void releasesTheLockWhenOpenFails() throws IOException {
+        Path dir = Files.createDirectories(ROOT.resolve("broken"));
+        Path garbage = Files.writeString(dir.resolve(String.format("journal-%020d.log", 1)), "not a journal");
+        assertThrows(IOException.class, () -> TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC));
+        Files.delete(garbage);
+        TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC).close();
+    }
+
+    @Test
+    void replaysEveryAcknowledgedEntryOnceAfterCrashes() throws Exception {
+        Path dir = ROOT.resolve("crash");
+        // Rounds 1, 3 and 4 are killed before appending, each leaving an empty segment for the next open
+        int[] appends = {Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0, 0, Integer.MAX_VALUE};
+        long[] ackedThrough = new long[appends.length];
+        for (int round = 0; round < appends.length; round++) {
+            ackedThrough[round] = runAndKill(dir, round, appends[round], 200 + 150L * round);
+        }
+
+        try (TransactionJournal journal = TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC)) {
+            assertTrue(journal.awaitApplied(TimeUnit.MINUTES.toMillis(5)), "the final replay did not finish");
+        }
+        assertTrue(ackedThrough[0] >= 0 && ackedThrough[2] >= 0, "no entry was acknowledged before the kill");
+        for (int round = 0; round < appends.length; round++) {
+            String prefix = "r" + round + "-";
+            long acked = ackedThrough[round] + 1;
+            assertEquals(acked, acked("COUNT(*)", prefix, ackedThrough[round]),
+                    "round " + round + ": acknowledged entries in the database");
+            assertEquals(acked, acked("COUNT(DISTINCT notes)", prefix, ackedThrough[round]),
+                    "round " + round + ": duplicated entries");
+        }
+        assertEquals(List.of(), MonthlyTotals.verify());
+    }
+
+    // Returns the index of the last entry the child acknowledged, -1 for none
+    private static long runAndKill(Path dir, int round, int appends, long delayMs) throws Exception {
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dexpense.db.financeUrl=jdbc:sqlite:" + Path.of(Database.FINANCE_URL.substring("jdbc:sqlite:".length())).toAbsolutePath(),
+                Child.class.getName(), dir.toAbsolutePath().toString(), Integer.toString(round), Integer.toString(appends))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        AtomicLong last = new AtomicLong(-1);
+        Object ready = new Object();
+        boolean[] started = new boolean[1];
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals("ready")) {
+                        synchronized (ready) {
+                            started[0] = true;
+                            ready.notifyAll();
+                        }
+                    } else if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+                        last.set(Long.parseLong(line));
+                    }
+                }
+            } catch (IOException e) {
+                // The child was killed
+            }
+            synchronized (ready) {
+                ready.notifyAll();
+            }
+        });
+        reader.start();
+        synchronized (ready) {
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+            while (!started[0] && process.isAlive() && System.currentTimeMillis() < deadline) {
+                ready.wait(1_000);
+            }
+        }
+        assertTrue(started[0], "round " + round + ": the child did not open the journal");
+        Thread.sleep(delayMs);
+        process.destroyForcibly();
+        process.waitFor();
+        reader.join();
+        return last.get();
+    }
+
+    private static long count(String notes) throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            PreparedStatement pstmt = conn.prepare("SELECT COUNT(*) FROM transactions WHERE notes = ?");
+            pstmt.setString(1, notes);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    // Rows of the entries prefix0 .. prefix<through>, counted with the given aggregate
+    private static long acked(String aggregate, String prefix, long through) throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            PreparedStatement pstmt = conn.prepare("SELECT " + aggregate + " FROM transactions"
+                    + " WHERE notes LIKE ?1 || '%' AND CAST(substr(notes, length(?1) + 1) AS INTEGER) <= ?2");
+            pstmt.setString(1, prefix);
+            pstmt.setLong(2, through);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Runs in the child JVM: opens (and so replays) the journal, then appends up to {@code appends}
+     * entries until killed, printing the index of each acknowledged one. Users 0-2 each get a third.
+     */
+    static final class Child {
+        public static void main(String[] args) throws Exception {
+            Path dir = Path.of(args[0]);
+            int round = Integer.parseInt(args[1]);
+            int appends = Integer.parseInt(args[2]);
+            Schema.migrate();
+            TransactionJournal journal = TransactionJournal.open(dir, TransactionJournal.Durability.FSYNC);
+            System.out.println("ready");
+            System.out.flush();
+            for (int i = 0; i < appends; i++) {
+                Ledger ledger = i % 3 == 0 ? Ledger.shared() : Ledger.forUser(i % 3);
+                journal.append(ledger, i % 5 == 0 ? "Income" : "Expense", 1 + i % 10_000, "r" + round + "-" + i,
+                        TIMESTAMP, "Crash");
+                System.out.println(i);
+                System.out.flush();
+            }
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+}
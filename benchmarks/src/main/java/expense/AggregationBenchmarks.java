@@ -0,0 +1,64 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monthly totals of the generated ledger by type, computed each way the app can: from its rows of
+ * the monthly_totals rollup, by grouping its transactions, and from the in-memory analytics
+ * snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmarks {
+    // Ends mid-month, so summarySql cannot use the rollup and groups the rows instead
+    private static final ReportFilter UNALIGNED = new ReportFilter(null, LocalDate.of(2099, 12, 30), null);
+
+    @Benchmark
+    public long rollup(LedgerState state) throws SQLException {
+        return sum(state.ledger, ReportFilter.ALL);
+    }
+
+    @Benchmark
+    public long groupBy(LedgerState state) throws SQLException {
+        return sum(state.ledger, UNALIGNED);
+    }
+
+    @Benchmark
+    public List<AnalyticsEngine.MonthTotal> analyticsSnapshot(LedgerState state) throws SQLException {
+        return AnalyticsEngine.get().monthlyTotals(ReportFilter.ALL);
+    }
+
+    private static long sum(Ledger ledger, ReportFilter filter) throws SQLException {
+        try (Database.PooledConnection conn = ledger.acquire()) {
+            PreparedStatement pstmt = conn.prepare(ReportGenerator.summarySql(filter));
+            ReportGenerator.bindSummary(pstmt, filter, ledger);
+            return consume(pstmt);
+        }
+    }
+
+    private static long consume(PreparedStatement pstmt) throws SQLException {
+        long total = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                total += rs.getLong("total_cents");
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,264 @@
+package expense;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load-test client for {@link ApiServer}. Starts a server in-process on a free port against
+ * scratch databases, seeds users and transactions, then:
+ * <ol>
+ *   <li>runs a closed-loop mix of listing, create, read, budget and report requests and prints
+ *       p50/p99 per request kind;</li>
+ *   <li>streams one user's whole ledger and prints time to first byte against total time;</li>
+ *   <li>runs the same mix against a server capped at 4 concurrent requests with many more clients,
+ *       to show requests being shed with 503 rather than queueing.</li>
+ * </ol>
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:apibench.db -Dexpense.db.usersUrl=jdbc:sqlite:apiusers.db \
+ *        expense.ApiLoadTest [requests] [clients] [rowsPerUser]
+ */
+public class ApiLoadTest {
+    private static final int USERS = 20;
+    private static final int COST = 4;
+    private static final String PASSWORD = "Passw0rd!";
+
+    private enum Kind { LIST, CREATE, READ, BUDGET, REPORT }
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int rowsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db") || Database.USERS_URL.endsWith(":users.db")) {
+            System.out.println("Refusing to load-test the real databases; pass -Dexpense.db.financeUrl=jdbc:sqlite:apibench.db"
+                    + " -Dexpense.db.usersUrl=jdbc:sqlite:apiusers.db");
+            return;
+        }
+        Schema.migrate();
+        UserAuthentication.createUsersTable();
+        truncate();
+
+        // Logins are not what this measures, so hash cheaply and do not throttle
+        AuthService auth = new AuthService(new AuthService.Config(2, 64, COST, 1_000, 1_000, 1_000, 1_000),
+                Database.users());
+        for (int user = 0; user < USERS; user++) {
+            auth.register("api" + user, PASSWORD).join();
+        }
+        Random random = new Random(11L);
+        for (int user = 0; user < USERS; user++) {
+            seed(Ledger.forUser(auth.userId("api" + user)), rowsPerUser, random);
+        }
+        System.out.printf("%d users with %,d transactions each; %,d requests from %d clients%n",
+                USERS, rowsPerUser, requests, clients);
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(4, VirtualThreads.daemonThreads("http-client")))
+                .build();
+
+        ApiServer server = start(auth, 64);
+        try {
+            String base = "http://127.0.0.1:" + server.port();
+            String[] tokens = login(client, base);
+            run(client, base, tokens, requests / 10, clients); // warm-up
+            report("Mixed load, cap 64", run(client, base, tokens, requests, clients));
+            streamAll(client, base, tokens[0]);
+        } finally {
+            server.stop();
+        }
+
+        ApiServer capped = start(auth, 4);
+        try {
+            String base = "http://127.0.0.1:" + capped.port();
+            String[] tokens = login(client, base);
+            report("Mixed load, cap 4, " + clients * 4 + " clients", run(client, base, tokens, requests, clients * 4));
+        } finally {
+            capped.stop();
+        }
+    }
+
+    private static ApiServer start(AuthService auth, int maxConcurrent) throws IOException {
+        ApiServer server = new ApiServer(new ApiServer.Config("127.0.0.1", 0, maxConcurrent, 3_600_000), auth);
+        server.start();
+        return server;
+    }
+
+    private static String[] login(HttpClient client, String base) throws IOException, InterruptedException {
+        String[] tokens = new String[USERS];
+        for (int user = 0; user < USERS; user++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base + "/api/login"))
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"username\":\"api" + user + "\",\"password\":\"" + PASSWORD + "\"}"))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Login failed: " + response.statusCode() + " " + response.body());
+            }
+            tokens[user] = Json.parseObject(response.body()).get("token");
+        }
+        return tokens;
+    }
+
+    private record Run(long elapsedNanos, Map<Kind, long[]> latencies, int ok, int shed, int failed) {
+    }
+
+    private static Run run(HttpClient client, String base, String[] tokens, int requests, int clients)
+            throws InterruptedException {
+        Map<Kind, long[]> latencies = new EnumMap<>(Kind.class);
+        Map<Kind, AtomicInteger> sizes = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, new long[requests]);
+            sizes.put(kind, new AtomicInteger());
+        }
+        LongAdder ok = new LongAdder();
+        LongAdder shed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients, VirtualThreads.daemonThreads("load"));
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            pool.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (next.getAndIncrement() < requests) {
+                    String token = tokens[random.nextInt(tokens.length)];
+                    int roll = random.nextInt(100);
+                    Kind kind = roll < 50 ? Kind.LIST : roll < 70 ? Kind.CREATE : roll < 80 ? Kind.READ
+                            : roll < 90 ? Kind.BUDGET : Kind.REPORT;
+                    HttpRequest request = request(base, token, kind, random);
+                    long t0 = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException e) {
+                        status = -1;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    long latency = System.nanoTime() - t0;
+                    if (status == 503) {
+                        shed.increment();
+                    } else if (status >= 200 && status < 300 || status == 404) {
+                        ok.increment();
+                        latencies.get(kind)[sizes.get(kind).getAndIncrement()] = latency;
+                    } else {
+                        failed.increment();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, Arrays.copyOf(latencies.get(kind), sizes.get(kind).get()));
+        }
+        return new Run(elapsed, latencies, ok.intValue(), shed.intValue(), failed.intValue());
+    }
+
+    private static HttpRequest request(String base, String token, Kind kind, ThreadLocalRandom random) {
+        String auth = "Bearer " + token;
+        return switch (kind) {
+            case LIST -> HttpRequest.newBuilder(URI.create(base + "/api/transactions?limit=20"))
+                    .header("Authorization", auth).build();
+            case CREATE -> HttpRequest.newBuilder(URI.create(base + "/api/transactions"))
+                    .header("Authorization", auth)
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"type\":\"Expense\",\"amount\":\""
+                            + random.nextInt(1, 500) + ".25\",\"notes\":\"load test\"}"))
+                    .build();
+            // Ids are shared across users, so some reads are someone else's row and come back 404
+            case READ -> HttpRequest.newBuilder(URI.create(base + "/api/transactions/" + random.nextInt(1, 50_000)))
+                    .header("Authorization", auth).build();
+            case BUDGET -> HttpRequest.newBuilder(URI.create(base + "/api/budget?month=2024-" + (10 + random.nextInt(3))))
+                    .header("Authorization", auth).build();
+            case REPORT -> HttpRequest.newBuilder(URI.create(base + "/api/report?format=text&from=2024-01-01&to=2024-06-30"))
+                    .header("Authorization", auth).build();
+        };
+    }
+
+    private static void report(String name, Run run) {
+        System.out.printf("%s: %,d ok, %,d shed (503), %,d failed in %.2f s (%.0f req/s)%n", name, run.ok(), run.shed(),
+                run.failed(), run.elapsedNanos() / 1e9, (run.ok() + run.shed()) * 1e9 / run.elapsedNanos());
+        for (Map.Entry<Kind, long[]> entry : run.latencies().entrySet()) {
+            long[] sorted = entry.getValue();
+            Arrays.sort(sorted);
+            System.out.printf("  %-7s n=%-6d p50 %7.2f ms  p99 %7.2f ms%n", entry.getKey(), sorted.length,
+                    percentile(sorted, 50), percentile(sorted, 99));
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static void streamAll(HttpClient client, String base, String token) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(
+                HttpRequest.newBuilder(URI.create(base + "/api/transactions?limit=0"))
+                        .header("Authorization", "Bearer " + token).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        long bytes = 0;
+        long firstByte = 0;
+        try (InputStream in = response.body()) {
+            byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (bytes == 0) {
+                    firstByte = System.nanoTime() - start;
+                }
+                bytes += n;
+            }
+        }
+        System.out.printf("Streamed whole ledger: %,d bytes, first byte after %.1f ms, done in %.1f ms%n",
+                bytes, firstByte / 1e6, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void seed(Ledger ledger, int rows, Random random) throws SQLException {
+        try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, rows)) {
+            for (int i = 0; i < rows; i++) {
+                boolean income = random.nextInt(5) == 0;
+                String timestamp = String.format("2024-%02d-%02d %02d:00:00",
+                        1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24));
+                batch.add(income ? "Income" : "Expense", random.nextInt(50_001), "seed " + i, timestamp);
+            }
+            batch.flush();
+        }
+        BudgetingTool.setBudget(ledger, 202411, "", 5_000_000);
+    }
+
+    private static void truncate() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM transactions");
+            stmt.execute("DELETE FROM budget");
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("DELETE FROM daily_totals");
+        }
+        try (Database.PooledConnection conn = Database.users().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM users");
+        }
+    }
+}
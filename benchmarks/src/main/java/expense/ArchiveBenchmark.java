@@ -0,0 +1,164 @@
+package expense;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Archives all but the last year of a scratch copy of a generated ledger (1M rows by default) and
+ * checks that nothing a reader sees changes. Summaries, listings, lookups, the CSV report, budget
+ * spend and the rollup check are each run before and after and compared, and timed both times.
+ * Prints the size of the segments against the space the rows took in SQLite, and exits 1 on any
+ * difference.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar expense.ArchiveBenchmark [rows]
+ */
+public class ArchiveBenchmark {
+    private static final int PAGE_SIZE = 100;
+    private static final int BEFORE_MONTH = LedgerGenerator.LAST_MONTH.getYear() * 100 + 1;
+    private static final ReportFilter PARTIAL_MONTHS = new ReportFilter(LocalDate.of(2016, 3, 15), LocalDate.of(2024, 6, 10), null);
+    private static final TransactionPager.Filter LISTING_FILTER =
+            new TransactionPager.Filter("Expense", 2_000L, 50_000L, LocalDate.of(2019, 1, 1), null, "bar");
+
+    public static void main(String[] args) throws IOException, InterruptedException, SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path archiveDir = Files.createTempDirectory("archive-bench");
+        System.setProperty("expense.archive.dir", archiveDir.toString()); // before TransactionArchive is loaded
+        System.setProperty("expense.report.cache", "false");
+        Path file = LedgerGenerator.scratchCopy(rows);
+        LedgerGenerator.use(file);
+        Schema.migrate();
+
+        Map<String, String> hot = readEverything("hot");
+        long dbBytes = Files.size(file);
+
+        long start = System.nanoTime();
+        TransactionArchive.Result result = TransactionArchive.archive(Ledger.shared(), BEFORE_MONTH);
+        System.out.printf("%nArchive before %s: %s in %.1f s%n", Schema.formatYearMonth(BEFORE_MONTH), result,
+                (System.nanoTime() - start) / 1e9);
+        // On a connection of its own: SQLite refuses VACUUM on a used pooled one
+        try (Connection conn = Database.connect(Database.FINANCE_URL);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("VACUUM");
+            stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)"); // so the file size shows the result
+        }
+        long vacuumedBytes = Files.size(file);
+        System.out.printf("finance.db %,d -> %,d bytes after VACUUM; the archived rows took %,d bytes in SQLite "
+                        + "(with indexes and FTS) and take %,d in segments (%.1fx smaller)%n",
+                dbBytes, vacuumedBytes, dbBytes - vacuumedBytes, result.bytes(),
+                (double) (dbBytes - vacuumedBytes) / Math.max(1, result.bytes()));
+        System.out.println();
+
+        Map<String, String> tiered = readEverything("tiered");
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, String> entry : hot.entrySet()) {
+            if (!entry.getValue().equals(tiered.get(entry.getKey()))) {
+                problems.add(entry.getKey() + " differs after archiving");
+            }
+        }
+        problems.addAll(TransactionArchive.verify(Ledger.shared()));
+
+        try (Stream<Path> files = Files.walk(archiveDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+        }
+        System.out.println();
+        if (!problems.isEmpty()) {
+            problems.forEach(p -> System.out.println("FAILED: " + p));
+            System.exit(1);
+        }
+        System.out.println("OK: every read returned the same result across both tiers");
+    }
+
+    // Runs every read, printing its time, and returns a digest of each one's output
+    private static Map<String, String> readEverything(String label) throws SQLException, IOException {
+        System.out.println("Reads with " + label + " data:");
+        Map<String, String> digests = new LinkedHashMap<>();
+
+        digests.put("ledger summary", timed("ledger summary", () -> {
+            StringWriter out = new StringWriter();
+            ReportGenerator.writeSummary(out, Ledger.shared(), ReportFilter.ALL);
+            return out.toString();
+        }));
+        digests.put("partial-month summary", timed("partial-month summary", () -> {
+            StringWriter out = new StringWriter();
+            ReportGenerator.writeSummary(out, PARTIAL_MONTHS);
+            return out.toString();
+        }));
+        digests.put("full listing", timed("full listing, " + PAGE_SIZE + " per page", () -> walk(TransactionPager.Filter.NONE)));
+        digests.put("filtered listing", timed("filtered listing", () -> walk(LISTING_FILTER)));
+        digests.put("lookups", timed("1,000 lookups by id", () -> {
+            StringBuilder found = new StringBuilder();
+            for (long id = 1; id <= 1_000_000; id += 1_000) {
+                found.append(TransactionPager.find(Ledger.shared(), id)).append('\n');
+            }
+            return found.toString();
+        }));
+        digests.put("CSV report", timed("CSV report", () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ReportPipeline.render(Ledger.shared(), ReportFilter.ALL, Map.<ReportPipeline.Format, OutputStream>of(ReportPipeline.Format.CSV, out));
+            return out.toString();
+        }));
+        digests.put("budget spend", timed("budget spend, 120 months", () -> {
+            StringBuilder spend = new StringBuilder();
+            for (int year = 2015; year <= 2024; year++) {
+                for (int month = 1; month <= 12; month++) {
+                    int yearMonth = year * 100 + month;
+                    spend.append(BudgetingTool.expenseCents(Ledger.shared(), yearMonth)).append(' ')
+                            .append(BudgetingTool.expenseCents(Ledger.shared(), yearMonth, "Groceries")).append('\n');
+                }
+            }
+            return spend.toString();
+        }));
+        digests.put("rollup check", timed("rollup check", () -> String.join("\n", MonthlyTotals.verify())));
+        if (!digests.get("rollup check").equals(digest(""))) {
+            System.out.println("  the rollups disagree with the transactions");
+        }
+        return digests;
+    }
+
+    private static String walk(TransactionPager.Filter filter) throws SQLException {
+        StringBuilder rows = new StringBuilder();
+        TransactionPager.Page page = TransactionPager.firstPage(Ledger.shared(), filter, PAGE_SIZE);
+        while (true) {
+            page.rows().forEach(row -> rows.append(row).append('\n'));
+            if (!page.hasOlder()) {
+                return rows.toString();
+            }
+            page = TransactionPager.olderPage(Ledger.shared(), filter, page.oldest(), PAGE_SIZE);
+        }
+    }
+
+    private interface Read {
+        String run() throws SQLException, IOException;
+    }
+
+    private static String timed(String name, Read read) throws SQLException, IOException {
+        long start = System.nanoTime();
+        String output = read.run();
+        System.out.printf("  %-36s %9.1f ms%n", name, (System.nanoTime() - start) / 1e6);
+        return digest(output);
+    }
+
+    private static String digest(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package expense;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load generator for {@link AuthService}. Seeds a scratch users database, then compares the
+ * old login path (lookup plus checkpw on the caller's thread) with the service under the same
+ * closed-loop load and the same BCrypt cost. It then fires one open-loop burst to show queue
+ * backpressure, and logs a few users in with a higher configured cost to show rehashing.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.usersUrl=jdbc:sqlite:authbench.db expense.AuthLoadTest [users] [attempts] [clients]
+ *
+ * Mix: 60% correct passwords, 20% wrong passwords, 15% unknown users and 5% from one address
+ * guessing one user's password.
+ */
+public class AuthLoadTest {
+    private static final int SEED_COST = 6;
+    private static final String ATTACKER = "10.0.0.66";
+
+    private enum Kind { VALID, WRONG, UNKNOWN, ATTACK }
+
+    private record Attempt(Kind kind, String username, String password, String address) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int attempts = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+
+        if (Database.USERS_URL.endsWith(":users.db")) {
+            System.out.println("Refusing to load-test users.db; pass -Dexpense.db.usersUrl=jdbc:sqlite:authbench.db");
+            return;
+        }
+        UserAuthentication.createUsersTable();
+        seed(users);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        AuthService.Config config = new AuthService.Config(cores, 64, SEED_COST, 5, 1, 1_000, 500);
+        System.out.printf("%,d users, %,d attempts, %d clients, %d cores, cost %d%n",
+                users, attempts, clients, cores, SEED_COST);
+
+        List<Attempt> workload = workload(users, attempts, new Random(1L));
+
+        // Old path: everything on the caller's thread, no throttling, unknown users skip BCrypt
+        report("Direct checkpw", run(workload, clients, AuthLoadTest::legacyLogin));
+
+        AuthService service = new AuthService(config, Database.users());
+        report("AuthService", run(workload, clients, attempt ->
+                service.login(attempt.username(), attempt.password(), attempt.address()).join()));
+        System.out.println("  " + service.metrics());
+
+        // Open loop: every attempt submitted at once, far more than threads + queue
+        AuthService burstService = new AuthService(config, Database.users());
+        long start = System.nanoTime();
+        List<CompletableFuture<AuthService.Outcome>> futures = new ArrayList<>(workload.size());
+        for (Attempt attempt : workload) {
+            futures.add(burstService.login(attempt.username(), attempt.password(), "burst-" + (futures.size() % 100)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        System.out.printf("Burst of %,d: %.2f s%n  %s%n", workload.size(), (System.nanoTime() - start) / 1e9,
+                burstService.metrics());
+
+        int upgradeCost = Integer.getInteger("expense.auth.bcryptCost", SEED_COST + 2);
+        AuthService upgrading = new AuthService(new AuthService.Config(cores, 64, upgradeCost, 5, 1, 1_000, 500),
+                Database.users());
+        for (int user = 1; user <= 20; user++) {
+            upgrading.login("user" + user, password(user), "upgrade").join();
+        }
+        System.out.printf("Rehash to cost %d: %d of 20 users upgraded, user1 now has cost %d%n",
+                upgradeCost, upgrading.metrics().rehashed(), AuthService.cost(storedHash("user1")));
+    }
+
+    private static String storedHash(String username) throws SQLException {
+        try (Database.PooledConnection conn = Database.users().acquire()) {
+            PreparedStatement pstmt = conn.prepare("SELECT password FROM users WHERE username = ?");
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : "";
+            }
+        }
+    }
+
+    private interface Login {
+        AuthService.Outcome attempt(Attempt attempt) throws SQLException;
+    }
+
+    private record Run(long elapsedNanos, Map<Kind, long[]> latencies, Map<AuthService.Outcome, Integer> outcomes) {
+    }
+
+    private static Run run(List<Attempt> workload, int clients, Login login) throws InterruptedException {
+        Map<Kind, long[]> latencies = new EnumMap<>(Kind.class);
+        Map<Kind, AtomicInteger> sizes = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, new long[workload.size()]);
+            sizes.put(kind, new AtomicInteger());
+        }
+        AtomicInteger[] outcomes = new AtomicInteger[AuthService.Outcome.values().length];
+        Arrays.setAll(outcomes, i -> new AtomicInteger());
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients, VirtualThreads.daemonThreads("client"));
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            pool.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < workload.size()) {
+                    Attempt attempt = workload.get(i);
+                    long t0 = System.nanoTime();
+                    AuthService.Outcome outcome;
+                    try {
+                        outcome = login.attempt(attempt);
+                    } catch (SQLException e) {
+                        outcome = AuthService.Outcome.ERROR;
+                    }
+                    long latency = System.nanoTime() - t0;
+                    latencies.get(attempt.kind())[sizes.get(attempt.kind()).getAndIncrement()] = latency;
+                    outcomes[outcome.ordinal()].incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - start;
+
+        for (Kind kind : Kind.values()) {
+            latencies.put(kind, Arrays.copyOf(latencies.get(kind), sizes.get(kind).get()));
+        }
+        Map<AuthService.Outcome, Integer> counts = new EnumMap<>(AuthService.Outcome.class);
+        for (AuthService.Outcome outcome : AuthService.Outcome.values()) {
+            counts.put(outcome, outcomes[outcome.ordinal()].get());
+        }
+        return new Run(elapsed, latencies, counts);
+    }
+
+    private static void report(String name, Run run) {
+        int total = run.latencies().values().stream().mapToInt(a -> a.length).sum();
+        System.out.printf("%s: %,d attempts in %.2f s (%.0f/s) %s%n", name, total, run.elapsedNanos() / 1e9,
+                total * 1e9 / run.elapsedNanos(), run.outcomes());
+        for (Map.Entry<Kind, long[]> entry : run.latencies().entrySet()) {
+            long[] sorted = entry.getValue();
+            Arrays.sort(sorted);
+            System.out.printf("  %-8s n=%-6d p50 %7.2f ms  p99 %7.2f ms%n", entry.getKey(), sorted.length,
+                    percentile(sorted, 50), percentile(sorted, 99));
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static AuthService.Outcome legacyLogin(Attempt attempt) throws SQLException {
+        String hash;
+        try (Database.PooledConnection conn = Database.users().acquire()) {
+            PreparedStatement pstmt = conn.prepare("SELECT password FROM users WHERE username = ?");
+            pstmt.setString(1, attempt.username());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                hash = rs.next() ? rs.getString("password") : null;
+            }
+        }
+        return hash != null && BCrypt.checkpw(attempt.password(), hash)
+                ? AuthService.Outcome.SUCCESS : AuthService.Outcome.INVALID;
+    }
+
+    private static List<Attempt> workload(int users, int attempts, Random random) {
+        List<Attempt> workload = new ArrayList<>(attempts);
+        for (int i = 0; i < attempts; i++) {
+            int roll = random.nextInt(100);
+            int user = random.nextInt(users);
+            String address = "10.0." + random.nextInt(4) + "." + random.nextInt(250);
+            if (roll < 60) {
+                workload.add(new Attempt(Kind.VALID, "user" + user, password(user), address));
+            } else if (roll < 80) {
+                workload.add(new Attempt(Kind.WRONG, "user" + user, "Wrong-" + i, address));
+            } else if (roll < 95) {
+                workload.add(new Attempt(Kind.UNKNOWN, "nobody" + i, "Guess-" + i, address));
+            } else {
+                workload.add(new Attempt(Kind.ATTACK, "user0", "Guess-" + i, ATTACKER));
+            }
+        }
+        return workload;
+    }
+
+    private static String password(int user) {
+        return "Passw0rd!" + user;
+    }
+
+    private static void seed(int users) throws SQLException {
+        try (Database.PooledConnection conn = Database.users().acquire()) {
+            conn.inTransaction(() -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DELETE FROM users");
+                }
+                PreparedStatement pstmt = conn.prepare("INSERT INTO users(username, password) VALUES(?, ?)");
+                for (int i = 0; i < users; i++) {
+                    pstmt.setString(1, "user" + i);
+                    pstmt.setString(2, BCrypt.hashpw(password(i), BCrypt.gensalt(SEED_COST)));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                return null;
+            });
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Backs up a scratch copy of a generated ledger (20M rows, a few GB, by default) while a writer
+ * inserts a row every few milliseconds, and reports:
+ * <ul>
+ *   <li>insert latency (p50, p99, max) while idle, during the full backup and during the delta;</li>
+ *   <li>the snapshot time and throughput of each backup, and the size of the delta;</li>
+ *   <li>how long {@code verify} and {@code restore} take.</li>
+ * </ul>
+ * The restored file must pass {@code PRAGMA integrity_check} and hold between the rows there were
+ * when the backup started and when it ended; the run exits 1 otherwise.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar expense.BackupBenchmark [rows] [writeIntervalMs]
+ */
+public class BackupBenchmark {
+    private static final long IDLE_MS = 10_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException, SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        long intervalMs = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        Path backupDir = Files.createTempDirectory(LedgerGenerator.DATA_DIR.toAbsolutePath(), "backup-bench");
+        System.setProperty("expense.backup.dir", backupDir.toString()); // before DatabaseBackup is loaded
+        Path file = LedgerGenerator.scratchCopy(rows);
+        LedgerGenerator.use(file);
+        Schema.migrate();
+        DatabaseBackup.Source source = new DatabaseBackup.Source("finance", Database.FINANCE_URL);
+        System.out.printf("finance.db: %,d bytes, %,d rows%n", Files.size(file), count(Database.finance()));
+
+        // The first write of a ledger loads its budget counters, which on a cold file of this size takes seconds
+        BudgetAlerts.get().reconcile(Ledger.shared());
+        Writer writer = new Writer(intervalMs);
+        writer.start();
+        List<String> problems = new ArrayList<>();
+        try {
+            writer.phase("idle", IDLE_MS);
+            long before = count(Database.finance());
+            DatabaseBackup.Result full = writer.during("full backup", () -> DatabaseBackup.backup(source));
+            long after = count(Database.finance());
+            System.out.println(full);
+
+            writer.phase("idle again", IDLE_MS);
+            DatabaseBackup.Result delta = writer.during("delta backup", () -> DatabaseBackup.backup(source));
+            System.out.println(delta);
+            System.out.printf("Delta: %,d of %,d pages changed, %,d bytes (%.2f%% of a full backup)%n",
+                    delta.changedPages(), delta.pages(), delta.bytes(), 100.0 * delta.bytes() / full.bytes());
+            writer.stop();
+            writer.print();
+            if (writer.failure.get() != null) {
+                problems.add("writer failed: " + writer.failure.get().getMessage());
+            }
+
+            long start = System.nanoTime();
+            problems.addAll(DatabaseBackup.verify(source.name()));
+            System.out.printf("verify: %d backups in %.1f s%n", DatabaseBackup.backups(source.name()).size(),
+                    (System.nanoTime() - start) / 1e9);
+
+            Path restored = backupDir.resolve("restored.db");
+            start = System.nanoTime();
+            DatabaseBackup.restore(source.name(), restored, full.seq());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("restore: %,d bytes in %.1f s (%.0f MB/s)%n", Files.size(restored), seconds,
+                    Files.size(restored) / 1e6 / seconds);
+            Database copy = Database.open("jdbc:sqlite:" + restored, 1);
+            try (Database.PooledConnection conn = copy.acquire();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+                rs.next();
+                if (!"ok".equals(rs.getString(1))) {
+                    problems.add("integrity_check on the restored file: " + rs.getString(1));
+                }
+            }
+            long restoredRows = count(copy);
+            copy.close();
+            if (restoredRows < before || restoredRows > after) {
+                problems.add("restored file has " + restoredRows + " rows, not between " + before + " and " + after);
+            }
+        } finally {
+            writer.stop();
+            try (Stream<Path> files = Files.walk(backupDir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(f -> f.toFile().delete());
+            }
+        }
+        if (!problems.isEmpty()) {
+            problems.forEach(p -> System.out.println("FAILED: " + p));
+            System.exit(1);
+        }
+        System.out.println("OK: the backups verify and the restored file is consistent");
+    }
+
+    private static long count(Database database) throws SQLException {
+        try (Database.PooledConnection conn = database.acquire();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM transactions")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private interface Work<T> {
+        T run() throws SQLException, IOException;
+    }
+
+    /** Inserts a row every interval and files each insert's latency under the current phase. */
+    private static final class Writer implements Runnable {
+        private final long intervalMs;
+        private final List<String> phases = new ArrayList<>();
+        private final List<long[]> latencies = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final Thread thread = new Thread(this, "backup-bench-writer");
+        private long[] current = new long[0];
+        private int recorded;
+        private volatile boolean running = true;
+        private boolean stopped;
+
+        Writer(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            long cents = 100;
+            while (running) {
+                try {
+                    long t0 = System.nanoTime();
+                    TransactionStore.insert(Ledger.shared(), "Expense", cents++, "backup bench", "2024-12-31 12:00:00",
+                            "Groceries");
+                    record(System.nanoTime() - t0);
+                    Thread.sleep(intervalMs);
+                } catch (SQLException e) {
+                    failure.set(e);
+                    running = false;
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized void record(long nanos) {
+            if (recorded == current.length) {
+                current = Arrays.copyOf(current, Math.max(1_024, current.length * 2));
+            }
+            current[recorded++] = nanos;
+        }
+
+        private synchronized void begin(String phase) {
+            if (!phases.isEmpty()) {
+                latencies.add(Arrays.copyOf(current, recorded));
+            }
+            phases.add(phase);
+            current = new long[1_024];
+            recorded = 0;
+        }
+
+        void phase(String phase, long millis) throws InterruptedException {
+            begin(phase);
+            Thread.sleep(millis);
+        }
+
+        <T> T during(String phase, Work<T> work) throws SQLException, IOException {
+            begin(phase);
+            return work.run();
+        }
+
+        void stop() throws InterruptedException {
+            if (!stopped) {
+                stopped = true;
+                running = false;
+                thread.join();
+                begin("");
+            }
+        }
+
+        void print() {
+            System.out.println("Insert latency every " + intervalMs + " ms:");
+            for (int i = 0; i < latencies.size(); i++) {
+                long[] sorted = latencies.get(i).clone();
+                Arrays.sort(sorted);
+                if (sorted.length == 0) {
+                    System.out.printf("  %-14s no inserts%n", phases.get(i));
+                    continue;
+                }
+                System.out.printf("  %-14s %,7d inserts  p50 %7.3f ms  p99 %7.3f ms  max %8.3f ms%n", phases.get(i),
+                        sorted.length, sorted[sorted.length / 2] / 1e6,
+                        sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1e6,
+                        sorted[sorted.length - 1] / 1e6);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar: runs JMH with the given arguments, and unless a result format is
+ * given, writes JSON results to {@code bench-results/jmh-<timestamp>.json} so runs can be kept
+ * and compared between commits.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar                       # every suite, default sizes
+ *   java -jar benchmarks/target/benchmarks.jar Listing -p rows=10000000
+ *   java -jar benchmarks/target/benchmarks.jar -l                    # list benchmarks
+ */
+public final class BenchmarkRunner {
+    private static final Path RESULTS_DIR = Path.of(System.getProperty("expense.bench.resultsDir", "bench-results"));
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        boolean informational = jmhArgs.stream().anyMatch(a -> a.equals("-l") || a.equals("-lp") || a.equals("-h")
+                || a.equals("-lprof") || a.equals("-lrf"));
+        if (!informational && !jmhArgs.contains("-rf") && !jmhArgs.contains("-rff")) {
+            jmhArgs.addAll(List.of("-rf", "json", "-rff", resultFile().toString()));
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+
+    private static Path resultFile() throws IOException {
+        Files.createDirectories(RESULTS_DIR);
+        return RESULTS_DIR.resolve("jmh-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+    }
+}
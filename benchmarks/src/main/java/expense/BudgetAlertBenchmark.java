@@ -0,0 +1,144 @@
+package expense;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what budget alerts add to a write. Single inserts are timed into a ledger with no
+ * budgets, into one with month and category budgets tracked in memory, and into one that instead
+ * re-sums the month with a query after every insert, which is what checking on write would cost
+ * without the counters. Then random edits and deletes are applied and the in-memory spend is
+ * compared with the database, and the alerts that fired along the way are listed.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:alertbench.db expense.BudgetAlertBenchmark [writes] [seedRows]
+ */
+public class BudgetAlertBenchmark {
+    private static final int MONTH = 202405;
+    private static final String[] CATEGORIES = {"Groceries", "Rent", "Travel", "Dining"};
+
+    public static void main(String[] args) throws SQLException {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int seedRows = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to benchmark against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:alertbench.db");
+            return;
+        }
+        Schema.migrate();
+        truncate();
+
+        Ledger plain = Ledger.forUser(1);
+        Ledger counted = Ledger.forUser(2);
+        Ledger queried = Ledger.forUser(3);
+        Random random = new Random(5L);
+        for (Ledger ledger : List.of(plain, counted, queried)) {
+            seed(ledger, seedRows / 3, random);
+        }
+        // Budgets far above what the timed writes spend, so only the bookkeeping is measured
+        BudgetingTool.setBudget(counted, MONTH, "", Long.MAX_VALUE / 200);
+        for (String category : CATEGORIES) {
+            BudgetingTool.setBudget(counted, MONTH, category, Long.MAX_VALUE / 200);
+        }
+        System.out.printf("%,d seeded rows, %,d timed inserts per ledger%n", seedRows, writes);
+
+        long[] none = new long[writes];
+        long[] counters = new long[writes];
+        long[] query = new long[writes];
+        for (int i = 0; i < writes; i++) {
+            // Interleaved so drift in the file or the JIT affects all three alike
+            none[i] = timeInsert(plain, random, false);
+            counters[i] = timeInsert(counted, random, false);
+            query[i] = timeInsert(queried, random, true);
+        }
+        System.out.println("  no budgets        " + percentiles(none));
+        System.out.println("  budget counters   " + percentiles(counters));
+        System.out.println("  re-sum per write  " + percentiles(query));
+
+        checkConsistency(random);
+    }
+
+    private static long timeInsert(Ledger ledger, Random random, boolean resum) throws SQLException {
+        String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        long t0 = System.nanoTime();
+        TransactionStore.insert(ledger, "Expense", 1 + random.nextInt(5_000), null, "2024-05-15 12:00:00", category);
+        if (resum) {
+            BudgetingTool.expenseCents(ledger, MONTH);
+            BudgetingTool.expenseCents(ledger, MONTH, category);
+        }
+        return System.nanoTime() - t0;
+    }
+
+    private static void checkConsistency(Random random) throws SQLException {
+        Ledger ledger = Ledger.forUser(4);
+        List<BudgetAlerts.Alert> alerts = new ArrayList<>();
+        BudgetAlerts.Listener listener = alerts::add;
+        BudgetAlerts.get().addListener(listener);
+        try {
+            BudgetingTool.setBudget(ledger, MONTH, "", 100_000);
+            BudgetingTool.setBudget(ledger, MONTH, "Dining", 20_000);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                int roll = random.nextInt(10);
+                if (roll < 6 || ids.isEmpty()) {
+                    String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                    ids.add(TransactionStore.insert(ledger, random.nextInt(4) == 0 ? "Income" : "Expense",
+                            1 + random.nextInt(2_000), null, "2024-05-" + (10 + random.nextInt(18)) + " 09:00:00", category));
+                } else if (roll < 8) {
+                    TransactionStore.update(ledger, ids.get(random.nextInt(ids.size())), 1 + random.nextInt(2_000), null);
+                } else {
+                    TransactionStore.delete(ledger, ids.remove(random.nextInt(ids.size())));
+                }
+            }
+            try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, 100)) {
+                for (int i = 0; i < 500; i++) {
+                    batch.add("Expense", 1 + random.nextInt(500), null, "2024-05-20 18:00:00", "Dining");
+                }
+                batch.flush();
+            }
+        } finally {
+            BudgetAlerts.get().removeListener(listener);
+        }
+
+        for (String category : new String[]{"", "Dining"}) {
+            long[] status = BudgetAlerts.get().status(ledger, MONTH, category);
+            long actual = BudgetingTool.expenseCents(ledger, MONTH, category);
+            System.out.printf("  %-8s in memory %s, database %s: %s%n", category.isEmpty() ? "month" : category,
+                    Money.format(status[0]), Money.format(actual), status[0] == actual ? "match" : "MISMATCH");
+        }
+        System.out.println(alerts.size() + " alerts fired during 2,000 mixed writes and a batch import:");
+        for (BudgetAlerts.Alert alert : alerts.subList(0, Math.min(alerts.size(), 10))) {
+            System.out.println("  " + alert);
+        }
+    }
+
+    private static void seed(Ledger ledger, int rows, Random random) throws SQLException {
+        try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, 5_000)) {
+            for (int i = 0; i < rows; i++) {
+                String timestamp = String.format("2024-%02d-%02d 12:00:00", 1 + random.nextInt(12), 1 + random.nextInt(28));
+                batch.add("Expense", random.nextInt(50_001), null, timestamp, CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            }
+            batch.flush();
+        }
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %7.3f ms  p99 %7.3f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1e6);
+    }
+
+    private static void truncate() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM transactions");
+            stmt.execute("DELETE FROM budget");
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("DELETE FROM daily_totals");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/** The budget summary: a month's budget and spending, for the whole month and for one category. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BudgetBenchmarks {
+    private static final int MONTH = 202406;
+
+    @Benchmark
+    public long monthSummary(LedgerState state) throws SQLException {
+        Long budget = BudgetingTool.budgetCents(state.ledger, MONTH, "");
+        return (budget == null ? 0 : budget) - BudgetingTool.expenseCents(state.ledger, MONTH);
+    }
+
+    @Benchmark
+    public long categorySummary(LedgerState state) throws SQLException {
+        Long budget = BudgetingTool.budgetCents(state.ledger, MONTH, "Groceries");
+        return (budget == null ? 0 : budget) - BudgetingTool.expenseCents(state.ledger, MONTH, "Groceries");
+    }
+}
@@ -0,0 +1,59 @@
+package expense;
+
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chart data: the monthly bar chart's dataset built from the rollup and from the analytics
+ * snapshot, and the time-series chart's fetch for the whole history and for one quarter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChartBenchmarks {
+    private static final int PIXELS = 1_200;
+    private static final long LAST_QUARTER_FROM = TransactionStore.epochDay(2024, 10, 1);
+    private static final long LAST_QUARTER_TO = TransactionStore.epochDay(2024, 12, 31);
+
+    @Benchmark
+    public DefaultCategoryDataset barsFromRollup(LedgerState state) throws SQLException {
+        return dataset(false);
+    }
+
+    @Benchmark
+    public DefaultCategoryDataset barsFromAnalytics(LedgerState state) throws SQLException {
+        return dataset(true);
+    }
+
+    @Benchmark
+    public TimeSeriesData.Series timeSeriesAll(LedgerState state) throws SQLException {
+        long[] extent = TimeSeriesData.extent();
+        return TimeSeriesData.fetch(extent[0], extent[1], PIXELS);
+    }
+
+    @Benchmark
+    public TimeSeriesData.Series timeSeriesQuarter(LedgerState state) throws SQLException {
+        return TimeSeriesData.fetch(LAST_QUARTER_FROM, LAST_QUARTER_TO, PIXELS);
+    }
+
+    private static DefaultCategoryDataset dataset(boolean useAnalytics) throws SQLException {
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        dataset.setNotify(false);
+        DataVisualization.readCells(useAnalytics, cell -> {
+            dataset.addValue(Money.toDouble(cell.cents()), cell.type(), cell.month());
+            return true;
+        });
+        return dataset;
+    }
+}
@@ -0,0 +1,111 @@
+package expense;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumSet;
+
+/**
+ * Checks that report export runs in bounded memory. Loads a generated ledger (5M rows by default)
+ * into a scratch database, exports the text and PDF reports and then all four formats from one
+ * scan, and fails if the heap retained after garbage collection ever exceeds the limit. The report
+ * cache is turned off, so every export renders.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Xmx256m -Dexpense.db.financeUrl=jdbc:sqlite:bench.db expense.ExportBenchmark [rows] [maxRetainedMb]
+ *
+ * Rows are only generated when the scratch database holds fewer than requested, so repeated runs are fast.
+ */
+public class ExportBenchmark {
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        System.setProperty("expense.report.cache", "false"); // before ReportCache is loaded
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        long maxRetainedMb = args.length > 1 ? Long.parseLong(args[1]) : 64;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to benchmark against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:bench.db");
+            return;
+        }
+        Schema.migrate();
+
+        long existing = countTransactions();
+        if (existing < rows) {
+            Path csv = Files.createTempFile("export-bench", ".csv");
+            try {
+                ImportBenchmark.writeCsv(csv, (int) (rows - existing), 7L);
+                System.out.println(TransactionImporter.importCsv(csv, TransactionImporter.DEFAULT_BATCH_SIZE));
+            } finally {
+                Files.deleteIfExists(csv);
+            }
+        }
+        System.out.printf("Ledger holds %,d transactions%n", countTransactions());
+
+        HeapSampler sampler = new HeapSampler();
+        sampler.start();
+        long start = System.nanoTime();
+        ReportGenerator.exportReportAsText(ReportFilter.ALL);
+        System.out.printf("Text export: %.2f s%n", (System.nanoTime() - start) / 1e9);
+        start = System.nanoTime();
+        ReportGenerator.exportReportAsPDF(ReportFilter.ALL);
+        System.out.printf("PDF export: %.2f s (%,d bytes)%n", (System.nanoTime() - start) / 1e9,
+                Files.size(Path.of("BudgetReport.pdf")));
+        start = System.nanoTime();
+        ReportGenerator.exportReport(ReportFilter.ALL, EnumSet.allOf(ReportPipeline.Format.class));
+        System.out.printf("Text, PDF, CSV and HTML from one scan: %.2f s%n", (System.nanoTime() - start) / 1e9);
+        sampler.stopAndJoin();
+
+        long retainedMb = sampler.maxRetainedBytes / (1024 * 1024);
+        System.out.printf("Max heap retained after GC: %d MB (limit %d MB)%n", retainedMb, maxRetainedMb);
+        if (retainedMb > maxRetainedMb) {
+            System.out.println("FAILED: export memory is not bounded");
+            System.exit(1);
+        }
+        System.out.println("OK: export memory is bounded");
+    }
+
+    private static long countTransactions() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             ResultSet rs = conn.prepare("SELECT COALESCE(SUM(count), 0) FROM monthly_totals").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /** Tracks the largest post-GC heap occupancy, which is what a leak or full buffering would grow. */
+    private static final class HeapSampler extends Thread {
+        private volatile boolean running = true;
+        private long maxRetainedBytes;
+
+        HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                long retained = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                        retained += pool.getCollectionUsage().getUsed();
+                    }
+                }
+                maxRetainedBytes = Math.max(maxRetainedBytes, retained);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        void stopAndJoin() throws InterruptedException {
+            running = false;
+            join();
+        }
+    }
+}
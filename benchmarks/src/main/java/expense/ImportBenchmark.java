@@ -0,0 +1,120 @@
+package expense;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Random;
+
+/**
+ * Compares the one-row TransactionStore insert path with the batched TransactionImporter.
+ *
+ * Run against a scratch database so finance.db is left alone:
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:bench.db expense.ImportBenchmark [rows] [singleRowSample] [batchSize]
+ *
+ * The one-row path is measured on a sample (default 20,000 rows) and extrapolated to the
+ * full row count, since running it at 1M rows takes far too long to be practical.
+ */
+public class ImportBenchmark {
+    private static final String[] MERCHANTS = {
+            "Grocery Mart", "Corner Cafe", "City Transit", "Fuel Stop", "Pharmacy", "Book Nook", "Hardware Depot",
+            "Streaming Service", "Electric Company", "Water Utility", "Gym Membership", "Pet Supplies",
+            "Pizza Palace", "Sushi Bar", "Cinema", "Airline", "Hotel", "Rent", "Insurance", "Phone Bill"
+    };
+    private static final String[] DETAILS = {
+            "weekly shop", "lunch with team", "monthly pass", "refill", "prescription", "gift", "repair parts",
+            "subscription", "invoice", "late fee", "annual renewal", "vet visit", "takeaway", "dinner", "tickets",
+            "business trip", "conference", "deposit", "premium", "roaming charges"
+    };
+    private static final String[] INCOME_NOTES = {
+            "Salary", "Freelance invoice", "Tax refund", "Dividend payout", "Interest", "Bonus", "Side project sale"
+    };
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int sample = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : TransactionImporter.DEFAULT_BATCH_SIZE;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to benchmark against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:bench.db");
+            return;
+        }
+        ExpenseManager.createTables();
+
+        Path csv = Files.createTempFile("import-bench", ".csv");
+        try {
+            writeCsv(csv, rows, 42L);
+            System.out.printf("Generated %,d rows (%,d bytes)%n", rows, Files.size(csv));
+
+            // Warm up the driver and statement caches
+            TransactionImporter.importCsv(csv, batchSize);
+            truncate();
+
+            TransactionImporter.Result bulk = TransactionImporter.importCsv(csv, batchSize);
+            System.out.printf("Batched import (batch=%d): %s%n", batchSize, bulk);
+            truncate();
+
+            Random random = new Random(42L);
+            int singleRows = Math.min(sample, rows);
+            long start = System.nanoTime();
+            for (int i = 0; i < singleRows; i++) {
+                boolean income = random.nextInt(5) == 0;
+                TransactionStore.insert(income ? "Income" : "Expense",
+                        random.nextInt(50_001), "row " + i);
+            }
+            long elapsed = System.nanoTime() - start;
+            double singleRate = singleRows * 1e9 / elapsed;
+            System.out.printf("One-row inserts: %,d rows in %.2f s (%.0f rows/sec), ~%.1f s projected for %,d rows%n",
+                    singleRows, elapsed / 1e9, singleRate, rows / singleRate, rows);
+            System.out.printf("Speedup: %.1fx%n", bulk.rowsPerSecond() / singleRate);
+            truncate();
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    static void writeCsv(Path file, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        long startSecond = java.time.LocalDateTime.of(2015, 1, 1, 0, 0)
+                .toEpochSecond(java.time.ZoneOffset.UTC);
+        long spanSeconds = 10L * 365 * 24 * 3600;
+        java.time.format.DateTimeFormatter format = java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder amount = new StringBuilder(16);
+            out.write("type,amount,notes,timestamp\n");
+            for (int i = 0; i < rows; i++) {
+                boolean income = random.nextInt(5) == 0;
+                long cents = income ? 100_000 + random.nextInt(500_000) : 100 + random.nextInt(50_000);
+                long second = startSecond + (long) (random.nextDouble() * spanSeconds);
+                out.write(income ? "Income" : "Expense");
+                out.write(',');
+                amount.setLength(0);
+                out.append(Money.appendTo(amount, cents));
+                out.write(",\"");
+                if (income) {
+                    out.write(INCOME_NOTES[random.nextInt(INCOME_NOTES.length)]);
+                } else {
+                    out.write(MERCHANTS[random.nextInt(MERCHANTS.length)]);
+                    out.write(' ');
+                    out.write(DETAILS[random.nextInt(DETAILS.length)]);
+                }
+                out.write(" #");
+                out.write(Integer.toString(i % 1000));
+                out.write("\",");
+                out.write(java.time.LocalDateTime.ofEpochSecond(second, 0, java.time.ZoneOffset.UTC).format(format));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void truncate() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             java.sql.Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM transactions");
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("DELETE FROM daily_totals");
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The write path: one expense at a time as the console tools and API add them, and bulk rows as
+ * the importers add them. Both keep the rollups and budget-alert counters up to date, and write
+ * to a private copy of the generated ledger.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InsertBenchmarks {
+    private static final int BATCH_ROWS = 1_000;
+    // The generated ledger's last month, which has budgets
+    private static final String TIMESTAMP = "2024-12-20 12:00:00";
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private final Ledger ledger = Ledger.shared();
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException, InterruptedException, SQLException {
+        LedgerGenerator.use(LedgerGenerator.scratchCopy(rows));
+        Schema.migrate();
+    }
+
+    @Benchmark
+    public long single() throws SQLException {
+        return TransactionStore.insert(ledger, "Expense", 1 + sequence++ % 5_000, "Benchmark", TIMESTAMP, "Groceries");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_ROWS)
+    public long batch() throws SQLException {
+        try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, BATCH_ROWS)) {
+            for (int i = 0; i < BATCH_ROWS; i++) {
+                batch.add("Expense", 1 + sequence++ % 5_000, "Benchmark", TIMESTAMP, "Groceries");
+            }
+            batch.flush();
+            return batch.rows();
+        }
+    }
+}
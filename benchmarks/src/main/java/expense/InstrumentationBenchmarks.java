@@ -0,0 +1,72 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link QueryMetrics} costs: the same short queries with metrics off (the default) and on,
+ * each in its own fork since the switch is fixed at start-up. The "off" scores should match
+ * {@link BudgetBenchmarks} and {@link ListingBenchmarks} from before the metrics existed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class InstrumentationBenchmarks {
+    private static final int MONTH = 202406;
+
+    @Param({"100000"})
+    public int rows;
+
+    private final Ledger ledger = Ledger.shared();
+
+    @Setup(Level.Trial)
+    public void open() throws IOException, InterruptedException, SQLException {
+        LedgerGenerator.use(LedgerGenerator.dataset(rows));
+        Schema.migrate();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public long budgetSummaryOff() throws SQLException {
+        return budgetSummary();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dexpense.metrics.enabled=true")
+    public long budgetSummaryOn() throws SQLException {
+        return budgetSummary();
+    }
+
+    @Benchmark
+    @Fork(1)
+    public TransactionPager.Page firstPageOff() throws SQLException {
+        return TransactionPager.firstPage(ledger, TransactionPager.Filter.NONE, 20);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dexpense.metrics.enabled=true")
+    public TransactionPager.Page firstPageOn() throws SQLException {
+        return TransactionPager.firstPage(ledger, TransactionPager.Filter.NONE, 20);
+    }
+
+    private long budgetSummary() throws SQLException {
+        Long budget = BudgetingTool.budgetCents(ledger, MONTH, "");
+        return (budget == null ? 0 : budget) - BudgetingTool.expenseCents(ledger, MONTH);
+    }
+}
@@ -0,0 +1,242 @@
+package expense;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and crash recovery of the write-behind {@link TransactionJournal}.
+ *
+ * Throughput mode appends {@code entries} transactions at each durability level, from one thread
+ * and from {@code threads}, and reports the acknowledged rate and latency, how long the writer
+ * took to get everything into SQLite, and how many entries went into each commit. Plain
+ * {@link TransactionStore#insert} is timed alongside for comparison.
+ *
+ * Crash mode starts a child JVM that appends as fast as it can and prints each acknowledged
+ * entry, kills it with SIGKILL at a random moment, and repeats for {@code rounds}; each child
+ * first replays what the one before left, so some are killed mid-replay. Then the journal is
+ * opened once more, drained, and the database is checked: every acknowledged entry present
+ * exactly once and the rollups matching the rows. Exits with status 1 if not.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar expense.JournalBenchmark [entries] [threads]
+ *   java -cp benchmarks/target/benchmarks.jar expense.JournalBenchmark crash [rounds] [durability]
+ *
+ * Both work in a temporary directory. SIGKILL leaves the page cache intact, so every level
+ * should pass the crash check; only {@code fsync} also survives losing power.
+ */
+public class JournalBenchmark {
+    private static final String TIMESTAMP = "2024-06-15 12:00:00";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            child(Path.of(args[1]), Integer.parseInt(args[2]), TransactionJournal.Durability.parse(args[3]));
+        } else if (args.length > 0 && args[0].equals("crash")) {
+            crash(args.length > 1 ? Integer.parseInt(args[1]) : 8,
+                    TransactionJournal.Durability.parse(args.length > 2 ? args[2] : "fsync"));
+        } else {
+            throughput(args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 200_000,
+                    args.length > 1 ? Integer.parseInt(args[1]) : 8);
+        }
+    }
+
+    private static void throughput(int entries, int threads) throws Exception {
+        Path dir = Files.createTempDirectory("journalbench");
+        LedgerGenerator.use(dir.resolve("journalbench.db"));
+        Schema.migrate();
+        System.out.printf("%,d entries per run, in %s%n", entries, dir);
+
+        int direct = Math.min(entries, 5_000);
+        for (int t : new int[]{1, threads}) {
+            long start = System.nanoTime();
+            LatencyHistogram latency = run(t, direct, (ledger, i) -> TransactionStore.insert(ledger, "Expense", 100 + i % 900,
+                    "direct " + i, TIMESTAMP, "Groceries"));
+            report("direct insert", t, direct, System.nanoTime() - start, latency, 0, null);
+        }
+
+        for (TransactionJournal.Durability durability : TransactionJournal.Durability.values()) {
+            for (int t : new int[]{1, threads}) {
+                Path journalDir = Files.createTempDirectory(dir, "journal-" + durability);
+                try (TransactionJournal journal = TransactionJournal.open(journalDir, durability)) {
+                    long start = System.nanoTime();
+                    LatencyHistogram latency = run(t, entries, (ledger, i) -> journal.append(ledger, "Expense",
+                            100 + i % 900, "journaled " + i, TIMESTAMP, "Groceries"));
+                    long acked = System.nanoTime() - start;
+                    if (!journal.awaitApplied(TimeUnit.MINUTES.toMillis(10))) {
+                        System.out.println("  writer did not catch up within 10 minutes");
+                    }
+                    report("journal " + durability.name().toLowerCase(), t, entries, acked, latency,
+                            System.nanoTime() - start, journal.stats());
+                }
+            }
+        }
+        Database.closeAll();
+    }
+
+    @FunctionalInterface
+    private interface Write {
+        void run(Ledger ledger, int i) throws Exception;
+    }
+
+    /** Runs {@code count} writes spread over {@code threads} threads, each to its own user's ledger. */
+    private static LatencyHistogram run(int threads, int count, Write write) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        List<Thread> workers = new ArrayList<>();
+        AtomicLong failures = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            Ledger ledger = Ledger.forUser(t + 1);
+            int from = (int) ((long) count * t / threads);
+            int to = (int) ((long) count * (t + 1) / threads);
+            Thread worker = new Thread(() -> {
+                for (int i = from; i < to; i++) {
+                    long t0 = System.nanoTime();
+                    try {
+                        write.run(ledger, i);
+                    } catch (Exception e) {
+                        if (failures.getAndIncrement() == 0) {
+                            System.err.println("Error writing: " + e.getMessage());
+                        }
+                    }
+                    latency.record(System.nanoTime() - t0);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failures.get() > 0) {
+            System.err.println(failures.get() + " writes failed");
+        }
+        return latency;
+    }
+
+    private static void report(String label, int threads, int count, long ackedNanos, LatencyHistogram latency,
+                               long appliedNanos, TransactionJournal.Stats stats) {
+        System.out.printf("  %-18s %2d thread(s): %,10.0f acks/s  p50 %8.1f us  p99 %8.1f us", label, threads,
+                count / (ackedNanos / 1e9), latency.percentile(50) / 1e3, latency.percentile(99) / 1e3);
+        if (stats != null) {
+            System.out.printf("  in SQLite after %6.2f s (%,.0f rows/s, %.0f per commit)", appliedNanos / 1e9,
+                    count / (appliedNanos / 1e9), stats.groups() == 0 ? 0.0 : (double) stats.applied() / stats.groups());
+        }
+        System.out.println();
+    }
+
+    // Appends until killed, printing the index of each acknowledged entry. Users 0-2 each get a
+    // third of the entries, user 0 through the shared ledger
+    private static void child(Path dir, int round, TransactionJournal.Durability durability) throws Exception {
+        Schema.migrate();
+        TransactionJournal journal = TransactionJournal.open(dir.resolve("journal"), durability);
+        System.out.println("ready");
+        System.out.flush();
+        for (int i = 0; ; i++) {
+            Ledger ledger = i % 3 == 0 ? Ledger.shared() : Ledger.forUser(i % 3);
+            journal.append(ledger, i % 5 == 0 ? "Income" : "Expense", 1 + i % 10_000, "r" + round + "-" + i,
+                    TIMESTAMP, "Crash");
+            System.out.println(i);
+            System.out.flush();
+        }
+    }
+
+    private static void crash(int rounds, TransactionJournal.Durability durability) throws Exception {
+        Path dir = Files.createTempDirectory("journalcrash");
+        Path db = dir.resolve("crash.db");
+        Random random = new Random(19L);
+        long[] ackedThrough = new long[rounds];
+        System.out.printf("%d rounds at durability %s, in %s%n", rounds, durability.name().toLowerCase(), dir);
+
+        for (int round = 0; round < rounds; round++) {
+            Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"), "-Dexpense.db.financeUrl=jdbc:sqlite:" + db,
+                    JournalBenchmark.class.getName(), "child", dir.toString(), Integer.toString(round),
+                    durability.name())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            AtomicLong last = new AtomicLong(-1);
+            Thread reader = new Thread(() -> {
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+                            last.set(Long.parseLong(line));
+                        }
+                    }
+                } catch (IOException e) {
+                    // The child was killed
+                }
+            });
+            reader.start();
+            long delay = 300 + random.nextInt(1_500);
+            Thread.sleep(delay);
+            process.destroyForcibly();
+            process.waitFor();
+            reader.join();
+            ackedThrough[round] = last.get();
+            System.out.printf("  round %d: killed after %4d ms, %,d entries acknowledged%n", round, delay, last.get() + 1);
+        }
+
+        LedgerGenerator.use(db);
+        long start = System.nanoTime();
+        TransactionJournal.Stats stats;
+        try (TransactionJournal journal = TransactionJournal.open(dir.resolve("journal"), durability)) {
+            if (!journal.awaitApplied(TimeUnit.MINUTES.toMillis(10))) {
+                System.out.println("FAIL: final replay did not finish");
+                System.exit(1);
+            }
+            stats = journal.stats();
+        }
+        System.out.printf("Final replay in %.2f s: %s%n", (System.nanoTime() - start) / 1e9, stats);
+
+        boolean ok = verify(ackedThrough);
+        Database.closeAll();
+        System.out.println(ok ? "PASS" : "FAIL");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean verify(long[] ackedThrough) throws SQLException {
+        boolean ok = true;
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            long duplicates = single(stmt, "SELECT COUNT(*) FROM (SELECT notes FROM transactions GROUP BY notes HAVING COUNT(*) > 1)");
+            System.out.printf("  duplicated entries: %d%n", duplicates);
+            ok &= duplicates == 0;
+            for (int round = 0; round < ackedThrough.length; round++) {
+                String prefix = "r" + round + "-";
+                long present = single(stmt, "SELECT COUNT(*) FROM transactions WHERE notes LIKE '" + prefix + "%' AND CAST(substr(notes, "
+                        + (prefix.length() + 1) + ") AS INTEGER) <= " + ackedThrough[round]);
+                long extra = single(stmt, "SELECT COUNT(*) FROM transactions WHERE notes LIKE '" + prefix + "%'") - present;
+                System.out.printf("  round %d: %,d of %,d acknowledged entries present, %d written but unacknowledged%n",
+                        round, present, ackedThrough[round] + 1, extra);
+                ok &= present == ackedThrough[round] + 1;
+            }
+            long rows = single(stmt, "SELECT COUNT(*) FROM transactions");
+            long cents = single(stmt, "SELECT COALESCE(SUM(amount_cents), 0) FROM transactions");
+            long rolledRows = single(stmt, "SELECT COALESCE(SUM(count), 0) FROM monthly_totals");
+            long rolledCents = single(stmt, "SELECT COALESCE(SUM(total_cents), 0) FROM monthly_totals");
+            System.out.printf("  rollups: %,d rows / %s in transactions, %,d / %s in monthly_totals%n",
+                    rows, Money.format(cents), rolledRows, Money.format(rolledCents));
+            ok &= rows == rolledRows && cents == rolledCents;
+        }
+        return ok;
+    }
+
+    private static long single(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Grows the number of users in stages (100, 1,000, 10,000 by default) and after each stage
+ * measures one user's queries: the first page of their listing, their expenses for a month and
+ * their budget. With per-user indexes these should cost the same at every stage; the same listing
+ * without the index is timed for contrast.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:ledgerbench.db [-Dexpense.ledger.shards=bucket] \
+ *        expense.LedgerBenchmark [users] [rowsPerUser] [samples]
+ */
+public class LedgerBenchmark {
+    private static final String UNINDEXED_PAGE_SQL = """
+                                                     SELECT id, type, amount_cents, notes, timestamp
+                                                     FROM transactions NOT INDEXED
+                                                     WHERE user_id = ?
+                                                     ORDER BY timestamp DESC, id DESC
+                                                     LIMIT 20
+                                                     """;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rowsPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to benchmark against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:ledgerbench.db");
+            return;
+        }
+        String shards = System.getProperty("expense.ledger.shards", "none");
+        Path dir = Path.of(System.getProperty("expense.ledger.dir", "ledgers"));
+        if (!shards.equals("none") && Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                if (files.findAny().isPresent()) {
+                    System.out.println("Refusing to reuse " + dir + "; pass -Dexpense.ledger.dir=<empty directory>");
+                    return;
+                }
+            }
+        }
+        Schema.migrate();
+        truncate();
+        System.out.printf("Shards: %s, %d rows per user, %d samples per stage%n", shards, rowsPerUser, samples);
+
+        Random random = new Random(7L);
+        int loaded = 0;
+        for (int stage = 100; loaded < users; stage = Math.min(stage * 10, users)) {
+            long start = System.nanoTime();
+            for (int user = loaded + 1; user <= stage; user++) {
+                load(Ledger.forUser(user), rowsPerUser, random);
+            }
+            System.out.printf("%,7d users (%,d rows) loaded in %.1f s, %d shard files open%n", stage,
+                    (long) stage * rowsPerUser, (System.nanoTime() - start) / 1e9, Ledger.openShards());
+            loaded = stage;
+            measure(loaded, samples, random);
+        }
+    }
+
+    private static void load(Ledger ledger, int rows, Random random) throws SQLException {
+        try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, rows)) {
+            for (int i = 0; i < rows; i++) {
+                boolean income = random.nextInt(5) == 0;
+                String timestamp = String.format("2024-%02d-%02d 12:00:00", 1 + random.nextInt(12), 1 + random.nextInt(28));
+                batch.add(income ? "Income" : "Expense", random.nextInt(50_001), "row " + i, timestamp);
+            }
+            batch.flush();
+        }
+        BudgetingTool.setBudget(ledger, 202406, "", 100_000);
+    }
+
+    private static void measure(int users, int samples, Random random) throws SQLException {
+        long[] page = new long[samples];
+        long[] expenses = new long[samples];
+        long[] budget = new long[samples];
+        for (int i = 0; i < samples; i++) {
+            Ledger ledger = Ledger.forUser(1 + random.nextInt(users));
+            long t0 = System.nanoTime();
+            TransactionPager.firstPage(ledger, TransactionPager.Filter.NONE, 20);
+            long t1 = System.nanoTime();
+            BudgetingTool.expenseCents(ledger, 202406);
+            long t2 = System.nanoTime();
+            BudgetingTool.budgetCents(ledger, 202406, "");
+            long t3 = System.nanoTime();
+            page[i] = t1 - t0;
+            expenses[i] = t2 - t1;
+            budget[i] = t3 - t2;
+        }
+
+        // A handful is enough to show the trend, and keeps the 10k stage quick
+        long[] unindexed = new long[Math.min(samples, 50)];
+        for (int i = 0; i < unindexed.length; i++) {
+            Ledger ledger = Ledger.forUser(1 + random.nextInt(users));
+            long t0 = System.nanoTime();
+            try (Database.PooledConnection conn = ledger.acquire()) {
+                PreparedStatement pstmt = conn.prepare(UNINDEXED_PAGE_SQL);
+                pstmt.setLong(1, ledger.userId());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getLong(1);
+                    }
+                }
+            }
+            unindexed[i] = System.nanoTime() - t0;
+        }
+        System.out.printf("        first page  %s%n        month spend %s%n        budget      %s%n        no index    %s%n",
+                percentiles(page), percentiles(expenses), percentiles(budget), percentiles(unindexed));
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %7.3f ms  p99 %7.3f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1e6);
+    }
+
+    private static void truncate() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM transactions");
+            stmt.execute("DELETE FROM budget");
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("DELETE FROM daily_totals");
+        }
+    }
+}
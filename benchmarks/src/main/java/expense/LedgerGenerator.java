@@ -0,0 +1,210 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic ledgers for the benchmarks: a monthly salary and the odd other income, and expenses
+ * in categories whose amounts, frequency and merchants roughly follow a household's (rent once a
+ * month, groceries a few times a week, coffee most days), spread over {@code years} years ending
+ * December 2024 and written in time order through {@link TransactionStore.Batch}, so the rollups
+ * and indexes are exactly what the app would have built. Each month gets a budget, as do
+ * groceries and dining. Output for a given (rows, years, users, seed) is always the same.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar expense.LedgerGenerator rows [file] [years] [users] [seed]
+ *
+ * The JMH suites call {@link #dataset(int)}, which keeps one file per size in
+ * {@code -Dexpense.bench.dataDir} ({@code bench-data}) and generates missing ones in a child JVM,
+ * because the database URL is fixed once {@link Database} is loaded.
+ */
+public final class LedgerGenerator {
+    public static final int YEARS = 10;
+    public static final long SEED = 42L;
+    // Fixed rather than relative to today so a dataset is the same whenever it is generated
+    public static final YearMonth LAST_MONTH = YearMonth.of(2024, 12);
+    public static final Path DATA_DIR = Path.of(System.getProperty("expense.bench.dataDir", "bench-data"));
+
+    private static final String[] INCOME_NOTES = {"Freelance invoice", "Tax refund", "Interest", "Sold on marketplace", "Gift"};
+
+    /** weight = relative share of expense rows; amounts are log-normal around {@code medianCents}. */
+    private record Category(String name, int weight, long medianCents, double spread, String[] merchants) {
+    }
+
+    private static final Category[] CATEGORIES = {
+            new Category("Groceries", 22, 5_400, 0.5, new String[]{"Tesco", "Lidl", "Aldi", "Farmers market", "Corner shop"}),
+            new Category("Dining", 16, 2_300, 0.6, new String[]{"Pizza place", "Sushi bar", "Burger joint", "Thai takeaway"}),
+            new Category("Coffee", 18, 380, 0.3, new String[]{"Coffee", "Bakery", "Espresso bar"}),
+            new Category("Transport", 14, 1_200, 0.8, new String[]{"Train ticket", "Bus pass", "Fuel", "Taxi", "Parking"}),
+            new Category("Shopping", 10, 4_500, 0.9, new String[]{"Online order", "Clothes", "Hardware store", "Books"}),
+            new Category("Entertainment", 7, 2_000, 0.7, new String[]{"Cinema", "Concert tickets", "Streaming", "Games"}),
+            new Category("Health", 4, 3_500, 0.8, new String[]{"Pharmacy", "Dentist", "Gym membership"}),
+            new Category("Utilities", 5, 9_000, 0.4, new String[]{"Electricity", "Water", "Internet", "Phone bill"}),
+            new Category("Travel", 3, 32_000, 0.9, new String[]{"Flights", "Hotel", "Car hire"}),
+            new Category("Rent", 1, 145_000, 0.05, new String[]{"Rent"}),
+    };
+
+    private LedgerGenerator() {
+    }
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length == 0) {
+            System.out.println("Usage: LedgerGenerator rows [file] [years] [users] [seed]");
+            return;
+        }
+        int rows = Integer.parseInt(args[0].replace("_", ""));
+        if (args.length > 1) {
+            System.setProperty("expense.db.financeUrl", "jdbc:sqlite:" + args[1]);
+        }
+        int years = args.length > 2 ? Integer.parseInt(args[2]) : YEARS;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : SEED;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to generate into finance.db; pass a file or -Dexpense.db.financeUrl");
+            return;
+        }
+        long start = System.nanoTime();
+        Schema.migrate();
+        generate(rows, years, users, seed);
+        Database.closeAll();
+        System.out.printf("Generated %,d rows for %d user(s) over %d years into %s in %.1f s%n",
+                rows, users, years, Database.FINANCE_URL, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Writes {@code rows} transactions into the current finance database. With one user everything
+     * goes to the shared ledger the console tools use; with more, rows are dealt round-robin to
+     * users 0 .. users-1.
+     */
+    public static void generate(int rows, int years, int users, long seed) throws SQLException {
+        Random random = new Random(seed);
+        YearMonth first = LAST_MONTH.minusMonths(years * 12L - 1);
+        int months = years * 12;
+        List<TransactionStore.Batch> batches = new ArrayList<>(users);
+        int totalWeight = 0;
+        for (Category category : CATEGORIES) {
+            totalWeight += category.weight();
+        }
+        try {
+            for (int user = 0; user < users; user++) {
+                batches.add(TransactionStore.openBatch(Ledger.forUser(user), 10_000));
+            }
+            long written = 0;
+            for (int m = 0; m < months; m++) {
+                YearMonth month = first.plusMonths(m);
+                // Spread what is left evenly over the months that are left
+                long monthRows = (rows - written) / (months - m);
+                int days = month.lengthOfMonth();
+                for (long i = 0; i < monthRows; i++) {
+                    // Rows come out in time order, as they would be entered
+                    int day = 1 + (int) (i * days / monthRows);
+                    String timestamp = String.format("%04d-%02d-%02d %02d:%02d:%02d", month.getYear(),
+                            month.getMonthValue(), day, 7 + random.nextInt(15), random.nextInt(60), random.nextInt(60));
+                    TransactionStore.Batch batch = batches.get((int) ((written + i) % users));
+                    if (random.nextInt(100) < 4) {
+                        boolean salary = i == 0 || random.nextInt(4) == 0;
+                        batch.add("Income", salary ? logNormal(random, 320_000, 0.05) : logNormal(random, 15_000, 1.0),
+                                salary ? "Salary" : INCOME_NOTES[random.nextInt(INCOME_NOTES.length)], timestamp);
+                        continue;
+                    }
+                    Category category = pick(random, totalWeight);
+                    String notes = random.nextInt(10) == 0 ? null : category.merchants()[random.nextInt(category.merchants().length)];
+                    batch.add("Expense", logNormal(random, category.medianCents(), category.spread()), notes, timestamp,
+                            category.name());
+                }
+                written += monthRows;
+            }
+            for (TransactionStore.Batch batch : batches) {
+                batch.flush();
+            }
+        } finally {
+            for (TransactionStore.Batch batch : batches) {
+                batch.close();
+            }
+        }
+
+        // Budgets last, so the bulk load does not also feed the alert counters
+        long monthlyExpense = Math.max(1, rows / months) * 4_000L;
+        for (int user = 0; user < users; user++) {
+            Ledger ledger = Ledger.forUser(user);
+            for (int m = 0; m < months; m++) {
+                YearMonth month = first.plusMonths(m);
+                int yearMonth = month.getYear() * 100 + month.getMonthValue();
+                BudgetingTool.setBudget(ledger, yearMonth, "", monthlyExpense / users);
+                BudgetingTool.setBudget(ledger, yearMonth, "Groceries", monthlyExpense / users / 5);
+                BudgetingTool.setBudget(ledger, yearMonth, "Dining", monthlyExpense / users / 8);
+            }
+        }
+    }
+
+    private static Category pick(Random random, int totalWeight) {
+        int roll = random.nextInt(totalWeight);
+        for (Category category : CATEGORIES) {
+            roll -= category.weight();
+            if (roll < 0) {
+                return category;
+            }
+        }
+        return CATEGORIES[0];
+    }
+
+    private static long logNormal(Random random, long medianCents, double spread) {
+        return Math.max(1, Math.round(medianCents * Math.exp(random.nextGaussian() * spread)));
+    }
+
+    /**
+     * The cached ledger of {@code rows} rows (default years, one user, default seed), generating it
+     * first if needed. Generation runs in a child JVM and the file is renamed into place when done,
+     * so an interrupted run never leaves a half-written dataset behind.
+     */
+    public static Path dataset(int rows) throws IOException, InterruptedException {
+        Path file = DATA_DIR.resolve("ledger-" + rows + "-y" + YEARS + "-s" + SEED + ".db").toAbsolutePath();
+        if (Files.exists(file)) {
+            return file;
+        }
+        Files.createDirectories(DATA_DIR);
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        Files.deleteIfExists(partial);
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), LedgerGenerator.class.getName(),
+                Integer.toString(rows), partial.toString())
+                .inheritIO()
+                .start();
+        if (!process.waitFor(6, TimeUnit.HOURS) || process.exitValue() != 0) {
+            process.destroyForcibly();
+            throw new IOException("Generating " + file + " failed");
+        }
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /** A private copy of the dataset, for benchmarks that write. */
+    public static Path scratchCopy(int rows) throws IOException, InterruptedException {
+        Path source = dataset(rows);
+        Path copy = Files.createTempFile(DATA_DIR.toAbsolutePath(), "scratch-" + rows + "-", ".db");
+        Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING);
+        copy.toFile().deleteOnExit();
+        return copy;
+    }
+
+    /**
+     * Points this JVM's finance database at {@code file}. Must run before anything touches
+     * {@link Database}; JMH runs each parameter combination in a fresh fork, so setup code can.
+     */
+    public static void use(Path file) {
+        String url = "jdbc:sqlite:" + file;
+        System.setProperty("expense.db.financeUrl", url);
+        if (!Database.FINANCE_URL.equals(url)) {
+            throw new IllegalStateException("Database was already initialised with " + Database.FINANCE_URL
+                    + "; run benchmarks forked (-f 1 or more)");
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * A generated ledger of {@code rows} rows, shared by the read-only suites. Sizes beyond the
+ * defaults are chosen on the command line, e.g. {@code -p rows=10000000}.
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    public final Ledger ledger = Ledger.shared();
+
+    @Setup(Level.Trial)
+    public void open() throws IOException, InterruptedException, SQLException {
+        LedgerGenerator.use(LedgerGenerator.dataset(rows));
+        Schema.migrate();
+    }
+}
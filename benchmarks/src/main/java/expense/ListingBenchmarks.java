@@ -0,0 +1,48 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/** Keyset-paged listing as the console and API show it: newest page, a page deep in history, and filtered. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmarks {
+    private static final int PAGE = 20;
+    private static final TransactionPager.Cursor MIDDLE = new TransactionPager.Cursor("2020-01-01 00:00:00", Long.MAX_VALUE);
+    private static final TransactionPager.Filter EXPENSES_OVER_100 =
+            new TransactionPager.Filter("Expense", 10_000L, null, null, null, null);
+    private static final TransactionPager.Filter ONE_MONTH_DINING_NOTES =
+            new TransactionPager.Filter(null, null, null, LocalDate.of(2024, 6, 1), LocalDate.of(2024, 6, 30), "Sushi");
+
+    @Benchmark
+    public TransactionPager.Page firstPage(LedgerState state) throws SQLException {
+        return TransactionPager.firstPage(state.ledger, TransactionPager.Filter.NONE, PAGE);
+    }
+
+    @Benchmark
+    public TransactionPager.Page pageFiveYearsBack(LedgerState state) throws SQLException {
+        return TransactionPager.olderPage(state.ledger, TransactionPager.Filter.NONE, MIDDLE, PAGE);
+    }
+
+    @Benchmark
+    public TransactionPager.Page amountFilter(LedgerState state) throws SQLException {
+        return TransactionPager.firstPage(state.ledger, EXPENSES_OVER_100, PAGE);
+    }
+
+    @Benchmark
+    public TransactionPager.Page dateAndNotesFilter(LedgerState state) throws SQLException {
+        return TransactionPager.firstPage(state.ledger, ONE_MONTH_DINING_NOTES, PAGE);
+    }
+}
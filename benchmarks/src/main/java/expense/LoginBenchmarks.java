@@ -0,0 +1,58 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BCrypt login through {@link AuthService}, against a scratch users database, with throttling
+ * set high enough never to trip. A wrong password costs a full hash too, so it is measured as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginBenchmarks {
+    private static final String USER = "bench";
+    private static final String PASSWORD = "Benchmark1!";
+
+    @Param({"10"})
+    public int cost;
+
+    private AuthService auth;
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        Path users = Files.createTempFile("login-bench-", ".db");
+        users.toFile().deleteOnExit();
+        System.setProperty("expense.db.usersUrl", "jdbc:sqlite:" + users);
+        UserAuthentication.createUsersTable();
+        auth = new AuthService(new AuthService.Config(1, 64, cost, 1e9, 1e9, 1e9, 1e9), Database.users());
+        auth.register(USER, PASSWORD).join();
+    }
+
+    @Benchmark
+    public AuthService.Outcome success() {
+        return auth.login(USER, PASSWORD, "127.0.0.1").join();
+    }
+
+    @Benchmark
+    public AuthService.Outcome wrongPassword() {
+        return auth.login(USER, "Wrong-password1", "127.0.0.1").join();
+    }
+}
@@ -0,0 +1,106 @@
+package expense;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Random;
+
+/**
+ * Compares the cents-based {@link Money} routines with the double-based code they replaced:
+ * parsing, formatting, and SUM over the ledger (integer cents vs the same values as REAL).
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:bench.db expense.MoneyBenchmark [values] [iterations]
+ */
+public class MoneyBenchmark {
+    private static final String SUM_CENTS_SQL = "SELECT SUM(amount_cents) FROM transactions";
+    private static final String SUM_REAL_SQL = "SELECT SUM(amount_cents / 100.0) FROM transactions";
+
+    private static long sink;
+
+    public static void main(String[] args) throws SQLException {
+        int values = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Random random = new Random(7L);
+        String[] text = new String[values];
+        long[] cents = new long[values];
+        for (int i = 0; i < values; i++) {
+            cents[i] = random.nextInt(5_000_000);
+            text[i] = Money.format(cents[i]);
+        }
+
+        // A dime added a million times: the double total drifts, the long total cannot
+        double doubleTotal = 0;
+        long centsTotal = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            doubleTotal += 0.10;
+            centsTotal += Money.parse("0.10");
+        }
+        System.out.printf("1,000,000 x 0.10: double %s, cents %s%n", doubleTotal, Money.format(centsTotal));
+
+        for (int round = 0; round < iterations; round++) {
+            long start = System.nanoTime();
+            for (String s : text) {
+                sink += Money.parse(s);
+            }
+            long moneyParse = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String s : text) {
+                sink += (long) Double.parseDouble(s);
+            }
+            long doubleParse = System.nanoTime() - start;
+
+            StringBuilder out = new StringBuilder(32);
+            start = System.nanoTime();
+            for (long c : cents) {
+                out.setLength(0);
+                sink += Money.appendTo(out, c).length();
+            }
+            long moneyFormat = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (long c : cents) {
+                sink += String.format("%.2f", c / 100.0).length();
+            }
+            long doubleFormat = System.nanoTime() - start;
+
+            System.out.printf("parse: Money %.1f ms, Double.parseDouble %.1f ms | format: Money %.1f ms, String.format %.1f ms%n",
+                    moneyParse / 1e6, doubleParse / 1e6, moneyFormat / 1e6, doubleFormat / 1e6);
+        }
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Skipping the SQL comparison against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:bench.db");
+            return;
+        }
+        Schema.migrate();
+        for (int round = 0; round < iterations; round++) {
+            long start = System.nanoTime();
+            String exact = Money.format(sumCents());
+            long centsElapsed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double real = sumReal();
+            long realElapsed = System.nanoTime() - start;
+
+            System.out.printf("SUM: INTEGER cents %s in %.1f ms, REAL %.6f in %.1f ms%n",
+                    exact, centsElapsed / 1e6, real, realElapsed / 1e6);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static long sumCents() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             ResultSet rs = conn.prepare(SUM_CENTS_SQL).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static double sumReal() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             ResultSet rs = conn.prepare(SUM_REAL_SQL).executeQuery()) {
+            return rs.next() ? rs.getDouble(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package expense;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares user provisioning before and after {@link PasswordPolicy} and {@link UserProvisioning}:
+ * password checks with the old three-regex test against the single-pass policy, then a generated
+ * HR export registered one user at a time (as the registration menu does) against the bulk import.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.usersUrl=jdbc:sqlite:provbench.db expense.ProvisioningBenchmark [users] [cost]
+ */
+public class ProvisioningBenchmark {
+    private static final int VALIDATION_ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int cost = args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("expense.auth.bcryptCost", 8);
+
+        if (Database.USERS_URL.endsWith(":users.db")) {
+            System.out.println("Refusing to benchmark against users.db; pass -Dexpense.db.usersUrl=jdbc:sqlite:provbench.db");
+            return;
+        }
+        UserAuthentication.createUsersTable();
+
+        benchmarkValidation(passwords(10_000, new Random(1L)));
+
+        Path csv = Files.createTempFile("users", ".csv");
+        try {
+            writeCsv(csv, users, new Random(2L));
+            int threads = Runtime.getRuntime().availableProcessors();
+            System.out.printf("%,d users, BCrypt cost %d, %d cores%n", users, cost, threads);
+
+            truncate();
+            AuthService service = new AuthService(new AuthService.Config(threads, 64, cost, 5, 1, 20, 2),
+                    Database.users());
+            long start = System.nanoTime();
+            long created = 0;
+            try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                List<String> fields = new ArrayList<>(2);
+                reader.readLine(); // header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    UserProvisioning.split(line, fields);
+                    if (legacyIsValid(fields.get(1))
+                            && service.register(fields.get(0), fields.get(1)).join() == AuthService.Outcome.SUCCESS) {
+                        created++;
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("One at a time: %d users in %.2f s (%.1f users/sec)%n",
+                    created, elapsed / 1e9, created * 1e9 / elapsed);
+
+            truncate();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+                UserProvisioning.Result result = UserProvisioning.importRows(reader,
+                        TransactionImporter.DEFAULT_BATCH_SIZE, PasswordPolicy.get(), cost, pool);
+                System.out.println("Bulk import:   " + result);
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    // The check UserAuthentication used before PasswordPolicy
+    private static boolean legacyIsValid(String password) {
+        return password.length() >= 8 &&
+               password.matches(".*\\d.*") &&
+               password.matches(".*[A-Z].*") &&
+               password.matches(".*[!@#$%^&*].*");
+    }
+
+    private static void benchmarkValidation(String[] passwords) {
+        PasswordPolicy policy = PasswordPolicy.get();
+        int agree = 0;
+        for (String password : passwords) {
+            if (legacyIsValid(password) == policy.isValid(password)) {
+                agree++;
+            }
+        }
+        long sink = 0;
+        long legacyNanos = Long.MAX_VALUE;
+        long policyNanos = Long.MAX_VALUE;
+        for (int round = 0; round < VALIDATION_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String password : passwords) {
+                sink += legacyIsValid(password) ? 1 : 0;
+            }
+            legacyNanos = Math.min(legacyNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (String password : passwords) {
+                sink += policy.violations(password);
+            }
+            policyNanos = Math.min(policyNanos, System.nanoTime() - start);
+        }
+        System.out.printf("Password check: regex %.0f ns, policy %.0f ns per password (%d/%d agree, sink %d)%n",
+                (double) legacyNanos / passwords.length, (double) policyNanos / passwords.length,
+                agree, passwords.length, sink);
+    }
+
+    private static String[] passwords(int count, Random random) {
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789!@#$%^&*-_";
+        String[] passwords = new String[count];
+        for (int i = 0; i < count; i++) {
+            char[] chars = new char[6 + random.nextInt(12)];
+            for (int j = 0; j < chars.length; j++) {
+                // Mostly lowercase so that some passwords miss a rule
+                chars[j] = random.nextInt(3) == 0
+                        ? alphabet.charAt(random.nextInt(alphabet.length()))
+                        : alphabet.charAt(random.nextInt(26));
+            }
+            passwords[i] = new String(chars);
+        }
+        return passwords;
+    }
+
+    private static void writeCsv(Path csv, int users, Random random) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("username,password\n");
+            for (int i = 0; i < users; i++) {
+                // One in twenty fails the policy, as some HR exports carry placeholder passwords
+                String password = random.nextInt(20) == 0 ? "changeme" : "Welcome" + random.nextInt(1_000_000) + "!";
+                writer.write("employee" + i + "," + password + "\n");
+            }
+        }
+    }
+
+    private static void truncate() throws SQLException {
+        try (Database.PooledConnection conn = Database.users().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM users");
+        }
+    }
+}
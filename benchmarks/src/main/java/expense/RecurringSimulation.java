@@ -0,0 +1,307 @@
+package expense;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives {@link RecurringScheduler} with a simulated clock through {@code years} of recurring
+ * rules and checks the ledger it leaves.
+ *
+ * {@code rules} rules of mixed kinds (monthly rent, fortnightly salary, month-end subscriptions,
+ * yearly insurance, weekly groceries ending on a date, daily rules with a COUNT) are spread over
+ * four users, with start dates across the whole period, some before it. The clock then moves a
+ * day at a time, with random stretches of downtime of up to 120 days that the scheduler must
+ * catch up in one commit per ledger. Now and then the scheduler is thrown away and a new one
+ * loads the rules again, as after a restart, and for a while a second scheduler runs on the
+ * same files, and some restarts first set a rule back to its start, as if the rules table had
+ * been restored from an old backup; the idempotency keys must stop any of these posting an
+ * occurrence twice.
+ *
+ * At the end every rule must have exactly the occurrences {@link Recurrence} gives up to the
+ * last day, each once, and the rollups must match the rows. Exits with status 1 if not.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar expense.RecurringSimulation [rules] [years] [seed]
+ */
+public class RecurringSimulation {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2015, 1, 1);
+    private static final int USERS = 4;
+
+    /** A clock whose instant the simulation sets. */
+    private static final class SimulatedClock extends Clock {
+        private volatile Instant now;
+
+        SimulatedClock(LocalDate day) {
+            set(day);
+        }
+
+        void set(LocalDate day) {
+            now = day.atTime(12, 0).toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private record Planned(Ledger ledger, String notes, Recurrence recurrence) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int ruleCount = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 400;
+        int years = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        Path dir = Files.createTempDirectory("recurringsim");
+        LedgerGenerator.use(dir.resolve("recurringsim.db"));
+        Schema.migrate();
+        LocalDate lastDay = FIRST_DAY.plusYears(years).minusDays(1);
+        System.out.printf("%,d rules over %d years (%s to %s), in %s%n", ruleCount, years, FIRST_DAY, lastDay, dir);
+
+        Random random = new Random(seed);
+        SimulatedClock clock = new SimulatedClock(FIRST_DAY);
+        RecurringScheduler scheduler = new RecurringScheduler(clock);
+        RecurringScheduler second = null;
+        List<Planned> planned = new ArrayList<>();
+        long totalDays = lastDay.toEpochDay() - FIRST_DAY.toEpochDay() + 1;
+        // Rules are added on the day they are created; a few are backdated before the simulation starts
+        Map<Long, List<Integer>> addedOn = new HashMap<>();
+        for (int i = 0; i < ruleCount; i++) {
+            long day = random.nextInt(10) == 0 ? 0 : random.nextLong(totalDays);
+            addedOn.computeIfAbsent(day, k -> new ArrayList<>()).add(i);
+        }
+
+        LatencyHistogram dayLatency = new LatencyHistogram();
+        LatencyHistogram catchUpLatency = new LatencyHistogram();
+        long catchUps = 0;
+        long restarts = 0;
+        long posted = 0;
+        long downtimeDays = 0;
+        long skipped = 0;
+        long rewound = 0;
+        long start = System.nanoTime();
+        long epochDay = FIRST_DAY.toEpochDay();
+        long addedThrough = -1;
+        while (epochDay <= lastDay.toEpochDay()) {
+            boolean caughtUp = false;
+            int roll = random.nextInt(1_000);
+            if (roll < 4) {
+                // Downtime: the clock jumps ahead and a new process catches up
+                int gap = 1 + random.nextInt(120);
+                epochDay = Math.min(epochDay + gap, lastDay.toEpochDay());
+                downtimeDays += gap;
+                clock.set(LocalDate.ofEpochDay(epochDay));
+                skipped += scheduler.stats().skipped();
+                scheduler.close();
+                scheduler = restart(clock);
+                restarts++;
+                caughtUp = true;
+            } else if (roll < 8) {
+                // A restart from a rules table older than the ledger, as after restoring a backup of it
+                clock.set(LocalDate.ofEpochDay(epochDay));
+                skipped += scheduler.stats().skipped();
+                scheduler.close();
+                rewound += rewind(Ledger.forUser(1 + random.nextInt(USERS)));
+                scheduler = restart(clock);
+                restarts++;
+            } else if (roll < 10 && second == null) {
+                // A second process on the same files, with its own wheel, until it is stopped
+                clock.set(LocalDate.ofEpochDay(epochDay));
+                second = restart(clock);
+            } else if (roll < 12 && second != null) {
+                skipped += second.stats().skipped();
+                second.close();
+                second = null;
+            }
+            LocalDate today = LocalDate.ofEpochDay(epochDay);
+            clock.set(today);
+
+            // Rules created on days skipped by downtime are added now, with their original start
+            for (long day = addedThrough + 1; day <= epochDay - FIRST_DAY.toEpochDay(); day++) {
+                for (int i : addedOn.getOrDefault(day, List.of())) {
+                    Planned rule = plan(i, FIRST_DAY.plusDays(day), random);
+                    scheduler.addRule(rule.ledger(), i % 2 == 0 ? "Expense" : "Income", 1_000 + random.nextInt(200_000),
+                            rule.notes(), i % 2 == 0 ? "Recurring" : null, rule.recurrence());
+                    planned.add(rule);
+                }
+            }
+            addedThrough = epochDay - FIRST_DAY.toEpochDay();
+
+            if (second != null && epochDay % 2 == 0) {
+                // Every other day the second process gets there first, with the first one's rules loaded late
+                loadAll(second);
+                posted += second.advance();
+            }
+            long t0 = System.nanoTime();
+            int count = scheduler.advance();
+            long elapsed = System.nanoTime() - t0;
+            posted += count;
+            if (caughtUp) {
+                catchUpLatency.record(elapsed);
+                catchUps++;
+            } else {
+                dayLatency.record(elapsed);
+            }
+            if (second != null && epochDay % 2 != 0) {
+                loadAll(second);
+                posted += second.advance();
+            }
+            epochDay++;
+        }
+        long elapsed = System.nanoTime() - start;
+        skipped += scheduler.stats().skipped();
+        scheduler.close();
+        if (second != null) {
+            skipped += second.stats().skipped();
+            second.close();
+        }
+
+        System.out.printf("  %d days simulated in %.2f s, %,d transactions posted%n", totalDays, elapsed / 1e9, posted);
+        System.out.printf("  %d restarts, %d catch-ups after %,d days of downtime in total%n", restarts, catchUps, downtimeDays);
+        System.out.printf("  advance() per day:        p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                dayLatency.percentile(50) / 1e6, dayLatency.percentile(99) / 1e6, dayLatency.max() / 1e6);
+        System.out.printf("  advance() after downtime: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                catchUpLatency.percentile(50) / 1e6, catchUpLatency.percentile(99) / 1e6, catchUpLatency.max() / 1e6);
+        System.out.printf("  %d rules rewound to their start, %,d occurrences found already posted and skipped%n",
+                rewound, skipped);
+
+        boolean ok = verify(planned, lastDay);
+        Database.closeAll();
+        System.out.println(ok ? "PASS" : "FAIL");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static RecurringScheduler restart(Clock clock) throws SQLException {
+        RecurringScheduler scheduler = new RecurringScheduler(clock);
+        loadAll(scheduler);
+        return scheduler;
+    }
+
+    private static void loadAll(RecurringScheduler scheduler) throws SQLException {
+        for (int user = 1; user <= USERS; user++) {
+            scheduler.load(Ledger.forUser(user));
+        }
+    }
+
+    // Sets one of the ledger's rules back to before its first occurrence; returns 1 if there was one
+    private static int rewind(Ledger ledger) throws SQLException {
+        for (RecurringScheduler.Rule rule : RecurringScheduler.rules(ledger)) {
+            LocalDate first = rule.recurrence().occurrence(0);
+            if (rule.posted() > 0 && first != null) {
+                try (Database.PooledConnection conn = ledger.acquire()) {
+                    PreparedStatement pstmt = conn.prepare(
+                            "UPDATE recurring_rules SET next_occurrence = 0, next_due = ? WHERE id = ?");
+                    pstmt.setLong(1, first.toEpochDay());
+                    pstmt.setLong(2, rule.id());
+                    pstmt.executeUpdate();
+                }
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private static Planned plan(int i, LocalDate today, Random random) {
+        Ledger ledger = Ledger.forUser(1 + i % USERS);
+        LocalDate start = today.minusDays(random.nextInt(90));
+        String rule = switch (i % 7) {
+            case 0 -> "FREQ=MONTHLY;BYMONTHDAY=1";
+            case 1 -> "FREQ=WEEKLY;INTERVAL=2;BYDAY=FR";
+            case 2 -> "FREQ=MONTHLY;BYMONTHDAY=-1";
+            case 3 -> "FREQ=YEARLY;BYMONTHDAY=" + (1 + random.nextInt(31));
+            case 4 -> "FREQ=WEEKLY;BYDAY=SA;UNTIL=" + start.plusDays(random.nextInt(1_500)).toString().replace("-", "");
+            case 5 -> "FREQ=DAILY;INTERVAL=" + (1 + random.nextInt(5)) + ";COUNT=" + (1 + random.nextInt(400));
+            default -> "FREQ=MONTHLY;INTERVAL=3;BYMONTHDAY=" + (1 + random.nextInt(31));
+        };
+        return new Planned(ledger, "rec-" + i, Recurrence.parse(rule, start));
+    }
+
+    // Every rule's rows are exactly its occurrences up to lastDay, each once
+    private static boolean verify(List<Planned> planned, LocalDate lastDay) throws SQLException {
+        boolean ok = true;
+        long expectedRows = 0;
+        long wrongRules = 0;
+        Map<Ledger, Map<String, List<LocalDate>>> actual = new HashMap<>();
+        for (int user = 1; user <= USERS; user++) {
+            Ledger ledger = Ledger.forUser(user);
+            Map<String, List<LocalDate>> byNotes = new HashMap<>();
+            try (Database.PooledConnection conn = ledger.acquire()) {
+                PreparedStatement pstmt = conn.prepare(
+                        "SELECT notes, date(timestamp) FROM transactions WHERE user_id = ? ORDER BY notes, timestamp");
+                pstmt.setLong(1, user);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        byNotes.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(LocalDate.parse(rs.getString(2)));
+                    }
+                }
+            }
+            actual.put(ledger, byNotes);
+        }
+        for (Planned rule : planned) {
+            List<LocalDate> expected = new ArrayList<>();
+            for (long n = 0; ; n++) {
+                LocalDate date = rule.recurrence().occurrence(n);
+                if (date == null || date.isAfter(lastDay)) {
+                    break;
+                }
+                expected.add(date);
+            }
+            expectedRows += expected.size();
+            List<LocalDate> rows = actual.get(rule.ledger()).getOrDefault(rule.notes(), List.of());
+            if (!rows.equals(expected)) {
+                if (wrongRules++ < 5) {
+                    System.out.printf("  %s (%s): expected %d occurrences, found %d%n",
+                            rule.notes(), rule.recurrence(), expected.size(), rows.size());
+                }
+            }
+        }
+        System.out.printf("  %,d rules checked, %,d expected occurrences, %d rules wrong%n",
+                planned.size(), expectedRows, wrongRules);
+        ok &= wrongRules == 0;
+
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            long rows = single(stmt, "SELECT COUNT(*) FROM transactions");
+            long cents = single(stmt, "SELECT COALESCE(SUM(amount_cents), 0) FROM transactions");
+            long rolledRows = single(stmt, "SELECT COALESCE(SUM(count), 0) FROM monthly_totals");
+            long rolledCents = single(stmt, "SELECT COALESCE(SUM(total_cents), 0) FROM monthly_totals");
+            System.out.printf("  rollups: %,d rows / %s in transactions, %,d / %s in monthly_totals%n",
+                    rows, Money.format(cents), rolledRows, Money.format(rolledCents));
+            ok &= rows == expectedRows && rows == rolledRows && cents == rolledCents;
+        }
+        return ok;
+    }
+
+    private static long single(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package expense;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report generation into discarding sinks, so only the query and formatting are measured. The
+ * PDF covers one month: a statement, not the whole history, is what people export. The
+ * {@code allFormats} benchmarks render that month in every format: one query per format, one
+ * {@link ReportPipeline} scan feeding all four renderers, and a {@link ReportCache} hit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportBenchmarks {
+    private static final ReportFilter LAST_YEAR_FROM_15TH = new ReportFilter(LocalDate.of(2024, 1, 15), null, null);
+    private static final ReportFilter ONE_MONTH = new ReportFilter(LocalDate.of(2024, 12, 1), LocalDate.of(2024, 12, 31), null);
+
+    @Benchmark
+    public boolean textSummary(LedgerState state) throws SQLException, IOException {
+        return ReportGenerator.writeSummary(Writer.nullWriter(), ReportFilter.ALL);
+    }
+
+    @Benchmark
+    public boolean textSummaryUnaligned(LedgerState state) throws SQLException, IOException {
+        return ReportGenerator.writeSummary(Writer.nullWriter(), LAST_YEAR_FROM_15TH);
+    }
+
+    @Benchmark
+    public long pdfOneMonth(LedgerState state) throws Exception {
+        return ReportGenerator.writePdf(OutputStream.nullOutputStream(), Ledger.shared(), ONE_MONTH);
+    }
+
+    @Benchmark
+    public long allFormatsOneMonthSeparately(LedgerState state) throws Exception {
+        long rows = 0;
+        for (ReportPipeline.Format format : ReportPipeline.Format.values()) {
+            rows += ReportPipeline.render(Ledger.shared(), ONE_MONTH, Map.of(format, OutputStream.nullOutputStream())).transactions();
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public long allFormatsOneMonthOneScan(LedgerState state) throws Exception {
+        Map<ReportPipeline.Format, OutputStream> outputs = new EnumMap<>(ReportPipeline.Format.class);
+        for (ReportPipeline.Format format : ReportPipeline.Format.values()) {
+            outputs.put(format, OutputStream.nullOutputStream());
+        }
+        return ReportPipeline.render(Ledger.shared(), ONE_MONTH, outputs).transactions();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dexpense.report.cacheDir=bench-data/report-cache")
+    public boolean allFormatsOneMonthCached(LedgerState state) throws Exception {
+        try (ReportCache.Report report = ReportCache.get(Ledger.shared(), ONE_MONTH, EnumSet.allOf(ReportPipeline.Format.class))) {
+            return report.cached();
+        }
+    }
+}
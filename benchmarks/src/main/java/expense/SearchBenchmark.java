@@ -0,0 +1,97 @@
+package expense;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Compares FTS5 note search with a {@code LIKE '%term%'} scan on a generated ledger.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:bench.db expense.SearchBenchmark [rows] [iterations]
+ *
+ * Rows are only generated when the scratch database holds fewer than requested.
+ */
+public class SearchBenchmark {
+    // Mix of common terms (a few percent of rows), a prefix, a phrase and a rare token
+    private static final String[] TERMS = {"sushi", "pharm*", "\"annual renewal\"", "refund", "gym", "272"};
+
+    private static final String LIKE_SQL = """
+                                           SELECT id, type, amount_cents, notes, timestamp
+                                           FROM transactions
+                                           WHERE notes LIKE ?;
+                                           """;
+
+    public static void main(String[] args) throws IOException, SQLException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to benchmark against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:bench.db");
+            return;
+        }
+        Schema.migrate();
+
+        long existing = count("SELECT COALESCE(SUM(count), 0) FROM monthly_totals");
+        if (existing < rows) {
+            Path csv = Files.createTempFile("search-bench", ".csv");
+            try {
+                ImportBenchmark.writeCsv(csv, (int) (rows - existing), 11L);
+                System.out.println(TransactionImporter.importCsv(csv, TransactionImporter.DEFAULT_BATCH_SIZE));
+            } finally {
+                Files.deleteIfExists(csv);
+            }
+        }
+        System.out.printf("Ledger holds %,d transactions%n", count("SELECT COALESCE(SUM(count), 0) FROM monthly_totals"));
+
+        System.out.printf("%-20s %12s %12s %8s%n", "Query", "FTS5 (ms)", "LIKE (ms)", "Speedup");
+        for (String term : TERMS) {
+            String likePattern = "%" + term.replace("\"", "").replace("*", "") + "%";
+
+            // Warm up both paths once so the page cache is hot for each
+            NoteSearch.search(Ledger.shared(), term, 50);
+            like(likePattern, 50);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                NoteSearch.search(Ledger.shared(), term, 50);
+            }
+            double ftsMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                like(likePattern, 50);
+            }
+            double likeMs = (System.nanoTime() - start) / 1e6 / iterations;
+
+            System.out.printf("%-20s %12.3f %12.3f %7.1fx%n", term, ftsMs, likeMs, likeMs / ftsMs);
+        }
+    }
+
+    // LIKE has no relevance ranking, so to pick the best results it has to see every match;
+    // only the first {@code limit} are materialised, like the ranked FTS query
+    private static int like(String pattern, int limit) throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire()) {
+            PreparedStatement pstmt = conn.prepare(LIKE_SQL);
+            pstmt.setString(1, pattern);
+            int matches = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    if (matches++ < limit) {
+                        rs.getString("notes");
+                    }
+                }
+            }
+            return matches;
+        }
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             ResultSet rs = conn.prepare(sql).executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
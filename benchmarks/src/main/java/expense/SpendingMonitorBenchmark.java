@@ -0,0 +1,229 @@
+package expense;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what the spending monitor adds to a write and how well it detects and forecasts.
+ * <ul>
+ *   <li>Single inserts are timed into a ledger the monitor does not track and into one it does,
+ *       interleaved, and the monitor's own update is timed apart from the database.</li>
+ *   <li>A seeded ledger is backfilled and its rows per second reported.</li>
+ *   <li>Ten synthetic years with known outliers injected are replayed through a fresh monitor; the
+ *       share of outliers flagged and of normal rows flagged by mistake are printed.</li>
+ *   <li>Month-end projections made on days 5, 10 and 20 are compared with what the month came to,
+ *       next to extrapolating the month so far in a straight line.</li>
+ * </ul>
+ *
+ *   java -cp benchmarks/target/benchmarks.jar -Dexpense.db.financeUrl=jdbc:sqlite:monitorbench.db expense.SpendingMonitorBenchmark [writes] [seedRows]
+ */
+public class SpendingMonitorBenchmark {
+    private static final String[] CATEGORIES = {"Groceries", "Dining", "Coffee", "Transport", "Shopping"};
+    private static final long[] MEDIANS = {5_400, 2_300, 380, 1_200, 4_500};
+    private static final int[] FORECAST_DAYS = {5, 10, 20};
+
+    public static void main(String[] args) throws SQLException {
+        System.setProperty("expense.anomaly.enabled", "true"); // before SpendingMonitor is loaded
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int seedRows = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        if (Database.FINANCE_URL.endsWith(":finance.db")) {
+            System.out.println("Refusing to benchmark against finance.db; pass -Dexpense.db.financeUrl=jdbc:sqlite:monitorbench.db");
+            return;
+        }
+        Schema.migrate();
+        truncate();
+
+        Ledger plain = Ledger.forUser(1);
+        Ledger monitored = Ledger.forUser(2);
+        Random random = new Random(11L);
+        for (Ledger ledger : List.of(plain, monitored)) {
+            seed(ledger, seedRows / 2, random);
+        }
+        long start = System.nanoTime();
+        long rows = SpendingMonitor.get().backfill(monitored);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Backfill: %,d rows in %.2f s (%,.0f rows/s)%n", rows, seconds, rows / seconds);
+
+        List<SpendingMonitor.Signal> signals = new ArrayList<>();
+        SpendingMonitor.get().addListener(signals::add);
+        long[] without = new long[writes];
+        long[] with = new long[writes];
+        for (int i = 0; i < writes; i++) {
+            // Interleaved so drift in the file or the JIT affects both alike
+            without[i] = timeInsert(plain, random);
+            with[i] = timeInsert(monitored, random);
+        }
+        System.out.printf("%,d timed inserts per ledger after %,d seeded rows%n", writes, seedRows);
+        System.out.println("  not tracked  " + percentiles(without));
+        System.out.println("  tracked      " + percentiles(with));
+        System.out.println("  " + signals.size() + " signals during the timed inserts");
+        timeUpdates();
+
+        detection();
+        forecasts();
+    }
+
+    private static long timeInsert(Ledger ledger, Random random) throws SQLException {
+        int category = random.nextInt(CATEGORIES.length);
+        long t0 = System.nanoTime();
+        TransactionStore.insert(ledger, "Expense", amount(random, MEDIANS[category]), null, "2024-12-15 12:00:00",
+                CATEGORIES[category]);
+        return System.nanoTime() - t0;
+    }
+
+    // The monitor on its own: one insert's worth of statistics, without the database
+    private static void timeUpdates() {
+        SpendingMonitor monitor = new SpendingMonitor();
+        Ledger ledger = Ledger.forUser(99);
+        monitor.track(ledger);
+        Random random = new Random(3L);
+        int n = 2_000_000;
+        String[] timestamps = new String[28];
+        for (int d = 0; d < timestamps.length; d++) {
+            timestamps[d] = String.format("2024-06-%02d 12:00:00", d + 1);
+        }
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                int category = i % CATEGORIES.length;
+                monitor.observe(ledger, i, "Expense", amount(random, MEDIANS[category]), timestamps[i % 28],
+                        CATEGORIES[category]);
+            }
+            if (round == 1) {
+                System.out.printf("  monitor update alone: %.0f ns per insert%n", (System.nanoTime() - start) / (double) n);
+            }
+        }
+    }
+
+    /** Replays ten years with 0.5% of expenses inflated 6-20x and counts what is flagged. */
+    private static void detection() {
+        SpendingMonitor monitor = new SpendingMonitor();
+        Ledger ledger = Ledger.forUser(98);
+        monitor.track(ledger);
+        List<SpendingMonitor.Signal> signals = new ArrayList<>();
+        monitor.addListener(signals::add);
+        Random random = new Random(5L);
+        long normal = 0;
+        long falseAlarms = 0;
+        long outliers = 0;
+        long caught = 0;
+        long id = 0;
+        for (LocalDate day = LocalDate.of(2015, 1, 1); day.getYear() < 2025; day = day.plusDays(1)) {
+            for (int i = 0; i < 6; i++) {
+                int category = random.nextInt(CATEGORIES.length);
+                long cents = amount(random, MEDIANS[category]);
+                boolean outlier = day.getYear() > 2015 && random.nextInt(200) == 0;
+                if (outlier) {
+                    cents *= 6 + random.nextInt(15);
+                }
+                signals.clear();
+                monitor.observe(ledger, ++id, "Expense", cents, day + " 12:00:00", CATEGORIES[category]);
+                boolean flagged = signals.stream().anyMatch(s -> s instanceof SpendingMonitor.Anomaly);
+                if (outlier) {
+                    outliers++;
+                    caught += flagged ? 1 : 0;
+                } else {
+                    normal++;
+                    falseAlarms += flagged ? 1 : 0;
+                }
+            }
+        }
+        System.out.printf("Detection: %,d of %,d injected outliers flagged (%.1f%%), %,d of %,d normal rows flagged (%.3f%%)%n",
+                caught, outliers, 100.0 * caught / outliers, falseAlarms, normal, 100.0 * falseAlarms / normal);
+    }
+
+    /**
+     * Replays ten years of rent on the 1st, utilities on the 15th and daily spending, asking for
+     * the month-end projection on a few days of each month and comparing it with the month's total.
+     */
+    private static void forecasts() throws SQLException {
+        SpendingMonitor monitor = new SpendingMonitor();
+        Ledger ledger = Ledger.forUser(97);
+        monitor.track(ledger);
+        Random random = new Random(9L);
+        double[] projectedError = new double[FORECAST_DAYS.length];
+        double[] linearError = new double[FORECAST_DAYS.length];
+        int months = 0;
+        for (LocalDate first = LocalDate.of(2015, 1, 1); first.getYear() < 2025; first = first.plusMonths(1)) {
+            int yearMonth = first.getYear() * 100 + first.getMonthValue();
+            long spent = 0;
+            long[] projected = new long[FORECAST_DAYS.length];
+            long[] linear = new long[FORECAST_DAYS.length];
+            for (LocalDate day = first; day.getMonth() == first.getMonth(); day = day.plusDays(1)) {
+                String timestamp = day + " 12:00:00";
+                if (day.getDayOfMonth() == 1) {
+                    spent += expense(monitor, ledger, timestamp, "Rent", 145_000);
+                }
+                if (day.getDayOfMonth() == 15) {
+                    spent += expense(monitor, ledger, timestamp, "Utilities", amount(random, 9_000));
+                }
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    int category = random.nextInt(CATEGORIES.length);
+                    spent += expense(monitor, ledger, timestamp, CATEGORIES[category], amount(random, MEDIANS[category]));
+                }
+                for (int f = 0; f < FORECAST_DAYS.length; f++) {
+                    if (day.getDayOfMonth() == FORECAST_DAYS[f]) {
+                        projected[f] = monitor.forecast(ledger, yearMonth, "", day.getDayOfMonth()).projectedCents();
+                        linear[f] = spent * first.lengthOfMonth() / day.getDayOfMonth();
+                    }
+                }
+            }
+            if (first.getYear() > 2015) { // after a year of history
+                months++;
+                for (int f = 0; f < FORECAST_DAYS.length; f++) {
+                    projectedError[f] += Math.abs(projected[f] - spent) / (double) spent;
+                    linearError[f] += Math.abs(linear[f] - spent) / (double) spent;
+                }
+            }
+        }
+        System.out.println("Month-end forecast, mean absolute error over " + months + " months:");
+        for (int f = 0; f < FORECAST_DAYS.length; f++) {
+            System.out.printf("  day %2d: seasonal baseline %5.1f%%, straight line %5.1f%%%n", FORECAST_DAYS[f],
+                    100 * projectedError[f] / months, 100 * linearError[f] / months);
+        }
+    }
+
+    private static long expense(SpendingMonitor monitor, Ledger ledger, String timestamp, String category, long cents) {
+        monitor.observe(ledger, -1, "Expense", cents, timestamp, category);
+        return cents;
+    }
+
+    private static long amount(Random random, long medianCents) {
+        return Math.max(1, Math.round(medianCents * Math.exp(random.nextGaussian() * 0.5)));
+    }
+
+    private static void seed(Ledger ledger, int rows, Random random) throws SQLException {
+        try (TransactionStore.Batch batch = TransactionStore.openBatch(ledger, 5_000)) {
+            for (int i = 0; i < rows; i++) {
+                int category = random.nextInt(CATEGORIES.length);
+                String timestamp = String.format("%d-%02d-%02d 12:00:00", 2015 + i * 10 / rows, 1 + random.nextInt(12),
+                        1 + random.nextInt(28));
+                batch.add("Expense", amount(random, MEDIANS[category]), null, timestamp, CATEGORIES[category]);
+            }
+            batch.flush();
+        }
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %7.3f ms  p99 %7.3f ms", sorted[sorted.length / 2] / 1e6,
+                sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1e6);
+    }
+
+    private static void truncate() throws SQLException {
+        try (Database.PooledConnection conn = Database.finance().acquire();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM transactions");
+            stmt.execute("DELETE FROM budget");
+            stmt.execute("DELETE FROM monthly_totals");
+            stmt.execute("DELETE FROM daily_totals");
+        }
+    }
+}